@@ -0,0 +1,222 @@
+/*
+ * Copyright (C) 2026 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.android.media.audiotestharness.client.grpc;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import com.android.media.audiotestharness.common.Defaults;
+import com.android.media.audiotestharness.proto.AudioTestHarnessGrpc;
+import com.android.media.audiotestharness.proto.AudioTestHarnessService;
+
+import com.google.protobuf.ByteString;
+
+import io.grpc.ManagedChannel;
+import io.grpc.inprocess.InProcessChannelBuilder;
+import io.grpc.inprocess.InProcessServerBuilder;
+import io.grpc.stub.ServerCallStreamObserver;
+import io.grpc.stub.StreamObserver;
+import io.grpc.testing.GrpcCleanupRule;
+
+import junitparams.JUnitParamsRunner;
+import junitparams.Parameters;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+import java.nio.ByteBuffer;
+import java.time.Duration;
+import java.util.Arrays;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+
+/**
+ * Measures the throughput and latency of the {@link GrpcAudioCaptureStream} while capturing from
+ * an in-process server that sends multichannel audio as fast as a real device would produce it.
+ */
+@RunWith(JUnitParamsRunner.class)
+public class GrpcAudioCaptureStreamBenchmarkTests {
+
+    private static final long CAPTURE_DURATION_MS = 2000;
+
+    /** Size of the header of each chunk, containing its send time and sequence number. */
+    private static final int HEADER_SIZE_BYTES = Long.BYTES + Integer.BYTES;
+
+    private static final Duration READ_TIMEOUT = Duration.ofMillis(100);
+
+    @Rule public GrpcCleanupRule mGrpcCleanupRule = new GrpcCleanupRule();
+
+    private ScheduledExecutorService mScheduledExecutorService;
+
+    @Before
+    public void setUp() throws Exception {
+        mScheduledExecutorService = Executors.newSingleThreadScheduledExecutor();
+    }
+
+    @After
+    public void tearDown() throws Exception {
+        mScheduledExecutorService.shutdownNow();
+    }
+
+    @Test
+    @Parameters(method = "getFormatParams")
+    public void read_keepsUpWithSustainedCapture(
+            int sampleRate, int channels, int bytesPerSample) throws Exception {
+        int bytesPerFrame = channels * bytesPerSample;
+        int bytesPerSecond = sampleRate * bytesPerFrame;
+        // Whole frames, as close to the chunk size the host targets as the header allows.
+        int chunkSize =
+                Math.max(
+                        Defaults.CAPTURE_CHUNK_TARGET_SIZE_BYTES / bytesPerFrame,
+                        (HEADER_SIZE_BYTES + bytesPerFrame - 1) / bytesPerFrame)
+                        * bytesPerFrame;
+
+        String serverName = InProcessServerBuilder.generateName();
+        mGrpcCleanupRule.register(
+                InProcessServerBuilder.forName(serverName)
+                        .addService(new PacedCaptureService(bytesPerSecond, chunkSize))
+                        .build()
+                        .start());
+        ManagedChannel channel =
+                mGrpcCleanupRule.register(InProcessChannelBuilder.forName(serverName).build());
+
+        int expectedChunks = (int) (bytesPerSecond * CAPTURE_DURATION_MS / 1000 / chunkSize);
+        long[] latencies = new long[expectedChunks + 1];
+        int receivedChunks = 0;
+        byte[] chunk = new byte[chunkSize];
+        long start = System.nanoTime();
+        try (GrpcAudioCaptureStream stream =
+                GrpcAudioCaptureStream.create(
+                        AudioTestHarnessGrpc.newStub(channel), mScheduledExecutorService)) {
+            int filled = 0;
+            int read;
+            while ((read = stream.read(chunk, filled, chunkSize - filled, READ_TIMEOUT)) >= 0) {
+                filled += read;
+                if (filled < chunkSize) {
+                    continue;
+                }
+                ByteBuffer header = ByteBuffer.wrap(chunk);
+                long latency = System.nanoTime() - header.getLong();
+                assertEquals("Chunk lost or reordered", receivedChunks, header.getInt());
+                if (receivedChunks < latencies.length) {
+                    latencies[receivedChunks] = latency;
+                }
+                receivedChunks++;
+                filled = 0;
+            }
+            long elapsedNanos = System.nanoTime() - start;
+
+            long[] sorted = Arrays.copyOf(latencies, Math.min(receivedChunks, latencies.length));
+            Arrays.sort(sorted);
+            System.out.println(
+                    String.format(
+                            "%dHz, %d channels, %d-bit: %d chunks of %d bytes, %.0f bytes/s"
+                                    + " (expected %d), latency p50 %.3fms p99 %.3fms max"
+                                    + " %.3fms, %d underruns, %d overruns (%dms)",
+                            sampleRate,
+                            channels,
+                            bytesPerSample * 8,
+                            receivedChunks,
+                            chunkSize,
+                            (double) receivedChunks * chunkSize * 1e9 / elapsedNanos,
+                            bytesPerSecond,
+                            percentileMillis(sorted, 0.5),
+                            percentileMillis(sorted, 0.99),
+                            percentileMillis(sorted, 1.0),
+                            stream.getUnderruns(),
+                            stream.getOverruns(),
+                            stream.getOverrunDuration().toMillis()));
+        }
+
+        // Every chunk arrived in order, and about as many as a device produces in that time.
+        assertTrue(receivedChunks >= expectedChunks * 9 / 10);
+    }
+
+    public Object[] getFormatParams() throws Exception {
+        // Sample rate, channels and bytes per sample.
+        return new Object[][] {
+            {48000, 2, 2},
+            {48000, 8, 2},
+            {96000, 2, 2},
+            {96000, 8, 2},
+            {96000, 8, 3}
+        };
+    }
+
+    private static double percentileMillis(long[] sorted, double percentile) {
+        if (sorted.length == 0) {
+            return Double.NaN;
+        }
+        int index = (int) Math.ceil(percentile * sorted.length) - 1;
+        return sorted[Math.max(0, index)] / 1e6;
+    }
+
+    /**
+     * Implementation of the <code>Capture</code> procedure that sends chunks for {@link
+     * #CAPTURE_DURATION_MS} at the rate of a capture device, each starting with its send time and
+     * sequence number.
+     */
+    private static class PacedCaptureService extends AudioTestHarnessGrpc.AudioTestHarnessImplBase {
+        private final int mBytesPerSecond;
+        private final int mChunkSize;
+
+        PacedCaptureService(int bytesPerSecond, int chunkSize) {
+            mBytesPerSecond = bytesPerSecond;
+            mChunkSize = chunkSize;
+        }
+
+        @Override
+        public void capture(
+                AudioTestHarnessService.CaptureRequest request,
+                StreamObserver<AudioTestHarnessService.CaptureChunk> responseObserver) {
+            ServerCallStreamObserver<AudioTestHarnessService.CaptureChunk> serverObserver =
+                    (ServerCallStreamObserver<AudioTestHarnessService.CaptureChunk>)
+                            responseObserver;
+            long start = System.nanoTime();
+            long sentBytes = 0;
+            int sequence = 0;
+            byte[] chunk = new byte[mChunkSize];
+            while (!serverObserver.isCancelled()) {
+                long elapsedNanos = System.nanoTime() - start;
+                if (elapsedNanos >= CAPTURE_DURATION_MS * 1000000L) {
+                    break;
+                }
+                long due = elapsedNanos * mBytesPerSecond / 1000000000L;
+                if (sentBytes + mChunkSize > due) {
+                    try {
+                        Thread.sleep(/* millis= */ 1);
+                    } catch (InterruptedException ie) {
+                        Thread.currentThread().interrupt();
+                        return;
+                    }
+                    continue;
+                }
+                ByteBuffer.wrap(chunk).putLong(System.nanoTime()).putInt(sequence++);
+                // In-process messages are not serialized, so each one needs its own bytes.
+                responseObserver.onNext(
+                        AudioTestHarnessService.CaptureChunk.newBuilder()
+                                .setData(ByteString.copyFrom(chunk))
+                                .build());
+                sentBytes += mChunkSize;
+            }
+            responseObserver.onCompleted();
+        }
+    }
+}
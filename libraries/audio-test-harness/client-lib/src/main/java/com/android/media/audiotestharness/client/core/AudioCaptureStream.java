@@ -21,6 +21,7 @@ import com.android.media.audiotestharness.proto.AudioFormatOuterClass.AudioForma
 
 import java.io.IOException;
 import java.io.InputStream;
+import java.time.Duration;
 
 /**
  * {@link InputStream} that provides access to raw audio samples returned by a Audio Capture Session
@@ -39,10 +40,32 @@ public abstract class AudioCaptureStream extends InputStream {
      * @param samples the array to read into.
      * @param offset the offset to use when writing into samples.
      * @param len the maximum number of samples to read.
-     * @return the number of samples read into the provided array.
+     * @return the number of samples read into the provided array, or -1 if the end of the stream
+     *     has been reached.
      */
     public abstract int read(short[] samples, int offset, int len) throws IOException;
 
+    /**
+     * Read method that reads up to len bytes into the provided array starting at off, waiting at
+     * most the provided timeout for data to become available.
+     *
+     * <p>Unlike the other read methods, this method can be used to poll the stream without
+     * blocking indefinitely, for example to keep up with other work while capturing.
+     *
+     * <p>The default implementation ignores the timeout and blocks like {@link #read(byte[], int,
+     * int)}, implementations that can wait for data with a timeout should override it.
+     *
+     * @param b the array to read into.
+     * @param off the offset to use when writing into b.
+     * @param len the maximum number of bytes to read.
+     * @param timeout the maximum time to wait for data, where zero does not wait at all.
+     * @return the number of bytes read into the provided array, zero if no data became available
+     *     before the timeout, or -1 if the end of the stream has been reached.
+     */
+    public int read(byte[] b, int off, int len, Duration timeout) throws IOException {
+        return read(b, off, len);
+    }
+
     /**
      * Returns the {@link AudioFormat} corresponding to this {@link AudioCaptureStream}, thus the
      * raw data exposed by this stream will be raw PCM samples matching this format.
@@ -0,0 +1,293 @@
+/*
+ * Copyright (C) 2026 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.android.media.audiotestharness.client.grpc;
+
+import com.google.common.base.Preconditions;
+
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.nio.ByteBuffer;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * Bounded single-producer, single-consumer buffer of captured audio chunks.
+ *
+ * <p>The producer, the gRPC thread receiving {@link
+ * com.android.media.audiotestharness.proto.AudioTestHarnessService.CaptureChunk}s, hands each
+ * chunk's buffer over as is, and the consumer copies straight out of it into the array passed to
+ * {@link #read(byte[], int, int, long)}. Neither side takes a lock: chunks are exchanged through a
+ * ring of slots indexed by two counters, each written by only one of the threads, and a side that
+ * has to wait parks until the other unparks it.
+ *
+ * <p>When the buffer is full the producer waits for the consumer, which holds up the gRPC call and
+ * so pushes back on the host through flow control. Each such wait is counted as an overrun, and
+ * each time the consumer finds the buffer empty and has to wait is counted as an underrun.
+ */
+final class CaptureChunkBuffer {
+
+    private final ByteBuffer[] mSlots;
+    private final int mMask;
+
+    /** Number of chunks taken by the consumer, only written by the consumer. */
+    private volatile long mHead = 0;
+
+    /** Number of chunks handed over by the producer, only written by the producer. */
+    private volatile long mTail = 0;
+
+    private volatile Thread mWaitingConsumer = null;
+    private volatile Thread mWaitingProducer = null;
+
+    private volatile boolean mFinished = false;
+    private volatile boolean mClosed = false;
+
+    /** The chunk currently being read by the consumer, owned by the consumer. */
+    private ByteBuffer mCurrent = null;
+
+    private volatile long mWrittenBytes = 0;
+    private volatile long mReadBytes = 0;
+
+    private volatile long mOverruns = 0;
+    private volatile long mOverrunNanos = 0;
+    private volatile long mUnderruns = 0;
+    private volatile long mUnderrunNanos = 0;
+
+    /**
+     * Constructor.
+     *
+     * @param capacity the maximum number of chunks held by the buffer, rounded up to a power of
+     *     two.
+     */
+    CaptureChunkBuffer(int capacity) {
+        Preconditions.checkArgument(
+                capacity > 0 && capacity <= (1 << 30), "capacity must be within (0, 2^30].");
+        int slots = Integer.highestOneBit(capacity);
+        if (slots < capacity) {
+            slots <<= 1;
+        }
+        mSlots = new ByteBuffer[slots];
+        mMask = slots - 1;
+    }
+
+    /**
+     * Hands a chunk over to the consumer, waiting for room if the buffer is full.
+     *
+     * <p>The buffer takes ownership of the chunk, so it must not be modified afterwards. Must only
+     * be called from the producer thread.
+     *
+     * @return true if the chunk was added, or false if the buffer was closed or finished first, in
+     *     which case the chunk is discarded.
+     */
+    boolean offer(ByteBuffer chunk) throws InterruptedIOException {
+        long tail = mTail;
+        if (tail - mHead > mMask) {
+            long start = System.nanoTime();
+            mWaitingProducer = Thread.currentThread();
+            try {
+                while (tail - mHead > mMask && !mClosed && !mFinished) {
+                    LockSupport.park(this);
+                    if (Thread.currentThread().isInterrupted()) {
+                        throw new InterruptedIOException("Interrupted while waiting for room");
+                    }
+                }
+            } finally {
+                mWaitingProducer = null;
+                mOverruns++;
+                mOverrunNanos += System.nanoTime() - start;
+            }
+        }
+        if (mClosed || mFinished) {
+            return false;
+        }
+
+        if (chunk.hasRemaining()) {
+            mSlots[(int) tail & mMask] = chunk;
+            mWrittenBytes += chunk.remaining();
+            mTail = tail + 1;
+            unpark(mWaitingConsumer);
+        }
+        return true;
+    }
+
+    /**
+     * Marks the end of the data, after which the consumer reads any chunks still buffered and then
+     * reaches the end of the stream. Must only be called from the producer thread.
+     */
+    void finish() {
+        mFinished = true;
+        unpark(mWaitingConsumer);
+    }
+
+    /** Closes the buffer, failing any further reads and waking up both sides. */
+    void close() {
+        mClosed = true;
+        unpark(mWaitingConsumer);
+        unpark(mWaitingProducer);
+    }
+
+    /**
+     * Reads up to len bytes into the provided array, waiting up to timeoutNanos for at least one
+     * byte to become available. Must only be called from the consumer thread.
+     *
+     * @param timeoutNanos the maximum time to wait, or {@link Long#MAX_VALUE} to wait until data is
+     *     available.
+     * @return the number of bytes read, zero if the timeout elapsed before any data was available,
+     *     or -1 if the end of the stream was reached.
+     * @throws IOException if the buffer was closed.
+     */
+    int read(byte[] b, int off, int len, long timeoutNanos) throws IOException {
+        Preconditions.checkPositionIndexes(off, off + len, b.length);
+        return (int) transfer(b, off, len, timeoutNanos);
+    }
+
+    /**
+     * Skips up to n bytes, waiting until at least one byte is available. Must only be called from
+     * the consumer thread.
+     *
+     * @return the number of bytes skipped, or zero at the end of the stream.
+     * @throws IOException if the buffer was closed.
+     */
+    long skip(long n) throws IOException {
+        return Math.max(0, transfer(/* b= */ null, /* off= */ 0, n, Long.MAX_VALUE));
+    }
+
+    /** Returns the number of bytes that can be read without waiting. */
+    int available() throws IOException {
+        if (mClosed) {
+            throw new IOException("Stream closed");
+        }
+        return (int) Math.min(Integer.MAX_VALUE, mWrittenBytes - mReadBytes);
+    }
+
+    /** Returns the number of times the producer found the buffer full and had to wait. */
+    long getOverruns() {
+        return mOverruns;
+    }
+
+    /** Returns the total time the producer spent waiting for room. */
+    long getOverrunNanos() {
+        return mOverrunNanos;
+    }
+
+    /** Returns the number of times the consumer found the buffer empty and had to wait. */
+    long getUnderruns() {
+        return mUnderruns;
+    }
+
+    /** Returns the total time the consumer spent waiting for data. */
+    long getUnderrunNanos() {
+        return mUnderrunNanos;
+    }
+
+    /** Returns the number of chunk slots in the buffer. */
+    int getCapacity() {
+        return mSlots.length;
+    }
+
+    /**
+     * Copies up to len bytes into b, or discards them if b is null, once at least one byte is
+     * available.
+     */
+    private long transfer(byte[] b, int off, long len, long timeoutNanos) throws IOException {
+        if (mClosed) {
+            throw new IOException("Stream closed");
+        }
+        if (len == 0) {
+            return 0;
+        }
+
+        if (!hasData() && !awaitData(timeoutNanos)) {
+            return mFinished && !hasData() ? -1 : 0;
+        }
+
+        long transferred = 0;
+        while (transferred < len && hasData()) {
+            if (mCurrent == null) {
+                long head = mHead;
+                int slot = (int) head & mMask;
+                mCurrent = mSlots[slot];
+                mSlots[slot] = null;
+                mHead = head + 1;
+                unpark(mWaitingProducer);
+            }
+
+            int count = (int) Math.min(len - transferred, mCurrent.remaining());
+            if (b != null) {
+                mCurrent.get(b, off + (int) transferred, count);
+            } else {
+                mCurrent.position(mCurrent.position() + count);
+            }
+            transferred += count;
+            if (!mCurrent.hasRemaining()) {
+                mCurrent = null;
+            }
+        }
+        mReadBytes += transferred;
+        return transferred;
+    }
+
+    private boolean hasData() {
+        return mCurrent != null || mHead != mTail;
+    }
+
+    /**
+     * Waits until data is available, the producer finishes or the timeout elapses.
+     *
+     * @return true if data is available.
+     * @throws IOException if the buffer is closed while waiting.
+     */
+    private boolean awaitData(long timeoutNanos) throws IOException {
+        if (mFinished || timeoutNanos <= 0) {
+            return hasData();
+        }
+
+        long start = System.nanoTime();
+        mUnderruns++;
+        mWaitingConsumer = Thread.currentThread();
+        try {
+            // The producer publishes its tail before checking for a waiting consumer, so checking
+            // for data after publishing ourselves as waiting cannot miss a wake up.
+            while (!hasData() && !mFinished && !mClosed) {
+                if (timeoutNanos == Long.MAX_VALUE) {
+                    LockSupport.park(this);
+                } else {
+                    long remaining = timeoutNanos - (System.nanoTime() - start);
+                    if (remaining <= 0) {
+                        break;
+                    }
+                    LockSupport.parkNanos(this, remaining);
+                }
+                if (Thread.currentThread().isInterrupted()) {
+                    throw new InterruptedIOException("Interrupted while waiting for data");
+                }
+            }
+        } finally {
+            mWaitingConsumer = null;
+            mUnderrunNanos += System.nanoTime() - start;
+        }
+
+        if (mClosed) {
+            throw new IOException("Stream closed");
+        }
+        return hasData();
+    }
+
+    private static void unpark(Thread thread) {
+        if (thread != null) {
+            LockSupport.unpark(thread);
+        }
+    }
+}
@@ -28,10 +28,9 @@ import io.grpc.Status;
 import io.grpc.stub.StreamObserver;
 
 import java.io.IOException;
-import java.io.PipedInputStream;
-import java.io.PipedOutputStream;
 import java.nio.ByteBuffer;
 import java.nio.ByteOrder;
+import java.time.Duration;
 import java.util.concurrent.ScheduledExecutorService;
 import java.util.concurrent.TimeUnit;
 import java.util.function.Consumer;
@@ -41,34 +40,34 @@ import java.util.logging.Logger;
 /**
  * {@link AudioCaptureStream} that utilizes gRPC as its transfer mechanism.
  *
- * <p>Utilizes Piped I/O streams with the gRPC call writing to the sending side of the pipe, and the
- * exposed methods from the {@link java.io.InputStream} class being passed to the receiving end of
- * the pipe.
+ * <p>Chunks received by the gRPC call are handed over to the reading thread through a {@link
+ * CaptureChunkBuffer}, and the exposed methods from the {@link java.io.InputStream} class copy the
+ * audio data straight out of those chunks.
  */
 public class GrpcAudioCaptureStream extends AudioCaptureStream {
     private static final Logger LOGGER = Logger.getLogger(GrpcAudioCaptureStream.class.getName());
 
     /**
-     * Size of the buffer used by the {@link PipedInputStream} to cache internal messages received
-     * over the gRPC connection before they are read by the client.
+     * Default number of chunks received over the gRPC connection that can be buffered before they
+     * are read by the client.
      *
-     * <p>This value is currently equal to 35 chunks, 8960 bytes, or just about 100ms of audio
-     * recorded at CD quality.
+     * <p>With chunks of {@link Defaults#CAPTURE_CHUNK_TARGET_SIZE_BYTES}, this is 256KiB, about
+     * three seconds of audio recorded at CD quality or 170ms of 8-channel audio at 96kHz. Once it
+     * is full, the host is held back by flow control rather than any data being lost.
      */
-    private static final int BUFFER_SIZE = 35 * Defaults.CAPTURE_CHUNK_TARGET_SIZE_BYTES;
+    public static final int DEFAULT_CAPACITY_CHUNKS = 1024;
 
     private static final int NUM_CHANNELS_MONO = 1;
     private static final int BITS_PER_SAMPLE_16BIT = 16;
     private static final int BYTES_PER_SAMPLE_16BIT = BITS_PER_SAMPLE_16BIT / 8;
 
     private final Context.CancellableContext mCancellableContext;
-    private final PipedInputStream mInputStream;
-    private final PipedOutputStream mOutputStream;
+    private final CaptureChunkBuffer mBuffer;
 
     /**
      * {@link Throwable} field used when the underlying gRPC call has an error. This error is
      * propagated back from the gRPC thread through a callback within the {@link
-     * PipedCaptureChunkStreamObserver}. This field is volatile, as it will only be read by or
+     * BufferingCaptureChunkStreamObserver}. This field is volatile, as it will only be read by or
      * written to by single separate threads, but we want to make sure the reading thread is
      * immediately notified when an error occurs. Furthermore, this is safe since the underlying
      * Throwable will be immutable.
@@ -76,31 +75,30 @@ public class GrpcAudioCaptureStream extends AudioCaptureStream {
     private volatile Throwable mGrpcError = null;
 
     private GrpcAudioCaptureStream(
-            Context.CancellableContext cancellableContext,
-            PipedInputStream inputStream,
-            PipedOutputStream outputStream) {
+            Context.CancellableContext cancellableContext, CaptureChunkBuffer buffer) {
         mCancellableContext = cancellableContext;
-        mInputStream = inputStream;
-        mOutputStream = outputStream;
+        mBuffer = buffer;
     }
 
     static GrpcAudioCaptureStream create(
             AudioTestHarnessGrpc.AudioTestHarnessStub audioTestHarnessStub,
             ScheduledExecutorService scheduledExecutorService)
             throws IOException {
+        return create(audioTestHarnessStub, scheduledExecutorService, DEFAULT_CAPACITY_CHUNKS);
+    }
+
+    static GrpcAudioCaptureStream create(
+            AudioTestHarnessGrpc.AudioTestHarnessStub audioTestHarnessStub,
+            ScheduledExecutorService scheduledExecutorService,
+            int capacityChunks)
+            throws IOException {
         Preconditions.checkNotNull(audioTestHarnessStub, "audioTestHarnessStub cannot be null.");
         Preconditions.checkNotNull(
                 scheduledExecutorService, "scheduledExecutorService cannot be null.");
+        Preconditions.checkArgument(capacityChunks > 0, "capacityChunks must be positive.");
 
-        // Create the piped streams that back the stream stream itself.
-        PipedInputStream pipedInputStream = new PipedInputStream(BUFFER_SIZE);
-        PipedOutputStream pipedOutputStream;
-        try {
-            pipedOutputStream = new PipedOutputStream(pipedInputStream);
-        } catch (IOException ioe) {
-            throw new IOException(
-                    "Unable to create Capture Stream due to pipe creation failure", ioe);
-        }
+        // Create the buffer that backs the stream itself.
+        CaptureChunkBuffer buffer = new CaptureChunkBuffer(capacityChunks);
 
         // Start the gRPC call with a context that can be used for cancellation later.
         Context.CancellableContext grpcContext =
@@ -111,16 +109,15 @@ public class GrpcAudioCaptureStream extends AudioCaptureStream {
                                 TimeUnit.SECONDS,
                                 scheduledExecutorService);
 
-        GrpcAudioCaptureStream captureStream =
-                new GrpcAudioCaptureStream(grpcContext, pipedInputStream, pipedOutputStream);
+        GrpcAudioCaptureStream captureStream = new GrpcAudioCaptureStream(grpcContext, buffer);
 
         try {
             grpcContext.call(
                     () -> {
                         audioTestHarnessStub.capture(
                                 AudioTestHarnessService.CaptureRequest.getDefaultInstance(),
-                                new PipedCaptureChunkStreamObserver(
-                                        pipedOutputStream,
+                                new BufferingCaptureChunkStreamObserver(
+                                        buffer,
                                         (throwable) -> captureStream.mGrpcError = throwable));
                         return true;
                     });
@@ -133,15 +130,7 @@ public class GrpcAudioCaptureStream extends AudioCaptureStream {
 
     @Override
     public int read(byte[] b) throws IOException {
-        if (mGrpcError != null) {
-            throw new IOException("Audio Test Harness gRPC Communication Error", mGrpcError);
-        }
-
-        try {
-            return mInputStream.read(b);
-        } catch (IOException ioe) {
-            throw new IOException("Audio Test Harness gRPC Internal Error", ioe);
-        }
+        return read(b, 0, b.length);
     }
 
     /**
@@ -157,33 +146,34 @@ public class GrpcAudioCaptureStream extends AudioCaptureStream {
      */
     @Override
     public int read(byte[] b, int off, int len) throws IOException {
-        if (mGrpcError != null) {
-            throw new IOException("Audio Test Harness gRPC Communication Error", mGrpcError);
-        }
+        return readFromBuffer(b, off, len, Long.MAX_VALUE);
+    }
 
+    @Override
+    public int read(byte[] b, int off, int len, Duration timeout) throws IOException {
+        Preconditions.checkNotNull(timeout, "timeout cannot be null.");
+        long timeoutNanos;
         try {
-            return mInputStream.read(b, off, len);
-        } catch (IOException ioe) {
-            throw new IOException("Audio Test Harness gRPC Internal Error", ioe);
+            timeoutNanos = Math.max(0, timeout.toNanos());
+        } catch (ArithmeticException ae) {
+            // Longer than about 292 years, so the same as no timeout at all.
+            timeoutNanos = Long.MAX_VALUE;
         }
+        return readFromBuffer(b, off, len, timeoutNanos);
     }
 
     @Override
     public long skip(long n) throws IOException {
-        if (mGrpcError != null) {
-            throw new IOException("Audio Test Harness gRPC Communication Error", mGrpcError);
-        }
+        checkGrpcError();
 
-        return mInputStream.skip(n);
+        return mBuffer.skip(n);
     }
 
     @Override
     public int available() throws IOException {
-        if (mGrpcError != null) {
-            throw new IOException("Audio Test Harness gRPC Communication Error", mGrpcError);
-        }
+        checkGrpcError();
 
-        return mInputStream.available();
+        return mBuffer.available();
     }
 
     @Override
@@ -191,44 +181,97 @@ public class GrpcAudioCaptureStream extends AudioCaptureStream {
         mCancellableContext.cancel(
                 Status.CANCELLED.withDescription("Capture stopped by client").asException());
 
-        mInputStream.close();
-        mOutputStream.close();
+        mBuffer.close();
+        LOGGER.fine(
+                String.format(
+                        "Capture stream closed, %d underruns (%dms), %d overruns (%dms)",
+                        getUnderruns(),
+                        TimeUnit.NANOSECONDS.toMillis(mBuffer.getUnderrunNanos()),
+                        getOverruns(),
+                        TimeUnit.NANOSECONDS.toMillis(mBuffer.getOverrunNanos())));
     }
 
+    /**
+     * {@inheritDoc}
+     *
+     * <p>Marks are not supported, as captured audio is not kept once read, so this does nothing.
+     */
     @Override
-    public synchronized void mark(int readlimit) {
-        mInputStream.mark(readlimit);
-    }
+    public synchronized void mark(int readlimit) {}
 
+    /**
+     * {@inheritDoc}
+     *
+     * <p>Always throws, as marks are not supported.
+     */
     @Override
     public synchronized void reset() throws IOException {
-        if (mGrpcError != null) {
-            throw new IOException("Audio Test Harness gRPC Communication Error", mGrpcError);
-        }
+        checkGrpcError();
 
-        try {
-            mInputStream.reset();
-        } catch (IOException ioe) {
-            throw new IOException("Audio Test Harness gRPC Internal Error", ioe);
-        }
+        throw new IOException(
+                "Audio Test Harness gRPC Internal Error",
+                new IOException("mark/reset not supported"));
     }
 
     @Override
     public boolean markSupported() {
-        return mInputStream.markSupported();
+        return false;
     }
 
     @Override
     public int read() throws IOException {
-        if (mGrpcError != null) {
-            throw new IOException("Audio Test Harness gRPC Communication Error", mGrpcError);
-        }
+        byte[] b = new byte[1];
+        return read(b, 0, 1) < 0 ? -1 : b[0] & 0xFF;
+    }
+
+    /**
+     * Returns the number of times the reader found no audio data available and had to wait for
+     * more to arrive from the host.
+     */
+    public long getUnderruns() {
+        return mBuffer.getUnderruns();
+    }
+
+    /** Returns the total time the reader spent waiting for audio data to arrive from the host. */
+    public Duration getUnderrunDuration() {
+        return Duration.ofNanos(mBuffer.getUnderrunNanos());
+    }
 
+    /**
+     * Returns the number of times audio data arrived from the host while the buffer was full, so
+     * that the host was held back until the reader caught up.
+     */
+    public long getOverruns() {
+        return mBuffer.getOverruns();
+    }
+
+    /** Returns the total time the host was held back waiting for the reader to catch up. */
+    public Duration getOverrunDuration() {
+        return Duration.ofNanos(mBuffer.getOverrunNanos());
+    }
+
+    private int readFromBuffer(byte[] b, int off, int len, long timeoutNanos) throws IOException {
+        checkGrpcError();
+
+        int read;
         try {
-            return mInputStream.read();
+            read = mBuffer.read(b, off, len, timeoutNanos);
         } catch (IOException ioe) {
             throw new IOException("Audio Test Harness gRPC Internal Error", ioe);
         }
+
+        // The buffer reaches its end when the call fails, in which case the failure is reported
+        // rather than the end of the stream.
+        if (read < 0) {
+            checkGrpcError();
+        }
+        return read;
+    }
+
+    private void checkGrpcError() throws IOException {
+        if (mGrpcError != null) {
+            throw new IOException("Audio Test Harness gRPC Communication Error", mGrpcError);
+        }
     }
 
     @Override
@@ -257,15 +300,24 @@ public class GrpcAudioCaptureStream extends AudioCaptureStream {
         // Read from the stream, ensuring that we either read up to the maximum our buffer can
         // handle, or we are reading complete samples from the stream as determined by the
         // number of bytes we expect per sample and the number of channels.
-        byte[] buffer = new byte[len * BYTES_PER_SAMPLE_16BIT * getAudioFormat().getChannels()];
+        int bytesPerFrame = BYTES_PER_SAMPLE_16BIT * getAudioFormat().getChannels();
+        byte[] buffer = new byte[len * bytesPerFrame];
         int read = 0;
         do {
-            read += read(buffer, read, buffer.length - read);
-        } while (read % (BYTES_PER_SAMPLE_16BIT * getAudioFormat().getChannels()) != 0);
+            int result = read(buffer, read, buffer.length - read);
+            if (result < 0) {
+                if (read == 0) {
+                    return -1;
+                }
+                break;
+            }
+            read += result;
+        } while (read % bytesPerFrame != 0);
 
         // Calculate the number of frames we were able to read, and copy that exact
-        // number of samples into the provided array.
-        int samplesRead = read / BYTES_PER_SAMPLE_16BIT;
+        // number of samples into the provided array. Only at the end of the stream can the last
+        // frame be incomplete, in which case it is dropped.
+        int samplesRead = read / bytesPerFrame * getAudioFormat().getChannels();
         ByteBuffer.wrap(buffer)
                 .order(
                         getAudioFormat().getBigEndian()
@@ -278,31 +330,32 @@ public class GrpcAudioCaptureStream extends AudioCaptureStream {
     }
 
     /**
-     * {@link StreamObserver} that publishes audio samples received over a gRPC connection to a
-     * piped output stream.
+     * {@link StreamObserver} that hands chunks of audio samples received over a gRPC connection to
+     * a {@link CaptureChunkBuffer}.
      */
-    private static final class PipedCaptureChunkStreamObserver
+    private static final class BufferingCaptureChunkStreamObserver
             implements StreamObserver<AudioTestHarnessService.CaptureChunk> {
         private static final Logger LOGGER =
-                Logger.getLogger(PipedCaptureChunkStreamObserver.class.getName());
+                Logger.getLogger(BufferingCaptureChunkStreamObserver.class.getName());
 
-        private final PipedOutputStream mPipedOutputStream;
+        private final CaptureChunkBuffer mBuffer;
         private final Consumer<Throwable> mOnErrorCallback;
 
-        private PipedCaptureChunkStreamObserver(
-                PipedOutputStream pipedOutputStream, Consumer<Throwable> onErrorCallback) {
-            mPipedOutputStream = pipedOutputStream;
+        private BufferingCaptureChunkStreamObserver(
+                CaptureChunkBuffer buffer, Consumer<Throwable> onErrorCallback) {
+            mBuffer = buffer;
             mOnErrorCallback = onErrorCallback;
         }
 
         @Override
         public void onNext(AudioTestHarnessService.CaptureChunk value) {
+            // The chunk owns the bytes it was parsed into, so they are handed over without a copy.
             try {
-                mPipedOutputStream.write(value.getData().toByteArray());
+                mBuffer.offer(value.getData().asReadOnlyByteBuffer());
             } catch (IOException ioe) {
                 LOGGER.log(
                         Level.WARNING,
-                        "Unable to write segment of audio data, data may have been lost",
+                        "Unable to buffer segment of audio data, data may have been lost",
                         ioe);
             }
         }
@@ -313,18 +366,14 @@ public class GrpcAudioCaptureStream extends AudioCaptureStream {
             mOnErrorCallback.accept(t);
             LOGGER.log(Level.WARNING, "onError called: ", t);
 
-            // On error, close the stream so that any corresponding input streams will also
-            // throw exceptions when attempting to read.
-            try {
-                mPipedOutputStream.close();
-            } catch (IOException ioe) {
-                LOGGER.log(Level.WARNING, "Unable to close the pipedOutputStream", ioe);
-            }
+            // On error, finish the buffer so that a waiting reader wakes up and reports the error.
+            mBuffer.finish();
         }
 
         @Override
         public void onCompleted() {
             LOGGER.log(Level.FINE, "onCompleted called");
+            mBuffer.finish();
         }
     }
 }
@@ -27,20 +27,34 @@ import java.util.concurrent.ScheduledExecutorService;
 public class GrpcAudioCaptureStreamFactory {
 
     private final ScheduledExecutorService mScheduledExecutorService;
+    private final int mCapacityChunks;
 
-    private GrpcAudioCaptureStreamFactory(ScheduledExecutorService scheduledExecutorService) {
+    private GrpcAudioCaptureStreamFactory(
+            ScheduledExecutorService scheduledExecutorService, int capacityChunks) {
         mScheduledExecutorService = scheduledExecutorService;
+        mCapacityChunks = capacityChunks;
     }
 
     public static GrpcAudioCaptureStreamFactory create(
             ScheduledExecutorService scheduledExecutorService) {
+        return create(scheduledExecutorService, GrpcAudioCaptureStream.DEFAULT_CAPACITY_CHUNKS);
+    }
+
+    /**
+     * Creates a factory for streams that buffer up to capacityChunks chunks of audio data received
+     * from the host before they are read.
+     */
+    public static GrpcAudioCaptureStreamFactory create(
+            ScheduledExecutorService scheduledExecutorService, int capacityChunks) {
         Preconditions.checkNotNull(scheduledExecutorService);
-        return new GrpcAudioCaptureStreamFactory(scheduledExecutorService);
+        Preconditions.checkArgument(capacityChunks > 0, "capacityChunks must be positive.");
+        return new GrpcAudioCaptureStreamFactory(scheduledExecutorService, capacityChunks);
     }
 
     GrpcAudioCaptureStream newStream(AudioTestHarnessGrpc.AudioTestHarnessStub audioTestHarnessStub)
             throws IOException {
         Preconditions.checkNotNull(audioTestHarnessStub, "audioTestHarnessStub cannot be null");
-        return GrpcAudioCaptureStream.create(audioTestHarnessStub, mScheduledExecutorService);
+        return GrpcAudioCaptureStream.create(
+                audioTestHarnessStub, mScheduledExecutorService, mCapacityChunks);
     }
 }
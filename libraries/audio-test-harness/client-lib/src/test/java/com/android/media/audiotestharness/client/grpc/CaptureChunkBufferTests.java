@@ -0,0 +1,287 @@
+/*
+ * Copyright (C) 2026 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.android.media.audiotestharness.client.grpc;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.junit.runners.JUnit4;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicReference;
+
+@RunWith(JUnit4.class)
+public class CaptureChunkBufferTests {
+
+    private static final long TIMEOUT_NANOS = TimeUnit.MILLISECONDS.toNanos(50);
+
+    @Test
+    public void constructor_roundsCapacityUpToPowerOfTwo() throws Exception {
+        assertEquals(1, new CaptureChunkBuffer(/* capacity= */ 1).getCapacity());
+        assertEquals(8, new CaptureChunkBuffer(/* capacity= */ 5).getCapacity());
+        assertEquals(8, new CaptureChunkBuffer(/* capacity= */ 8).getCapacity());
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void constructor_throwsIllegalArgumentException_zeroCapacity() throws Exception {
+        new CaptureChunkBuffer(/* capacity= */ 0);
+    }
+
+    @Test
+    public void read_readsAcrossChunksInOrder() throws Exception {
+        CaptureChunkBuffer buffer = new CaptureChunkBuffer(/* capacity= */ 4);
+        buffer.offer(ByteBuffer.wrap(new byte[] {0, 1, 2}));
+        buffer.offer(ByteBuffer.wrap(new byte[] {3, 4}));
+        buffer.offer(ByteBuffer.wrap(new byte[] {5, 6, 7}));
+
+        byte[] first = new byte[4];
+        byte[] second = new byte[8];
+        int firstRead = buffer.read(first, /* off= */ 0, first.length, TIMEOUT_NANOS);
+        int secondRead = buffer.read(second, /* off= */ 2, /* len= */ 6, TIMEOUT_NANOS);
+
+        assertEquals(4, firstRead);
+        assertArrayEquals(new byte[] {0, 1, 2, 3}, first);
+        assertEquals(4, secondRead);
+        assertArrayEquals(new byte[] {0, 0, 4, 5, 6, 7, 0, 0}, second);
+    }
+
+    @Test
+    public void read_readsOnlyRemainingBytesOfChunk() throws Exception {
+        CaptureChunkBuffer buffer = new CaptureChunkBuffer(/* capacity= */ 4);
+        ByteBuffer chunk = ByteBuffer.wrap(new byte[] {0, 1, 2, 3, 4});
+        chunk.position(2);
+        buffer.offer(chunk.slice());
+
+        byte[] read = new byte[8];
+
+        assertEquals(3, buffer.read(read, /* off= */ 0, read.length, TIMEOUT_NANOS));
+        assertArrayEquals(new byte[] {2, 3, 4}, Arrays.copyOf(read, 3));
+    }
+
+    @Test
+    public void read_returnsZero_timeoutElapsed() throws Exception {
+        CaptureChunkBuffer buffer = new CaptureChunkBuffer(/* capacity= */ 4);
+
+        long start = System.nanoTime();
+        int read = buffer.read(new byte[4], /* off= */ 0, /* len= */ 4, TIMEOUT_NANOS);
+
+        assertEquals(0, read);
+        assertTrue(System.nanoTime() - start >= TIMEOUT_NANOS);
+        assertEquals(1, buffer.getUnderruns());
+        assertTrue(buffer.getUnderrunNanos() >= TIMEOUT_NANOS);
+    }
+
+    @Test
+    public void read_returnsZeroWithoutWaiting_zeroTimeout() throws Exception {
+        CaptureChunkBuffer buffer = new CaptureChunkBuffer(/* capacity= */ 4);
+
+        int read = buffer.read(new byte[4], /* off= */ 0, /* len= */ 4, /* timeoutNanos= */ 0);
+
+        assertEquals(0, read);
+        assertEquals(0, buffer.getUnderruns());
+    }
+
+    @Test
+    public void read_returnsEndOfStream_afterFinishAndDrained() throws Exception {
+        CaptureChunkBuffer buffer = new CaptureChunkBuffer(/* capacity= */ 4);
+        buffer.offer(ByteBuffer.wrap(new byte[] {0, 1}));
+        buffer.finish();
+
+        byte[] read = new byte[4];
+
+        assertEquals(2, buffer.read(read, /* off= */ 0, read.length, Long.MAX_VALUE));
+        assertEquals(-1, buffer.read(read, /* off= */ 0, read.length, Long.MAX_VALUE));
+    }
+
+    @Test
+    public void read_wakesUpWaitingReader_chunkOffered() throws Exception {
+        CaptureChunkBuffer buffer = new CaptureChunkBuffer(/* capacity= */ 4);
+        Thread producer =
+                new Thread(
+                        () -> {
+                            try {
+                                Thread.sleep(/* millis= */ 20);
+                                buffer.offer(ByteBuffer.wrap(new byte[] {42}));
+                            } catch (Exception e) {
+                                throw new AssertionError(e);
+                            }
+                        });
+        producer.start();
+
+        byte[] read = new byte[1];
+
+        assertEquals(1, buffer.read(read, /* off= */ 0, read.length, Long.MAX_VALUE));
+        assertEquals(42, read[0]);
+        assertEquals(1, buffer.getUnderruns());
+        producer.join();
+    }
+
+    @Test(expected = IOException.class)
+    public void read_throwsIOException_closed() throws Exception {
+        CaptureChunkBuffer buffer = new CaptureChunkBuffer(/* capacity= */ 4);
+        buffer.offer(ByteBuffer.wrap(new byte[] {0, 1}));
+        buffer.close();
+
+        buffer.read(new byte[4], /* off= */ 0, /* len= */ 4, TIMEOUT_NANOS);
+    }
+
+    @Test
+    public void read_throwsIOException_closedWhileWaiting() throws Exception {
+        CaptureChunkBuffer buffer = new CaptureChunkBuffer(/* capacity= */ 4);
+        AtomicReference<Throwable> error = new AtomicReference<>();
+        CountDownLatch done = new CountDownLatch(1);
+        Thread consumer =
+                new Thread(
+                        () -> {
+                            try {
+                                buffer.read(new byte[4], 0, 4, Long.MAX_VALUE);
+                            } catch (Throwable t) {
+                                error.set(t);
+                            }
+                            done.countDown();
+                        });
+        consumer.start();
+        Thread.sleep(/* millis= */ 20);
+
+        buffer.close();
+
+        assertTrue(done.await(/* timeout= */ 5, TimeUnit.SECONDS));
+        assertTrue(error.get() instanceof IOException);
+    }
+
+    @Test
+    public void offer_waitsForRoom_bufferFull() throws Exception {
+        CaptureChunkBuffer buffer = new CaptureChunkBuffer(/* capacity= */ 2);
+        buffer.offer(ByteBuffer.wrap(new byte[] {0}));
+        buffer.offer(ByteBuffer.wrap(new byte[] {1}));
+        CountDownLatch offered = new CountDownLatch(1);
+        Thread producer =
+                new Thread(
+                        () -> {
+                            try {
+                                buffer.offer(ByteBuffer.wrap(new byte[] {2}));
+                            } catch (Exception e) {
+                                throw new AssertionError(e);
+                            }
+                            offered.countDown();
+                        });
+        producer.start();
+
+        assertFalse(offered.await(/* timeout= */ 50, TimeUnit.MILLISECONDS));
+        byte[] read = new byte[1];
+        buffer.read(read, /* off= */ 0, read.length, TIMEOUT_NANOS);
+
+        assertTrue(offered.await(/* timeout= */ 5, TimeUnit.SECONDS));
+        assertEquals(1, buffer.getOverruns());
+        assertTrue(buffer.getOverrunNanos() >= TimeUnit.MILLISECONDS.toNanos(50));
+        byte[] rest = new byte[2];
+        assertEquals(2, buffer.read(rest, /* off= */ 0, rest.length, TIMEOUT_NANOS));
+        assertArrayEquals(new byte[] {1, 2}, rest);
+    }
+
+    @Test
+    public void offer_returnsFalse_closedWhileWaiting() throws Exception {
+        CaptureChunkBuffer buffer = new CaptureChunkBuffer(/* capacity= */ 1);
+        buffer.offer(ByteBuffer.wrap(new byte[] {0}));
+        AtomicReference<Boolean> result = new AtomicReference<>();
+        Thread producer =
+                new Thread(
+                        () -> {
+                            try {
+                                result.set(buffer.offer(ByteBuffer.wrap(new byte[] {1})));
+                            } catch (Exception e) {
+                                throw new AssertionError(e);
+                            }
+                        });
+        producer.start();
+        Thread.sleep(/* millis= */ 20);
+
+        buffer.close();
+        producer.join(/* millis= */ 5000);
+
+        assertEquals(Boolean.FALSE, result.get());
+    }
+
+    @Test
+    public void available_returnsUnreadBytes() throws Exception {
+        CaptureChunkBuffer buffer = new CaptureChunkBuffer(/* capacity= */ 4);
+        buffer.offer(ByteBuffer.wrap(new byte[] {0, 1, 2}));
+        buffer.offer(ByteBuffer.wrap(new byte[] {3, 4}));
+
+        buffer.read(new byte[2], /* off= */ 0, /* len= */ 2, TIMEOUT_NANOS);
+
+        assertEquals(3, buffer.available());
+    }
+
+    @Test
+    public void skip_skipsAcrossChunks() throws Exception {
+        CaptureChunkBuffer buffer = new CaptureChunkBuffer(/* capacity= */ 4);
+        buffer.offer(ByteBuffer.wrap(new byte[] {0, 1, 2}));
+        buffer.offer(ByteBuffer.wrap(new byte[] {3, 4}));
+
+        byte[] read = new byte[1];
+
+        assertEquals(4, buffer.skip(/* n= */ 4));
+        assertEquals(1, buffer.read(read, /* off= */ 0, read.length, TIMEOUT_NANOS));
+        assertEquals(4, read[0]);
+    }
+
+    @Test
+    public void read_transfersAllDataInOrder_concurrentProducer() throws Exception {
+        int chunks = 20000;
+        int chunkSize = 37;
+        CaptureChunkBuffer buffer = new CaptureChunkBuffer(/* capacity= */ 16);
+        Thread producer =
+                new Thread(
+                        () -> {
+                            try {
+                                for (int i = 0; i < chunks; i++) {
+                                    byte[] chunk = new byte[chunkSize];
+                                    for (int j = 0; j < chunkSize; j++) {
+                                        chunk[j] = (byte) (i * chunkSize + j);
+                                    }
+                                    buffer.offer(ByteBuffer.wrap(chunk));
+                                }
+                                buffer.finish();
+                            } catch (Exception e) {
+                                throw new AssertionError(e);
+                            }
+                        });
+        producer.start();
+
+        byte[] read = new byte[50];
+        long position = 0;
+        int count;
+        while ((count = buffer.read(read, /* off= */ 0, read.length, Long.MAX_VALUE)) >= 0) {
+            for (int i = 0; i < count; i++) {
+                assertEquals((byte) (position + i), read[i]);
+            }
+            position += count;
+        }
+
+        assertEquals((long) chunks * chunkSize, position);
+        producer.join();
+    }
+}
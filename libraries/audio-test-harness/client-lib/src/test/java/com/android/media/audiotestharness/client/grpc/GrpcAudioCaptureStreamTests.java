@@ -155,6 +155,49 @@ public class GrpcAudioCaptureStreamTests {
         assertArrayEquals(AudioTestHarnessTestImpl.MESSAGE, readBytes);
     }
 
+    @Test
+    public void read_withTimeout_returnsProperDataFromGrpc() throws Exception {
+        GrpcAudioCaptureStream grpcAudioCaptureStream =
+                GrpcAudioCaptureStream.create(mAudioTestHarnessStub, mScheduledExecutorService);
+
+        byte[] readBytes = new byte[AudioTestHarnessTestImpl.MESSAGE.length];
+
+        int numBytesRead =
+                grpcAudioCaptureStream.read(
+                        readBytes, /* off= */ 0, readBytes.length, Duration.ofSeconds(1));
+
+        assertEquals(AudioTestHarnessTestImpl.MESSAGE.length, numBytesRead);
+        assertArrayEquals(AudioTestHarnessTestImpl.MESSAGE, readBytes);
+    }
+
+    @Test
+    public void read_withTimeout_returnsEndOfStream_captureCompleted() throws Exception {
+        GrpcAudioCaptureStream grpcAudioCaptureStream =
+                GrpcAudioCaptureStream.create(mAudioTestHarnessStub, mScheduledExecutorService);
+        byte[] readBytes = new byte[AudioTestHarnessTestImpl.MESSAGE.length];
+        grpcAudioCaptureStream.read(readBytes);
+
+        int numBytesRead =
+                grpcAudioCaptureStream.read(
+                        readBytes, /* off= */ 0, readBytes.length, Duration.ofSeconds(1));
+
+        assertEquals(-1, numBytesRead);
+    }
+
+    @Test
+    public void read_withTimeout_throwsProperIOException_whenStreamClosed() throws Exception {
+        expectInternalErrorException();
+        GrpcAudioCaptureStream grpcAudioCaptureStream =
+                GrpcAudioCaptureStream.create(mAudioTestHarnessStub, mScheduledExecutorService);
+        grpcAudioCaptureStream.close();
+
+        grpcAudioCaptureStream.read(
+                new byte[AudioTestHarnessTestImpl.MESSAGE.length],
+                /* off= */ 0,
+                /* len= */ 1,
+                Duration.ZERO);
+    }
+
     @Test
     public void read_singleByte_throwsProperIOException_whenStreamClosed() throws Exception {
         expectInternalErrorException();
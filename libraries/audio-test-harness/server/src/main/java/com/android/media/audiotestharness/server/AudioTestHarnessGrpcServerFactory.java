@@ -16,9 +16,11 @@
 
 package com.android.media.audiotestharness.server;
 
+import com.android.media.audiotestharness.proto.AudioFormatOuterClass.AudioFormat;
 import com.android.media.audiotestharness.proto.AudioTestHarnessGrpc;
 import com.android.media.audiotestharness.server.config.SharedHostConfiguration;
 import com.android.media.audiotestharness.server.config.SharedHostConfigurationModule;
+import com.android.media.audiotestharness.server.javasound.JavaSoundModule;
 import com.android.media.audiotestharness.server.utility.PortUtility;
 
 import com.google.common.annotations.VisibleForTesting;
@@ -105,6 +107,23 @@ public class AudioTestHarnessGrpcServerFactory implements AutoCloseable {
                 executorService, AudioTestHarnessServerModule.create(executorService));
     }
 
+    /**
+     * Creates a new {@link AudioTestHarnessGrpcServerFactory} with the provided ExecutorService,
+     * for servers that capture audio generated in the provided format from loopback devices
+     * instead of the audio devices of the host.
+     *
+     * <p>This is meant for measuring the system itself, since every sample captured carries where
+     * and when it was generated, see {@link
+     * com.android.media.audiotestharness.server.javasound.LoopbackTargetDataLine}.
+     */
+    public static AudioTestHarnessGrpcServerFactory createLoopbackFactory(
+            ExecutorService executorService, AudioFormat audioFormat) {
+        return createInternal(
+                executorService,
+                AudioTestHarnessServerModule.create(
+                        executorService, JavaSoundModule.createLoopback(audioFormat)));
+    }
+
     @VisibleForTesting
     static AudioTestHarnessGrpcServerFactory createInternal(
             ExecutorService executorService, AbstractModule baseModule) {
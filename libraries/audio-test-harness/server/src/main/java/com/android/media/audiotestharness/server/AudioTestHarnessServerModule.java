@@ -22,6 +22,7 @@ import com.android.media.audiotestharness.server.javasound.JavaSoundModule;
 import com.android.media.audiotestharness.server.service.AudioCaptureSessionFactory;
 import com.android.media.audiotestharness.server.service.AudioCaptureSessionFactoryImpl;
 import com.android.media.audiotestharness.server.service.AudioTestHarnessImpl;
+import com.android.media.audiotestharness.server.service.CaptureChunkStreamObserverOutputStream;
 import com.android.media.audiotestharness.server.service.StreamObserverOutputStreamFactory;
 
 import com.google.common.base.Preconditions;
@@ -42,8 +43,11 @@ public final class AudioTestHarnessServerModule extends AbstractModule {
 
     private final Executor mExecutor;
 
-    private AudioTestHarnessServerModule(Executor executor) {
+    private final JavaSoundModule mJavaSoundModule;
+
+    private AudioTestHarnessServerModule(Executor executor, JavaSoundModule javaSoundModule) {
         this.mExecutor = executor;
+        this.mJavaSoundModule = javaSoundModule;
     }
 
     /**
@@ -54,8 +58,19 @@ public final class AudioTestHarnessServerModule extends AbstractModule {
      *     are properly stopped or cancelled.
      */
     public static AudioTestHarnessServerModule create(Executor executor) {
+        return create(executor, JavaSoundModule.create());
+    }
+
+    /**
+     * Creates a new {@link AudioTestHarnessServerModule} that uses the provided {@link
+     * JavaSoundModule}, for example to capture from loopback devices rather than the audio devices
+     * of the host.
+     */
+    public static AudioTestHarnessServerModule create(
+            Executor executor, JavaSoundModule javaSoundModule) {
         Preconditions.checkNotNull(executor, "Executor cannot be null.");
-        return new AudioTestHarnessServerModule(executor);
+        Preconditions.checkNotNull(javaSoundModule, "JavaSoundModule cannot be null.");
+        return new AudioTestHarnessServerModule(executor, javaSoundModule);
     }
 
     @Override
@@ -63,11 +78,18 @@ public final class AudioTestHarnessServerModule extends AbstractModule {
         bind(Executor.class).toInstance(mExecutor);
 
         // Tie the gRPC Server to the JavaSound implementation.
-        install(JavaSoundModule.create());
+        install(mJavaSoundModule);
 
         // Audio Test Harness gRPC Service Implementation
         bind(AudioTestHarnessGrpc.AudioTestHarnessImplBase.class).to(AudioTestHarnessImpl.class);
-        bind(StreamObserverOutputStreamFactory.class);
+        // The AudioTestHarnessGrpcServer serves over the Netty transport, which serializes each
+        // message as it is sent, so capture data does not need to be copied.
+        bind(StreamObserverOutputStreamFactory.class)
+                .toInstance(
+                        new StreamObserverOutputStreamFactory(
+                                CaptureChunkStreamObserverOutputStream.DEFAULT_OVERFLOW_POLICY,
+                                CaptureChunkStreamObserverOutputStream.DEFAULT_MAX_BUFFERED_BYTES,
+                                /* transportCopiesMessages= */ true));
         bind(AudioCaptureSessionFactory.class).to(AudioCaptureSessionFactoryImpl.class);
 
         OptionalBinder.newOptionalBinder(binder(), SharedHostConfiguration.class)
@@ -0,0 +1,281 @@
+/*
+ * Copyright (C) 2026 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.android.media.audiotestharness.server.examples;
+
+import com.android.media.audiotestharness.proto.AudioFormatOuterClass.AudioFormat;
+import com.android.media.audiotestharness.proto.AudioTestHarnessGrpc;
+import com.android.media.audiotestharness.proto.AudioTestHarnessService;
+import com.android.media.audiotestharness.server.AudioTestHarnessGrpcServer;
+import com.android.media.audiotestharness.server.AudioTestHarnessGrpcServerFactory;
+import com.android.media.audiotestharness.server.javasound.JavaSoundUtility;
+import com.android.media.audiotestharness.server.javasound.LoopbackStreamVerifier;
+
+import com.google.common.collect.ImmutableList;
+
+import io.grpc.ManagedChannel;
+import io.grpc.ManagedChannelBuilder;
+import io.grpc.Status;
+import io.grpc.stub.ClientCallStreamObserver;
+import io.grpc.stub.ClientResponseObserver;
+
+import java.lang.management.ManagementFactory;
+import java.lang.management.OperatingSystemMXBean;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.logging.Logger;
+
+/**
+ * Benchmark of the capture path of the Audio Test Harness, from the {@link
+ * com.android.media.audiotestharness.server.core.AudioCapturer} through the {@link
+ * AudioTestHarnessGrpcServer} to gRPC clients, using loopback devices in place of audio hardware.
+ *
+ * <p>For each combination of session count and format, a server is started on a free local port,
+ * that many clients capture from it concurrently, and the audio they receive is checked by a
+ * {@link LoopbackStreamVerifier}. One line is printed for each combination, with the latency
+ * percentiles of the packets received across all sessions, the packets and frames lost or
+ * reordered, and the CPU time used per captured channel by the whole process.
+ *
+ * <p>Usage: <code>[--duration_seconds=N] [--sessions=1,4,16]</code>
+ */
+public class AudioTestHarnessLoopbackBenchmark {
+    private static final Logger LOGGER =
+            Logger.getLogger(AudioTestHarnessLoopbackBenchmark.class.getName());
+
+    private static final Duration DEFAULT_DURATION = Duration.ofSeconds(5);
+
+    private static final ImmutableList<Integer> DEFAULT_SESSION_COUNTS = ImmutableList.of(1, 4, 16);
+
+    private static final ImmutableList<AudioFormat> FORMATS =
+            ImmutableList.of(
+                    format(/* sampleRate= */ 48000, /* sampleSizeBits= */ 16, /* channels= */ 2),
+                    format(/* sampleRate= */ 48000, /* sampleSizeBits= */ 16, /* channels= */ 8),
+                    format(/* sampleRate= */ 96000, /* sampleSizeBits= */ 24, /* channels= */ 8),
+                    format(/* sampleRate= */ 192000, /* sampleSizeBits= */ 32, /* channels= */ 8));
+
+    public static void main(String[] args) throws Exception {
+        Duration duration = DEFAULT_DURATION;
+        List<Integer> sessionCounts = DEFAULT_SESSION_COUNTS;
+        for (String arg : args) {
+            if (arg.startsWith("--duration_seconds=")) {
+                duration = Duration.ofSeconds(Long.parseLong(arg.substring(arg.indexOf('=') + 1)));
+            } else if (arg.startsWith("--sessions=")) {
+                sessionCounts = new ArrayList<>();
+                for (String count : arg.substring(arg.indexOf('=') + 1).split(",")) {
+                    sessionCounts.add(Integer.parseInt(count.trim()));
+                }
+            } else {
+                throw new IllegalArgumentException("Unknown argument: " + arg);
+            }
+        }
+
+        System.out.println(
+                "sessions, format, packets, latency p50/p90/p99/max (ms), lost packets, lost"
+                        + " frames, reordered, resyncs, cpu per channel (%)");
+        for (AudioFormat format : FORMATS) {
+            for (int sessions : sessionCounts) {
+                System.out.println(run(format, sessions, duration));
+            }
+        }
+    }
+
+    /** Captures from sessions concurrent sessions for the provided duration. */
+    private static String run(AudioFormat format, int sessions, Duration duration)
+            throws Exception {
+        LOGGER.info(String.format("Capturing %s with %d sessions", format, sessions));
+
+        // Not a fixed size pool, since each session needs threads for its capturer as well.
+        ExecutorService executorService = Executors.newCachedThreadPool();
+        List<CaptureClient> clients = new ArrayList<>();
+        long cpuNanos;
+        long elapsedNanos;
+        try (AudioTestHarnessGrpcServerFactory factory =
+                        AudioTestHarnessGrpcServerFactory.createLoopbackFactory(
+                                executorService, format);
+                AudioTestHarnessGrpcServer server =
+                        factory.createOnNextAvailablePort(/* sharedHostConfiguration= */ null)) {
+            server.open();
+            ManagedChannel channel =
+                    ManagedChannelBuilder.forAddress("localhost", server.getPort())
+                            .usePlaintext()
+                            .build();
+
+            long startCpuNanos = getProcessCpuNanos();
+            long start = System.nanoTime();
+            for (int i = 0; i < sessions; i++) {
+                CaptureClient client = new CaptureClient(format);
+                AudioTestHarnessGrpc.newStub(channel)
+                        .capture(
+                                AudioTestHarnessService.CaptureRequest.getDefaultInstance(),
+                                client);
+                clients.add(client);
+            }
+
+            Thread.sleep(duration.toMillis());
+            cpuNanos = getProcessCpuNanos() - startCpuNanos;
+            elapsedNanos = System.nanoTime() - start;
+
+            for (CaptureClient client : clients) {
+                client.cancel();
+            }
+            for (CaptureClient client : clients) {
+                client.mDone.await(/* timeout= */ 5, TimeUnit.SECONDS);
+            }
+            channel.shutdownNow();
+        }
+
+        return summarize(format, sessions, clients, cpuNanos, elapsedNanos);
+    }
+
+    private static String summarize(
+            AudioFormat format,
+            int sessions,
+            List<CaptureClient> clients,
+            long cpuNanos,
+            long elapsedNanos) {
+        long lostPackets = 0;
+        long lostFrames = 0;
+        long reordered = 0;
+        long resyncs = 0;
+        long[] latencies = new long[0];
+        for (CaptureClient client : clients) {
+            LoopbackStreamVerifier verifier = client.mVerifier;
+            synchronized (verifier) {
+                lostPackets += verifier.getLostPackets();
+                lostFrames += verifier.getLostFrames();
+                reordered += verifier.getReorderedPackets();
+                resyncs += verifier.getResyncs();
+                long[] clientLatencies = verifier.getLatenciesNanos();
+                int offset = latencies.length;
+                latencies = Arrays.copyOf(latencies, offset + clientLatencies.length);
+                System.arraycopy(clientLatencies, 0, latencies, offset, clientLatencies.length);
+            }
+            if (client.mError != null) {
+                LOGGER.warning(String.format("Session failed: %s", client.mError));
+            }
+        }
+        Arrays.sort(latencies);
+
+        // Negative if the CPU time of the process is not available on this JVM.
+        double cpuPerChannel =
+                cpuNanos < 0
+                        ? -1
+                        : 100.0 * cpuNanos / elapsedNanos / (sessions * format.getChannels());
+
+        return String.format(
+                "%d, %.0fHz/%d-bit/%dch, %d, %.3f/%.3f/%.3f/%.3f, %d, %d, %d, %d, %.3f",
+                sessions,
+                format.getSampleRate(),
+                format.getSampleSizeBits(),
+                format.getChannels(),
+                latencies.length,
+                percentileMillis(latencies, 50),
+                percentileMillis(latencies, 90),
+                percentileMillis(latencies, 99),
+                percentileMillis(latencies, 100),
+                lostPackets,
+                lostFrames,
+                reordered,
+                resyncs,
+                cpuPerChannel);
+    }
+
+    private static double percentileMillis(long[] sorted, double percentile) {
+        if (sorted.length == 0) {
+            return Double.NaN;
+        }
+        int index = (int) Math.ceil(percentile / 100 * sorted.length) - 1;
+        return sorted[Math.max(0, index)] / 1e6;
+    }
+
+    /** Returns the CPU time used by this process, or -1 if this JVM does not provide it. */
+    private static long getProcessCpuNanos() {
+        OperatingSystemMXBean bean = ManagementFactory.getOperatingSystemMXBean();
+        if (bean instanceof com.sun.management.OperatingSystemMXBean) {
+            return ((com.sun.management.OperatingSystemMXBean) bean).getProcessCpuTime();
+        }
+        return -1;
+    }
+
+    private static AudioFormat format(int sampleRate, int sampleSizeBits, int channels) {
+        return AudioFormat.newBuilder()
+                .setSampleRate(sampleRate)
+                .setSampleSizeBits(sampleSizeBits)
+                .setChannels(channels)
+                .setSigned(true)
+                .setBigEndian(false)
+                .build();
+    }
+
+    /** Client of a single capture session that verifies the audio it receives. */
+    private static class CaptureClient
+            implements ClientResponseObserver<
+                    AudioTestHarnessService.CaptureRequest, AudioTestHarnessService.CaptureChunk> {
+        private final LoopbackStreamVerifier mVerifier;
+        private final CountDownLatch mDone = new CountDownLatch(1);
+        private byte[] mScratch = new byte[0];
+        private volatile ClientCallStreamObserver<AudioTestHarnessService.CaptureRequest>
+                mRequestStream;
+        private volatile Throwable mError;
+
+        CaptureClient(AudioFormat format) {
+            mVerifier = new LoopbackStreamVerifier(JavaSoundUtility.audioFormatFrom(format));
+        }
+
+        @Override
+        public void beforeStart(
+                ClientCallStreamObserver<AudioTestHarnessService.CaptureRequest> requestStream) {
+            mRequestStream = requestStream;
+        }
+
+        @Override
+        public void onNext(AudioTestHarnessService.CaptureChunk chunk) {
+            int size = chunk.getData().size();
+            if (mScratch.length < size) {
+                mScratch = new byte[size];
+            }
+            chunk.getData().copyTo(mScratch, 0);
+            // Messages are delivered one at a time, this only guards reading the results.
+            synchronized (mVerifier) {
+                mVerifier.accept(mScratch, 0, size);
+            }
+        }
+
+        @Override
+        public void onError(Throwable t) {
+            // Cancelling the call at the end of the benchmark ends it with an error too.
+            if (Status.fromThrowable(t).getCode() != Status.Code.CANCELLED) {
+                mError = t;
+            }
+            mDone.countDown();
+        }
+
+        @Override
+        public void onCompleted() {
+            mDone.countDown();
+        }
+
+        void cancel() {
+            mRequestStream.cancel("Benchmark finished", /* cause= */ null);
+        }
+    }
+}
@@ -22,16 +22,20 @@ import com.android.media.audiotestharness.server.core.AudioCapturer;
 
 import com.google.common.annotations.VisibleForTesting;
 import com.google.common.base.Preconditions;
+import com.google.common.collect.ImmutableList;
 
 import java.io.File;
 import java.io.FileNotFoundException;
 import java.io.FileOutputStream;
 import java.io.IOException;
 import java.io.OutputStream;
-import java.util.Set;
-import java.util.concurrent.CopyOnWriteArraySet;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.CountDownLatch;
 import java.util.concurrent.Executor;
 import java.util.concurrent.ExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
 import java.util.logging.Level;
 import java.util.logging.Logger;
 
@@ -40,16 +44,42 @@ import javax.sound.sampled.TargetDataLine;
 /**
  * {@link AudioCapturer} that makes use of the {@link javax.sound.sampled} libraries to capture
  * audio from an attached audio device.
+ *
+ * <p>A single publisher reads the {@link TargetDataLine} into a preallocated ring buffer, and each
+ * attached output is fed from the ring by a {@link RingBufferSubscriber}, with its own read
+ * cursor and its own delivery thread, so a slow or blocked output delays neither the reads from the
+ * line nor the other outputs. An output that lags by more than the ring buffer skips ahead and
+ * counts an overrun. The data left in the ring is written to the outputs when the capturer closes.
  */
 public final class JavaAudioCapturer implements AudioCapturer {
 
     public static final Logger LOGGER = Logger.getLogger(JavaAudioCapturer.class.getName());
 
-    /** Size of the byte buffer used in reading audio samples from the audio */
+    /**
+     * Default size of each read from the line and write to the outputs. Smaller chunks lower the
+     * latency, larger ones lower the number of reads and writes.
+     */
     public static final int BUFFER_SIZE = 2048;
 
-    /** Set containing all of the currently registered outputs. */
-    private final Set<OutputStream> mOutputs;
+    /** Duration of audio the ring buffer holds, thus how far behind an output can fall. */
+    public static final int RING_BUFFER_MILLIS = 2000;
+
+    /** The minimum number of chunks held by the ring buffer, for formats with a low byte rate. */
+    private static final int MIN_RING_BUFFER_CHUNKS = 16;
+
+    /** How long {@link #close()} waits for the publisher and for the outputs to finish. */
+    private static final long CLOSE_TIMEOUT_MILLIS = 1000;
+
+    /** Runs each {@link RingBufferSubscriber} on a new thread of its own. */
+    private static final Executor DELIVERY_THREAD_EXECUTOR =
+            runnable -> {
+                Thread thread = new Thread(runnable, "JavaAudioCapturer-output");
+                thread.setDaemon(true);
+                thread.start();
+            };
+
+    /** All of the currently attached outputs. */
+    private final List<RingBufferSubscriber> mSubscribers;
 
     private final AudioDevice mAudioDevice;
 
@@ -65,8 +95,14 @@ public final class JavaAudioCapturer implements AudioCapturer {
     private final Executor mExecutorService;
 
     /**
-     * The {@link TargetDataLineWatchingPublisher} that publishes data read from the {@link
-     * TargetDataLine} to the various registered outputs.
+     * The {@link Executor} running the {@link RingBufferSubscriber} of each output, a dedicated
+     * thread per output by default.
+     */
+    private final Executor mDeliveryExecutor;
+
+    /**
+     * The {@link TargetDataLineWatchingPublisher} that reads data from the {@link TargetDataLine}
+     * into the ring buffer read by the subscribers.
      */
     private final TargetDataLineWatchingPublisher mPublisher;
 
@@ -76,24 +112,38 @@ public final class JavaAudioCapturer implements AudioCapturer {
      */
     private boolean mDisposed = false;
 
+    /**
+     * Whether {@link #open()} was called, after which the subscribers of new outputs are run as
+     * soon as they are attached.
+     */
+    private volatile boolean mOpened = false;
+
     private JavaAudioCapturer(
             AudioDevice audioDevice,
             AudioFormat audioFormat,
             TargetDataLine targetDataLine,
-            Executor executor) {
+            Executor executor,
+            Executor deliveryExecutor,
+            int chunkSize,
+            int ringBufferSize) {
         LOGGER.finest("new JavaAudioCapturer()");
         mAudioDevice = audioDevice;
         mAudioFormat = audioFormat;
         mTargetDataLine = targetDataLine;
         mExecutorService = executor;
+        mDeliveryExecutor = deliveryExecutor;
 
-        // Used for thread safety, in general, the set will be iterated over more than written to
-        // since the TargetDataLineWatchingPublisher will continually iterate over this set
-        // to write to current outputs.
+        // Used for thread safety, in general, the list will be iterated over more than written to
+        // since the publisher signals every subscriber after each read.
         //
         // This allows for new outputs to be added after the publishers is already running.
-        mOutputs = new CopyOnWriteArraySet<>();
-        mPublisher = new TargetDataLineWatchingPublisher(mTargetDataLine, mOutputs);
+        mSubscribers = new CopyOnWriteArrayList<>();
+        mPublisher =
+                new TargetDataLineWatchingPublisher(
+                        mTargetDataLine,
+                        new byte[ringBufferSize],
+                        chunkSize,
+                        this::signalSubscribers);
     }
 
     public static JavaAudioCapturer create(
@@ -101,11 +151,74 @@ public final class JavaAudioCapturer implements AudioCapturer {
             AudioFormat audioFormat,
             TargetDataLine targetDataLine,
             Executor executor) {
+        return create(audioDevice, audioFormat, targetDataLine, executor, BUFFER_SIZE);
+    }
+
+    /**
+     * Creates a new {@link JavaAudioCapturer}.
+     *
+     * @param chunkSize the size of each read from the line and write to the outputs, rounded down
+     *     to a whole number of frames.
+     */
+    public static JavaAudioCapturer create(
+            AudioDevice audioDevice,
+            AudioFormat audioFormat,
+            TargetDataLine targetDataLine,
+            Executor executor,
+            int chunkSize) {
+        return create(
+                audioDevice,
+                audioFormat,
+                targetDataLine,
+                executor,
+                DELIVERY_THREAD_EXECUTOR,
+                chunkSize);
+    }
+
+    /**
+     * Creates a new {@link JavaAudioCapturer} that runs the {@link RingBufferSubscriber} of each
+     * output on the given deliveryExecutor rather than on a thread of its own.
+     */
+    @VisibleForTesting
+    static JavaAudioCapturer create(
+            AudioDevice audioDevice,
+            AudioFormat audioFormat,
+            TargetDataLine targetDataLine,
+            Executor executor,
+            Executor deliveryExecutor,
+            int chunkSize) {
         Preconditions.checkArgument(
                 targetDataLine.isOpen(),
                 "Provided TargetDataLine should already be opened when passed to the"
                         + " JavaAudioCapturer");
-        return new JavaAudioCapturer(audioDevice, audioFormat, targetDataLine, executor);
+        int frameSize = getFrameSize(audioFormat);
+        Preconditions.checkArgument(
+                chunkSize >= frameSize,
+                "chunkSize (%s) must hold at least one frame of %s bytes",
+                chunkSize,
+                frameSize);
+        chunkSize -= chunkSize % frameSize;
+
+        // A whole number of chunks, so that reads from the line never wrap around the ring.
+        long bytesPerSecond = (long) audioFormat.getSampleRate() * frameSize;
+        long ringChunks =
+                Math.max(
+                        MIN_RING_BUFFER_CHUNKS,
+                        bytesPerSecond * RING_BUFFER_MILLIS / 1000 / chunkSize + 1);
+        return new JavaAudioCapturer(
+                audioDevice,
+                audioFormat,
+                targetDataLine,
+                executor,
+                deliveryExecutor,
+                chunkSize,
+                Math.toIntExact(ringChunks * chunkSize));
+    }
+
+    /** Returns the size of a frame, at least one byte, even for a format with unset fields. */
+    private static int getFrameSize(AudioFormat audioFormat) {
+        return Math.max(1, audioFormat.getChannels())
+                * Math.max(1, (audioFormat.getSampleSizeBits() + 7) / 8);
     }
 
     /**
@@ -127,6 +240,11 @@ public final class JavaAudioCapturer implements AudioCapturer {
 
         mTargetDataLine.start();
         mExecutorService.execute(mPublisher);
+        mOpened = true;
+        // A subscriber attached concurrently may be executed twice, which it ignores.
+        for (RingBufferSubscriber subscriber : mSubscribers) {
+            mDeliveryExecutor.execute(subscriber);
+        }
 
         LOGGER.info("AudioCapturer Opened");
     }
@@ -141,10 +259,19 @@ public final class JavaAudioCapturer implements AudioCapturer {
         }
     }
 
+    /**
+     * {@inheritDoc}
+     *
+     * <p>The output receives the audio captured from now on.
+     */
     @Override
     public void attachOutput(OutputStream outputStream) {
         Preconditions.checkNotNull(outputStream, "Cannot attach a null output");
-        mOutputs.add(outputStream);
+        RingBufferSubscriber subscriber = new RingBufferSubscriber(mPublisher, outputStream);
+        mSubscribers.add(subscriber);
+        if (mOpened) {
+            mDeliveryExecutor.execute(subscriber);
+        }
         LOGGER.fine(String.format("Attatched new Output - %s", outputStream));
     }
 
@@ -158,11 +285,35 @@ public final class JavaAudioCapturer implements AudioCapturer {
         return mAudioDevice;
     }
 
+    /** Returns the subscribers feeding the attached outputs, in the order they were attached. */
+    public ImmutableList<RingBufferSubscriber> getSubscribers() {
+        return ImmutableList.copyOf(mSubscribers);
+    }
+
+    private void signalSubscribers() {
+        for (RingBufferSubscriber subscriber : mSubscribers) {
+            subscriber.signal();
+        }
+    }
+
+    @VisibleForTesting
+    int getChunkSize() {
+        return mPublisher.mChunkSize;
+    }
+
+    @VisibleForTesting
+    int getRingBufferSize() {
+        return mPublisher.mRing.length;
+    }
+
     /**
      * {@inheritDoc}
      *
      * <p>Stops the publishing of data to attached outputs, stops the {@link TargetDataLine}, and
-     * then closes the line thus freeing the resources for use.
+     * then closes the line thus freeing the resources for use. The data read before the line
+     * closed is written to the outputs before this returns, unless they take longer than {@link
+     * #CLOSE_TIMEOUT_MILLIS} in all to write it. An output still blocked after that is left to
+     * finish on its own thread.
      */
     @Override
     public void close() {
@@ -171,68 +322,105 @@ public final class JavaAudioCapturer implements AudioCapturer {
         mTargetDataLine.stop();
         mTargetDataLine.close();
 
+        try {
+            long deadline = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(CLOSE_TIMEOUT_MILLIS);
+            boolean published = mPublisher.awaitFinished(CLOSE_TIMEOUT_MILLIS);
+            // Every output writes the data left in the ring at the same time, on its own thread.
+            for (RingBufferSubscriber subscriber : mSubscribers) {
+                subscriber.stop();
+            }
+            boolean delivered = true;
+            for (RingBufferSubscriber subscriber : mSubscribers) {
+                long remainingMillis =
+                        Math.max(0, TimeUnit.NANOSECONDS.toMillis(deadline - System.nanoTime()));
+                if (!subscriber.awaitFinished(remainingMillis)) {
+                    LOGGER.warning(String.format("Timed out writing to %s", subscriber));
+                    delivered = false;
+                }
+            }
+            if (!published || !delivered) {
+                LOGGER.warning("Timed out writing the captured audio data to the outputs");
+            }
+        } catch (InterruptedException ie) {
+            Thread.currentThread().interrupt();
+            LOGGER.warning("Interrupted while writing the captured audio data to the outputs");
+        }
+        for (RingBufferSubscriber subscriber : mSubscribers) {
+            LOGGER.info(subscriber.toString());
+        }
+
         mDisposed = true;
         LOGGER.info("AudioCapturer Closed");
     }
 
     /**
-     * {@link Runnable} that watches the {@link TargetDataLine}, reading raw audio data from it, and
-     * then publishing it to any of the attached outputs.
+     * {@link Runnable} that watches the {@link TargetDataLine}, reading raw audio data from it into
+     * the ring buffer, and then signaling the {@link RingBufferSubscriber}s.
      */
     @VisibleForTesting
     static class TargetDataLineWatchingPublisher implements Runnable {
         private static final Logger LOGGER =
                 Logger.getLogger(TargetDataLineWatchingPublisher.class.getName());
 
-        private final Set<OutputStream> mOutputs;
         private final TargetDataLine mTargetDataLine;
-        private final byte[] mAudioBuffer = new byte[BUFFER_SIZE];
+        private final byte[] mRing;
+        private final int mChunkSize;
+        private final Runnable mOnRead;
+
+        /** Set by whichever of {@link #run()} and {@link #awaitFinished} comes first. */
+        private final AtomicBoolean mClaimed = new AtomicBoolean(false);
+
+        private final CountDownLatch mFinished = new CountDownLatch(1);
+
+        /**
+         * The total number of bytes read from the line. The bytes at positions from
+         * mWritePosition - mRing.length are in the ring, at their position modulo its length.
+         */
+        private volatile long mWritePosition = 0;
+
         private volatile boolean mRunning;
 
         private TargetDataLineWatchingPublisher(
-                TargetDataLine targetDataLine, Set<OutputStream> outputs) {
+                TargetDataLine targetDataLine, byte[] ring, int chunkSize, Runnable onRead) {
             mTargetDataLine = targetDataLine;
-            mOutputs = outputs;
+            mRing = ring;
+            mChunkSize = chunkSize;
+            mOnRead = onRead;
             mRunning = true;
         }
 
         @Override
         public void run() {
+            if (!mClaimed.compareAndSet(false, true)) {
+                return;
+            }
             LOGGER.info("Publisher running");
 
-            int read;
-            do {
+            try {
+                publish();
+            } finally {
+                mFinished.countDown();
+            }
+        }
 
-                // Read exactly BUFFER_SIZE bytes from the TargetDataLine. This should always return
-                // 2048 bytes unless the targetDataLine is closed at which point it will return the
-                // remaining bytes left in the DataLine's internal buffer.
+        private void publish() {
+            while (mRunning) {
+                // Read up to mChunkSize bytes from the TargetDataLine straight into the ring. This
+                // should always read mChunkSize bytes unless the targetDataLine is closed at which
+                // point it will return the remaining bytes left in the DataLine's internal buffer.
                 //
-                // This call will block until exactly 2048 bytes are read.
-                read =
+                // This call will block until the bytes are read.
+                int offset = (int) (mWritePosition % mRing.length);
+                int read =
                         mTargetDataLine.read(
-                                mAudioBuffer, /* off= */ 0, /* len= */ mAudioBuffer.length);
+                                mRing, offset, Math.min(mChunkSize, mRing.length - offset));
                 LOGGER.finest(
                         String.format("Successfully read %d bytes from mTargetDataLine", read));
-                for (OutputStream output : mOutputs) {
-                    try {
-
-                        // Verify that we are still running since there is a chance that the
-                        // state could have changed while waiting on the data to be read from the
-                        // TargetDataLine.
-                        if (mRunning) {
-                            output.write(mAudioBuffer, 0, read);
-                        }
-                    } catch (IOException ioe) {
-                        LOGGER.log(
-                                Level.WARNING,
-                                String.format(
-                                        "Failed to write raw audio data to output. Data may have"
-                                                + " been lost (Buffer Size: %d, Output: %s)",
-                                        BUFFER_SIZE, output),
-                                ioe);
-                    }
+                if (read > 0) {
+                    mWritePosition += read;
+                    mOnRead.run();
                 }
-            } while (mRunning);
+            }
         }
 
         public void stop() {
@@ -243,5 +431,254 @@ public final class JavaAudioCapturer implements AudioCapturer {
         public boolean isRunning() {
             return mRunning;
         }
+
+        /** Returns whether the publisher will not read into the ring anymore. */
+        private boolean isFinished() {
+            return mFinished.getCount() == 0;
+        }
+
+        /**
+         * Waits for a stopped publisher to finish its last read, or keeps it from ever running if
+         * it did not start yet.
+         *
+         * @return whether the publisher finished in time
+         */
+        private boolean awaitFinished(long timeoutMillis) throws InterruptedException {
+            if (mClaimed.compareAndSet(false, true)) {
+                mFinished.countDown();
+                return true;
+            }
+            return mFinished.await(timeoutMillis, TimeUnit.MILLISECONDS);
+        }
+    }
+
+    /**
+     * {@link Runnable} that writes the audio data from the ring buffer of a publisher to one
+     * output, from its own read cursor, whenever the publisher signals that it read more.
+     *
+     * <p>Data is copied out of the ring before being written so that the output never sees data
+     * that the publisher overwrote in the meantime.
+     */
+    public static final class RingBufferSubscriber implements Runnable {
+        private static final Logger LOGGER =
+                Logger.getLogger(RingBufferSubscriber.class.getName());
+
+        private final TargetDataLineWatchingPublisher mPublisher;
+        private final OutputStream mOutput;
+        private final byte[] mChunk;
+        private final Object mSignal = new Object();
+
+        /** Set by whichever of {@link #run()} and {@link #awaitFinished} comes first. */
+        private final AtomicBoolean mClaimed = new AtomicBoolean(false);
+
+        private final CountDownLatch mFinished = new CountDownLatch(1);
+
+        /** Whether data was read since the subscriber last checked, guarded by mSignal. */
+        private boolean mSignaled = false;
+
+        /** Set once the publisher stopped, the subscriber then writes what is left and returns. */
+        private volatile boolean mStopped = false;
+
+        /** The position in the publisher's data of the next byte to write to the output. */
+        private volatile long mReadPosition;
+
+        private volatile boolean mRunning = true;
+        private volatile long mWrittenBytes = 0;
+        private volatile long mMaxLagBytes = 0;
+        private volatile long mOverruns = 0;
+        private volatile long mOverrunBytes = 0;
+
+        private RingBufferSubscriber(
+                TargetDataLineWatchingPublisher publisher, OutputStream output) {
+            mPublisher = publisher;
+            mOutput = output;
+            mChunk = new byte[publisher.mChunkSize];
+            mReadPosition = publisher.mWritePosition;
+        }
+
+        @Override
+        public void run() {
+            if (!mClaimed.compareAndSet(false, true)) {
+                return;
+            }
+
+            try {
+                // Returns early if the output fails, which detaches it.
+                while (!mStopped && mRunning) {
+                    if (!writeNextChunk()) {
+                        awaitSignal();
+                    }
+                }
+                // Write out the data the publisher read before it stopped.
+                writeAll();
+            } finally {
+                mFinished.countDown();
+            }
+        }
+
+        private void writeAll() {
+            while (writeNextChunk()) {}
+        }
+
+        private void awaitSignal() {
+            synchronized (mSignal) {
+                // Checked under the lock, so that a signal is not missed.
+                while (!mStopped && !mSignaled) {
+                    try {
+                        mSignal.wait();
+                    } catch (InterruptedException ie) {
+                        Thread.currentThread().interrupt();
+                        mStopped = true;
+                    }
+                }
+                mSignaled = false;
+            }
+        }
+
+        private void signal() {
+            synchronized (mSignal) {
+                mSignaled = true;
+                mSignal.notifyAll();
+            }
+        }
+
+        /** Lets the subscriber return once it wrote out the data left in the ring. */
+        private void stop() {
+            mStopped = true;
+            signal();
+        }
+
+        /**
+         * Waits for a stopped subscriber to write out the data left in the ring, which is written
+         * from the calling thread if the subscriber did not start yet.
+         *
+         * @return whether all of the data was written in time
+         */
+        private boolean awaitFinished(long timeoutMillis) throws InterruptedException {
+            if (mClaimed.compareAndSet(false, true)) {
+                try {
+                    writeAll();
+                } finally {
+                    mFinished.countDown();
+                }
+                return true;
+            }
+            return mFinished.await(timeoutMillis, TimeUnit.MILLISECONDS);
+        }
+
+        /**
+         * Writes the next chunk of pending data to the output, first skipping ahead if the output
+         * fell a whole ring buffer behind.
+         *
+         * @return whether there was data pending
+         */
+        private boolean writeNextChunk() {
+            long writePosition = mPublisher.mWritePosition;
+            if (!mRunning || writePosition == mReadPosition) {
+                return false;
+            }
+
+            long lag = writePosition - mReadPosition;
+            mMaxLagBytes = Math.max(mMaxLagBytes, lag);
+            if (!isReadable(mReadPosition, writePosition)) {
+                skipAhead(writePosition);
+                return true;
+            }
+
+            byte[] ring = mPublisher.mRing;
+            int length = (int) Math.min(mPublisher.mChunkSize, lag);
+            int offset = (int) (mReadPosition % ring.length);
+            int first = Math.min(length, ring.length - offset);
+            System.arraycopy(ring, offset, mChunk, 0, first);
+            System.arraycopy(ring, 0, mChunk, first, length - first);
+
+            // The publisher may have overwritten the chunk while it was being copied.
+            long afterCopy = mPublisher.mWritePosition;
+            if (!isReadable(mReadPosition, afterCopy)) {
+                skipAhead(afterCopy);
+                return true;
+            }
+
+            try {
+                mOutput.write(mChunk, 0, length);
+                mWrittenBytes += length;
+            } catch (IOException ioe) {
+                LOGGER.log(
+                        Level.WARNING,
+                        String.format(
+                                "Failed to write raw audio data to output. Data may have been"
+                                        + " lost (Buffer Size: %d, Output: %s)",
+                                length, mOutput),
+                        ioe);
+            } catch (RuntimeException re) {
+                // For instance, the output was closed.
+                LOGGER.log(
+                        Level.WARNING,
+                        String.format("Output %s failed, detaching it", mOutput),
+                        re);
+                mRunning = false;
+            }
+            mReadPosition += length;
+            return true;
+        }
+
+        /**
+         * Returns whether the bytes from position on are still in the ring, given the publisher's
+         * write position, including the chunk it may be reading into.
+         */
+        private boolean isReadable(long position, long writePosition) {
+            int reading = mPublisher.isFinished() ? 0 : mPublisher.mChunkSize;
+            return writePosition + reading - position <= mPublisher.mRing.length;
+        }
+
+        /** Moves the cursor to the oldest data in the ring that will stay readable for a while. */
+        private void skipAhead(long writePosition) {
+            long newPosition = writePosition - mPublisher.mRing.length / 2;
+            mOverruns++;
+            mOverrunBytes += newPosition - mReadPosition;
+            LOGGER.fine(
+                    String.format(
+                            "Output %s overran the ring buffer, skipping %d bytes",
+                            mOutput, newPosition - mReadPosition));
+            mReadPosition = newPosition;
+        }
+
+        /** Returns whether the output is still attached, that is it did not fail. */
+        public boolean isRunning() {
+            return mRunning;
+        }
+
+        /** Returns the number of bytes written to the output. */
+        public long getWrittenBytes() {
+            return mWrittenBytes;
+        }
+
+        /** Returns how many bytes the output currently lags behind the line. */
+        public long getLagBytes() {
+            return mPublisher.mWritePosition - mReadPosition;
+        }
+
+        /** Returns the most bytes the output lagged behind the line. */
+        public long getMaxLagBytes() {
+            return mMaxLagBytes;
+        }
+
+        /** Returns how many times the output fell a whole ring buffer behind. */
+        public long getOverruns() {
+            return mOverruns;
+        }
+
+        /** Returns the number of bytes the output skipped because of overruns. */
+        public long getOverrunBytes() {
+            return mOverrunBytes;
+        }
+
+        @Override
+        public String toString() {
+            return String.format(
+                    "Output %s: wrote %d bytes, lagged by up to %d bytes, %d overruns skipped %d"
+                            + " bytes",
+                    mOutput, mWrittenBytes, mMaxLagBytes, mOverruns, mOverrunBytes);
+        }
     }
 }
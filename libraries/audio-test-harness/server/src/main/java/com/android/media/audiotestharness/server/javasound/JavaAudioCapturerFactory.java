@@ -31,9 +31,21 @@ public class JavaAudioCapturerFactory {
 
     private final Executor mExecutor;
 
+    /** The size of each read from the line and write to the outputs of built capturers. */
+    private final int mChunkSize;
+
     @Inject
     public JavaAudioCapturerFactory(Executor executor) {
+        this(executor, JavaAudioCapturer.BUFFER_SIZE);
+    }
+
+    /**
+     * Creates a factory for capturers that read and write chunkSize bytes at a time, trading
+     * latency for fewer reads and writes as it grows.
+     */
+    public JavaAudioCapturerFactory(Executor executor, int chunkSize) {
         mExecutor = executor;
+        mChunkSize = chunkSize;
     }
 
     /**
@@ -50,6 +62,7 @@ public class JavaAudioCapturerFactory {
                 "targetDataLine must already be open before passed to the build() for the"
                         + " AudioCapturer");
 
-        return JavaAudioCapturer.create(audioDevice, audioFormat, targetDataLine, mExecutor);
+        return JavaAudioCapturer.create(
+                audioDevice, audioFormat, targetDataLine, mExecutor, mChunkSize);
     }
 }
@@ -16,22 +16,48 @@
 
 package com.android.media.audiotestharness.server.javasound;
 
+import com.android.media.audiotestharness.proto.AudioFormatOuterClass.AudioFormat;
 import com.android.media.audiotestharness.server.core.AudioSystemService;
 
+import com.google.common.base.Preconditions;
 import com.google.inject.AbstractModule;
+import com.google.inject.name.Names;
+
+import javax.annotation.Nullable;
 
 /** {@link AbstractModule} for the Java Sound implementation of the Audio Test Harness. */
 public final class JavaSoundModule extends AbstractModule {
 
-    private JavaSoundModule() {}
+    /** Format of the generated audio when using loopback devices, null for real devices. */
+    @Nullable private final AudioFormat mLoopbackAudioFormat;
+
+    private JavaSoundModule(@Nullable AudioFormat loopbackAudioFormat) {
+        mLoopbackAudioFormat = loopbackAudioFormat;
+    }
 
     public static JavaSoundModule create() {
-        return new JavaSoundModule();
+        return new JavaSoundModule(/* loopbackAudioFormat= */ null);
+    }
+
+    /**
+     * Creates a module that stands in for the audio devices of the host with a {@link
+     * LoopbackAudioSystemService}, capturing audio generated in the provided format.
+     */
+    public static JavaSoundModule createLoopback(AudioFormat audioFormat) {
+        Preconditions.checkNotNull(audioFormat, "audioFormat cannot be null.");
+        return new JavaSoundModule(audioFormat);
     }
 
     @Override
     protected void configure() {
-        bind(AudioSystemService.class).to(JavaAudioSystemService.class);
+        if (mLoopbackAudioFormat != null) {
+            bind(AudioSystemService.class).to(LoopbackAudioSystemService.class);
+            bind(AudioFormat.class)
+                    .annotatedWith(Names.named(LoopbackAudioSystemService.AUDIO_FORMAT_NAME))
+                    .toInstance(mLoopbackAudioFormat);
+        } else {
+            bind(AudioSystemService.class).to(JavaAudioSystemService.class);
+        }
         bind(JavaAudioSystem.class).toInstance(JavaAudioSystem.getInstance());
         bind(JavaAudioCapturerFactory.class);
     }
@@ -0,0 +1,92 @@
+/*
+ * Copyright (C) 2026 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.android.media.audiotestharness.server.javasound;
+
+import com.android.media.audiotestharness.proto.AudioDeviceOuterClass.AudioDevice;
+import com.android.media.audiotestharness.proto.AudioFormatOuterClass.AudioFormat;
+import com.android.media.audiotestharness.server.core.AudioCapturer;
+import com.android.media.audiotestharness.server.core.AudioSystemService;
+
+import com.google.common.base.Preconditions;
+import com.google.common.collect.ImmutableSet;
+import com.google.inject.Inject;
+import com.google.inject.name.Named;
+
+import java.util.logging.Logger;
+
+/**
+ * {@link AudioSystemService} that stands in for the audio devices of the host with {@link
+ * LoopbackTargetDataLine}s, so that the rest of the system can be exercised and measured without
+ * any audio hardware.
+ *
+ * <p>Every capturer created captures generated audio in the format this service was created with,
+ * whatever device and format are requested, like a device that only supports a single format.
+ */
+public class LoopbackAudioSystemService implements AudioSystemService {
+
+    private static final Logger LOGGER =
+            Logger.getLogger(LoopbackAudioSystemService.class.getName());
+
+    /** Name of the binding of the {@link AudioFormat} that loopback capturers capture in. */
+    public static final String AUDIO_FORMAT_NAME = "LoopbackAudioFormat";
+
+    /** The single device provided by this service. */
+    public static final AudioDevice LOOPBACK_DEVICE =
+            AudioDevice.newBuilder()
+                    .setName("Loopback")
+                    .addCapabilities(AudioDevice.Capability.CAPTURE)
+                    .build();
+
+    private final JavaAudioCapturerFactory mAudioCapturerFactory;
+
+    private final AudioFormat mAudioFormat;
+
+    @Inject
+    public LoopbackAudioSystemService(
+            JavaAudioCapturerFactory javaAudioCapturerFactory,
+            @Named(AUDIO_FORMAT_NAME) AudioFormat audioFormat) {
+        mAudioCapturerFactory =
+                Preconditions.checkNotNull(
+                        javaAudioCapturerFactory, "javaAudioCapturerFactory cannot be null.");
+        mAudioFormat = Preconditions.checkNotNull(audioFormat, "audioFormat cannot be null.");
+    }
+
+    @Override
+    public ImmutableSet<AudioDevice> getDevices() {
+        return ImmutableSet.of(LOOPBACK_DEVICE);
+    }
+
+    /**
+     * {@inheritDoc}
+     *
+     * <p>The provided device and format are ignored, the capturer always captures from the {@link
+     * #LOOPBACK_DEVICE} in the format of this service.
+     */
+    @Override
+    public AudioCapturer createCapturerFor(AudioDevice device, AudioFormat audioFormat) {
+        LOGGER.info(
+                String.format(
+                        "Creating new loopback Capturer for Device (%s) using Format (%s)",
+                        device, mAudioFormat));
+
+        LoopbackTargetDataLine targetDataLine =
+                new LoopbackTargetDataLine(JavaSoundUtility.audioFormatFrom(mAudioFormat));
+        targetDataLine.open();
+
+        return mAudioCapturerFactory.build(LOOPBACK_DEVICE, mAudioFormat, targetDataLine);
+    }
+}
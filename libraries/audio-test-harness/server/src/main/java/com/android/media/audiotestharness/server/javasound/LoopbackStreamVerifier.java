@@ -0,0 +1,202 @@
+/*
+ * Copyright (C) 2026 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.android.media.audiotestharness.server.javasound;
+
+import com.google.common.base.Preconditions;
+
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+
+import javax.sound.sampled.AudioFormat;
+
+/**
+ * Verifies audio captured from a {@link LoopbackTargetDataLine}, finding the packets it generated
+ * to measure their latency and count any that were lost or arrived out of order.
+ *
+ * <p>Captured data is passed to {@link #accept(byte[], int, int)} as it is received, in any
+ * chunks. The latency of a packet is the time from it being read from the line to its header being
+ * accepted here, so the verifier must run in the same process as the line. Data lost part way
+ * through a packet breaks the packet alignment, in which case the verifier scans for the next
+ * packet header to find its place again.
+ *
+ * <p>This class is not thread-safe, each captured stream should be verified by its own instance.
+ */
+public class LoopbackStreamVerifier {
+
+    private final int mPacketSize;
+    private final int mFramesPerPacket;
+
+    private final byte[] mHeader = new byte[LoopbackTargetDataLine.HEADER_SIZE_BYTES];
+
+    /** Offset into the current packet, or -1 while scanning for the next packet header. */
+    private int mPacketOffset = -1;
+
+    /** The last four bytes seen while scanning for the next packet header. */
+    private int mScanWindow = 0;
+
+    private long mNextSequence = -1;
+
+    private long mPackets = 0;
+    private long mLostPackets = 0;
+    private long mReorderedPackets = 0;
+    private long mResyncs = 0;
+    private long mSkippedBytes = 0;
+
+    private long[] mLatencies = new long[1024];
+
+    public LoopbackStreamVerifier(AudioFormat format) {
+        Preconditions.checkNotNull(format, "format cannot be null.");
+        mPacketSize = LoopbackTargetDataLine.packetSizeFor(format);
+        mFramesPerPacket = mPacketSize / format.getFrameSize();
+    }
+
+    /** Accepts the next len bytes of captured data. */
+    public void accept(byte[] b, int off, int len) {
+        Preconditions.checkPositionIndexes(off, off + len, b.length);
+        accept(b, off, len, System.nanoTime());
+    }
+
+    private void accept(byte[] b, int off, int len, long now) {
+        int end = off + len;
+        int position = off;
+        while (position < end) {
+            if (mPacketOffset < 0) {
+                position = scan(b, position, end);
+            } else if (mPacketOffset < mHeader.length) {
+                int count = Math.min(end - position, mHeader.length - mPacketOffset);
+                System.arraycopy(b, position, mHeader, mPacketOffset, count);
+                mPacketOffset += count;
+                position += count;
+                if (mPacketOffset == mHeader.length) {
+                    verifyHeader(now);
+                }
+            } else {
+                int count = Math.min(end - position, mPacketSize - mPacketOffset);
+                mPacketOffset += count;
+                position += count;
+                if (mPacketOffset == mPacketSize) {
+                    mPacketOffset = 0;
+                }
+            }
+        }
+    }
+
+    /** Scans for the magic at the start of a packet, returning the position after it if found. */
+    private int scan(byte[] b, int position, int end) {
+        while (position < end) {
+            mScanWindow = (mScanWindow << 8) | (b[position++] & 0xFF);
+            mSkippedBytes++;
+            if (mScanWindow == LoopbackTargetDataLine.MAGIC) {
+                mSkippedBytes -= Integer.BYTES;
+                ByteBuffer.wrap(mHeader).putInt(LoopbackTargetDataLine.MAGIC);
+                mPacketOffset = Integer.BYTES;
+                mScanWindow = 0;
+                break;
+            }
+        }
+        return position;
+    }
+
+    private void verifyHeader(long now) {
+        ByteBuffer header = ByteBuffer.wrap(mHeader);
+        if (header.getInt() != LoopbackTargetDataLine.MAGIC) {
+            // Data was lost part way through a packet, so look for the next one, which may start
+            // within what was taken for this header.
+            mResyncs++;
+            mSkippedBytes++;
+            mPacketOffset = -1;
+            byte[] rest = Arrays.copyOfRange(mHeader, 1, mHeader.length);
+            accept(rest, 0, rest.length, now);
+            return;
+        }
+        long sequence = header.getLong();
+        long latency = now - header.getLong();
+
+        if (mNextSequence >= 0 && sequence < mNextSequence) {
+            mReorderedPackets++;
+        } else {
+            if (mNextSequence >= 0) {
+                mLostPackets += sequence - mNextSequence;
+            }
+            mNextSequence = sequence + 1;
+        }
+
+        if (mPackets == mLatencies.length) {
+            mLatencies = Arrays.copyOf(mLatencies, mLatencies.length * 2);
+        }
+        mLatencies[(int) mPackets++] = latency;
+    }
+
+    /** Returns the number of packets found in the captured data. */
+    public long getPackets() {
+        return mPackets;
+    }
+
+    /** Returns the number of packets missing between the first and last packets found. */
+    public long getLostPackets() {
+        return mLostPackets;
+    }
+
+    /** Returns the number of frames in the packets missing from the captured data. */
+    public long getLostFrames() {
+        return mLostPackets * mFramesPerPacket;
+    }
+
+    /** Returns the number of packets found after a packet that followed them on the line. */
+    public long getReorderedPackets() {
+        return mReorderedPackets;
+    }
+
+    /**
+     * Returns the number of times a packet header was expected but not found, because data was
+     * lost part way through a packet.
+     */
+    public long getResyncs() {
+        return mResyncs;
+    }
+
+    /**
+     * Returns the number of bytes skipped while scanning for packet headers, including any before
+     * the first packet found.
+     */
+    public long getSkippedBytes() {
+        return mSkippedBytes;
+    }
+
+    /**
+     * Returns the latency of the packets found at the provided percentile, in nanoseconds, or -1 if
+     * none were found.
+     *
+     * @param percentile the percentile, within [0, 100].
+     */
+    public long getLatencyPercentileNanos(double percentile) {
+        Preconditions.checkArgument(
+                percentile >= 0 && percentile <= 100, "percentile must be within [0, 100].");
+        if (mPackets == 0) {
+            return -1;
+        }
+        long[] sorted = Arrays.copyOf(mLatencies, (int) mPackets);
+        Arrays.sort(sorted);
+        int index = (int) Math.ceil(percentile / 100 * sorted.length) - 1;
+        return sorted[Math.max(0, index)];
+    }
+
+    /** Returns the latencies of all of the packets found, in the order they were found. */
+    public long[] getLatenciesNanos() {
+        return Arrays.copyOf(mLatencies, (int) mPackets);
+    }
+}
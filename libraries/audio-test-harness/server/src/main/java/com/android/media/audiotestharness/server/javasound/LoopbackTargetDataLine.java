@@ -0,0 +1,288 @@
+/*
+ * Copyright (C) 2026 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.android.media.audiotestharness.server.javasound;
+
+import com.google.common.base.Preconditions;
+
+import java.nio.ByteBuffer;
+
+import javax.sound.sampled.AudioFormat;
+import javax.sound.sampled.AudioSystem;
+import javax.sound.sampled.Control;
+import javax.sound.sampled.DataLine;
+import javax.sound.sampled.Line;
+import javax.sound.sampled.LineListener;
+import javax.sound.sampled.TargetDataLine;
+
+/**
+ * {@link TargetDataLine} that stands in for a capture device, generating audio at the rate of its
+ * {@link AudioFormat} instead of recording it.
+ *
+ * <p>The generated audio is a sine tone split into packets of about a millisecond, see {@link
+ * #packetSizeFor(AudioFormat)}. The first {@link #HEADER_SIZE_BYTES} bytes of each packet are
+ * replaced by a big-endian header made of {@link #MAGIC}, the sequence number of the packet and
+ * the {@link System#nanoTime()} at which the packet was read from the line. A {@link
+ * LoopbackStreamVerifier} can then find the packets in the captured audio, wherever it ends up, to
+ * measure how long they took to get there and whether any were lost on the way.
+ */
+public class LoopbackTargetDataLine implements TargetDataLine {
+
+    /** Marks the start of each packet, "LOOP" in ASCII. */
+    public static final int MAGIC = 0x4C4F4F50;
+
+    /** Size of the header at the start of each packet: magic, sequence number and timestamp. */
+    public static final int HEADER_SIZE_BYTES = Integer.BYTES + Long.BYTES + Long.BYTES;
+
+    private static final int PACKETS_PER_SECOND = 1000;
+
+    private final AudioFormat mFormat;
+    private final long mBytesPerSecond;
+
+    /** One packet of the tone, copied into each packet before its header is stamped. */
+    private final byte[] mTemplate;
+
+    private final byte[] mPacket;
+    private int mPacketOffset;
+    private long mSequence = 0;
+
+    private volatile boolean mOpen = false;
+    private volatile boolean mRunning = false;
+    private volatile long mStartNanos;
+    private volatile long mPosition = 0;
+
+    public LoopbackTargetDataLine(AudioFormat format) {
+        Preconditions.checkNotNull(format, "format cannot be null.");
+        Preconditions.checkArgument(
+                format.getEncoding().equals(AudioFormat.Encoding.PCM_SIGNED)
+                        || format.getEncoding().equals(AudioFormat.Encoding.PCM_UNSIGNED),
+                "Only PCM formats are supported.");
+        Preconditions.checkArgument(
+                format.getSampleSizeInBits() % 8 == 0 && format.getSampleSizeInBits() <= 32,
+                "Only whole byte samples of up to 32 bits are supported.");
+        mFormat = format;
+        mBytesPerSecond = (long) (format.getFrameRate() * format.getFrameSize());
+        mTemplate = buildTemplate(format);
+        mPacket = new byte[mTemplate.length];
+        mPacketOffset = mPacket.length;
+    }
+
+    /**
+     * Returns the size of each packet of audio generated in the provided format, which is the
+     * whole number of frames closest to a millisecond that still holds the header.
+     */
+    public static int packetSizeFor(AudioFormat format) {
+        int frameSize = format.getFrameSize();
+        int framesPerPacket =
+                Math.max(
+                        Math.round(format.getFrameRate() / PACKETS_PER_SECOND),
+                        (HEADER_SIZE_BYTES + frameSize - 1) / frameSize);
+        return framesPerPacket * frameSize;
+    }
+
+    /**
+     * {@inheritDoc}
+     *
+     * <p>Blocks until len bytes are due at the rate of the format of this line, or it is stopped or
+     * closed.
+     */
+    @Override
+    public int read(byte[] b, int off, int len) {
+        Preconditions.checkArgument(
+                len % mFormat.getFrameSize() == 0, "len must be a whole number of frames.");
+        while (mRunning && mPosition + len > due()) {
+            try {
+                Thread.sleep(/* millis= */ 1);
+            } catch (InterruptedException ie) {
+                Thread.currentThread().interrupt();
+                return 0;
+            }
+        }
+        if (!mRunning) {
+            return 0;
+        }
+
+        int read = 0;
+        while (read < len) {
+            if (mPacketOffset == mPacket.length) {
+                nextPacket();
+            }
+            int count = Math.min(len - read, mPacket.length - mPacketOffset);
+            System.arraycopy(mPacket, mPacketOffset, b, off + read, count);
+            mPacketOffset += count;
+            read += count;
+        }
+        mPosition += len;
+        return len;
+    }
+
+    private void nextPacket() {
+        System.arraycopy(mTemplate, 0, mPacket, 0, mTemplate.length);
+        ByteBuffer.wrap(mPacket).putInt(MAGIC).putLong(mSequence++).putLong(System.nanoTime());
+        mPacketOffset = 0;
+    }
+
+    private long due() {
+        return (System.nanoTime() - mStartNanos) * mBytesPerSecond / 1000000000L;
+    }
+
+    /** Builds one packet of a full scale sine tone, the same on every channel. */
+    private static byte[] buildTemplate(AudioFormat format) {
+        int sampleSize = format.getSampleSizeInBits() / 8;
+        int packetSize = packetSizeFor(format);
+        int frames = packetSize / format.getFrameSize();
+        boolean signed = format.getEncoding().equals(AudioFormat.Encoding.PCM_SIGNED);
+        long fullScale = (1L << (format.getSampleSizeInBits() - 1)) - 1;
+
+        byte[] template = new byte[packetSize];
+        int position = 0;
+        for (int frame = 0; frame < frames; frame++) {
+            long sample = Math.round(Math.sin(2 * Math.PI * frame / frames) * fullScale);
+            if (!signed) {
+                sample += fullScale + 1;
+            }
+            for (int channel = 0; channel < format.getChannels(); channel++) {
+                for (int i = 0; i < sampleSize; i++) {
+                    int shift = 8 * (format.isBigEndian() ? sampleSize - 1 - i : i);
+                    template[position++] = (byte) (sample >> shift);
+                }
+            }
+        }
+        return template;
+    }
+
+    @Override
+    public void open(AudioFormat format, int bufferSize) {
+        open(format);
+    }
+
+    @Override
+    public void open(AudioFormat format) {
+        Preconditions.checkArgument(
+                format.matches(mFormat), "The line only supports the format it was created with.");
+        mOpen = true;
+    }
+
+    @Override
+    public void open() {
+        mOpen = true;
+    }
+
+    @Override
+    public void start() {
+        Preconditions.checkState(mOpen, "The line must be opened before it is started.");
+        // Continue from the current position, as if the device had been paused.
+        mStartNanos = System.nanoTime() - mPosition * 1000000000L / mBytesPerSecond;
+        mRunning = true;
+    }
+
+    @Override
+    public void stop() {
+        mRunning = false;
+    }
+
+    @Override
+    public void close() {
+        mOpen = false;
+        mRunning = false;
+    }
+
+    @Override
+    public boolean isOpen() {
+        return mOpen;
+    }
+
+    @Override
+    public boolean isRunning() {
+        return mRunning;
+    }
+
+    @Override
+    public boolean isActive() {
+        return mRunning;
+    }
+
+    @Override
+    public void drain() {}
+
+    @Override
+    public void flush() {}
+
+    @Override
+    public AudioFormat getFormat() {
+        return mFormat;
+    }
+
+    @Override
+    public int getBufferSize() {
+        return (int) Math.min(Integer.MAX_VALUE, mBytesPerSecond);
+    }
+
+    @Override
+    public int available() {
+        if (!mRunning) {
+            return 0;
+        }
+        long available = due() - mPosition;
+        return (int) Math.min(Integer.MAX_VALUE, available - available % mFormat.getFrameSize());
+    }
+
+    @Override
+    public int getFramePosition() {
+        return (int) getLongFramePosition();
+    }
+
+    @Override
+    public long getLongFramePosition() {
+        return mPosition / mFormat.getFrameSize();
+    }
+
+    @Override
+    public long getMicrosecondPosition() {
+        return mPosition * 1000000L / mBytesPerSecond;
+    }
+
+    @Override
+    public float getLevel() {
+        return AudioSystem.NOT_SPECIFIED;
+    }
+
+    @Override
+    public Line.Info getLineInfo() {
+        return new DataLine.Info(TargetDataLine.class, mFormat);
+    }
+
+    @Override
+    public Control[] getControls() {
+        return new Control[0];
+    }
+
+    @Override
+    public boolean isControlSupported(Control.Type control) {
+        return false;
+    }
+
+    @Override
+    public Control getControl(Control.Type control) {
+        throw new IllegalArgumentException("No controls are supported");
+    }
+
+    @Override
+    public void addLineListener(LineListener listener) {}
+
+    @Override
+    public void removeLineListener(LineListener listener) {}
+}
@@ -72,7 +72,12 @@ public class AudioCaptureSession {
                         id));
         audioCapturer.attachOutput(captureChunkStreamObserverOutputStream);
 
-        return new AudioCaptureSession(id, audioCapturer, captureChunkStreamObserverOutputStream);
+        AudioCaptureSession session =
+                new AudioCaptureSession(id, audioCapturer, captureChunkStreamObserverOutputStream);
+
+        // The call is failed when the client cannot keep up with the capture, then stop capturing.
+        captureChunkStreamObserverOutputStream.setOnOverflowHandler(session::stop);
+        return session;
     }
 
     /**
@@ -21,11 +21,14 @@ import com.android.media.audiotestharness.proto.AudioTestHarnessService;
 import com.google.common.annotations.VisibleForTesting;
 import com.google.common.base.Preconditions;
 import com.google.protobuf.ByteString;
+import com.google.protobuf.UnsafeByteOperations;
 
+import io.grpc.Status;
 import io.grpc.stub.ServerCallStreamObserver;
 import io.grpc.stub.StreamObserver;
 
 import java.io.OutputStream;
+import java.util.ArrayDeque;
 import java.util.concurrent.CountDownLatch;
 import java.util.concurrent.TimeUnit;
 import java.util.concurrent.atomic.AtomicBoolean;
@@ -35,10 +38,16 @@ import java.util.logging.Logger;
  * {@link OutputStream} that streams data written to it to a provided {@link StreamObserver} in the
  * form of {@link AudioTestHarnessService.CaptureChunk}s.
  *
+ * <p>Chunks are only sent while the {@link ServerCallStreamObserver} is ready, so a slow client
+ * does not make gRPC buffer audio without bound. Chunks written while the client is not ready are
+ * queued, up to a maximum number of bytes, and sent once it is ready again. When the queue is full
+ * the {@link OverflowPolicy} decides what happens to the capture.
+ *
  * <p>This class is thread compatible but not thread safe. That is, with proper synchronization,
  * this class could be used by multiple threads, however there is no built-in synchronization.
  * However, the {@link #awaitClose()} methods are provided so that other threads can wait on the
- * this {@link OutputStream} to be closed before continuing.
+ * this {@link OutputStream} to be closed before continuing. Writes and the gRPC on ready handler
+ * are synchronized with each other, since the latter runs on a gRPC thread.
  *
  * <p>This class should not be extended, however is left non-final for mocking purposes.
  */
@@ -46,6 +55,32 @@ public class CaptureChunkStreamObserverOutputStream extends OutputStream {
     private static final Logger LOGGER =
             Logger.getLogger(CaptureChunkStreamObserverOutputStream.class.getName());
 
+    /** What to do with written data when the client is too slow and the queue is full. */
+    public enum OverflowPolicy {
+        /**
+         * Block the writing thread until the client catches up. Audio is then lost upstream, for
+         * instance when the capture device's own buffer overruns.
+         */
+        BLOCK,
+
+        /** Discard the oldest queued chunks to make room, so the client receives gaps. */
+        DROP_OLDEST,
+
+        /** Fail the call with {@link Status#RESOURCE_EXHAUSTED} and stop the capture. */
+        FAIL,
+    }
+
+    public static final OverflowPolicy DEFAULT_OVERFLOW_POLICY = OverflowPolicy.BLOCK;
+
+    /**
+     * Default maximum number of bytes queued for a client that is not ready, about 3 seconds of
+     * 8-channel 32-bit audio at 192kHz.
+     */
+    public static final int DEFAULT_MAX_BUFFERED_BYTES = 4 * 1024 * 1024;
+
+    /** How often a blocked write checks whether the call was cancelled. */
+    private static final long BLOCK_POLL_INTERVAL_MS = 100;
+
     /**
      * Used for synchronizing actions during gRPC execution. Thus, a main thread can delegate
      * streaming actions to this {@link OutputStream} and then when done can take back control and
@@ -60,6 +95,18 @@ public class CaptureChunkStreamObserverOutputStream extends OutputStream {
     private final ServerCallStreamObserver<AudioTestHarnessService.CaptureChunk>
             mCaptureChunkStreamObserver;
 
+    private final OverflowPolicy mOverflowPolicy;
+
+    private final int mMaxBufferedBytes;
+
+    /**
+     * Whether the transport serializes each message within {@link StreamObserver#onNext}, as the
+     * Netty transport does. If so, written buffers are handed to protobuf without being copied and
+     * queued buffers are reused once sent. The in-process transport hands the messages themselves
+     * to the client, so their data must not be reused.
+     */
+    private final boolean mTransportCopiesMessages;
+
     /**
      * Flag to track whether or not this {@link OutputStream} has been closed. If so, then does not
      * allow write actions to occur to prevent a stray call to onNext after onCompleted has been
@@ -71,12 +118,40 @@ public class CaptureChunkStreamObserverOutputStream extends OutputStream {
      */
     private AtomicBoolean mClosed = new AtomicBoolean(false);
 
+    /** Guards the queue, the statistics, and all calls to the {@link StreamObserver}. */
+    private final Object mLock = new Object();
+
+    /** Chunks waiting for the client to be ready, oldest first. */
+    private final ArrayDeque<Chunk> mPending = new ArrayDeque<>();
+
+    /** Sent chunk buffers that can be reused, if {@link #mTransportCopiesMessages}. */
+    private final ArrayDeque<byte[]> mFreeBuffers = new ArrayDeque<>();
+
+    /** Run once when the {@link OverflowPolicy#FAIL} policy fails the call. */
+    private Runnable mOnOverflowHandler;
+
+    /** Whether the call was failed because of an overflow, after which writes are discarded. */
+    private boolean mFailed = false;
+
+    private long mBufferedBytes = 0;
+    private long mPeakBufferedBytes = 0;
+    private long mSentBytes = 0;
+    private long mDroppedBytes = 0;
+    private long mDroppedChunks = 0;
+    private long mBlockedNanos = 0;
+
     private CaptureChunkStreamObserverOutputStream(
             ServerCallStreamObserver<AudioTestHarnessService.CaptureChunk>
                     captureChunkStreamObserver,
-            CountDownLatch countDownLatch) {
+            CountDownLatch countDownLatch,
+            OverflowPolicy overflowPolicy,
+            int maxBufferedBytes,
+            boolean transportCopiesMessages) {
         mCaptureChunkStreamObserver = captureChunkStreamObserver;
         mCountDownLatch = countDownLatch;
+        mOverflowPolicy = overflowPolicy;
+        mMaxBufferedBytes = maxBufferedBytes;
+        mTransportCopiesMessages = transportCopiesMessages;
         LOGGER.finest("new CaptureChunkStreamObserverOutputStream");
     }
 
@@ -86,14 +161,72 @@ public class CaptureChunkStreamObserverOutputStream extends OutputStream {
         return create(captureChunkStreamObserver, new CountDownLatch(1));
     }
 
+    /**
+     * Creates a new {@link CaptureChunkStreamObserverOutputStream}.
+     *
+     * <p>Since it registers the on ready handler of the {@link ServerCallStreamObserver}, this
+     * must be called before the gRPC procedure returns.
+     *
+     * @param overflowPolicy what to do when more than maxBufferedBytes are queued.
+     * @param maxBufferedBytes the maximum number of bytes queued while the client is not ready.
+     * @param transportCopiesMessages whether the transport serializes each message as it is sent,
+     *     so that written data can be handed to protobuf without a copy.
+     */
+    public static CaptureChunkStreamObserverOutputStream create(
+            ServerCallStreamObserver<AudioTestHarnessService.CaptureChunk>
+                    captureChunkStreamObserver,
+            OverflowPolicy overflowPolicy,
+            int maxBufferedBytes,
+            boolean transportCopiesMessages) {
+        return create(
+                captureChunkStreamObserver,
+                new CountDownLatch(1),
+                overflowPolicy,
+                maxBufferedBytes,
+                transportCopiesMessages);
+    }
+
     @VisibleForTesting
     static CaptureChunkStreamObserverOutputStream create(
             ServerCallStreamObserver<AudioTestHarnessService.CaptureChunk>
                     captureChunkStreamObserver,
             CountDownLatch countDownLatch) {
-        return new CaptureChunkStreamObserverOutputStream(
-                Preconditions.checkNotNull(captureChunkStreamObserver),
-                Preconditions.checkNotNull(countDownLatch));
+        return create(
+                captureChunkStreamObserver,
+                countDownLatch,
+                DEFAULT_OVERFLOW_POLICY,
+                DEFAULT_MAX_BUFFERED_BYTES,
+                /* transportCopiesMessages= */ false);
+    }
+
+    @VisibleForTesting
+    static CaptureChunkStreamObserverOutputStream create(
+            ServerCallStreamObserver<AudioTestHarnessService.CaptureChunk>
+                    captureChunkStreamObserver,
+            CountDownLatch countDownLatch,
+            OverflowPolicy overflowPolicy,
+            int maxBufferedBytes,
+            boolean transportCopiesMessages) {
+        Preconditions.checkArgument(maxBufferedBytes > 0, "maxBufferedBytes must be positive");
+        CaptureChunkStreamObserverOutputStream stream =
+                new CaptureChunkStreamObserverOutputStream(
+                        Preconditions.checkNotNull(captureChunkStreamObserver),
+                        Preconditions.checkNotNull(countDownLatch),
+                        Preconditions.checkNotNull(overflowPolicy),
+                        maxBufferedBytes,
+                        transportCopiesMessages);
+        captureChunkStreamObserver.setOnReadyHandler(stream::onReady);
+        return stream;
+    }
+
+    /**
+     * Sets the {@link Runnable} run once when the {@link OverflowPolicy#FAIL} policy fails the
+     * call, which should stop the capture.
+     */
+    public void setOnOverflowHandler(Runnable onOverflowHandler) {
+        synchronized (mLock) {
+            mOnOverflowHandler = onOverflowHandler;
+        }
     }
 
     @Override
@@ -127,29 +260,179 @@ public class CaptureChunkStreamObserverOutputStream extends OutputStream {
                 "CaptureChunkStreamObserverOutputStream has already been closed and cannot be"
                         + " written to.");
 
-        ByteString chunkBytes = ByteString.copyFrom(b, off, len);
-
-        AudioTestHarnessService.CaptureChunk captureChunk =
-                AudioTestHarnessService.CaptureChunk.newBuilder().setData(chunkBytes).build();
-
-        // Skip sending any chunks that are written to the stream after cancellation.
-        //
-        // Since the writing to this Output Stream comes from a separate thread from the original
-        // gRPC handling thread, there is a chance that an extra chunk of data will be written
-        // before the cancellation can propagate to the AudioCapturer that is publishing data. In
-        // these cases, simply ignore the extra chunk of data and log that it was seen.
-        if (mCaptureChunkStreamObserver.isCancelled()) {
-            LOGGER.fine("Extra chunk sent after cancellation will be discarded");
-        } else {
-            mCaptureChunkStreamObserver.onNext(captureChunk);
+        Runnable onOverflowHandler = null;
+        synchronized (mLock) {
+            // Skip sending any chunks that are written to the stream after cancellation.
+            //
+            // Since the writing to this Output Stream comes from a separate thread from the
+            // original gRPC handling thread, there is a chance that an extra chunk of data will be
+            // written before the cancellation can propagate to the AudioCapturer that is
+            // publishing data. In these cases, simply ignore the extra chunk of data and log that
+            // it was seen.
+            if (isDiscarding()) {
+                LOGGER.fine("Extra chunk sent after cancellation will be discarded");
+                return;
+            }
+
+            drainLocked();
+            if (!makeRoomLocked(len)) {
+                if (mFailed) {
+                    onOverflowHandler = mOnOverflowHandler;
+                }
+            } else if (mPending.isEmpty() && mCaptureChunkStreamObserver.isReady()) {
+                sendLocked(
+                        mTransportCopiesMessages
+                                ? UnsafeByteOperations.unsafeWrap(b, off, len)
+                                : ByteString.copyFrom(b, off, len),
+                        len);
+            } else {
+                byte[] data = takeBufferLocked(len);
+                System.arraycopy(b, off, data, 0, len);
+                mPending.add(new Chunk(data, len));
+                mBufferedBytes += len;
+                mPeakBufferedBytes = Math.max(mPeakBufferedBytes, mBufferedBytes);
+            }
+        }
+
+        // Outside of the lock, since the handler closes the capturer and then this stream.
+        if (onOverflowHandler != null) {
+            onOverflowHandler.run();
         }
     }
 
+    /**
+     * Applies the {@link OverflowPolicy} until a chunk of len bytes fits in the queue. Returns
+     * whether it should be queued.
+     */
+    private boolean makeRoomLocked(int len) {
+        // A chunk larger than the queue is still queued on its own.
+        while (!mPending.isEmpty() && mBufferedBytes + len > mMaxBufferedBytes) {
+            switch (mOverflowPolicy) {
+                case BLOCK:
+                    long start = System.nanoTime();
+                    try {
+                        mLock.wait(BLOCK_POLL_INTERVAL_MS);
+                    } catch (InterruptedException ie) {
+                        Thread.currentThread().interrupt();
+                        mDroppedBytes += len;
+                        mDroppedChunks++;
+                        return false;
+                    } finally {
+                        mBlockedNanos += System.nanoTime() - start;
+                    }
+                    if (mClosed.get() || isDiscarding()) {
+                        return false;
+                    }
+                    drainLocked();
+                    break;
+                case DROP_OLDEST:
+                    Chunk oldest = mPending.remove();
+                    mBufferedBytes -= oldest.mLength;
+                    mDroppedBytes += oldest.mLength;
+                    mDroppedChunks++;
+                    recycleLocked(oldest.mData);
+                    break;
+                case FAIL:
+                    mFailed = true;
+                    mDroppedBytes += mBufferedBytes + len;
+                    mDroppedChunks += mPending.size() + 1;
+                    clearPendingLocked();
+                    LOGGER.warning(
+                            String.format(
+                                    "Client is not keeping up with capture, failing the call with"
+                                            + " %d bytes buffered",
+                                    mMaxBufferedBytes));
+                    mCaptureChunkStreamObserver.onError(
+                            Status.RESOURCE_EXHAUSTED
+                                    .withDescription(
+                                            String.format(
+                                                    "Client did not keep up with capture, more than"
+                                                            + " %d bytes were buffered",
+                                                    mMaxBufferedBytes))
+                                    .asException());
+                    return false;
+            }
+        }
+        return true;
+    }
+
+    /** Called by gRPC when the client is ready for more chunks. */
+    private void onReady() {
+        synchronized (mLock) {
+            drainLocked();
+        }
+    }
+
+    /** Sends queued chunks for as long as the client is ready. */
+    private void drainLocked() {
+        while (!mPending.isEmpty()
+                && !mClosed.get()
+                && !isDiscarding()
+                && mCaptureChunkStreamObserver.isReady()) {
+            Chunk chunk = mPending.remove();
+            mBufferedBytes -= chunk.mLength;
+            sendLocked(
+                    UnsafeByteOperations.unsafeWrap(chunk.mData, 0, chunk.mLength), chunk.mLength);
+            recycleLocked(chunk.mData);
+            mLock.notifyAll();
+        }
+    }
+
+    private void sendLocked(ByteString data, int len) {
+        mCaptureChunkStreamObserver.onNext(
+                AudioTestHarnessService.CaptureChunk.newBuilder().setData(data).build());
+        mSentBytes += len;
+    }
+
+    private boolean isDiscarding() {
+        return mFailed || mCaptureChunkStreamObserver.isCancelled();
+    }
+
+    /** Returns a buffer of at least len bytes, reusing a sent one if possible. */
+    private byte[] takeBufferLocked(int len) {
+        byte[] buffer = mFreeBuffers.poll();
+        return buffer != null && buffer.length >= len ? buffer : new byte[len];
+    }
+
+    /** Makes a buffer that has been sent or dropped available for reuse, if it is safe to. */
+    private void recycleLocked(byte[] buffer) {
+        if (mTransportCopiesMessages) {
+            mFreeBuffers.add(buffer);
+        }
+    }
+
+    private void clearPendingLocked() {
+        for (Chunk chunk : mPending) {
+            recycleLocked(chunk.mData);
+        }
+        mPending.clear();
+        mBufferedBytes = 0;
+        mLock.notifyAll();
+    }
+
     @Override
     public void close() {
         mClosed.set(true);
+        synchronized (mLock) {
+            if (!mPending.isEmpty()) {
+                LOGGER.fine(
+                        String.format(
+                                "Discarding %d bytes not yet sent to the client", mBufferedBytes));
+            }
+            clearPendingLocked();
+            mFreeBuffers.clear();
+            LOGGER.info(
+                    String.format(
+                            "Stream Closed (policy=%s, sent %d bytes, dropped %d bytes in %d"
+                                    + " chunks, blocked for %d ms, at most %d bytes buffered)",
+                            mOverflowPolicy,
+                            mSentBytes,
+                            mDroppedBytes,
+                            mDroppedChunks,
+                            TimeUnit.NANOSECONDS.toMillis(mBlockedNanos),
+                            mPeakBufferedBytes));
+        }
         mCountDownLatch.countDown();
-        LOGGER.info("Stream Closed");
     }
 
     public boolean isClosed() {
@@ -178,4 +461,53 @@ public class CaptureChunkStreamObserverOutputStream extends OutputStream {
     public boolean awaitClose(long timeout, TimeUnit timeUnit) throws InterruptedException {
         return mCountDownLatch.await(timeout, timeUnit);
     }
+
+    /** Returns the number of bytes sent to the client. */
+    public long getSentBytes() {
+        synchronized (mLock) {
+            return mSentBytes;
+        }
+    }
+
+    /**
+     * Returns the number of bytes that were written but not sent, because of the {@link
+     * OverflowPolicy} or an interrupted write.
+     */
+    public long getDroppedBytes() {
+        synchronized (mLock) {
+            return mDroppedBytes;
+        }
+    }
+
+    /** Returns the number of chunks that were written but not sent. */
+    public long getDroppedChunks() {
+        synchronized (mLock) {
+            return mDroppedChunks;
+        }
+    }
+
+    /** Returns how long writes were blocked by the {@link OverflowPolicy#BLOCK} policy. */
+    public long getBlockedNanos() {
+        synchronized (mLock) {
+            return mBlockedNanos;
+        }
+    }
+
+    /** Returns the largest number of bytes queued at any time. */
+    public long getPeakBufferedBytes() {
+        synchronized (mLock) {
+            return mPeakBufferedBytes;
+        }
+    }
+
+    /** A queued chunk, whose buffer may be larger than its data. */
+    private static final class Chunk {
+        final byte[] mData;
+        final int mLength;
+
+        Chunk(byte[] data, int length) {
+            mData = data;
+            mLength = length;
+        }
+    }
 }
@@ -26,12 +26,45 @@ import io.grpc.stub.ServerCallStreamObserver;
  */
 public class StreamObserverOutputStreamFactory {
 
+    private final CaptureChunkStreamObserverOutputStream.OverflowPolicy mOverflowPolicy;
+
+    private final int mMaxBufferedBytes;
+
+    private final boolean mTransportCopiesMessages;
+
+    /**
+     * Creates a factory for streams with the default overflow policy and queue size, which copy
+     * written data so that they work with any transport.
+     */
+    public StreamObserverOutputStreamFactory() {
+        this(
+                CaptureChunkStreamObserverOutputStream.DEFAULT_OVERFLOW_POLICY,
+                CaptureChunkStreamObserverOutputStream.DEFAULT_MAX_BUFFERED_BYTES,
+                /* transportCopiesMessages= */ false);
+    }
+
+    /**
+     * Creates a factory for streams with the given flow control configuration.
+     *
+     * @see CaptureChunkStreamObserverOutputStream#create(ServerCallStreamObserver,
+     *     CaptureChunkStreamObserverOutputStream.OverflowPolicy, int, boolean)
+     */
+    public StreamObserverOutputStreamFactory(
+            CaptureChunkStreamObserverOutputStream.OverflowPolicy overflowPolicy,
+            int maxBufferedBytes,
+            boolean transportCopiesMessages) {
+        mOverflowPolicy = overflowPolicy;
+        mMaxBufferedBytes = maxBufferedBytes;
+        mTransportCopiesMessages = transportCopiesMessages;
+    }
+
     /**
      * Creates a new {@link CaptureChunkStreamObserverOutputStream} for the provided {@link
      * ServerCallStreamObserver}.
      */
     public CaptureChunkStreamObserverOutputStream createNewCaptureChunkStreamObserverOutputStream(
             ServerCallStreamObserver<AudioTestHarnessService.CaptureChunk> streamObserver) {
-        return CaptureChunkStreamObserverOutputStream.create(streamObserver);
+        return CaptureChunkStreamObserverOutputStream.create(
+                streamObserver, mOverflowPolicy, mMaxBufferedBytes, mTransportCopiesMessages);
     }
 }
@@ -18,10 +18,15 @@ package com.android.media.audiotestharness.server;
 
 import static org.junit.Assert.assertEquals;
 import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertTrue;
+
+import com.android.media.audiotestharness.common.Defaults;
 
 import com.android.media.audiotestharness.proto.AudioTestHarnessGrpc;
 import com.android.media.audiotestharness.server.config.SharedHostConfiguration;
 import com.android.media.audiotestharness.server.core.AudioSystemService;
+import com.android.media.audiotestharness.server.javasound.JavaSoundModule;
+import com.android.media.audiotestharness.server.javasound.LoopbackAudioSystemService;
 import com.android.media.audiotestharness.server.service.AudioCaptureSessionFactory;
 import com.android.media.audiotestharness.server.service.StreamObserverOutputStreamFactory;
 
@@ -73,6 +78,19 @@ public class AudioTestHarnessServerModuleTests {
         assertNotNull(mInjector.getInstance(AudioSystemService.class));
     }
 
+    @Test
+    public void getInstance_AudioSystemService_returnsLoopbackService_loopbackModule()
+            throws Exception {
+        Injector injector =
+                Guice.createInjector(
+                        AudioTestHarnessServerModule.create(
+                                mExecutor, JavaSoundModule.createLoopback(Defaults.AUDIO_FORMAT)));
+
+        assertTrue(
+                injector.getInstance(AudioSystemService.class)
+                        instanceof LoopbackAudioSystemService);
+    }
+
     @Test
     public void getInstance_AudioCaptureSessionFactory_returnsInstance() throws Exception {
         assertNotNull(mInjector.getInstance(AudioCaptureSessionFactory.class));
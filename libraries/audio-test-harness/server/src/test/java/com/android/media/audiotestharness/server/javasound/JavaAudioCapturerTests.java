@@ -17,10 +17,13 @@
 package com.android.media.audiotestharness.server.javasound;
 
 import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
 import static org.junit.Assert.assertFalse;
 import static org.junit.Assert.assertTrue;
 import static org.mockito.ArgumentMatchers.any;
 import static org.mockito.ArgumentMatchers.anyInt;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.times;
 import static org.mockito.Mockito.verify;
 import static org.mockito.Mockito.when;
 
@@ -43,8 +46,10 @@ import org.mockito.junit.MockitoRule;
 import java.io.ByteArrayOutputStream;
 import java.io.File;
 import java.io.IOException;
+import java.io.InterruptedIOException;
 import java.io.OutputStream;
 import java.nio.file.Files;
+import java.util.concurrent.CountDownLatch;
 import java.util.concurrent.Executor;
 
 import javax.sound.sampled.TargetDataLine;
@@ -63,17 +68,43 @@ public class JavaAudioCapturerTests {
 
     @Mock Executor mExecutor;
 
+    @Mock Executor mDeliveryExecutor;
+
     @Mock TargetDataLine mTargetDataLine;
 
     private static final AudioDeviceOuterClass.AudioDevice TEST_DEVICE = Defaults.AUDIO_DEVICE;
     private static final AudioFormatOuterClass.AudioFormat TEST_FORMAT = Defaults.AUDIO_FORMAT;
 
+    private static final int TEST_CHUNK_SIZE = 1024;
+
     @Test(expected = IllegalArgumentException.class)
     public void create_throwsIllegalArgumentException_closedDataLine() throws Exception {
         when(mTargetDataLine.isOpen()).thenReturn(false);
         JavaAudioCapturer.create(TEST_DEVICE, TEST_FORMAT, mTargetDataLine, mExecutor);
     }
 
+    @Test
+    public void create_roundsChunkSizeToWholeFrames() throws Exception {
+        when(mTargetDataLine.isOpen()).thenReturn(true);
+        AudioFormatOuterClass.AudioFormat sixChannels =
+                TEST_FORMAT.toBuilder().setChannels(6).build();
+
+        JavaAudioCapturer capturer =
+                JavaAudioCapturer.create(
+                        TEST_DEVICE,
+                        sixChannels,
+                        mTargetDataLine,
+                        mExecutor,
+                        /* chunkSize= */ 2048);
+
+        // 12 byte frames, and a ring buffer of whole chunks holding at least RING_BUFFER_MILLIS
+        assertEquals(2040, capturer.getChunkSize());
+        assertEquals(0, capturer.getRingBufferSize() % capturer.getChunkSize());
+        assertTrue(
+                capturer.getRingBufferSize()
+                        >= 44100 * 12 * JavaAudioCapturer.RING_BUFFER_MILLIS / 1000);
+    }
+
     @Test
     public void open_startsDataLine() throws Exception {
         when(mTargetDataLine.isOpen()).thenReturn(true);
@@ -94,6 +125,22 @@ public class JavaAudioCapturerTests {
         verify(mExecutor).execute(any(JavaAudioCapturer.TargetDataLineWatchingPublisher.class));
     }
 
+    @Test
+    public void open_schedulesOneDeliveryTaskPerOutput() throws Exception {
+        JavaAudioCapturer capturer = createManualCapturer(new TestTargetDataLine());
+        capturer.attachOutput(new ByteArrayOutputStream());
+        capturer.attachOutput(new ByteArrayOutputStream());
+        verify(mDeliveryExecutor, never()).execute(any());
+
+        capturer.open();
+        verify(mDeliveryExecutor, times(2)).execute(any());
+        capturer.attachOutput(new ByteArrayOutputStream());
+
+        // Outputs never take up threads of the shared executor
+        verify(mExecutor, times(1)).execute(any());
+        verify(mDeliveryExecutor, times(3)).execute(any());
+    }
+
     @Test(expected = IllegalStateException.class)
     public void open_throwsIllegalStateException_alreadyRunningLine() throws Exception {
         when(mTargetDataLine.isOpen()).thenReturn(true);
@@ -118,11 +165,14 @@ public class JavaAudioCapturerTests {
     @Test
     public void attachOutput_attachesOutputSuccessfully_outputStream() throws Exception {
         byte[] expectedBytes = {0x1, 0x2, 0x3, 0x4};
+        JavaAudioCapturer.TargetDataLineWatchingPublisher[] publisher =
+                new JavaAudioCapturer.TargetDataLineWatchingPublisher[1];
 
         when(mTargetDataLine.isOpen()).thenReturn(true);
         when(mTargetDataLine.isRunning()).thenReturn(false);
 
-        // Simulate a "read" from the data line when running through.
+        // Simulate a "read" from the data line when running through, and ensure the publisher
+        // only loops once by stopping it.
         when(mTargetDataLine.read(any(), anyInt(), anyInt()))
                 .then(
                         invocation -> {
@@ -133,6 +183,7 @@ public class JavaAudioCapturerTests {
                             buffer[2] = expectedBytes[2];
                             buffer[3] = expectedBytes[3];
 
+                            publisher[0].stop();
                             return 4;
                         });
         ArgumentCaptor<Runnable> runnableArgCaptor = ArgumentCaptor.forClass(Runnable.class);
@@ -145,12 +196,10 @@ public class JavaAudioCapturerTests {
         capturer.open();
 
         verify(mExecutor).execute(runnableArgCaptor.capture());
-        JavaAudioCapturer.TargetDataLineWatchingPublisher publisher =
+        publisher[0] =
                 (JavaAudioCapturer.TargetDataLineWatchingPublisher) runnableArgCaptor.getValue();
-
-        // Ensure the publisher only loops once by adding a stream that stops it.
-        capturer.attachOutput(new RunnableOutputStream(publisher::stop));
-        publisher.run();
+        publisher[0].run();
+        capturer.close();
 
         // Verify output is as expected to the array.
         assertArrayEquals(expectedBytes, byteArrayOutputStream.toByteArray());
@@ -159,11 +208,14 @@ public class JavaAudioCapturerTests {
     @Test
     public void attachOutput_attachesOutputSuccessfully_file() throws Exception {
         byte[] expectedBytes = {0x1, 0x2, 0x3, 0x4};
+        JavaAudioCapturer.TargetDataLineWatchingPublisher[] publisher =
+                new JavaAudioCapturer.TargetDataLineWatchingPublisher[1];
 
         when(mTargetDataLine.isOpen()).thenReturn(true);
         when(mTargetDataLine.isRunning()).thenReturn(false);
 
-        // Simulate a "read" from the data line when running through.
+        // Simulate a "read" from the data line when running through, and ensure the publisher
+        // only loops once by stopping it.
         when(mTargetDataLine.read(any(), anyInt(), anyInt()))
                 .then(
                         invocation -> {
@@ -174,6 +226,7 @@ public class JavaAudioCapturerTests {
                             buffer[2] = expectedBytes[2];
                             buffer[3] = expectedBytes[3];
 
+                            publisher[0].stop();
                             return 4;
                         });
         ArgumentCaptor<Runnable> runnableArgCaptor = ArgumentCaptor.forClass(Runnable.class);
@@ -185,17 +238,126 @@ public class JavaAudioCapturerTests {
         capturer.open();
 
         verify(mExecutor).execute(runnableArgCaptor.capture());
-        JavaAudioCapturer.TargetDataLineWatchingPublisher publisher =
+        publisher[0] =
                 (JavaAudioCapturer.TargetDataLineWatchingPublisher) runnableArgCaptor.getValue();
-
-        // Ensure the publisher only loops once by adding a stream that stops it.
-        capturer.attachOutput(new RunnableOutputStream(publisher::stop));
-        publisher.run();
+        publisher[0].run();
+        capturer.close();
 
         // Verify output is as expected to the array.
         assertArrayEquals(expectedBytes, Files.readAllBytes(testFile.toPath()));
     }
 
+    @Test
+    public void attachOutput_afterOpen_receivesDataFromThenOn() throws Exception {
+        TestTargetDataLine line = new TestTargetDataLine();
+        JavaAudioCapturer capturer = createManualCapturer(line);
+        capturer.open();
+        JavaAudioCapturer.TargetDataLineWatchingPublisher publisher = capturePublisher();
+        ByteArrayOutputStream output = new ByteArrayOutputStream();
+        // Attached while the sixth chunk is being read, which is the first the output receives.
+        line.setOnRead(
+                () -> {
+                    if (line.getPosition() == 6 * TEST_CHUNK_SIZE) {
+                        capturer.attachOutput(output);
+                    } else if (line.getPosition() == 10 * TEST_CHUNK_SIZE) {
+                        publisher.stop();
+                    }
+                });
+
+        publisher.run();
+        capturer.close();
+
+        assertPattern(5 * TEST_CHUNK_SIZE, 5 * TEST_CHUNK_SIZE, output.toByteArray());
+    }
+
+    @Test
+    public void attachOutput_laggingOutput_skipsAheadWithoutDelayingLine() throws Exception {
+        TestTargetDataLine line = new TestTargetDataLine();
+        JavaAudioCapturer capturer = createManualCapturer(line);
+        ByteArrayOutputStream output = new ByteArrayOutputStream();
+        capturer.attachOutput(output);
+        capturer.open();
+        JavaAudioCapturer.TargetDataLineWatchingPublisher publisher = capturePublisher();
+        long ringBufferSize = capturer.getRingBufferSize();
+        line.setOnRead(
+                () -> {
+                    if (line.getPosition() >= 2 * ringBufferSize) {
+                        publisher.stop();
+                    }
+                });
+
+        // Nothing is delivered while the publisher runs, like when the outputs are stalled.
+        publisher.run();
+        capturer.close();
+
+        // The line was read in full, and the output skipped what was overwritten in the ring
+        assertEquals(2 * ringBufferSize, line.getPosition());
+        JavaAudioCapturer.RingBufferSubscriber subscriber = capturer.getSubscribers().get(0);
+        assertEquals(1, subscriber.getOverruns());
+        assertTrue(subscriber.getOverrunBytes() >= ringBufferSize);
+        assertEquals(
+                2 * ringBufferSize, subscriber.getOverrunBytes() + subscriber.getWrittenBytes());
+        assertPattern(
+                subscriber.getOverrunBytes(), subscriber.getWrittenBytes(), output.toByteArray());
+    }
+
+    @Test
+    public void attachOutput_failingOutput_isDetachedWithoutAffectingOthers() throws Exception {
+        TestTargetDataLine line = new TestTargetDataLine();
+        JavaAudioCapturer capturer = createManualCapturer(line);
+        capturer.attachOutput(new FailingOutputStream());
+        ByteArrayOutputStream output = new ByteArrayOutputStream();
+        capturer.attachOutput(output);
+        capturer.open();
+        JavaAudioCapturer.TargetDataLineWatchingPublisher publisher = capturePublisher();
+        line.setOnRead(
+                () -> {
+                    if (line.getPosition() == 4 * TEST_CHUNK_SIZE) {
+                        publisher.stop();
+                    }
+                });
+
+        publisher.run();
+        capturer.close();
+
+        assertFalse(capturer.getSubscribers().get(0).isRunning());
+        assertTrue(capturer.getSubscribers().get(1).isRunning());
+        assertPattern(0, 4 * TEST_CHUNK_SIZE, output.toByteArray());
+    }
+
+    @Test
+    public void attachOutput_blockedOutput_doesNotDelayOtherOutputs() throws Exception {
+        TestTargetDataLine line = new TestTargetDataLine();
+        // Each output is written to from a thread of its own.
+        JavaAudioCapturer capturer =
+                JavaAudioCapturer.create(
+                        TEST_DEVICE, TEST_FORMAT, line, mExecutor, TEST_CHUNK_SIZE);
+        CountDownLatch unblock = new CountDownLatch(1);
+        capturer.attachOutput(new BlockingOutputStream(unblock));
+        ByteArrayOutputStream output = new ByteArrayOutputStream();
+        capturer.attachOutput(output);
+        capturer.open();
+        JavaAudioCapturer.TargetDataLineWatchingPublisher publisher = capturePublisher();
+        line.setOnRead(
+                () -> {
+                    if (line.getPosition() == 10 * TEST_CHUNK_SIZE) {
+                        publisher.stop();
+                    }
+                });
+
+        publisher.run();
+        // The second output receives everything while the first is stuck in its first write.
+        while (output.size() < 10 * TEST_CHUNK_SIZE) {
+            Thread.sleep(1);
+        }
+        assertEquals(0, capturer.getSubscribers().get(0).getWrittenBytes());
+        unblock.countDown();
+        capturer.close();
+
+        assertPattern(0, 10 * TEST_CHUNK_SIZE, output.toByteArray());
+        assertEquals(10 * TEST_CHUNK_SIZE, capturer.getSubscribers().get(0).getWrittenBytes());
+    }
+
     @Test
     public void close_stopsPublisherAsExpected() throws Exception {
         when(mTargetDataLine.isOpen()).thenReturn(true);
@@ -229,27 +391,92 @@ public class JavaAudioCapturerTests {
         verify(mTargetDataLine).close();
     }
 
-    /** Custom {@link OutputStream} that triggers a contained Runnable when written to. */
-    private static class RunnableOutputStream extends OutputStream {
-        private final Runnable mRunnable;
+    @Test
+    public void close_writesDataLeftInRingToOutputs() throws Exception {
+        TestTargetDataLine line = new TestTargetDataLine();
+        JavaAudioCapturer capturer = createManualCapturer(line);
+        ByteArrayOutputStream first = new ByteArrayOutputStream();
+        ByteArrayOutputStream second = new ByteArrayOutputStream();
+        capturer.attachOutput(first);
+        capturer.attachOutput(second);
+        capturer.open();
+        JavaAudioCapturer.TargetDataLineWatchingPublisher publisher = capturePublisher();
+        line.setOnRead(
+                () -> {
+                    if (line.getPosition() == 10 * TEST_CHUNK_SIZE) {
+                        publisher.stop();
+                    }
+                });
+
+        publisher.run();
+        assertEquals(0, first.size());
+        capturer.close();
+
+        assertPattern(0, 10 * TEST_CHUNK_SIZE, first.toByteArray());
+        assertPattern(0, 10 * TEST_CHUNK_SIZE, second.toByteArray());
+        assertEquals(0, capturer.getSubscribers().get(0).getOverruns());
+        assertEquals(0, capturer.getSubscribers().get(1).getOverruns());
+    }
+
+    /**
+     * Creates a capturer of the line whose publisher and deliverer only run when the test runs
+     * them.
+     */
+    private JavaAudioCapturer createManualCapturer(TestTargetDataLine line) {
+        return JavaAudioCapturer.create(
+                TEST_DEVICE, TEST_FORMAT, line, mExecutor, mDeliveryExecutor, TEST_CHUNK_SIZE);
+    }
+
+    private JavaAudioCapturer.TargetDataLineWatchingPublisher capturePublisher() {
+        ArgumentCaptor<Runnable> runnableArgCaptor = ArgumentCaptor.forClass(Runnable.class);
+        verify(mExecutor).execute(runnableArgCaptor.capture());
+        return (JavaAudioCapturer.TargetDataLineWatchingPublisher) runnableArgCaptor.getValue();
+    }
+
+    /**
+     * Asserts that written holds length bytes of the {@link TestTargetDataLine} pattern, from the
+     * given position on.
+     */
+    private static void assertPattern(long position, long length, byte[] written) {
+        assertEquals(length, written.length);
+        for (int i = 0; i < written.length; i++) {
+            assertEquals(TestTargetDataLine.byteAt(position + i), written[i]);
+        }
+    }
+
+    /** Custom {@link OutputStream} whose writes block until the given latch is released. */
+    private static class BlockingOutputStream extends OutputStream {
+        private final CountDownLatch mUnblock;
 
-        private RunnableOutputStream(Runnable runnable) {
-            mRunnable = runnable;
+        private BlockingOutputStream(CountDownLatch unblock) {
+            mUnblock = unblock;
         }
 
         @Override
         public void write(int b) throws IOException {
-            mRunnable.run();
+            write(new byte[] {(byte) b}, 0, 1);
         }
 
         @Override
         public void write(byte[] b, int off, int len) throws IOException {
-            mRunnable.run();
+            try {
+                mUnblock.await();
+            } catch (InterruptedException ie) {
+                throw new InterruptedIOException();
+            }
+        }
+    }
+
+    /** Custom {@link OutputStream} that fails like a closed output does. */
+    private static class FailingOutputStream extends OutputStream {
+        @Override
+        public void write(int b) {
+            throw new IllegalStateException("Output closed");
         }
 
         @Override
-        public void write(byte[] b) {
-            mRunnable.run();
+        public void write(byte[] b, int off, int len) {
+            throw new IllegalStateException("Output closed");
         }
     }
 }
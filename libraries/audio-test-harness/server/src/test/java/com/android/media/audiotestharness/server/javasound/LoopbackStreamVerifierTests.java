@@ -0,0 +1,148 @@
+/*
+ * Copyright (C) 2026 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.android.media.audiotestharness.server.javasound;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.junit.runners.JUnit4;
+
+import java.io.ByteArrayOutputStream;
+
+import javax.sound.sampled.AudioFormat;
+
+/** Tests for the {@link LoopbackStreamVerifier} class. */
+@RunWith(JUnit4.class)
+public class LoopbackStreamVerifierTests {
+
+    /** 96kHz, 24-bit, 8 channels, 2304000 bytes per second. */
+    private static final AudioFormat FORMAT =
+            new AudioFormat(
+                    /* sampleRate= */ 96000,
+                    /* sampleSizeInBits= */ 24,
+                    /* channels= */ 8,
+                    /* signed= */ true,
+                    /* bigEndian= */ false);
+
+    private static final int PACKET_SIZE = LoopbackTargetDataLine.packetSizeFor(FORMAT);
+
+    private static final int FRAMES_PER_PACKET = PACKET_SIZE / FORMAT.getFrameSize();
+
+    private LoopbackStreamVerifier mVerifier;
+
+    @Before
+    public void setUp() throws Exception {
+        mVerifier = new LoopbackStreamVerifier(FORMAT);
+    }
+
+    @Test
+    public void accept_findsAllPackets_oddChunkSizes() throws Exception {
+        byte[] data = capture(/* packets= */ 20);
+
+        // Chunk sizes that do not line up with packets or headers.
+        int position = 0;
+        int chunk = 1;
+        while (position < data.length) {
+            int count = Math.min(chunk, data.length - position);
+            mVerifier.accept(data, position, count);
+            position += count;
+            chunk = chunk * 7 % 1031 + 1;
+        }
+
+        assertEquals(20, mVerifier.getPackets());
+        assertEquals(0, mVerifier.getLostPackets());
+        assertEquals(0, mVerifier.getReorderedPackets());
+        assertEquals(0, mVerifier.getResyncs());
+        assertEquals(0, mVerifier.getSkippedBytes());
+        assertTrue(mVerifier.getLatencyPercentileNanos(50) >= 0);
+    }
+
+    @Test
+    public void accept_countsLostPackets_wholePacketsDropped() throws Exception {
+        byte[] data = capture(/* packets= */ 10);
+
+        mVerifier.accept(data, 0, 3 * PACKET_SIZE);
+        mVerifier.accept(data, 5 * PACKET_SIZE, 5 * PACKET_SIZE);
+
+        assertEquals(8, mVerifier.getPackets());
+        assertEquals(2, mVerifier.getLostPackets());
+        assertEquals(2 * FRAMES_PER_PACKET, mVerifier.getLostFrames());
+        assertEquals(0, mVerifier.getResyncs());
+    }
+
+    @Test
+    public void accept_resyncsAndCountsLostPackets_dataDroppedWithinPacket() throws Exception {
+        byte[] data = capture(/* packets= */ 10);
+
+        // Drop from part way through the second packet to part way through the fourth, so that
+        // the next header is expected within the fourth packet.
+        mVerifier.accept(data, 0, PACKET_SIZE + 100);
+        mVerifier.accept(data, 3 * PACKET_SIZE + 7, 7 * PACKET_SIZE - 7);
+
+        assertEquals(8, mVerifier.getPackets());
+        assertEquals(2, mVerifier.getLostPackets());
+        assertEquals(1, mVerifier.getResyncs());
+    }
+
+    @Test
+    public void accept_countsReorderedPackets() throws Exception {
+        byte[] data = capture(/* packets= */ 4);
+
+        mVerifier.accept(data, 0, PACKET_SIZE);
+        mVerifier.accept(data, 2 * PACKET_SIZE, PACKET_SIZE);
+        mVerifier.accept(data, PACKET_SIZE, PACKET_SIZE);
+        mVerifier.accept(data, 3 * PACKET_SIZE, PACKET_SIZE);
+
+        assertEquals(4, mVerifier.getPackets());
+        assertEquals(1, mVerifier.getReorderedPackets());
+        assertEquals(1, mVerifier.getLostPackets());
+    }
+
+    @Test
+    public void accept_skipsToFirstPacket_captureStartsWithinPacket() throws Exception {
+        byte[] data = capture(/* packets= */ 4);
+
+        mVerifier.accept(data, 50, data.length - 50);
+
+        assertEquals(3, mVerifier.getPackets());
+        assertEquals(0, mVerifier.getLostPackets());
+        assertEquals(0, mVerifier.getResyncs());
+        assertEquals(PACKET_SIZE - 50, mVerifier.getSkippedBytes());
+    }
+
+    @Test
+    public void getLatencyPercentileNanos_returnsNegative_noPackets() throws Exception {
+        assertEquals(-1, mVerifier.getLatencyPercentileNanos(99));
+    }
+
+    /** Reads whole packets of data from a new {@link LoopbackTargetDataLine}. */
+    private static byte[] capture(int packets) {
+        LoopbackTargetDataLine line = new LoopbackTargetDataLine(FORMAT);
+        line.open(FORMAT);
+        line.start();
+        ByteArrayOutputStream output = new ByteArrayOutputStream();
+        byte[] buffer = new byte[PACKET_SIZE];
+        for (int i = 0; i < packets; i++) {
+            output.write(buffer, 0, line.read(buffer, 0, buffer.length));
+        }
+        line.close();
+        return output.toByteArray();
+    }
+}
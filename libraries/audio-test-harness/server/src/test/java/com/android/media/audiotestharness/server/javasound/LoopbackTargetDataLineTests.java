@@ -0,0 +1,131 @@
+/*
+ * Copyright (C) 2026 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.android.media.audiotestharness.server.javasound;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.junit.runners.JUnit4;
+
+import java.nio.ByteBuffer;
+
+import javax.sound.sampled.AudioFormat;
+
+/** Tests for the {@link LoopbackTargetDataLine} class. */
+@RunWith(JUnit4.class)
+public class LoopbackTargetDataLineTests {
+
+    /** 48kHz, 16-bit, stereo, 192000 bytes per second. */
+    private static final AudioFormat FORMAT =
+            new AudioFormat(
+                    /* sampleRate= */ 48000,
+                    /* sampleSizeInBits= */ 16,
+                    /* channels= */ 2,
+                    /* signed= */ true,
+                    /* bigEndian= */ false);
+
+    @Test
+    public void packetSizeFor_returnsMillisecondOfFrames() throws Exception {
+        assertEquals(48 * 4, LoopbackTargetDataLine.packetSizeFor(FORMAT));
+    }
+
+    @Test
+    public void packetSizeFor_returnsEnoughFramesForHeader_lowRateFormat() throws Exception {
+        AudioFormat format =
+                new AudioFormat(
+                        /* sampleRate= */ 8000,
+                        /* sampleSizeInBits= */ 8,
+                        /* channels= */ 1,
+                        /* signed= */ true,
+                        /* bigEndian= */ false);
+
+        assertEquals(
+                LoopbackTargetDataLine.HEADER_SIZE_BYTES,
+                LoopbackTargetDataLine.packetSizeFor(format));
+    }
+
+    @Test
+    public void read_stampsEachPacketInSequence() throws Exception {
+        LoopbackTargetDataLine line = new LoopbackTargetDataLine(FORMAT);
+        line.open(FORMAT);
+        line.start();
+        int packetSize = LoopbackTargetDataLine.packetSizeFor(FORMAT);
+
+        long before = System.nanoTime();
+        byte[] data = new byte[packetSize * 3];
+        assertEquals(data.length, line.read(data, 0, data.length));
+
+        ByteBuffer buffer = ByteBuffer.wrap(data);
+        for (int i = 0; i < 3; i++) {
+            buffer.position(i * packetSize);
+            assertEquals(LoopbackTargetDataLine.MAGIC, buffer.getInt());
+            assertEquals(i, buffer.getLong());
+            long timestamp = buffer.getLong();
+            assertTrue(timestamp >= before && timestamp <= System.nanoTime());
+        }
+        line.close();
+    }
+
+    @Test
+    public void read_generatesDataAtRateOfFormat() throws Exception {
+        LoopbackTargetDataLine line = new LoopbackTargetDataLine(FORMAT);
+        line.open(FORMAT);
+        line.start();
+
+        // 100ms worth of data at 192000 bytes per second.
+        byte[] data = new byte[19200];
+        long start = System.nanoTime();
+        line.read(data, 0, data.length);
+        long elapsedMillis = (System.nanoTime() - start) / 1000000;
+
+        assertTrue(elapsedMillis >= 90);
+        assertEquals(data.length / FORMAT.getFrameSize(), line.getLongFramePosition());
+        line.close();
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void read_throwsIllegalArgumentException_partialFrame() throws Exception {
+        LoopbackTargetDataLine line = new LoopbackTargetDataLine(FORMAT);
+        line.open(FORMAT);
+        line.start();
+
+        line.read(new byte[6], 0, 3);
+    }
+
+    @Test
+    public void read_returnsZero_stopped() throws Exception {
+        LoopbackTargetDataLine line = new LoopbackTargetDataLine(FORMAT);
+        line.open(FORMAT);
+
+        assertEquals(0, line.read(new byte[4], 0, 4));
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void open_throwsIllegalArgumentException_otherFormat() throws Exception {
+        LoopbackTargetDataLine line = new LoopbackTargetDataLine(FORMAT);
+
+        line.open(
+                new AudioFormat(
+                        /* sampleRate= */ 44100,
+                        /* sampleSizeInBits= */ 16,
+                        /* channels= */ 1,
+                        /* signed= */ true,
+                        /* bigEndian= */ false));
+    }
+}
@@ -0,0 +1,186 @@
+/*
+ * Copyright (C) 2026 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.android.media.audiotestharness.server.javasound;
+
+import javax.sound.sampled.AudioFormat;
+import javax.sound.sampled.AudioSystem;
+import javax.sound.sampled.Control;
+import javax.sound.sampled.Line;
+import javax.sound.sampled.LineListener;
+import javax.sound.sampled.TargetDataLine;
+
+/**
+ * Test implementation of the {@link TargetDataLine} interface that produces a known byte pattern,
+ * so that readers can verify what they receive.
+ *
+ * <p>The byte at each position of the captured data is {@link #byteAt(long)}. Reads never block,
+ * and a hook run after each read lets tests act at known positions of the captured data.
+ */
+public class TestTargetDataLine implements TargetDataLine {
+
+    private volatile boolean mOpen = true;
+    private volatile boolean mRunning = false;
+    private volatile long mPosition = 0;
+    private volatile Runnable mOnRead = () -> {};
+
+    /** Returns the byte of captured data at a position. */
+    public static byte byteAt(long position) {
+        // A prime period, so that the pattern does not line up with buffer sizes.
+        return (byte) (position % 251);
+    }
+
+    /** Returns the number of bytes read from this line. */
+    public long getPosition() {
+        return mPosition;
+    }
+
+    /** Sets a hook run after each read, once {@link #getPosition()} includes the data read. */
+    public void setOnRead(Runnable onRead) {
+        mOnRead = onRead;
+    }
+
+    /**
+     * {@inheritDoc}
+     *
+     * <p>Reads len bytes of the pattern right away, or nothing once the line is closed.
+     */
+    @Override
+    public int read(byte[] b, int off, int len) {
+        if (!mOpen) {
+            return 0;
+        }
+        for (int i = 0; i < len; i++) {
+            b[off + i] = byteAt(mPosition + i);
+        }
+        mPosition += len;
+        mOnRead.run();
+        return len;
+    }
+
+    @Override
+    public void open(AudioFormat format, int bufferSize) {
+        mOpen = true;
+    }
+
+    @Override
+    public void open(AudioFormat format) {
+        mOpen = true;
+    }
+
+    @Override
+    public void open() {
+        mOpen = true;
+    }
+
+    @Override
+    public void start() {
+        mRunning = true;
+    }
+
+    @Override
+    public void stop() {
+        mRunning = false;
+    }
+
+    @Override
+    public void close() {
+        mOpen = false;
+        mRunning = false;
+    }
+
+    @Override
+    public boolean isOpen() {
+        return mOpen;
+    }
+
+    @Override
+    public boolean isRunning() {
+        return mRunning;
+    }
+
+    @Override
+    public boolean isActive() {
+        return mRunning;
+    }
+
+    @Override
+    public void drain() {}
+
+    @Override
+    public void flush() {}
+
+    @Override
+    public AudioFormat getFormat() {
+        return null;
+    }
+
+    @Override
+    public int getBufferSize() {
+        return 0;
+    }
+
+    @Override
+    public int available() {
+        return mOpen ? Integer.MAX_VALUE : 0;
+    }
+
+    @Override
+    public int getFramePosition() {
+        return (int) mPosition;
+    }
+
+    @Override
+    public long getLongFramePosition() {
+        return mPosition;
+    }
+
+    @Override
+    public long getMicrosecondPosition() {
+        return AudioSystem.NOT_SPECIFIED;
+    }
+
+    @Override
+    public float getLevel() {
+        return AudioSystem.NOT_SPECIFIED;
+    }
+
+    @Override
+    public Line.Info getLineInfo() {
+        return new Line.Info(TargetDataLine.class);
+    }
+
+    @Override
+    public Control[] getControls() {
+        return new Control[0];
+    }
+
+    @Override
+    public boolean isControlSupported(Control.Type control) {
+        return false;
+    }
+
+    @Override
+    public Control getControl(Control.Type control) {
+        throw new IllegalArgumentException("No controls are supported");
+    }
+
+    @Override
+    public void addLineListener(LineListener listener) {}
+
+    @Override
+    public void removeLineListener(LineListener listener) {}
+}
@@ -73,6 +73,12 @@ public class AudioCaptureSessionTests {
         verify(mAudioCapturer).attachOutput(mCaptureChunkStreamObserverOutputStream);
     }
 
+    @Test
+    public void create_setsOverflowHandlerOnOutputStream() throws Exception {
+        AudioCaptureSession.create(1, mAudioCapturer, mCaptureChunkStreamObserverOutputStream);
+        verify(mCaptureChunkStreamObserverOutputStream).setOnOverflowHandler(any());
+    }
+
     @Test
     public void create_returnsNonNullSession() throws Exception {
         assertNotNull(
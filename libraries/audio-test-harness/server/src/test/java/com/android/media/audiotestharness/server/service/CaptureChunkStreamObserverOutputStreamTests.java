@@ -28,6 +28,7 @@ import com.android.media.audiotestharness.proto.AudioTestHarnessService;
 
 import com.google.common.collect.ImmutableList;
 
+import io.grpc.Status;
 import io.grpc.stub.ServerCallStreamObserver;
 import io.grpc.stub.StreamObserver;
 
@@ -49,6 +50,7 @@ import java.util.Random;
 import java.util.concurrent.CountDownLatch;
 import java.util.concurrent.ThreadLocalRandom;
 import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
 
 /** Tests for the {@link CaptureChunkStreamObserverOutputStream}. */
 @RunWith(JUnitParamsRunner.class)
@@ -277,6 +279,161 @@ public class CaptureChunkStreamObserverOutputStreamTests {
         assertTrue(stream.awaitClose(/* timeout= */ 1, TimeUnit.HOURS));
     }
 
+    @Test
+    public void write_queuesChunks_untilClientIsReady() throws Exception {
+        FlowControlledStreamObserver observer = new FlowControlledStreamObserver();
+        CaptureChunkStreamObserverOutputStream stream =
+                CaptureChunkStreamObserverOutputStream.create(
+                        observer,
+                        mCountDownLatch,
+                        CaptureChunkStreamObserverOutputStream.OverflowPolicy.BLOCK,
+                        /* maxBufferedBytes= */ 64,
+                        /* transportCopiesMessages= */ true);
+        byte[][] testBytes = generateRandomByteArrayData(/* numArrays= */ 3);
+
+        observer.setReady(false);
+        stream.write(testBytes[0]);
+        stream.write(testBytes[1]);
+        assertEquals(0, observer.mWrittenBytes.size());
+
+        observer.setReady(true);
+        stream.write(testBytes[2]);
+
+        assertListsContainSameByteArrays(
+                "Queued chunks", Arrays.asList(testBytes), observer.mWrittenBytes);
+        assertEquals(48, stream.getSentBytes());
+        assertEquals(24, stream.getPeakBufferedBytes());
+    }
+
+    @Test
+    public void write_reusesWrittenBuffer_whenTransportCopiesMessages() throws Exception {
+        FlowControlledStreamObserver observer = new FlowControlledStreamObserver();
+        CaptureChunkStreamObserverOutputStream stream =
+                CaptureChunkStreamObserverOutputStream.create(
+                        observer,
+                        mCountDownLatch,
+                        CaptureChunkStreamObserverOutputStream.OverflowPolicy.BLOCK,
+                        /* maxBufferedBytes= */ 64,
+                        /* transportCopiesMessages= */ true);
+        byte[] buffer = new byte[8];
+        List<byte[]> expected = new ArrayList<>();
+
+        // Like the capturer, reuse one buffer for every write, whether the chunk is sent or queued
+        for (int i = 0; i < 6; i++) {
+            observer.setReady(i % 3 == 2);
+            Arrays.fill(buffer, (byte) i);
+            expected.add(buffer.clone());
+            stream.write(buffer);
+        }
+
+        assertListsContainSameByteArrays("Reused buffer", expected, observer.mWrittenBytes);
+    }
+
+    @Test
+    public void write_dropsOldestChunks_whenQueueIsFull() throws Exception {
+        FlowControlledStreamObserver observer = new FlowControlledStreamObserver();
+        CaptureChunkStreamObserverOutputStream stream =
+                CaptureChunkStreamObserverOutputStream.create(
+                        observer,
+                        mCountDownLatch,
+                        CaptureChunkStreamObserverOutputStream.OverflowPolicy.DROP_OLDEST,
+                        /* maxBufferedBytes= */ 16,
+                        /* transportCopiesMessages= */ false);
+        byte[][] chunks = new byte[4][8];
+        for (int i = 0; i < chunks.length; i++) {
+            Arrays.fill(chunks[i], (byte) i);
+        }
+
+        observer.setReady(false);
+        for (byte[] chunk : chunks) {
+            stream.write(chunk);
+        }
+        observer.setReady(true);
+
+        assertListsContainSameByteArrays(
+                "Newest chunks", ImmutableList.of(chunks[2], chunks[3]), observer.mWrittenBytes);
+        assertEquals(16, stream.getDroppedBytes());
+        assertEquals(2, stream.getDroppedChunks());
+        assertEquals(16, stream.getPeakBufferedBytes());
+    }
+
+    @Test
+    public void write_failsCall_whenQueueIsFull() throws Exception {
+        FlowControlledStreamObserver observer = new FlowControlledStreamObserver();
+        CaptureChunkStreamObserverOutputStream stream =
+                CaptureChunkStreamObserverOutputStream.create(
+                        observer,
+                        mCountDownLatch,
+                        CaptureChunkStreamObserverOutputStream.OverflowPolicy.FAIL,
+                        /* maxBufferedBytes= */ 16,
+                        /* transportCopiesMessages= */ false);
+        AtomicInteger overflows = new AtomicInteger();
+        stream.setOnOverflowHandler(overflows::incrementAndGet);
+
+        observer.setReady(false);
+        for (int i = 0; i < 4; i++) {
+            stream.write(new byte[8]);
+        }
+        observer.setReady(true);
+
+        assertEquals(
+                Status.Code.RESOURCE_EXHAUSTED, Status.fromThrowable(observer.mError).getCode());
+        assertEquals(1, overflows.get());
+        assertEquals(0, observer.mWrittenBytes.size());
+        assertEquals(24, stream.getDroppedBytes());
+    }
+
+    @Test
+    public void write_blocks_untilClientCatchesUp() throws Exception {
+        FlowControlledStreamObserver observer = new FlowControlledStreamObserver();
+        CaptureChunkStreamObserverOutputStream stream =
+                CaptureChunkStreamObserverOutputStream.create(
+                        observer,
+                        mCountDownLatch,
+                        CaptureChunkStreamObserverOutputStream.OverflowPolicy.BLOCK,
+                        /* maxBufferedBytes= */ 16,
+                        /* transportCopiesMessages= */ false);
+        observer.setReady(false);
+        stream.write(new byte[8]);
+        stream.write(new byte[8]);
+
+        Thread writer = new Thread(() -> stream.write(new byte[8]));
+        writer.start();
+        writer.join(/* millis= */ 300);
+        assertTrue(writer.isAlive());
+        assertEquals(0, observer.mWrittenBytes.size());
+
+        observer.setReady(true);
+        writer.join();
+        assertEquals(3, observer.mWrittenBytes.size());
+        assertEquals(0, stream.getDroppedBytes());
+        assertTrue(stream.getBlockedNanos() >= TimeUnit.MILLISECONDS.toNanos(300));
+    }
+
+    @Test
+    public void close_unblocksBlockedWrite() throws Exception {
+        FlowControlledStreamObserver observer = new FlowControlledStreamObserver();
+        CaptureChunkStreamObserverOutputStream stream =
+                CaptureChunkStreamObserverOutputStream.create(
+                        observer,
+                        new CountDownLatch(1),
+                        CaptureChunkStreamObserverOutputStream.OverflowPolicy.BLOCK,
+                        /* maxBufferedBytes= */ 8,
+                        /* transportCopiesMessages= */ false);
+        observer.setReady(false);
+        stream.write(new byte[8]);
+
+        Thread writer = new Thread(() -> stream.write(new byte[8]));
+        writer.start();
+        while (writer.getState() != Thread.State.TIMED_WAITING) {
+            Thread.sleep(/* millis= */ 10);
+        }
+        stream.close();
+        writer.join();
+
+        assertEquals(0, observer.mWrittenBytes.size());
+    }
+
     /**
      * Asserts that the two provided {@link List}s contain the same byte arrays in the same order.
      *
@@ -331,7 +488,7 @@ public class CaptureChunkStreamObserverOutputStreamTests {
         return new ServerCallStreamObserver<AudioTestHarnessService.CaptureChunk>() {
             @Override
             public boolean isReady() {
-                return false;
+                return true;
             }
 
             @Override
@@ -369,4 +526,67 @@ public class CaptureChunkStreamObserverOutputStreamTests {
             public void onCompleted() {}
         };
     }
+
+    /**
+     * {@link ServerCallStreamObserver} whose readiness is controlled by the test, and which calls
+     * the on ready handler when it becomes ready like gRPC does.
+     */
+    private static class FlowControlledStreamObserver
+            extends ServerCallStreamObserver<AudioTestHarnessService.CaptureChunk> {
+        final List<byte[]> mWrittenBytes = new ArrayList<>();
+        volatile Throwable mError;
+        private volatile boolean mReady = true;
+        private volatile Runnable mOnReadyHandler;
+
+        void setReady(boolean ready) {
+            mReady = ready;
+            if (ready && mOnReadyHandler != null) {
+                mOnReadyHandler.run();
+            }
+        }
+
+        @Override
+        public boolean isReady() {
+            return mReady;
+        }
+
+        @Override
+        public void setOnReadyHandler(Runnable onReadyHandler) {
+            mOnReadyHandler = onReadyHandler;
+        }
+
+        @Override
+        public void disableAutoInboundFlowControl() {}
+
+        @Override
+        public void request(int count) {}
+
+        @Override
+        public void setMessageCompression(boolean enable) {}
+
+        @Override
+        public boolean isCancelled() {
+            return false;
+        }
+
+        @Override
+        public void setOnCancelHandler(Runnable onCancelHandler) {}
+
+        @Override
+        public void setCompression(String compression) {}
+
+        @Override
+        public void onNext(AudioTestHarnessService.CaptureChunk value) {
+            // Copy the data out like a serializing transport
+            mWrittenBytes.add(value.getData().toByteArray());
+        }
+
+        @Override
+        public void onError(Throwable t) {
+            mError = t;
+        }
+
+        @Override
+        public void onCompleted() {}
+    }
 }
@@ -0,0 +1,373 @@
+/*
+ * Copyright (C) 2026 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.android.media.audiotestharness.server.service;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import com.android.media.audiotestharness.proto.AudioDeviceOuterClass.AudioDevice;
+import com.android.media.audiotestharness.proto.AudioFormatOuterClass.AudioFormat;
+import com.android.media.audiotestharness.proto.AudioTestHarnessGrpc;
+import com.android.media.audiotestharness.proto.AudioTestHarnessService;
+import com.android.media.audiotestharness.server.config.SharedHostConfiguration;
+import com.android.media.audiotestharness.server.core.AudioCapturer;
+import com.android.media.audiotestharness.server.core.AudioSystemService;
+
+import com.google.common.collect.ImmutableSet;
+
+import io.grpc.ManagedChannel;
+import io.grpc.Status;
+import io.grpc.inprocess.InProcessChannelBuilder;
+import io.grpc.inprocess.InProcessServerBuilder;
+import io.grpc.stub.ClientCallStreamObserver;
+import io.grpc.stub.ClientResponseObserver;
+import io.grpc.stub.ServerCallStreamObserver;
+import io.grpc.testing.GrpcCleanupRule;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.junit.runners.JUnit4;
+
+import java.io.File;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Tests the flow control of the Capture procedure end to end, with a synthetic high rate capturer
+ * and clients that read slower than it produces.
+ */
+@RunWith(JUnit4.class)
+public class CaptureFlowControlTests {
+
+    /** 8 channels of 32-bit samples at 192kHz, about 6MB per second. */
+    private static final AudioFormat HIGH_RATE_FORMAT =
+            AudioFormat.newBuilder()
+                    .setSampleRate(192000.0f)
+                    .setSampleSizeBits(32)
+                    .setChannels(8)
+                    .setSigned(true)
+                    .setBigEndian(false)
+                    .build();
+
+    private static final int BYTES_PER_SECOND = 192000 * 4 * 8;
+
+    /** 10ms of audio per chunk. */
+    private static final int CHUNK_SIZE = BYTES_PER_SECOND / 100;
+
+    private static final int MAX_BUFFERED_BYTES = 1024 * 1024;
+
+    private static final long CAPTURE_DURATION_MS = 2000;
+
+    /** A slow client takes 40ms to process each 10ms chunk. */
+    private static final long SLOW_CLIENT_DELAY_MS = 40;
+
+    @Rule public GrpcCleanupRule mGrpcCleanupRule = new GrpcCleanupRule();
+
+    private final List<CaptureChunkStreamObserverOutputStream> mStreams =
+            new CopyOnWriteArrayList<>();
+
+    private SyntheticAudioCapturer mCapturer;
+
+    @Test
+    public void capture_dropOldest_keepsMemoryBounded_slowClient() throws Exception {
+        CaptureClient client =
+                capture(
+                        CaptureChunkStreamObserverOutputStream.OverflowPolicy.DROP_OLDEST,
+                        SLOW_CLIENT_DELAY_MS);
+
+        CaptureChunkStreamObserverOutputStream stream = mStreams.get(0);
+        assertNull(client.mError);
+        assertTrue(stream.getPeakBufferedBytes() <= MAX_BUFFERED_BYTES);
+        assertTrue(stream.getDroppedChunks() > 0);
+        assertEquals(stream.getDroppedChunks() * CHUNK_SIZE, stream.getDroppedBytes());
+        assertInOrder(client.mSequences, /* contiguous= */ false);
+        // Every chunk missing between two received ones was dropped by the policy.
+        List<Integer> sequences = client.mSequences;
+        int missing =
+                sequences.get(sequences.size() - 1) - sequences.get(0) + 1 - sequences.size();
+        assertTrue(missing > 0);
+        assertTrue(missing <= stream.getDroppedChunks());
+    }
+
+    @Test
+    public void capture_block_keepsMemoryBounded_slowClient() throws Exception {
+        CaptureClient client =
+                capture(
+                        CaptureChunkStreamObserverOutputStream.OverflowPolicy.BLOCK,
+                        SLOW_CLIENT_DELAY_MS);
+
+        CaptureChunkStreamObserverOutputStream stream = mStreams.get(0);
+        assertNull(client.mError);
+        assertTrue(stream.getPeakBufferedBytes() <= MAX_BUFFERED_BYTES);
+        // The queue filled up, so writes waited for the client.
+        assertTrue(stream.getPeakBufferedBytes() > MAX_BUFFERED_BYTES - CHUNK_SIZE);
+        assertTrue(stream.getBlockedNanos() > 0);
+        assertEquals(0, stream.getDroppedBytes());
+        assertInOrder(client.mSequences, /* contiguous= */ true);
+    }
+
+    @Test
+    public void capture_fail_failsCall_slowClient() throws Exception {
+        CaptureClient client =
+                capture(
+                        CaptureChunkStreamObserverOutputStream.OverflowPolicy.FAIL,
+                        SLOW_CLIENT_DELAY_MS);
+
+        CaptureChunkStreamObserverOutputStream stream = mStreams.get(0);
+        assertEquals(Status.Code.RESOURCE_EXHAUSTED, Status.fromThrowable(client.mError).getCode());
+        assertTrue(stream.getPeakBufferedBytes() <= MAX_BUFFERED_BYTES);
+        // The queued chunks and the one that did not fit were dropped when the call failed.
+        assertTrue(stream.getDroppedBytes() > MAX_BUFFERED_BYTES);
+        assertEquals(stream.getDroppedChunks() * CHUNK_SIZE, stream.getDroppedBytes());
+        assertInOrder(client.mSequences, /* contiguous= */ true);
+    }
+
+    @Test
+    public void capture_keepsUpWithHighRateFormat_fastClient() throws Exception {
+        CaptureClient client =
+                capture(
+                        CaptureChunkStreamObserverOutputStream.OverflowPolicy.DROP_OLDEST,
+                        /* delayMs= */ 0);
+
+        CaptureChunkStreamObserverOutputStream stream = mStreams.get(0);
+        assertNull(client.mError);
+        assertTrue(stream.getPeakBufferedBytes() <= MAX_BUFFERED_BYTES);
+        assertEquals(0, stream.getDroppedBytes());
+        assertEquals(0, stream.getDroppedChunks());
+        // Everything received was sent, in whole chunks and without gaps.
+        assertTrue(client.mReceivedBytes <= stream.getSentBytes());
+        assertEquals(client.mSequences.size() * (long) CHUNK_SIZE, client.mReceivedBytes);
+        assertInOrder(client.mSequences, /* contiguous= */ true);
+    }
+
+    /**
+     * Captures for {@link #CAPTURE_DURATION_MS} through an in-process server, with a client that
+     * takes delayMs to process each chunk, and returns the client once the capturer is closed.
+     */
+    private CaptureClient capture(
+            CaptureChunkStreamObserverOutputStream.OverflowPolicy overflowPolicy, long delayMs)
+            throws Exception {
+        mCapturer = new SyntheticAudioCapturer();
+        AudioSystemService audioSystemService =
+                new AudioSystemService() {
+                    @Override
+                    public ImmutableSet<AudioDevice> getDevices() {
+                        return ImmutableSet.of();
+                    }
+
+                    @Override
+                    public AudioCapturer createCapturerFor(
+                            AudioDevice device, AudioFormat audioFormat) {
+                        return mCapturer;
+                    }
+                };
+        StreamObserverOutputStreamFactory streamFactory =
+                new StreamObserverOutputStreamFactory(
+                        overflowPolicy,
+                        MAX_BUFFERED_BYTES,
+                        /* transportCopiesMessages= */ false) {
+                    @Override
+                    public CaptureChunkStreamObserverOutputStream
+                            createNewCaptureChunkStreamObserverOutputStream(
+                                    ServerCallStreamObserver<AudioTestHarnessService.CaptureChunk>
+                                            streamObserver) {
+                        CaptureChunkStreamObserverOutputStream stream =
+                                super.createNewCaptureChunkStreamObserverOutputStream(
+                                        streamObserver);
+                        mStreams.add(stream);
+                        return stream;
+                    }
+                };
+
+        // Not a direct executor, so that the client and the capturer run on their own threads.
+        String serverName = InProcessServerBuilder.generateName();
+        mGrpcCleanupRule.register(
+                InProcessServerBuilder.forName(serverName)
+                        .addService(
+                                new AudioTestHarnessImpl(
+                                        audioSystemService,
+                                        new AudioCaptureSessionFactoryImpl(streamFactory),
+                                        SharedHostConfiguration.getDefault()))
+                        .build()
+                        .start());
+        ManagedChannel channel =
+                mGrpcCleanupRule.register(InProcessChannelBuilder.forName(serverName).build());
+
+        CaptureClient client = new CaptureClient(delayMs);
+        AudioTestHarnessGrpc.newStub(channel)
+                .capture(AudioTestHarnessService.CaptureRequest.getDefaultInstance(), client);
+
+        if (!client.mDone.await(CAPTURE_DURATION_MS, TimeUnit.MILLISECONDS)) {
+            client.cancel();
+        }
+        assertTrue(mCapturer.mClosed.await(/* timeout= */ 10, TimeUnit.SECONDS));
+        return client;
+    }
+
+    /** Asserts that chunks were received in order, and without gaps if contiguous. */
+    private static void assertInOrder(List<Integer> sequences, boolean contiguous) {
+        assertTrue(sequences.size() > 0);
+        for (int i = 1; i < sequences.size(); i++) {
+            if (contiguous) {
+                assertEquals(sequences.get(i - 1) + 1, (int) sequences.get(i));
+            } else {
+                assertTrue(sequences.get(i) > sequences.get(i - 1));
+            }
+        }
+    }
+
+    /**
+     * Client that controls inbound flow itself, requesting each chunk only once it has spent
+     * mDelayMs processing the previous one.
+     */
+    private static class CaptureClient
+            implements ClientResponseObserver<
+                    AudioTestHarnessService.CaptureRequest, AudioTestHarnessService.CaptureChunk> {
+        private final long mDelayMs;
+        private final CountDownLatch mDone = new CountDownLatch(1);
+        private final List<Integer> mSequences = Collections.synchronizedList(new ArrayList<>());
+        private volatile ClientCallStreamObserver<AudioTestHarnessService.CaptureRequest>
+                mRequestStream;
+        private volatile long mReceivedBytes;
+        private volatile Throwable mError;
+
+        CaptureClient(long delayMs) {
+            mDelayMs = delayMs;
+        }
+
+        @Override
+        public void beforeStart(
+                ClientCallStreamObserver<AudioTestHarnessService.CaptureRequest> requestStream) {
+            mRequestStream = requestStream;
+            requestStream.disableAutoInboundFlowControl();
+        }
+
+        @Override
+        public void onNext(AudioTestHarnessService.CaptureChunk chunk) {
+            mSequences.add(chunk.getData().asReadOnlyByteBuffer().getInt(0));
+            mReceivedBytes += chunk.getData().size();
+            if (mDelayMs > 0) {
+                try {
+                    Thread.sleep(mDelayMs);
+                } catch (InterruptedException ie) {
+                    Thread.currentThread().interrupt();
+                }
+            }
+            mRequestStream.request(1);
+        }
+
+        @Override
+        public void onError(Throwable t) {
+            // Cancelling the call ends it with an error too.
+            if (Status.fromThrowable(t).getCode() != Status.Code.CANCELLED) {
+                mError = t;
+            }
+            mDone.countDown();
+        }
+
+        @Override
+        public void onCompleted() {
+            mDone.countDown();
+        }
+
+        void cancel() {
+            mRequestStream.cancel("Capture finished", /* cause= */ null);
+        }
+    }
+
+    /**
+     * {@link AudioCapturer} that publishes chunks of {@link #HIGH_RATE_FORMAT} audio as fast as a
+     * real device would, each starting with its sequence number.
+     */
+    private static class SyntheticAudioCapturer implements AudioCapturer {
+        private final List<OutputStream> mOutputs = new CopyOnWriteArrayList<>();
+        private final CountDownLatch mClosed = new CountDownLatch(1);
+        private final Thread mPublisher = new Thread(this::publish);
+        private volatile boolean mRunning;
+        private volatile long mWrittenBytes;
+
+        @Override
+        public void open() {
+            mRunning = true;
+            mPublisher.start();
+        }
+
+        @Override
+        public void close() {
+            mRunning = false;
+            mClosed.countDown();
+        }
+
+        @Override
+        public void attachOutput(File file) {
+            throw new UnsupportedOperationException();
+        }
+
+        @Override
+        public void attachOutput(OutputStream outputStream) {
+            mOutputs.add(outputStream);
+        }
+
+        @Override
+        public AudioFormat getAudioFormat() {
+            return HIGH_RATE_FORMAT;
+        }
+
+        @Override
+        public AudioDevice getAudioDevice() {
+            return AudioDevice.getDefaultInstance();
+        }
+
+        private void publish() {
+            byte[] chunk = new byte[CHUNK_SIZE];
+            long start = System.nanoTime();
+            int sequence = 0;
+            while (mRunning) {
+                long due = (System.nanoTime() - start) * BYTES_PER_SECOND / 1000000000L;
+                if (mWrittenBytes + CHUNK_SIZE > due) {
+                    try {
+                        Thread.sleep(/* millis= */ 1);
+                    } catch (InterruptedException ie) {
+                        return;
+                    }
+                    continue;
+                }
+                // Like a real capturer, the same buffer is reused for every chunk.
+                ByteBuffer.wrap(chunk).putInt(0, sequence++);
+                for (OutputStream output : mOutputs) {
+                    try {
+                        if (mRunning) {
+                            output.write(chunk, 0, chunk.length);
+                        }
+                    } catch (Exception e) {
+                        // The stream was closed while the session stopped.
+                        mRunning = false;
+                    }
+                }
+                mWrittenBytes += CHUNK_SIZE;
+            }
+        }
+    }
+}
@@ -20,11 +20,18 @@ import com.google.errorprone.annotations.CanIgnoreReturnValue;
 
 import org.junit.AssumptionViolatedException;
 
+import java.lang.invoke.MethodHandle;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.MethodType;
 import java.lang.reflect.InvocationTargetException;
 import java.lang.reflect.Method;
+import java.lang.reflect.Modifier;
 import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.HashMap;
 import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
 import java.util.regex.Matcher;
 import java.util.regex.Pattern;
 
@@ -43,6 +50,27 @@ public abstract class BusinessLogicExecutor {
     /* List of regexes indicating a method arg should be redacted in the logs */
     protected List<String> mRedactionRegexes = new ArrayList<>();
 
+    /* Public methods of a class grouped by name, in getMethods() order for overload resolution */
+    private static final ClassValue<Map<String, List<Method>>> sMethodsByName =
+            new ClassValue<Map<String, List<Method>>>() {
+                @Override
+                protected Map<String, List<Method>> computeValue(Class<?> cls) {
+                    Map<String, List<Method>> methodsByName = new HashMap<>();
+                    for (Method m : cls.getMethods()) {
+                        methodsByName.computeIfAbsent(m.getName(), n -> new ArrayList<>()).add(m);
+                    }
+                    return methodsByName;
+                }
+            };
+    /* Method handles of the methods declared by a class */
+    private static final ClassValue<Map<Method, MethodHandle>> sMethodHandles =
+            new ClassValue<Map<Method, MethodHandle>>() {
+                @Override
+                protected Map<Method, MethodHandle> computeValue(Class<?> cls) {
+                    return new ConcurrentHashMap<>();
+                }
+            };
+
     /**
      * Execute a business logic condition.
      * @param method the name of the method to invoke. Must include fully qualified name of the
@@ -199,13 +227,8 @@ public abstract class BusinessLogicExecutor {
      * @return a list of method objects
      */
     protected List<Method> getMethodsWithName(Class cls, String name) {
-        List<Method> methodList = new ArrayList<>();
-        for (Method m : cls.getMethods()) {
-            if (name.equals(m.getName())) {
-                methodList.add(m);
-            }
-        }
-        return methodList;
+        List<Method> methodList = sMethodsByName.get(cls).get(name);
+        return methodList == null ? new ArrayList<>() : new ArrayList<>(methodList);
     }
 
     /**
@@ -229,7 +252,65 @@ public abstract class BusinessLogicExecutor {
         /** Invoke the stored method with the stored args on a given object */
         public Object invoke(Object instance) throws IllegalAccessException,
                 InvocationTargetException {
-            return mMethod.invoke(instance, mArgs.toArray());
+            MethodHandle handle = getMethodHandle(mMethod);
+            if (handle == null || !isInvocable(instance)) {
+                // Let reflection report the error, or convert the arguments
+                return mMethod.invoke(instance, mArgs.toArray());
+            }
+            try {
+                return (Object) handle.invokeExact(instance, mArgs.toArray());
+            } catch (Throwable t) {
+                // The arguments were checked, so this was thrown by the method itself
+                throw new InvocationTargetException(t);
+            }
+        }
+
+        /**
+         * Whether the method handle accepts the instance and arguments exactly like
+         * {@link Method#invoke} would, without primitive conversions.
+         */
+        private boolean isInvocable(Object instance) {
+            if (!Modifier.isStatic(mMethod.getModifiers())
+                    && !mMethod.getDeclaringClass().isInstance(instance)) {
+                return false;
+            }
+            Class<?>[] paramTypes = mMethod.getParameterTypes();
+            if (paramTypes.length != mArgs.size()) {
+                return false;
+            }
+            for (int i = 0; i < paramTypes.length; i++) {
+                Object arg = mArgs.get(i);
+                if (paramTypes[i].isPrimitive()
+                        || (arg != null && !paramTypes[i].isInstance(arg))) {
+                    return false;
+                }
+            }
+            return true;
+        }
+
+        /**
+         * Get a handle of type (Object, Object[])Object invoking the method on the instance
+         * with the spread arguments.
+         * @return the handle, or null if the method is not accessible to a public lookup
+         */
+        private static MethodHandle getMethodHandle(Method method) {
+            Map<Method, MethodHandle> handles = sMethodHandles.get(method.getDeclaringClass());
+            MethodHandle handle = handles.get(method);
+            if (handle != null) {
+                return handle;
+            }
+            try {
+                handle = MethodHandles.publicLookup().unreflect(method).asFixedArity();
+            } catch (IllegalAccessException e) {
+                return null;
+            }
+            if (Modifier.isStatic(method.getModifiers())) {
+                handle = MethodHandles.dropArguments(handle, 0, Object.class);
+            }
+            handle = handle.asSpreader(Object[].class, method.getParameterTypes().length)
+                    .asType(MethodType.methodType(Object.class, Object.class, Object[].class));
+            handles.put(method, handle);
+            return handle;
         }
     }
 }
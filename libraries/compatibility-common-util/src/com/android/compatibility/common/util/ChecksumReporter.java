@@ -24,6 +24,8 @@ import com.google.common.hash.Funnels;
 
 import java.io.BufferedInputStream;
 import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
 import java.io.File;
 import java.io.FileInputStream;
 import java.io.FileOutputStream;
@@ -33,13 +35,26 @@ import java.io.ObjectInput;
 import java.io.ObjectInputStream;
 import java.io.ObjectOutput;
 import java.io.ObjectOutputStream;
+import java.io.ObjectStreamConstants;
 import java.io.OutputStream;
 import java.io.Serializable;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.StandardOpenOption;
 import java.security.DigestException;
 import java.security.MessageDigest;
 import java.security.NoSuchAlgorithmException;
 import java.util.Arrays;
 import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
 
 /***
  * Calculate and store checksum values for files and test results
@@ -57,6 +72,12 @@ public final class ChecksumReporter implements Serializable {
     private static final short CURRENT_VERSION = 1;
     // Serialized format Id (ie magic number) used to identify serialized data.
     static final short SERIALIZED_FORMAT_CODE = 650;
+    // Format Id of the binary format, which replaced the Java serialization of the fields.
+    static final short BINARY_FORMAT_CODE = 651;
+
+    private static final int MAX_HASH_THREADS = 8;
+    private static final long HASH_THREAD_KEEP_ALIVE_SECONDS = 30;
+    private static final int READ_BUFFER_SIZE = 1024 * 1024;
 
     private final BloomFilter<CharSequence> mResultChecksum;
     private final HashMap<String, byte[]> mFileChecksum;
@@ -103,22 +124,50 @@ public final class ChecksumReporter implements Serializable {
      */
     public ChecksumReporter(File directory) throws ChecksumValidationException {
         File file = new File(directory, ChecksumReporter.NAME);
+        short version;
+        BloomFilter<CharSequence> resultChecksum;
+        HashMap<String, byte[]> fileChecksum;
         try (FileInputStream fileStream = new FileInputStream(file);
-            InputStream outputStream = new BufferedInputStream(fileStream);
-            ObjectInput objectInput = new ObjectInputStream(outputStream)) {
-            short magicNumber = objectInput.readShort();
-            switch (magicNumber) {
-                case SERIALIZED_FORMAT_CODE:
-                   mVersion = objectInput.readShort();
-                    mResultChecksum = (BloomFilter<CharSequence>) objectInput.readObject();
-                    mFileChecksum = (HashMap<String, byte[]>) objectInput.readObject();
-                    break;
-                default:
+            InputStream inputStream = new BufferedInputStream(fileStream)) {
+            // Files saved before the binary format are a Java serialization stream.
+            inputStream.mark(2);
+            DataInputStream dataInput = new DataInputStream(inputStream);
+            short magicNumber = dataInput.readShort();
+            inputStream.reset();
+            if (magicNumber == ObjectStreamConstants.STREAM_MAGIC) {
+                ObjectInput objectInput = new ObjectInputStream(inputStream);
+                magicNumber = objectInput.readShort();
+                if (magicNumber != SERIALIZED_FORMAT_CODE) {
+                    throw new ChecksumValidationException("Unknown format of serialized data.");
+                }
+                version = objectInput.readShort();
+                resultChecksum = (BloomFilter<CharSequence>) objectInput.readObject();
+                fileChecksum = (HashMap<String, byte[]>) objectInput.readObject();
+            } else {
+                magicNumber = dataInput.readShort();
+                if (magicNumber != BINARY_FORMAT_CODE) {
                     throw new ChecksumValidationException("Unknown format of serialized data.");
+                }
+                version = dataInput.readShort();
+                resultChecksum = BloomFilter.readFrom(dataInput, Funnels.unencodedCharsFunnel());
+                int fileCount = dataInput.readInt();
+                fileChecksum = new HashMap<>(Math.max(16, (int) (fileCount / 0.75f) + 1));
+                for (int i = 0; i < fileCount; i++) {
+                    byte[] key = new byte[dataInput.readInt()];
+                    dataInput.readFully(key);
+                    byte[] crc = new byte[dataInput.readInt()];
+                    dataInput.readFully(crc);
+                    fileChecksum.put(new String(key, StandardCharsets.UTF_8), crc);
+                }
             }
+        } catch (ChecksumValidationException e) {
+            throw e;
         } catch (Exception e) {
             throw new ChecksumValidationException("Unable to load checksum from file", e);
         }
+        mVersion = version;
+        mResultChecksum = resultChecksum;
+        mFileChecksum = fileChecksum;
         if (mVersion > CURRENT_VERSION) {
             throw new ChecksumValidationException(
                     "File contains a newer version of ChecksumReporter");
@@ -188,19 +237,87 @@ public final class ChecksumReporter implements Serializable {
      * @param directory target that is deeply searched for files
      */
     public void addDirectory(File directory) {
-        addDirectory(directory, directory.getName());
+        Map<String, File> files = new LinkedHashMap<>();
+        listFiles(directory, directory.getName(), files);
+        if (files.isEmpty()) {
+            return;
+        }
+        // Hashing is I/O and CPU bound; spread the files over the shared bounded pool.
+        Map<String, Future<byte[]>> crcs = new LinkedHashMap<>();
+        try {
+            for (Map.Entry<String, File> file : files.entrySet()) {
+                crcs.put(file.getKey(), HashExecutorHolder.EXECUTOR.submit(() -> {
+                    try {
+                        return calculateFileChecksum(file.getValue());
+                    } catch (ChecksumValidationException e) {
+                        // Like addFile, store an empty checksum for a file that cannot be read.
+                        return new byte[0];
+                    }
+                }));
+            }
+            for (Map.Entry<String, Future<byte[]>> crc : crcs.entrySet()) {
+                mFileChecksum.put(crc.getKey(), crc.getValue().get());
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new RuntimeException("Interrupted while hashing " + directory, e);
+        } catch (ExecutionException e) {
+            throw new RuntimeException("Unable to hash " + directory, e.getCause());
+        } finally {
+            for (Future<byte[]> crc : crcs.values()) {
+                crc.cancel(true);
+            }
+        }
+    }
+
+    /***
+     * Holds the pool shared by all {@link #addDirectory} calls; its threads exit when idle
+     */
+    private static final class HashExecutorHolder {
+        static final ExecutorService EXECUTOR = createExecutor();
+
+        private static ExecutorService createExecutor() {
+            int threads = Math.min(Runtime.getRuntime().availableProcessors(), MAX_HASH_THREADS);
+            ThreadPoolExecutor executor = new ThreadPoolExecutor(threads, threads,
+                    HASH_THREAD_KEEP_ALIVE_SECONDS, TimeUnit.SECONDS,
+                    new LinkedBlockingQueue<>(), HashThread::new);
+            executor.allowCoreThreadTimeOut(true);
+            return executor;
+        }
+    }
+
+    /***
+     * Thread of the hashing pool, which reuses one direct buffer for all the files it reads, so
+     * that the channel reads without copying through the Java heap
+     */
+    private static final class HashThread extends Thread {
+        private ByteBuffer mReadBuffer;
+
+        HashThread(Runnable runnable) {
+            super(runnable, "ChecksumReporter-hash");
+            setDaemon(true);
+        }
+
+        ByteBuffer getReadBuffer() {
+            if (mReadBuffer == null) {
+                mReadBuffer = ByteBuffer.allocateDirect(READ_BUFFER_SIZE);
+            }
+            mReadBuffer.clear();
+            return mReadBuffer;
+        }
     }
 
     /***
+     * Collects the files of a directory recursively, keyed like {@link #addFile}
      * @param path the relative path to the current directory from the base directory
      */
-    private void addDirectory(File directory, String path) {
+    private static void listFiles(File directory, String path, Map<String, File> files) {
         for(String childName : directory.list()) {
             File child = new File(directory, childName);
             if (child.isDirectory()) {
-                addDirectory(child, path + SEPARATOR + child.getName());
+                listFiles(child, path + SEPARATOR + child.getName(), files);
             } else {
-                addFile(child, path);
+                files.put(path + SEPARATOR + child.getName(), child);
             }
         }
     }
@@ -253,6 +370,34 @@ public final class ChecksumReporter implements Serializable {
     public void saveToFile(File directory) throws IOException {
         File file = new File(directory, NAME);
 
+        try (FileOutputStream fileStream = new FileOutputStream(file, false);
+             OutputStream outputStream = new BufferedOutputStream(fileStream);
+             DataOutputStream dataOutput = new DataOutputStream(outputStream)) {
+            dataOutput.writeShort(BINARY_FORMAT_CODE);
+            dataOutput.writeShort(mVersion);
+            mResultChecksum.writeTo(dataOutput);
+            dataOutput.writeInt(mFileChecksum.size());
+            for (Map.Entry<String, byte[]> entry : mFileChecksum.entrySet()) {
+                byte[] key = entry.getKey().getBytes(StandardCharsets.UTF_8);
+                dataOutput.writeInt(key.length);
+                dataOutput.write(key);
+                dataOutput.writeInt(entry.getValue().length);
+                dataOutput.write(entry.getValue());
+            }
+        }
+    }
+
+    /***
+     * Write the checksum data to disk in the Java serialization format used before
+     * {@link #BINARY_FORMAT_CODE}.
+     * Overwrites existing file
+     * @param directory
+     * @throws IOException
+     */
+    @VisibleForTesting
+    void saveToSerializedFile(File directory) throws IOException {
+        File file = new File(directory, NAME);
+
         try (FileOutputStream fileStream = new FileOutputStream(file, false);
              OutputStream outputStream = new BufferedOutputStream(fileStream);
              ObjectOutput objectOutput = new ObjectOutputStream(outputStream)) {
@@ -346,14 +491,17 @@ public final class ChecksumReporter implements Serializable {
 
     static byte[] calculateFileChecksum(File file) throws ChecksumValidationException {
 
-        try (FileInputStream fis = new FileInputStream(file);
-             InputStream inputStream = new BufferedInputStream(fis)) {
+        try (FileChannel channel = FileChannel.open(file.toPath(), StandardOpenOption.READ)) {
             MessageDigest hashSum = MessageDigest.getInstance("SHA-256");
-            int cnt;
-            int bufferSize = 8192;
-            byte [] buffer = new byte[bufferSize];
-            while ((cnt = inputStream.read(buffer)) != -1) {
-                hashSum.update(buffer, 0, cnt);
+            Thread thread = Thread.currentThread();
+            ByteBuffer buffer = thread instanceof HashThread
+                    ? ((HashThread) thread).getReadBuffer()
+                    : ByteBuffer.allocate((int) Math.min(READ_BUFFER_SIZE,
+                            Math.max(1, channel.size())));
+            while (channel.read(buffer) != -1) {
+                buffer.flip();
+                hashSum.update(buffer);
+                buffer.clear();
             }
 
             byte[] partialHash = new byte[32];
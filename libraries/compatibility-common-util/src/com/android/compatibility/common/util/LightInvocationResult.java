@@ -69,6 +69,42 @@ public class LightInvocationResult implements IInvocationResult {
         }
     }
 
+    /**
+     * Constructor for an empty result of the given directory, to be filled through the setters.
+     */
+    LightInvocationResult(File retryDirectory) {
+        mInvocationInfo = new HashMap<String, String>();
+        mSerials = new HashSet<String>();
+        mRetryChecksumStatus = RetryChecksumStatus.NotRetry;
+        mRetryDirectory = retryDirectory;
+        mModuleIds = new HashSet<String>();
+        mResultCounts = new HashMap<TestStatus, Integer>();
+        for (TestStatus status : TestStatus.values()) {
+            mResultCounts.put(status, 0);
+        }
+    }
+
+    /**
+     * Sets the number of tests with the given status.
+     */
+    void setResultCount(TestStatus status, int count) {
+        mResultCounts.put(status, count);
+    }
+
+    /**
+     * Sets the number of completed modules.
+     */
+    void setModuleCompleteCount(int count) {
+        mModuleCompleteCount = count;
+    }
+
+    /**
+     * Returns the ids of the modules, without creating empty modules.
+     */
+    Set<String> getModuleIds() {
+        return mModuleIds;
+    }
+
     /**
      * {@inheritDoc}
      */
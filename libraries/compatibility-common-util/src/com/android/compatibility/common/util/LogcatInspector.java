@@ -9,7 +9,13 @@ import java.io.BufferedReader;
 import java.io.IOException;
 import java.io.InputStream;
 import java.io.InputStreamReader;
+import java.util.ArrayList;
+import java.util.BitSet;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
 import java.util.UUID;
+import java.util.concurrent.CountDownLatch;
 import java.util.concurrent.TimeUnit;
 
 /**
@@ -19,11 +25,25 @@ import java.util.concurrent.TimeUnit;
 public abstract class LogcatInspector {
     private static final int SMALL_LOGCAT_DELAY = 1000;
 
+    private boolean mStreaming = false;
+
     /**
      * Should execute adb shell {@param command} and return an {@link InputStream} with the result.
      */
     protected abstract InputStream executeShellCommand(String command) throws IOException;
 
+    /**
+     * Follow a single logcat stream rather than dump logcat every second: each line is read once,
+     * and a wait ends as soon as the last string is logged. If the stream ends, logcat is started
+     * again from the last line read.
+     *
+     * <p>This requires {@link #executeShellCommand(String)} to return the output of a command as
+     * it is produced, and to stop the command when the stream is closed.
+     */
+    public void setStreaming(boolean streaming) {
+        mStreaming = streaming;
+    }
+
     /**
      * Logs an unique string using tag {@param tag} and wait until it appears to continue execution.
      *
@@ -94,6 +114,9 @@ public abstract class LogcatInspector {
     private int numberOfLogcatStringsFound(
             String filterSpec, int timeInSeconds, String... logcatStrings)
             throws InterruptedException, IOException {
+        if (mStreaming) {
+            return followLogcat(filterSpec, timeInSeconds, logcatStrings);
+        }
         long timeout = System.currentTimeMillis() + TimeUnit.SECONDS.toMillis(timeInSeconds);
         int stringIndex = 0;
         long lastEpochMicroseconds = 0;
@@ -134,4 +157,226 @@ public abstract class LogcatInspector {
         }
         return stringIndex;
     }
+
+    private int followLogcat(String filterSpec, int timeInSeconds, String... logcatStrings)
+            throws InterruptedException, IOException {
+        LogcatFollower follower = new LogcatFollower(filterSpec, logcatStrings);
+        Thread thread = new Thread(follower, "LogcatInspector");
+        thread.setDaemon(true);
+        thread.start();
+        try {
+            follower.mDone.await(timeInSeconds, TimeUnit.SECONDS);
+        } finally {
+            // Once closed, the follower no longer changes the matcher, even if still reading
+            follower.close();
+            thread.interrupt();
+        }
+        if (follower.mError != null) {
+            throw follower.mError;
+        }
+        return follower.stringsFound();
+    }
+
+    /** Returns the timestamp of a '-v epoch -v usec' logcat line, or -1 if there is none. */
+    private static long parseEpochMicroseconds(String line) {
+        String stripped = line.stripLeading();
+        int end = stripped.indexOf(' ');
+        if (end < 0) {
+            return -1;
+        }
+        try {
+            return Long.parseLong(stripped.substring(0, end).replace(".", ""));
+        } catch (NumberFormatException e) {
+            return -1;
+        }
+    }
+
+    /** Reads logcat on its own thread until all the strings are found or it is closed. */
+    private class LogcatFollower implements Runnable {
+        final OrderedMatcher mMatcher;
+        final CountDownLatch mDone = new CountDownLatch(1);
+        volatile IOException mError;
+        private final String mFilterSpec;
+        private volatile boolean mClosed = false;
+        private InputStream mStream;
+
+        LogcatFollower(String filterSpec, String... logcatStrings) {
+            mFilterSpec = filterSpec;
+            mMatcher = new OrderedMatcher(logcatStrings);
+        }
+
+        @Override
+        public void run() {
+            try {
+                long lastEpochMicroseconds = -1;
+                // Lines read with the last timestamp, which logcat prints again when restarted
+                int linesAtLastEpoch = 0;
+                while (!mClosed) {
+                    long resumeEpochMicroseconds = lastEpochMicroseconds;
+                    int linesToSkip = linesAtLastEpoch;
+                    // '-T' -> Prints the lines since that time and keeps following.
+                    String command = "logcat -v epoch -v usec ";
+                    if (resumeEpochMicroseconds >= 0) {
+                        command +=
+                                String.format(
+                                        "-T %d.%06d ",
+                                        resumeEpochMicroseconds / 1000000,
+                                        resumeEpochMicroseconds % 1000000);
+                    }
+                    BufferedReader logcat = open(command + mFilterSpec);
+                    if (logcat == null) {
+                        return;
+                    }
+                    try {
+                        String line;
+                        boolean skipping = false;
+                        while ((line = logcat.readLine()) != null) {
+                            long epochMicroseconds = parseEpochMicroseconds(line);
+                            if (epochMicroseconds >= 0) {
+                                // Skip what was already read before logcat was started again
+                                skipping =
+                                        epochMicroseconds < resumeEpochMicroseconds
+                                                || (epochMicroseconds == resumeEpochMicroseconds
+                                                        && linesToSkip-- > 0);
+                                if (skipping) {
+                                    continue;
+                                }
+                                if (epochMicroseconds == lastEpochMicroseconds) {
+                                    linesAtLastEpoch++;
+                                } else {
+                                    lastEpochMicroseconds = epochMicroseconds;
+                                    linesAtLastEpoch = 1;
+                                }
+                            } else if (skipping) {
+                                continue;
+                            }
+                            if (accept(line)) {
+                                return;
+                            }
+                        }
+                    } finally {
+                        Closeables.closeQuietly(logcat);
+                    }
+                    // The stream ended, wait for the log to update before following it again.
+                    Thread.sleep(SMALL_LOGCAT_DELAY);
+                }
+            } catch (IOException e) {
+                if (!mClosed) {
+                    mError = e;
+                }
+            } catch (InterruptedException e) {
+                // Stop following
+            } finally {
+                mDone.countDown();
+            }
+        }
+
+        private synchronized BufferedReader open(String command) throws IOException {
+            if (mClosed) {
+                return null;
+            }
+            mStream = executeShellCommand(command);
+            return new BufferedReader(new InputStreamReader(mStream));
+        }
+
+        /** @return whether all the strings have been found, or following was stopped */
+        private synchronized boolean accept(String line) {
+            return mClosed || mMatcher.accept(line);
+        }
+
+        synchronized int stringsFound() {
+            return mMatcher.mNext;
+        }
+
+        /** Stops following, which ends the blocked read if any. */
+        synchronized void close() {
+            mClosed = true;
+            Closeables.closeQuietly(mStream);
+        }
+    }
+
+    /**
+     * Finds strings in order in a sequence of lines, at most one string per line. All the strings
+     * are compiled into a single Aho-Corasick automaton, so that each line is scanned once
+     * whichever string comes next.
+     */
+    static class OrderedMatcher {
+        private final List<Map<Character, Integer>> mTransitions = new ArrayList<>();
+        private final List<Integer> mFailures = new ArrayList<>();
+        /** The indices of the strings that end at each state. */
+        private final List<BitSet> mOutputs = new ArrayList<>();
+        private final int mCount;
+        /** The index of the next string to find. */
+        volatile int mNext = 0;
+
+        OrderedMatcher(String... strings) {
+            mCount = strings.length;
+            addState();
+            for (int i = 0; i < strings.length; i++) {
+                int state = 0;
+                for (char c : strings[i].toCharArray()) {
+                    Integer next = mTransitions.get(state).get(c);
+                    if (next == null) {
+                        next = addState();
+                        mTransitions.get(state).put(c, next);
+                    }
+                    state = next;
+                }
+                mOutputs.get(state).set(i);
+            }
+
+            // Breadth-first, so that the failure of a state is complete before its children's
+            List<Integer> queue = new ArrayList<>(mTransitions.get(0).values());
+            for (int i = 0; i < queue.size(); i++) {
+                int state = queue.get(i);
+                for (Map.Entry<Character, Integer> transition :
+                        mTransitions.get(state).entrySet()) {
+                    char c = transition.getKey();
+                    int child = transition.getValue();
+                    int failure = mFailures.get(state);
+                    while (failure != 0 && !mTransitions.get(failure).containsKey(c)) {
+                        failure = mFailures.get(failure);
+                    }
+                    Integer target = mTransitions.get(failure).get(c);
+                    failure = target != null && target != child ? target : 0;
+                    mFailures.set(child, failure);
+                    mOutputs.get(child).or(mOutputs.get(failure));
+                    queue.add(child);
+                }
+            }
+        }
+
+        private int addState() {
+            mTransitions.add(new HashMap<>());
+            mFailures.add(0);
+            mOutputs.add(new BitSet());
+            return mTransitions.size() - 1;
+        }
+
+        /**
+         * Scans a line for the next string.
+         *
+         * @return whether all the strings have been found
+         */
+        boolean accept(String line) {
+            if (mNext >= mCount || mOutputs.get(0).get(mNext)) {
+                mNext = Math.min(mNext + 1, mCount);
+                return mNext >= mCount;
+            }
+            int state = 0;
+            for (int i = 0; i < line.length(); i++) {
+                char c = line.charAt(i);
+                Integer next;
+                while ((next = mTransitions.get(state).get(c)) == null && state != 0) {
+                    state = mFailures.get(state);
+                }
+                state = next != null ? next : 0;
+                if (mOutputs.get(state).get(mNext)) {
+                    mNext++;
+                    break;
+                }
+            }
+            return mNext >= mCount;
+        }
+    }
 }
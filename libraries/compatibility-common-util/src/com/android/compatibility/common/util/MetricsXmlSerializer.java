@@ -27,9 +27,19 @@ import java.io.IOException;
 public final class MetricsXmlSerializer {
 
     private final XmlSerializer mXmlSerializer;
+    private final boolean mIncludeStat;
 
     public MetricsXmlSerializer(XmlSerializer xmlSerializer) {
+        this(xmlSerializer, false);
+    }
+
+    /**
+     * @param includeStat whether to follow the summary with its {@link StreamingStat}, if any.
+     *     Parsers that predate StreamingStat don't expect the element.
+     */
+    public MetricsXmlSerializer(XmlSerializer xmlSerializer, boolean includeStat) {
         this.mXmlSerializer = xmlSerializer;
+        this.mIncludeStat = includeStat;
     }
 
     public void serialize(ReportLog reportLog) throws IOException {
@@ -45,6 +55,10 @@ public final class MetricsXmlSerializer {
             mXmlSerializer.attribute(null, "unit", summary.getUnit().toReportString());
             mXmlSerializer.text(Double.toString(summary.getValues()[0]));
             mXmlSerializer.endTag(null, "Summary");
+            // <Stat count="1000000" mean="195.2" ... positive_buckets="265:12 266:40 ..."/>
+            if (mIncludeStat && summary.getStat() != null) {
+                summary.getStat().serialize(mXmlSerializer);
+            }
         }
     }
 }
\ No newline at end of file
@@ -16,11 +16,18 @@
 
 package com.android.compatibility.common.util;
 
+import com.google.common.annotations.VisibleForTesting;
 import com.google.errorprone.annotations.CanIgnoreReturnValue;
 
+import java.io.EOFException;
 import java.io.File;
 import java.io.IOException;
 import java.io.RandomAccessFile;
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
+import java.nio.file.StandardOpenOption;
 import java.util.ArrayList;
 import java.util.HashMap;
 import java.util.List;
@@ -29,6 +36,10 @@ import java.util.Map;
 /**
  * A poor man's implementation of the readelf command. This program is designed to parse ELF
  * (Executable and Linkable Format) files.
+ *
+ * <p>The file is memory-mapped and parsed in place. {@link #getDynamicSymbol} looks a single
+ * symbol up through the .gnu.hash or .hash section when there is one, without loading the whole
+ * dynamic symbol table.
  */
 // ToDo: consolidate with com.android.compatibility.common.util
 public class ReadElf implements AutoCloseable {
@@ -71,12 +82,17 @@ public class ReadElf implements AutoCloseable {
     private static final int SHT_PROGBITS = 1;
     private static final int SHT_SYMTAB = 2;
     private static final int SHT_STRTAB = 3;
+    private static final int SHT_HASH = 5;
     private static final int SHT_DYNAMIC = 6;
     private static final int SHT_DYNSYM = 11;
+    private static final int SHT_GNU_HASH = 0x6ffffff6;
     private static final int SHT_GNU_VERDEF = 0x6ffffffd;
     private static final int SHT_GNU_VERNEED = 0x6ffffffe;
     private static final int SHT_GNU_VERSYM = 0x6fffffff;
 
+    /** Version Symbols Table entry bit of the symbols hidden from the other versions. */
+    private static final int VERSYM_HIDDEN = 0x8000;
+
     public static class Symbol {
         public static final int STB_LOCAL = 0;
         public static final int STB_GLOBAL = 1;
@@ -459,8 +475,9 @@ public class ReadElf implements AutoCloseable {
     }
 
     private final String mPath;
-    private final RandomAccessFile mFile;
-    private final byte[] mBuffer = new byte[512];
+    /** The mapped file, positioned like a file pointer by {@link #seek}. */
+    private ByteBuffer mMap;
+    private boolean mClosed;
     private int mEndian;
     private boolean mIsDynamic;
     private boolean mIsPIE;
@@ -532,6 +549,12 @@ public class ReadElf implements AutoCloseable {
 
     private int mVerDefEntryCnt;
 
+    /** SysV Hash Table offset, or 0 if there is none */
+    private long mHashTabOffset;
+
+    /** GNU Hash Table offset, or 0 if there is none */
+    private long mGnuHashTabOffset;
+
     /** Symbol Table symbol names */
     private Map<String, Symbol> mSymbols;
 
@@ -672,6 +695,7 @@ public class ReadElf implements AutoCloseable {
     }
 
     public Map<String, Symbol> getSymbols() throws IOException {
+        ensureOpen();
         if (mSymbols == null) {
             getSymbol("");
         }
@@ -679,6 +703,7 @@ public class ReadElf implements AutoCloseable {
     }
 
     public Symbol[] getSymArr() throws IOException {
+        ensureOpen();
         if (mSymArr == null) {
             getSymbol("");
         }
@@ -686,6 +711,7 @@ public class ReadElf implements AutoCloseable {
     }
 
     public Map<String, Symbol> getDynamicSymbols() throws IOException {
+        ensureOpen();
         if (mDynamicSymbols == null) {
             getDynamicSymbol("");
         }
@@ -693,6 +719,7 @@ public class ReadElf implements AutoCloseable {
     }
 
     public Symbol[] getDynSymArr() throws IOException {
+        ensureOpen();
         if (mDynSymArr == null) {
             getDynamicSymbol("");
         }
@@ -715,20 +742,46 @@ public class ReadElf implements AutoCloseable {
         mHasRodata = false;
         mRoData = null;
         mPath = file.getPath();
-        mFile = new RandomAccessFile(file, "r");
-
-        if (mFile.length() < EI_NIDENT) {
-            throw new IllegalArgumentException("Too small to be an ELF file: " + file);
+        try (FileChannel channel = FileChannel.open(file.toPath(), StandardOpenOption.READ)) {
+            if (channel.size() < EI_NIDENT) {
+                throw new IllegalArgumentException("Too small to be an ELF file: " + file);
+            }
+            if (channel.size() > Integer.MAX_VALUE) {
+                throw new IOException("Too large to map: " + file);
+            }
+            // The mapping stays valid once the channel is closed.
+            mMap = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
         }
+        // ELFDATA2MSB files are rejected by readHeader.
+        mMap.order(ByteOrder.LITTLE_ENDIAN);
 
         readHeader();
     }
 
+    /**
+     * Releases the mapped file and everything read from it; reading afterwards throws an
+     * {@link IOException}. The mapping itself is only unmapped once it is garbage collected, Java
+     * has no way to unmap it earlier.
+     */
     @Override
     public void close() {
-        try {
-            mFile.close();
-        } catch (IOException ignored) {
+        mClosed = true;
+        mMap = null;
+        mSymbols = null;
+        mSymArr = null;
+        mDynamicSymbols = null;
+        mDynSymArr = null;
+        mVerSym = null;
+        mVerNeedArr = null;
+        mVerDefArr = null;
+        mDynamicArr = null;
+        mRoStrings = null;
+        mRoData = null;
+    }
+
+    private void ensureOpen() throws IOException {
+        if (mClosed) {
+            throw new IOException("closed");
         }
     }
 
@@ -742,17 +795,18 @@ public class ReadElf implements AutoCloseable {
     }
 
     private void readHeader() throws IOException {
-        mFile.seek(0);
-        mFile.readFully(mBuffer, 0, EI_NIDENT);
-
-        if (mBuffer[0] != ELFMAG[0]
-                || mBuffer[1] != ELFMAG[1]
-                || mBuffer[2] != ELFMAG[2]
-                || mBuffer[3] != ELFMAG[3]) {
+        byte[] ident = new byte[EI_NIDENT];
+        seek(0);
+        mMap.get(ident);
+
+        if (ident[0] != ELFMAG[0]
+                || ident[1] != ELFMAG[1]
+                || ident[2] != ELFMAG[2]
+                || ident[3] != ELFMAG[3]) {
             throw new IllegalArgumentException("Invalid ELF file: " + mPath);
         }
 
-        int elfClass = mBuffer[EI_CLASS];
+        int elfClass = ident[EI_CLASS];
         if (elfClass == ELFCLASS32) {
             mAddrSize = 4;
         } else if (elfClass == ELFCLASS64) {
@@ -761,7 +815,7 @@ public class ReadElf implements AutoCloseable {
             throw new IOException("Invalid ELF EI_CLASS: " + elfClass + ": " + mPath);
         }
 
-        mEndian = mBuffer[EI_DATA];
+        mEndian = ident[EI_DATA];
         if (mEndian == ELFDATA2LSB) {
         } else if (mEndian == ELFDATA2MSB) {
             throw new IOException("Unsupported ELFDATA2MSB file: " + mPath);
@@ -823,7 +877,7 @@ public class ReadElf implements AutoCloseable {
             throws IOException {
         // Read the Section Header String Table offset first.
         {
-            mFile.seek(sh_off + e_shstrndx * e_shentsize);
+            seek(sh_off + e_shstrndx * e_shentsize);
 
             long sh_name = readWord();
             long sh_type = readWord();
@@ -845,7 +899,7 @@ public class ReadElf implements AutoCloseable {
                 continue;
             }
 
-            mFile.seek(sh_off + i * e_shentsize);
+            seek(sh_off + i * e_shentsize);
 
             long sh_name = readWord();
             long sh_type = readWord();
@@ -892,6 +946,10 @@ public class ReadElf implements AutoCloseable {
                                     "%s, %d, %d, %d, %d",
                                     strTabName, sh_offset, sh_size, sh_link, sh_info));
                 }
+            } else if (sh_type == SHT_HASH) {
+                mHashTabOffset = sh_offset;
+            } else if (sh_type == SHT_GNU_HASH) {
+                mGnuHashTabOffset = sh_offset;
             } else if (sh_type == SHT_DYNAMIC) {
                 mIsDynamic = true;
                 final String strTabName = readShStrTabEntry(sh_name);
@@ -950,7 +1008,7 @@ public class ReadElf implements AutoCloseable {
 
     private void readProgramHeaders(long ph_off, int e_phnum, int e_phentsize) throws IOException {
         for (int i = 0; i < e_phnum; ++i) {
-            mFile.seek(ph_off + i * e_phentsize);
+            seek(ph_off + i * e_phentsize);
 
             long p_type = readWord();
             if (p_type == PT_LOAD) {
@@ -974,63 +1032,214 @@ public class ReadElf implements AutoCloseable {
             boolean isDynSym,
             long symStrOffset,
             long symStrSize,
-            long tableOffset,
-            long tableSize)
+            long tableOffset)
             throws IOException {
         HashMap<String, Symbol> result = new HashMap<String, Symbol>();
-        mFile.seek(tableOffset);
-        int i = 0;
-        while (mFile.getFilePointer() < tableOffset + tableSize) {
-            long st_name = readWord();
-            int st_info;
-            int st_shndx;
-            long st_value;
-            long st_size;
-            int st_other;
-            if (mAddrSize == 8) {
-                st_info = readByte();
-                st_other = readByte();
-                st_shndx = readHalf();
-                st_value = readAddr();
-                st_size = readX(mAddrSize);
-            } else {
-                st_value = readAddr();
-                st_size = readWord();
-                st_info = readByte();
-                st_other = readByte();
-                st_shndx = readHalf();
+        boolean hasVersions = isDynSym && (mVerNeedEntryCnt > 0 || mVerDefEntryCnt > 0);
+        for (int i = 0; i < symArr.length; i++) {
+            seek(tableOffset + (long) i * getSymEntSize());
+            Symbol sym = readSymbol(symStrOffset, symStrSize);
+            if (!sym.name.equals("")) {
+                result.put(sym.name, sym);
             }
+            if (hasVersions) {
+                setVersion(sym, getVerSym()[i]);
+            }
+            symArr[i] = sym;
+        }
+        System.out.println(
+                String.format(
+                        "Info readSymbolTable: %s, isDynSym %b, symbol# %d",
+                        mPath, isDynSym, symArr.length));
+        return result;
+    }
 
-            String symName;
-            if (st_name == 0) {
-                symName = "";
+    /** Reads the symbol table entry at the current position. */
+    private Symbol readSymbol(long symStrOffset, long symStrSize) throws IOException {
+        long st_name = readWord();
+        int st_info;
+        int st_shndx;
+        long st_value;
+        long st_size;
+        int st_other;
+        if (mAddrSize == 8) {
+            st_info = readByte();
+            st_other = readByte();
+            st_shndx = readHalf();
+            st_value = readAddr();
+            st_size = readX(mAddrSize);
+        } else {
+            st_value = readAddr();
+            st_size = readWord();
+            st_info = readByte();
+            st_other = readByte();
+            st_shndx = readHalf();
+        }
+
+        String symName;
+        if (st_name == 0) {
+            symName = "";
+        } else {
+            symName = readStrTabEntry(symStrOffset, symStrSize, st_name);
+        }
+        return new Symbol(symName, st_info, st_shndx, st_value, st_size, st_other);
+    }
+
+    /** Sets the version of a dynamic symbol from its Version Symbols Table entry. */
+    private void setVersion(Symbol sym, int verSym) throws IOException {
+        verSym &= ~VERSYM_HIDDEN;
+        if (mVerNeedEntryCnt > 0) {
+            VerNeed[] verNeedArr = getVerNeedArr();
+            if (sym.type == Symbol.STT_NOTYPE) {
+                sym.mVerNeed = verNeedArr[0];
             } else {
-                symName = readStrTabEntry(symStrOffset, symStrSize, st_name);
+                sym.mVerNeed = getVerNeed(verSym);
             }
+        } else if (mVerDefEntryCnt > 0) {
+            sym.mVerDef = getVerDef()[verSym];
+        }
+    }
 
-            Symbol sym = new Symbol(symName, st_info, st_shndx, st_value, st_size, st_other);
-            if (!symName.equals("")) {
-                result.put(symName, sym);
+    /** Reads a dynamic symbol and its version, without loading the Dynamic Symbol Table. */
+    private Symbol readDynamicSymbol(int index) throws IOException {
+        seek(mDynSymOffset + (long) index * getSymEntSize());
+        Symbol sym = readSymbol(mDynStrOffset, mDynStrSize);
+        if (mVerNeedEntryCnt > 0 || mVerDefEntryCnt > 0) {
+            int verSym;
+            if (mVerSym != null) {
+                verSym = mVerSym[index];
+            } else {
+                seek(mVerSymTabOffset + index * 2L);
+                verSym = readHalf();
             }
-            if (isDynSym) {
-                if (mVerNeedEntryCnt > 0) {
-                    if (sym.type == Symbol.STT_NOTYPE) {
-                        sym.mVerNeed = mVerNeedArr[0];
-                    } else {
-                        sym.mVerNeed = getVerNeed(mVerSym[i]);
+            setVersion(sym, verSym);
+        }
+        return sym;
+    }
+
+    private int getSymEntSize() {
+        return mAddrSize == 8 ? 24 : 16;
+    }
+
+    /**
+     * Looks a dynamic symbol up through the GNU Hash Table.
+     *
+     * <p>The table only covers the symbols from symoffset on, which are the defined ones; the
+     * undefined symbols before them are compared one by one.
+     *
+     * @return the index of the last symbol with that name, like in {@link #getDynamicSymbols}, or
+     *     -1 if there is none
+     */
+    @VisibleForTesting
+    int gnuHashLookup(String name) throws IOException {
+        byte[] nameBytes = name.getBytes();
+        long h = 5381;
+        for (byte b : nameBytes) {
+            h = (h * 33 + (b & 0xff)) & 0xffffffffL;
+        }
+
+        seek(mGnuHashTabOffset);
+        long nbuckets = readWord();
+        long symoffset = readWord();
+        long bloomSize = readWord();
+        long bloomShift = readWord();
+        if (nbuckets == 0 || bloomSize == 0) {
+            return -1;
+        }
+        long bloomOffset = mMap.position();
+        long bucketsOffset = bloomOffset + bloomSize * mAddrSize;
+        long chainOffset = bucketsOffset + nbuckets * 4;
+
+        int found = -1;
+        int bits = mAddrSize * 8;
+        seek(bloomOffset + (h / bits) % bloomSize * mAddrSize);
+        long word = readX(mAddrSize);
+        long mask = (1L << (h % bits)) | (1L << ((h >> bloomShift) % bits));
+        if ((word & mask) == mask) {
+            seek(bucketsOffset + h % nbuckets * 4);
+            long index = readWord();
+            if (index != 0) {
+                // Symbols of the same bucket are contiguous, the last one has the low bit set.
+                while (index < mDynSymEntCnt) {
+                    seek(chainOffset + (index - symoffset) * 4);
+                    long chainHash = readWord();
+                    if ((chainHash | 1) == (h | 1) && dynamicSymbolNameEquals(index, nameBytes)) {
+                        found = (int) index;
                     }
-                } else if (mVerDefEntryCnt > 0) {
-                    sym.mVerDef = mVerDefArr[mVerSym[i]];
+                    if ((chainHash & 1) != 0) {
+                        break;
+                    }
+                    index++;
                 }
             }
-            symArr[i] = sym;
-            i++;
         }
-        System.out.println(
-                String.format(
-                        "Info readSymbolTable: %s, isDynSym %b, symbol# %d",
-                        mPath, isDynSym, symArr.length));
-        return result;
+        if (found != -1) {
+            return found;
+        }
+        for (long index = Math.min(symoffset, mDynSymEntCnt) - 1; index > 0; index--) {
+            if (dynamicSymbolNameEquals(index, nameBytes)) {
+                return (int) index;
+            }
+        }
+        return -1;
+    }
+
+    /**
+     * Looks a dynamic symbol up through the SysV Hash Table.
+     *
+     * @return the index of the last symbol with that name, like in {@link #getDynamicSymbols}, or
+     *     -1 if there is none
+     */
+    @VisibleForTesting
+    int sysvHashLookup(String name) throws IOException {
+        byte[] nameBytes = name.getBytes();
+        long h = 0;
+        for (byte b : nameBytes) {
+            h = (h << 4) + (b & 0xff);
+            long g = h & 0xf0000000L;
+            if (g != 0) {
+                h ^= g >> 24;
+            }
+            h &= ~g;
+        }
+
+        seek(mHashTabOffset);
+        long nbucket = readWord();
+        long nchain = readWord();
+        if (nbucket == 0) {
+            return -1;
+        }
+        long bucketOffset = mMap.position();
+        long chainOffset = bucketOffset + nbucket * 4;
+
+        int found = -1;
+        seek(bucketOffset + h % nbucket * 4);
+        long index = readWord();
+        // Bound the walk in case of a corrupted chain.
+        for (long i = 0; index != 0 && index < nchain && i < nchain; i++) {
+            if (dynamicSymbolNameEquals(index, nameBytes)) {
+                found = Math.max(found, (int) index);
+            }
+            seek(chainOffset + index * 4);
+            index = readWord();
+        }
+        return found;
+    }
+
+    /** Compares the name of a dynamic symbol in place, without decoding it. */
+    private boolean dynamicSymbolNameEquals(long index, byte[] name) throws IOException {
+        seek(mDynSymOffset + index * getSymEntSize());
+        long st_name = readWord();
+        if (mDynStrOffset == 0 || st_name <= 0 || st_name + name.length >= mDynStrSize) {
+            return false;
+        }
+        int offset = (int) (mDynStrOffset + st_name);
+        for (int i = 0; i < name.length; i++) {
+            if (mMap.get(offset + i) != name[i]) {
+                return false;
+            }
+        }
+        return mMap.get(offset + name.length) == 0;
     }
 
     private String readShStrTabEntry(long strOffset) throws IOException {
@@ -1057,7 +1266,7 @@ public class ReadElf implements AutoCloseable {
 
     private int[] getVerSym() throws IOException {
         if (mVerSym == null) {
-            mFile.seek(mVerSymTabOffset);
+            seek(mVerSymTabOffset);
             int cnt = (int) mVerSymTabSize / 2;
             mVerSym = new int[cnt];
             for (int i = 0; i < cnt; i++) {
@@ -1069,6 +1278,7 @@ public class ReadElf implements AutoCloseable {
     }
 
     public VerNeed getVerNeed(int ndx) throws IOException {
+        ensureOpen();
         // vna_other Contains version index unique for the file which is used in the version symbol table.
         if (ndx < 2) {
             return this.mVerNeedArr[ndx];
@@ -1096,7 +1306,7 @@ public class ReadElf implements AutoCloseable {
 
             long idx = mVerNeedTabOffset;
             for (int i = 2; i < mVerNeedEntryCnt + 2; i++) {
-                mFile.seek(idx);
+                seek(idx);
                 mVerNeedArr[i] =
                         new VerNeed(readHalf(), readHalf(), readWord(), readWord(), readWord());
                 mVerNeedArr[i].vn_file_name = readDynStrTabEntry(mVerNeedArr[i].vn_file).toLowerCase();
@@ -1104,7 +1314,7 @@ public class ReadElf implements AutoCloseable {
                 mVerNeedArr[i].vn_vernaux = new VerNAux[mVerNeedArr[i].vn_cnt];
                 long idxAux = idx + mVerNeedArr[i].vn_aux;
                 for (int j = 0; j < mVerNeedArr[i].vn_cnt; j++) {
-                    mFile.seek(idxAux);
+                    seek(idxAux);
                     mVerNeedArr[i].vn_vernaux[j] =
                             new VerNAux(readWord(), readHalf(), readHalf(), readWord(), readWord());
                     mVerNeedArr[i].vn_vernaux[j].vna_lib_name =
@@ -1130,7 +1340,7 @@ public class ReadElf implements AutoCloseable {
 
             long idx = mVerDefTabOffset;
             for (int i = 2; i < mVerDefEntryCnt + 2; i++) {
-                mFile.seek(idx);
+                seek(idx);
                 mVerDefArr[i] =
                         new VerDef(
                                 readHalf(),
@@ -1144,7 +1354,7 @@ public class ReadElf implements AutoCloseable {
                 mVerDefArr[i].vd_verdaux = new VerDAux[mVerDefArr[i].vd_cnt];
                 long idxAux = idx + mVerDefArr[i].vd_aux;
                 for (int j = 0; j < mVerDefArr[i].vd_cnt; j++) {
-                    mFile.seek(idxAux);
+                    seek(idxAux);
                     mVerDefArr[i].vd_verdaux[j] = new VerDAux(readWord(), readWord());
                     mVerDefArr[i].vd_verdaux[j].vda_lib_name =
                             readDynStrTabEntry(mVerDefArr[i].vd_verdaux[j].vda_name).toLowerCase();
@@ -1174,32 +1384,43 @@ public class ReadElf implements AutoCloseable {
     }
 
     private long readX(int byteCount) throws IOException {
-        mFile.readFully(mBuffer, 0, byteCount);
-
-        int answer = 0;
-        if (mEndian == ELFDATA2LSB) {
-            for (int i = byteCount - 1; i >= 0; i--) {
-                answer = (answer << 8) | (mBuffer[i] & 0xff);
-            }
-        } else {
-            final int N = byteCount - 1;
-            for (int i = 0; i <= N; ++i) {
-                answer = (answer << 8) | (mBuffer[i] & 0xff);
+        try {
+            switch (byteCount) {
+                case 1:
+                    return mMap.get() & 0xffL;
+                case 2:
+                    return mMap.getShort() & 0xffffL;
+                case 4:
+                    return mMap.getInt() & 0xffffffffL;
+                default:
+                    return mMap.getLong();
             }
+        } catch (BufferUnderflowException e) {
+            throw new EOFException("Unexpected end of file: " + mPath);
         }
+    }
 
-        return answer;
+    private void seek(long offset) throws IOException {
+        ensureOpen();
+        if (offset < 0 || offset > mMap.limit()) {
+            throw new EOFException("Offset " + offset + " out of file: " + mPath);
+        }
+        mMap.position((int) offset);
     }
 
+    /** Reads a null-terminated string in place, without moving the position. */
     private String readString(long offset) throws IOException {
-        long originalOffset = mFile.getFilePointer();
-        mFile.seek(offset);
-        mFile.readFully(mBuffer, 0, (int) Math.min(mBuffer.length, mFile.length() - offset));
-        mFile.seek(originalOffset);
-
-        for (int i = 0; i < mBuffer.length; ++i) {
-            if (mBuffer[i] == 0) {
-                return new String(mBuffer, 0, i);
+        ensureOpen();
+        if (offset < 0 || offset > mMap.limit()) {
+            throw new EOFException("Offset " + offset + " out of file: " + mPath);
+        }
+        for (int i = (int) offset; i < mMap.limit(); ++i) {
+            if (mMap.get(i) == 0) {
+                byte[] bytes = new byte[i - (int) offset];
+                for (int j = 0; j < bytes.length; j++) {
+                    bytes[j] = mMap.get((int) offset + j);
+                }
+                return new String(bytes);
             }
         }
 
@@ -1207,12 +1428,15 @@ public class ReadElf implements AutoCloseable {
     }
 
     private int readByte() throws IOException {
-        return mFile.read() & 0xff;
+        return (int) readX(1);
     }
 
     /** Gets the symbol by name. */
     @CanIgnoreReturnValue
     public Symbol getSymbol(String name) {
+        if (mClosed) {
+            return null;
+        }
         if (mSymbols == null) {
             try {
                 mSymArr = new Symbol[mSymEntCnt];
@@ -1222,8 +1446,7 @@ public class ReadElf implements AutoCloseable {
                                 false,
                                 mStrTabOffset,
                                 mStrTabSize,
-                                mSymTabOffset,
-                                mSymTabSize);
+                                mSymTabOffset);
             } catch (IOException e) {
                 return null;
             }
@@ -1231,14 +1454,27 @@ public class ReadElf implements AutoCloseable {
         return mSymbols.get(name);
     }
 
-    /** Gets a dynamic symbol by name. */
+    /**
+     * Gets a dynamic symbol by name.
+     *
+     * <p>Until the whole Dynamic Symbol Table is loaded, a non-empty name is looked up through the
+     * hash table of the file, and only the matching symbol and its version are read.
+     */
     @CanIgnoreReturnValue
     public Symbol getDynamicSymbol(String name) throws IOException {
+        ensureOpen();
+        if (mDynamicSymbols == null && !name.isEmpty()
+                && (mGnuHashTabOffset != 0 || mHashTabOffset != 0)) {
+            try {
+                int index =
+                        mGnuHashTabOffset != 0 ? gnuHashLookup(name) : sysvHashLookup(name);
+                return index > 0 ? readDynamicSymbol(index) : null;
+            } catch (IOException e) {
+                return null;
+            }
+        }
         if (mDynamicSymbols == null) {
             try {
-                int[] verSmyArr = this.getVerSym();
-                VerNeed[] verNeedArr = this.getVerNeedArr();
-                VerDef[] verDefArr = this.getVerDef();
                 mDynSymArr = new Symbol[mDynSymEntCnt];
                 mDynamicSymbols =
                         readSymbolTable(
@@ -1246,8 +1482,7 @@ public class ReadElf implements AutoCloseable {
                                 true,
                                 mDynStrOffset,
                                 mDynStrSize,
-                                mDynSymOffset,
-                                mDynSymSize);
+                                mDynSymOffset);
             } catch (IOException e) {
                 return null;
             }
@@ -1257,6 +1492,7 @@ public class ReadElf implements AutoCloseable {
 
     // Get Dynamic Linking Dependency List
     public List<String> getDynamicDependencies() throws IOException {
+        ensureOpen();
         List<String> result = new ArrayList<>();
         for (DynamicEntry entry : getDynamicList()) {
             if (entry.isNeeded()) {
@@ -1270,7 +1506,7 @@ public class ReadElf implements AutoCloseable {
         if (mDynamicArr == null) {
             int entryNo = 0;
             mDynamicArr = new ArrayList<>();
-            mFile.seek(mDynamicTabOffset);
+            seek(mDynamicTabOffset);
             System.out.println(
                     String.format(
                             "mDynamicTabOffset 0x%x, mDynamicTabSize %d",
@@ -1307,6 +1543,7 @@ public class ReadElf implements AutoCloseable {
      * @return a String list .rodata section
      */
     public List<String> getRoStrings() throws IOException {
+        ensureOpen();
         if (mRoStrings == null) {
             mRoStrings = new ArrayList<>();
             byte[] byteArr = getRoData();
@@ -1333,10 +1570,14 @@ public class ReadElf implements AutoCloseable {
      * @return byte [] of .rodata or null if there is none
      */
     public byte[] getRoData() throws IOException {
+        ensureOpen();
         if (mHasRodata && mRoData == null) {
             mRoData = new byte[mRodataSize];
-            mFile.seek(mRodataOffset);
-            mFile.readFully(mRoData);
+            seek(mRodataOffset);
+            if (mRodataSize > mMap.remaining()) {
+                throw new EOFException("Unexpected end of file: " + mPath);
+            }
+            mMap.get(mRoData);
         }
 
         return mRoData;
@@ -34,6 +34,10 @@ import java.util.List;
  */
 public class ReportLog implements Serializable {
 
+    // The values computed before StreamingStat was added, so that instances serialized by older
+    // versions can still be read.
+    private static final long serialVersionUID = -5082560348022993899L;
+
     private static final String ENCODING = "UTF-8";
     private static final String TYPE = "org.kxml2.io.KXmlParser,org.kxml2.io.KXmlSerializer";
 
@@ -52,12 +56,14 @@ public class ReportLog implements Serializable {
     protected String mStreamName;
 
     public static class Metric implements Serializable {
+        private static final long serialVersionUID = 2110245532127296964L;
         private static final int MAX_SOURCE_LENGTH = 200;
         private static final int MAX_MESSAGE_LENGTH = 200;
         private static final int MAX_NUM_VALUES = 1000;
         String mSource;
         String mMessage;
         double[] mValues;
+        StreamingStat mStat;
         ResultType mType;
         ResultUnit mUnit;
 
@@ -65,6 +71,16 @@ public class ReportLog implements Serializable {
             this(source, message, new double[] { value }, type, unit);
         }
 
+        /**
+         * Creates a metric from streaming statistics, whose value is the mean. The statistics are
+         * included in the report instead of the values.
+         */
+        Metric(String source, String message, StreamingStat stat, ResultType type,
+                ResultUnit unit) {
+            this(source, message, stat.getMean(), type, unit);
+            mStat = stat;
+        }
+
         /**
          * Creates a metric array to be included in the report. Each object has a message
          * describing its values and enums to interpret them. In addition, each result also includes
@@ -114,6 +130,11 @@ public class ReportLog implements Serializable {
             return mValues;
         }
 
+        /** Returns the streaming statistics of the metric, or null if there are none. */
+        public StreamingStat getStat() {
+            return mStat;
+        }
+
         public ResultType getType() {
             return mType;
         }
@@ -124,6 +145,15 @@ public class ReportLog implements Serializable {
 
         void serialize(XmlSerializer serializer)
                 throws IllegalArgumentException, IllegalStateException, IOException {
+            serialize(serializer, false);
+        }
+
+        /**
+         * @param includeStat whether to include the {@link StreamingStat} of the metric, if any.
+         *     Parsers that predate StreamingStat don't expect the element.
+         */
+        void serialize(XmlSerializer serializer, boolean includeStat)
+                throws IllegalArgumentException, IllegalStateException, IOException {
             serializer.startTag(null, METRIC_TAG);
             serializer.attribute(null, SOURCE_ATTR, getSource());
             serializer.attribute(null, MESSAGE_ATTR, getMessage());
@@ -134,6 +164,9 @@ public class ReportLog implements Serializable {
                 serializer.text(Double.toString(d));
                 serializer.endTag(null, VALUE_TAG);
             }
+            if (includeStat && mStat != null) {
+                mStat.serialize(serializer);
+            }
             serializer.endTag(null, METRIC_TAG);
         }
 
@@ -147,7 +180,12 @@ public class ReportLog implements Serializable {
             ResultUnit unit = ResultUnit.parseReportString(
                     parser.getAttributeValue(null, SCOREUNIT_ATTR));
             List<String> valuesList = new ArrayList<>();
+            StreamingStat stat = null;
             while (parser.nextTag() == XmlPullParser.START_TAG) {
+                if (StreamingStat.STAT_TAG.equals(parser.getName())) {
+                    stat = StreamingStat.parse(parser);
+                    continue;
+                }
                 parser.require(XmlPullParser.START_TAG, null, VALUE_TAG);
                 valuesList.add(parser.nextText());
                 parser.require(XmlPullParser.END_TAG, null, VALUE_TAG);
@@ -158,7 +196,9 @@ public class ReportLog implements Serializable {
                 values[i] = Double.parseDouble(valuesList.get(i));
             }
             parser.require(XmlPullParser.END_TAG, null, METRIC_TAG);
-            return new Metric(source, message, values, type, unit);
+            Metric metric = new Metric(source, message, values, type, unit);
+            metric.mStat = stat;
+            return metric;
         }
     }
 
@@ -186,6 +226,22 @@ public class ReportLog implements Serializable {
         // Do nothing. Subclasses may implement using InfoStore to write metrics to files.
     }
 
+    /**
+     * Adds streaming statistics of a metric to the report, rather than all its values.
+     */
+    public void addValues(String message, StreamingStat values, ResultType type,
+            ResultUnit unit) {
+        // Do nothing. Subclasses may implement using InfoStore to write metrics to files.
+    }
+
+    /**
+     * Adds streaming statistics of a metric to the report, rather than all its values.
+     */
+    public void addValues(String source, String message, StreamingStat values, ResultType type,
+            ResultUnit unit) {
+        // Do nothing. Subclasses may implement using InfoStore to write metrics to files.
+    }
+
     /**
      * Adds a double metric to the report.
      */
@@ -288,6 +344,17 @@ public class ReportLog implements Serializable {
                 type, unit));
     }
 
+    /**
+     * Sets the summary of the report to the mean of streaming statistics, which are included in
+     * the report.
+     *
+     * NOTE: messages over {@value Metric#MAX_MESSAGE_LENGTH} chars will be trimmed.
+     */
+    public void setSummary(String message, StreamingStat stat, ResultType type, ResultUnit unit) {
+        setSummary(new Metric(Stacktrace.getTestCallerClassMethodNameLineNumber(), message, stat,
+                type, unit));
+    }
+
     public Metric getSummary() {
         return mSummary;
     }
@@ -301,12 +368,27 @@ public class ReportLog implements Serializable {
      */
     public static String serialize(ReportLog reportlog) throws XmlPullParserException,
             IllegalArgumentException, IllegalStateException, IOException {
+        return serialize(reportlog, false);
+    }
+
+    /**
+     * Serializes a given {@link ReportLog} to a String.
+     * @param includeStat whether to include the {@link StreamingStat} of the summary, if any.
+     *     Parsers that predate StreamingStat don't expect the element.
+     * @throws XmlPullParserException
+     * @throws IOException
+     * @throws IllegalStateException
+     * @throws IllegalArgumentException
+     */
+    public static String serialize(ReportLog reportlog, boolean includeStat)
+            throws XmlPullParserException, IllegalArgumentException, IllegalStateException,
+            IOException {
         ByteArrayOutputStream byteArrayOutputStream = new ByteArrayOutputStream();
         XmlSerializer serializer = XmlPullParserFactory.newInstance(TYPE, null).newSerializer();
         serializer.setOutput(byteArrayOutputStream, ENCODING);
         serializer.startDocument(ENCODING, true);
         serializer.setFeature("http://xmlpull.org/v1/doc/features.html#indent-output", true);
-        serialize(serializer, reportlog);
+        serialize(serializer, reportlog, includeStat);
         serializer.endDocument();
         return byteArrayOutputStream.toString(ENCODING);
     }
@@ -319,6 +401,18 @@ public class ReportLog implements Serializable {
      */
     public static void serialize(XmlSerializer serializer, ReportLog reportLog)
             throws IOException {
+        serialize(serializer, reportLog, false);
+    }
+
+    /**
+     * Serializes a given {@link ReportLog} to XML.
+     * @param serializer
+     * @param reportLog
+     * @param includeStat whether to include the {@link StreamingStat} of the summary, if any.
+     * @throws IOException
+     */
+    public static void serialize(XmlSerializer serializer, ReportLog reportLog,
+            boolean includeStat) throws IOException {
         if (reportLog == null) {
             throw new IllegalArgumentException("Metrics reports was null");
         }
@@ -326,7 +420,7 @@ public class ReportLog implements Serializable {
         // Summary is optional. Details are not included in result report.
         if (summary != null) {
             serializer.startTag(null, SUMMARY_TAG);
-            summary.serialize(serializer);
+            summary.serialize(serializer, includeStat);
             serializer.endTag(null, SUMMARY_TAG);
         }
     }
@@ -24,7 +24,12 @@ import org.xmlpull.v1.XmlPullParserException;
 import org.xmlpull.v1.XmlPullParserFactory;
 import org.xmlpull.v1.XmlSerializer;
 
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
 import java.io.File;
+import java.io.FileInputStream;
 import java.io.FileOutputStream;
 import java.io.FileReader;
 import java.io.IOException;
@@ -32,19 +37,29 @@ import java.io.InputStream;
 import java.io.OutputStream;
 import java.net.InetAddress;
 import java.net.UnknownHostException;
+import java.nio.charset.StandardCharsets;
 import java.nio.file.FileSystems;
 import java.nio.file.Files;
 import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
 import java.text.SimpleDateFormat;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Collection;
 import java.util.Collections;
 import java.util.Date;
+import java.util.EnumMap;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Locale;
 import java.util.Map;
 import java.util.Map.Entry;
 import java.util.Set;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
 
 import javax.xml.transform.Transformer;
 import javax.xml.transform.TransformerException;
@@ -129,23 +144,78 @@ public class ResultHandler {
     private static final String TEST_TAG = "Test";
 
     private static final String LATEST_RESULT_DIR = "latest";
+    private static final String LIGHT_RESULTS_INDEX_FILE_NAME = ".light_results_index";
+    // Version 2 counts a test that appears more than once in a result file only once
+    private static final int LIGHT_RESULTS_INDEX_VERSION = 2;
 
     /**
      * Returns IInvocationResults that can be queried for general reporting information, but that
      * do not store underlying module data. Useful for summarizing invocation history.
+     * <p/>
+     * Result files are scanned concurrently, and only for the attributes a light result needs.
+     * What was scanned is remembered in an index file of the results directory, keyed on the
+     * size and modification time of each result file, so that results that did not change since
+     * the last call are not read again.
      * @param resultsDir
      */
     public static List<IInvocationResult> getLightResults(File resultsDir) {
-        List<IInvocationResult> results = new ArrayList<>();
-        List<File> files = getResultDirectories(resultsDir);
+        List<File> files = new ArrayList<>();
+        for (File resultDir : getResultDirectories(resultsDir)) {
+            if (!LATEST_RESULT_DIR.equals(resultDir.getName())) {
+                files.add(resultDir);
+            }
+        }
+        File indexFile = new File(resultsDir, LIGHT_RESULTS_INDEX_FILE_NAME);
+        Map<String, LightIndexEntry> index = readLightResultsIndex(indexFile);
+        Map<String, LightIndexEntry> newIndex = new LinkedHashMap<>();
+        List<File> staleDirs = new ArrayList<>();
         for (File resultDir : files) {
-            if (LATEST_RESULT_DIR.equals(resultDir.getName())) {
-                continue;
+            File resultFile = new File(resultDir, TEST_RESULT_FILE_NAME);
+            LightIndexEntry entry = index.get(resultDir.getName());
+            if (entry != null && entry.mSize == resultFile.length()
+                    && entry.mLastModified == resultFile.lastModified()) {
+                newIndex.put(resultDir.getName(), entry);
+            } else {
+                staleDirs.add(resultDir);
+            }
+        }
+
+        // Scan the new or changed result files concurrently, they are independent.
+        List<LightIndexEntry> scanned = new ArrayList<>();
+        if (!staleDirs.isEmpty()) {
+            int threads = Math.min(staleDirs.size(), Runtime.getRuntime().availableProcessors());
+            ExecutorService executor = Executors.newFixedThreadPool(threads);
+            try {
+                List<Future<LightIndexEntry>> futures = new ArrayList<>();
+                for (File resultDir : staleDirs) {
+                    futures.add(executor.submit(() -> scanLightResult(resultDir)));
+                }
+                for (Future<LightIndexEntry> future : futures) {
+                    scanned.add(future.get());
+                }
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new RuntimeException("Interrupted while loading results", e);
+            } catch (ExecutionException e) {
+                throw new RuntimeException("Failed to load results", e.getCause());
+            } finally {
+                executor.shutdownNow();
+            }
+        }
+        for (LightIndexEntry entry : scanned) {
+            if (entry != null) {
+                newIndex.put(entry.mResult.getRetryDirectory().getName(), entry);
             }
-            IInvocationResult result = getResultFromDir(resultDir, false);
-            if (result != null) {
-                results.add(new LightInvocationResult(result));
-                result = null; // ensure all references are removed to free memory
+        }
+        if (!scanned.isEmpty() || newIndex.size() != index.size()) {
+            writeLightResultsIndex(indexFile, newIndex.values());
+        }
+
+        List<IInvocationResult> results = new ArrayList<>();
+        for (File resultDir : files) {
+            LightIndexEntry entry = newIndex.get(resultDir.getName());
+            if (entry != null) {
+                results.add(entry.mResult);
             }
         }
         // Sort the table entries on each entry's timestamp.
@@ -155,6 +225,235 @@ public class ResultHandler {
         return results;
     }
 
+    /** A light result, and the size and modification time of the result file it came from. */
+    private static class LightIndexEntry {
+        final long mSize;
+        final long mLastModified;
+        final LightInvocationResult mResult;
+
+        LightIndexEntry(long size, long lastModified, LightInvocationResult result) {
+            mSize = size;
+            mLastModified = lastModified;
+            mResult = result;
+        }
+    }
+
+    /**
+     * Scans a result file for the information of a {@link LightInvocationResult}: the Result,
+     * Build, Module and Test attributes. Unlike {@link #getResultFromDir(File)}, no test or
+     * module result is created, and the content of the tests (failures, logs, metrics) is skipped.
+     * @return the entry for this result, or null upon error
+     */
+    private static LightIndexEntry scanLightResult(File resultDir) {
+        File resultFile = new File(resultDir, TEST_RESULT_FILE_NAME);
+        // Read the key before the content, so that a concurrent write is scanned again next time
+        long size = resultFile.length();
+        long lastModified = resultFile.lastModified();
+        try (FileReader reader = new FileReader(resultFile)) {
+            LightInvocationResult invocation = new LightInvocationResult(resultDir);
+            XmlPullParser parser = XmlPullParserFactory.newInstance().newPullParser();
+            parser.setInput(reader);
+
+            parser.nextTag();
+            parser.require(XmlPullParser.START_TAG, NS, RESULT_TAG);
+            invocation.setStartTime(Long.valueOf(
+                    parser.getAttributeValue(NS, START_TIME_ATTR)));
+            invocation.setTestPlan(parser.getAttributeValue(NS, SUITE_PLAN_ATTR));
+            invocation.setCommandLineArgs(parser.getAttributeValue(NS, COMMAND_LINE_ARGS));
+            String deviceList = parser.getAttributeValue(NS, DEVICES_ATTR);
+            for (String device : deviceList.split(",")) {
+                invocation.addDeviceSerial(device);
+            }
+
+            parser.nextTag();
+            parser.require(XmlPullParser.START_TAG, NS, BUILD_TAG);
+            invocation.addInvocationInfo(BUILD_ID, parser.getAttributeValue(NS, BUILD_ID));
+            invocation.addInvocationInfo(BUILD_PRODUCT, parser.getAttributeValue(NS,
+                    BUILD_PRODUCT));
+            String runHistoryValue = parser.getAttributeValue(NS, RUN_HISTORY_ATTR);
+            if (runHistoryValue != null) {
+                invocation.addInvocationInfo(RUN_HISTORY_ATTR, runHistoryValue);
+            }
+            String unalteredFingerprint = parser.getAttributeValue(NS, BUILD_FINGERPRINT_UNALTERED);
+            invocation.setBuildFingerprint(Strings.isNullOrEmpty(unalteredFingerprint)
+                    ? parser.getAttributeValue(NS, BUILD_FINGERPRINT) : unalteredFingerprint);
+
+            // Modules are children of Result, tests are children of TestCase children of modules.
+            // The module and test counts of the Summary tag are not used: they may not match
+            // the content for merged or edited results, which getResultFromDir reflects.
+            // Like there, a module, case or test that appears again is the same one, and the
+            // last status of a test is the one counted.
+            Map<String, Boolean> moduleDone = new HashMap<>();
+            Map<List<String>, TestStatus> testStatus = new HashMap<>();
+            String moduleId = null;
+            String caseName = null;
+            int event;
+            while ((event = parser.next()) != XmlPullParser.END_DOCUMENT) {
+                if (event != XmlPullParser.START_TAG) {
+                    continue;
+                }
+                if (parser.getDepth() == 2 && MODULE_TAG.equals(parser.getName())) {
+                    moduleId = AbiUtils.createId(parser.getAttributeValue(NS, ABI_ATTR),
+                            parser.getAttributeValue(NS, NAME_ATTR));
+                    invocation.getOrCreateModule(moduleId);
+                    moduleDone.put(moduleId,
+                            Boolean.parseBoolean(parser.getAttributeValue(NS, DONE_ATTR)));
+                } else if (parser.getDepth() == 3 && CASE_TAG.equals(parser.getName())) {
+                    caseName = parser.getAttributeValue(NS, NAME_ATTR);
+                } else if (parser.getDepth() == 4 && TEST_TAG.equals(parser.getName())) {
+                    // A skipped test is marked passed, see getResultFromDir
+                    String skipped = parser.getAttributeValue(NS, SKIPPED_ATTR);
+                    TestStatus status = Boolean.parseBoolean(skipped) ? TestStatus.PASS
+                            : TestStatus.getStatus(parser.getAttributeValue(NS, RESULT_ATTR));
+                    testStatus.put(Arrays.asList(moduleId, caseName,
+                            parser.getAttributeValue(NS, NAME_ATTR)), status);
+                }
+            }
+            int completeModules = 0;
+            for (boolean done : moduleDone.values()) {
+                completeModules += done ? 1 : 0;
+            }
+            invocation.setModuleCompleteCount(completeModules);
+            Map<TestStatus, Integer> counts = new EnumMap<>(TestStatus.class);
+            for (TestStatus status : testStatus.values()) {
+                if (status != null) {
+                    counts.merge(status, 1, Integer::sum);
+                }
+            }
+            for (Entry<TestStatus, Integer> count : counts.entrySet()) {
+                invocation.setResultCount(count.getKey(), count.getValue());
+            }
+            return new LightIndexEntry(size, lastModified, invocation);
+        } catch (XmlPullParserException | IOException e) {
+            System.out.println(
+                    String.format("Exception when trying to load %s",
+                            resultFile.getAbsolutePath()));
+            e.printStackTrace();
+            return null;
+        }
+    }
+
+    /**
+     * Reads the light results index of a results directory.
+     * @return the entries by result directory name, empty if the index is missing or unreadable
+     */
+    private static Map<String, LightIndexEntry> readLightResultsIndex(File indexFile) {
+        Map<String, LightIndexEntry> index = new HashMap<>();
+        if (!indexFile.isFile()) {
+            return index;
+        }
+        File resultsDir = indexFile.getParentFile();
+        try (DataInputStream in = new DataInputStream(
+                new BufferedInputStream(new FileInputStream(indexFile)))) {
+            if (in.readInt() != LIGHT_RESULTS_INDEX_VERSION) {
+                return index;
+            }
+            int entries = in.readInt();
+            for (int i = 0; i < entries; i++) {
+                String name = readIndexString(in);
+                long size = in.readLong();
+                long lastModified = in.readLong();
+                LightInvocationResult result =
+                        new LightInvocationResult(new File(resultsDir, name));
+                result.setStartTime(in.readLong());
+                result.setTestPlan(readIndexString(in));
+                result.setCommandLineArgs(readIndexString(in));
+                result.setBuildFingerprint(readIndexString(in));
+                for (int j = in.readInt(); j > 0; j--) {
+                    result.addInvocationInfo(readIndexString(in), readIndexString(in));
+                }
+                for (int j = in.readInt(); j > 0; j--) {
+                    result.addDeviceSerial(readIndexString(in));
+                }
+                for (int j = in.readInt(); j > 0; j--) {
+                    result.getOrCreateModule(readIndexString(in));
+                }
+                result.setModuleCompleteCount(in.readInt());
+                for (int j = in.readInt(); j > 0; j--) {
+                    TestStatus status = TestStatus.getStatus(readIndexString(in));
+                    int count = in.readInt();
+                    if (status != null) {
+                        result.setResultCount(status, count);
+                    }
+                }
+                index.put(name, new LightIndexEntry(size, lastModified, result));
+            }
+        } catch (IOException | RuntimeException e) {
+            // Scan all the result files again rather than trusting a partial index
+            index.clear();
+        }
+        return index;
+    }
+
+    /** Writes the light results index, replacing the previous one at once. */
+    private static void writeLightResultsIndex(
+            File indexFile, Collection<LightIndexEntry> entries) {
+        File tmpFile = new File(indexFile.getPath() + ".tmp");
+        try {
+            try (DataOutputStream out = new DataOutputStream(
+                    new BufferedOutputStream(new FileOutputStream(tmpFile)))) {
+                out.writeInt(LIGHT_RESULTS_INDEX_VERSION);
+                out.writeInt(entries.size());
+                for (LightIndexEntry entry : entries) {
+                    LightInvocationResult result = entry.mResult;
+                    writeIndexString(out, result.getRetryDirectory().getName());
+                    out.writeLong(entry.mSize);
+                    out.writeLong(entry.mLastModified);
+                    out.writeLong(result.getStartTime());
+                    writeIndexString(out, result.getTestPlan());
+                    writeIndexString(out, result.getCommandLineArgs());
+                    writeIndexString(out, result.getBuildFingerprint());
+                    out.writeInt(result.getInvocationInfo().size());
+                    for (Entry<String, String> info : result.getInvocationInfo().entrySet()) {
+                        writeIndexString(out, info.getKey());
+                        writeIndexString(out, info.getValue());
+                    }
+                    out.writeInt(result.getDeviceSerials().size());
+                    for (String serial : result.getDeviceSerials()) {
+                        writeIndexString(out, serial);
+                    }
+                    out.writeInt(result.getModuleIds().size());
+                    for (String moduleId : result.getModuleIds()) {
+                        writeIndexString(out, moduleId);
+                    }
+                    out.writeInt(result.getModuleCompleteCount());
+                    out.writeInt(TestStatus.values().length);
+                    for (TestStatus status : TestStatus.values()) {
+                        writeIndexString(out, status.getValue());
+                        out.writeInt(result.countResults(status));
+                    }
+                }
+            }
+            Files.move(tmpFile.toPath(), indexFile.toPath(), StandardCopyOption.REPLACE_EXISTING,
+                    StandardCopyOption.ATOMIC_MOVE);
+        } catch (IOException e) {
+            // The index is only an optimization, e.g. the results directory may be read-only
+            tmpFile.delete();
+        }
+    }
+
+    /** Writes a nullable string of any length. */
+    private static void writeIndexString(DataOutputStream out, String value) throws IOException {
+        if (value == null) {
+            out.writeInt(-1);
+            return;
+        }
+        byte[] bytes = value.getBytes(StandardCharsets.UTF_8);
+        out.writeInt(bytes.length);
+        out.write(bytes);
+    }
+
+    /** Reads a string written by {@link #writeIndexString}. */
+    private static String readIndexString(DataInputStream in) throws IOException {
+        int length = in.readInt();
+        if (length < 0) {
+            return null;
+        }
+        byte[] bytes = new byte[length];
+        in.readFully(bytes);
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+
     /**
      * @param resultDir
      * @return an IInvocationResult for this result, or null upon error
@@ -0,0 +1,354 @@
+/*
+ * Copyright (C) 2026 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.android.compatibility.common.util;
+
+import org.xmlpull.v1.XmlPullParser;
+import org.xmlpull.v1.XmlPullParserException;
+import org.xmlpull.v1.XmlSerializer;
+
+import java.io.IOException;
+import java.io.Serializable;
+
+/**
+ * Statistics of a stream of values, in constant memory.
+ *
+ * <p>Keeps the count, min, max, mean and variance (Welford's algorithm), and a quantile sketch:
+ * values are counted in logarithmic buckets, so that any quantile is known within a relative
+ * accuracy, 1% by default. Accumulators of the same accuracy can be merged, for example those of
+ * several threads or runs.
+ *
+ * <p>Unlike {@link Stat}, the values don't need to be kept, which matters for tests that record
+ * millions of samples.
+ */
+public class StreamingStat implements Serializable {
+    public static final double DEFAULT_RELATIVE_ACCURACY = 0.01;
+
+    /**
+     * Buckets per sign, which cover 35 orders of magnitude at 1%. Beyond that, the buckets of the
+     * values closest to 0 are merged.
+     */
+    static final int MAX_BUCKETS = 4096;
+
+    // XML constants
+    static final String STAT_TAG = "Stat";
+    private static final String COUNT_ATTR = "count";
+    private static final String MEAN_ATTR = "mean";
+    private static final String STDDEV_ATTR = "stddev";
+    private static final String MIN_ATTR = "min";
+    private static final String MAX_ATTR = "max";
+    private static final String MEDIAN_ATTR = "median";
+    private static final String P95_ATTR = "p95";
+    private static final String RELATIVE_ACCURACY_ATTR = "relative_accuracy";
+    private static final String ZERO_COUNT_ATTR = "zero_count";
+    private static final String POSITIVE_BUCKETS_ATTR = "positive_buckets";
+    private static final String NEGATIVE_BUCKETS_ATTR = "negative_buckets";
+
+    private final double mRelativeAccuracy;
+    private final double mLogGamma;
+    private long mCount = 0;
+    private double mMean = 0;
+    /** Sum of the squared differences to the mean. */
+    private double mM2 = 0;
+    private double mMin = Double.POSITIVE_INFINITY;
+    private double mMax = Double.NEGATIVE_INFINITY;
+    private long mZeroCount = 0;
+    private final Buckets mPositive = new Buckets();
+    private final Buckets mNegative = new Buckets();
+
+    public StreamingStat() {
+        this(DEFAULT_RELATIVE_ACCURACY);
+    }
+
+    /**
+     * @param relativeAccuracy the max relative error of the quantiles, between 0 and 1 exclusive
+     */
+    public StreamingStat(double relativeAccuracy) {
+        if (!(relativeAccuracy > 0 && relativeAccuracy < 1)) {
+            throw new IllegalArgumentException("Invalid relative accuracy: " + relativeAccuracy);
+        }
+        mRelativeAccuracy = relativeAccuracy;
+        // A value v goes to the bucket i where gamma^(i-1) < v <= gamma^i
+        mLogGamma = Math.log((1 + relativeAccuracy) / (1 - relativeAccuracy));
+    }
+
+    /** Adds a value. */
+    public void add(double value) {
+        if (Double.isNaN(value) || Double.isInfinite(value)) {
+            throw new IllegalArgumentException("Invalid value: " + value);
+        }
+        mCount++;
+        double delta = value - mMean;
+        mMean += delta / mCount;
+        mM2 += delta * (value - mMean);
+        mMin = Math.min(mMin, value);
+        mMax = Math.max(mMax, value);
+        if (value > 0) {
+            mPositive.add(getIndex(value), 1);
+        } else if (value < 0) {
+            mNegative.add(getIndex(-value), 1);
+        } else {
+            mZeroCount++;
+        }
+    }
+
+    /** Adds all the values of an array. */
+    public void addAll(double[] values) {
+        for (double value : values) {
+            add(value);
+        }
+    }
+
+    /**
+     * Adds all the values of another accumulator, as if they had been added to this one.
+     *
+     * @throws IllegalArgumentException if the relative accuracies differ
+     */
+    public void merge(StreamingStat other) {
+        if (other.mRelativeAccuracy != mRelativeAccuracy) {
+            throw new IllegalArgumentException(
+                    "Can't merge relative accuracies "
+                            + mRelativeAccuracy
+                            + " and "
+                            + other.mRelativeAccuracy);
+        }
+        if (other.mCount == 0) {
+            return;
+        }
+        // Chan et al.'s parallel variant of Welford's algorithm
+        long count = mCount + other.mCount;
+        double delta = other.mMean - mMean;
+        mMean += delta * other.mCount / count;
+        mM2 += other.mM2 + delta * delta * ((double) mCount * other.mCount / count);
+        mCount = count;
+        mMin = Math.min(mMin, other.mMin);
+        mMax = Math.max(mMax, other.mMax);
+        mZeroCount += other.mZeroCount;
+        mPositive.addAll(other.mPositive);
+        mNegative.addAll(other.mNegative);
+    }
+
+    public long getCount() {
+        return mCount;
+    }
+
+    public double getRelativeAccuracy() {
+        return mRelativeAccuracy;
+    }
+
+    /** Returns the mean, or NaN if there are no values. */
+    public double getMean() {
+        return mCount == 0 ? Double.NaN : mMean;
+    }
+
+    /** Returns the sample variance, like {@link Stat#getStat}, or NaN if there are < 2 values. */
+    public double getVariance() {
+        return mCount < 2 ? Double.NaN : mM2 / (mCount - 1);
+    }
+
+    public double getStddev() {
+        return Math.sqrt(getVariance());
+    }
+
+    /** Returns the min, or NaN if there are no values. */
+    public double getMin() {
+        return mCount == 0 ? Double.NaN : mMin;
+    }
+
+    /** Returns the max, or NaN if there are no values. */
+    public double getMax() {
+        return mCount == 0 ? Double.NaN : mMax;
+    }
+
+    /**
+     * Returns the value of rank q * (count - 1) among the sorted values, within the relative
+     * accuracy, or NaN if there are no values.
+     *
+     * @param q the quantile, between 0 and 1
+     */
+    public double getQuantile(double q) {
+        if (!(q >= 0 && q <= 1)) {
+            throw new IllegalArgumentException("Invalid quantile: " + q);
+        }
+        if (mCount == 0) {
+            return Double.NaN;
+        }
+        long rank = (long) (q * (mCount - 1));
+        double value;
+        if (rank < mNegative.mTotal) {
+            // The most negative values have the highest indices
+            value = -getValue(mNegative.getIndex(mNegative.mTotal - 1 - rank));
+        } else if (rank < mNegative.mTotal + mZeroCount) {
+            value = 0;
+        } else {
+            value = getValue(mPositive.getIndex(rank - mNegative.mTotal - mZeroCount));
+        }
+        return Math.max(mMin, Math.min(mMax, value));
+    }
+
+    public double getMedian() {
+        return getQuantile(0.5);
+    }
+
+    /** Returns the statistics in the form of {@link Stat#getStat}, with an approximate median. */
+    public Stat.StatResult getStatResult() {
+        return new Stat.StatResult(
+                getMean(), getMin(), getMax(), getStddev(), getMedian(), (int) mCount);
+    }
+
+    private int getIndex(double value) {
+        return (int) Math.ceil(Math.log(value) / mLogGamma);
+    }
+
+    /** Returns the value of a bucket, within the relative accuracy of all its values. */
+    private double getValue(int index) {
+        double gamma = Math.exp(mLogGamma);
+        return 2 * Math.exp(index * mLogGamma) / (1 + gamma);
+    }
+
+    /**
+     * Serializes the statistics, including those of {@link Stat#getStat} for comparison, and the
+     * non-empty buckets as "index:count" lists.
+     */
+    void serialize(XmlSerializer serializer) throws IOException {
+        serializer.startTag(null, STAT_TAG);
+        serializer.attribute(null, COUNT_ATTR, Long.toString(mCount));
+        serializer.attribute(null, MEAN_ATTR, Double.toString(getMean()));
+        serializer.attribute(null, STDDEV_ATTR, Double.toString(getStddev()));
+        serializer.attribute(null, MIN_ATTR, Double.toString(getMin()));
+        serializer.attribute(null, MAX_ATTR, Double.toString(getMax()));
+        serializer.attribute(null, MEDIAN_ATTR, Double.toString(getMedian()));
+        serializer.attribute(null, P95_ATTR, Double.toString(getQuantile(0.95)));
+        serializer.attribute(null, RELATIVE_ACCURACY_ATTR, Double.toString(mRelativeAccuracy));
+        serializer.attribute(null, ZERO_COUNT_ATTR, Long.toString(mZeroCount));
+        serializer.attribute(null, POSITIVE_BUCKETS_ATTR, mPositive.toString());
+        serializer.attribute(null, NEGATIVE_BUCKETS_ATTR, mNegative.toString());
+        serializer.endTag(null, STAT_TAG);
+    }
+
+    static StreamingStat parse(XmlPullParser parser) throws XmlPullParserException, IOException {
+        parser.require(XmlPullParser.START_TAG, null, STAT_TAG);
+        StreamingStat stat;
+        try {
+            stat =
+                    new StreamingStat(
+                            Double.parseDouble(
+                                    parser.getAttributeValue(null, RELATIVE_ACCURACY_ATTR)));
+            stat.mCount = Long.parseLong(parser.getAttributeValue(null, COUNT_ATTR));
+            if (stat.mCount > 0) {
+                stat.mMean = Double.parseDouble(parser.getAttributeValue(null, MEAN_ATTR));
+                stat.mMin = Double.parseDouble(parser.getAttributeValue(null, MIN_ATTR));
+                stat.mMax = Double.parseDouble(parser.getAttributeValue(null, MAX_ATTR));
+            }
+            if (stat.mCount > 1) {
+                double stddev = Double.parseDouble(parser.getAttributeValue(null, STDDEV_ATTR));
+                stat.mM2 = stddev * stddev * (stat.mCount - 1);
+            }
+            stat.mZeroCount = Long.parseLong(parser.getAttributeValue(null, ZERO_COUNT_ATTR));
+            stat.mPositive.parse(parser.getAttributeValue(null, POSITIVE_BUCKETS_ATTR));
+            stat.mNegative.parse(parser.getAttributeValue(null, NEGATIVE_BUCKETS_ATTR));
+        } catch (NullPointerException | IllegalArgumentException | IndexOutOfBoundsException e) {
+            throw new XmlPullParserException("Invalid " + STAT_TAG + ": " + e.getMessage());
+        }
+        parser.nextTag();
+        parser.require(XmlPullParser.END_TAG, null, STAT_TAG);
+        return stat;
+    }
+
+    /** Counts of consecutive bucket indices, grown as needed up to {@link #MAX_BUCKETS}. */
+    private static class Buckets implements Serializable {
+        private static final int INITIAL_BUCKETS = 64;
+
+        private long[] mCounts = new long[0];
+        /** The index of mCounts[0]. */
+        private int mOffset = 0;
+        long mTotal = 0;
+
+        void add(int index, long count) {
+            if (mCounts.length == 0) {
+                mCounts = new long[INITIAL_BUCKETS];
+                mOffset = index - INITIAL_BUCKETS / 2;
+            } else if (index < mOffset || index >= mOffset + mCounts.length) {
+                extend(index);
+            }
+            // Below the lowest bucket once collapsed
+            mCounts[Math.max(index, mOffset) - mOffset] += count;
+            mTotal += count;
+        }
+
+        void addAll(Buckets other) {
+            for (int i = 0; i < other.mCounts.length; i++) {
+                if (other.mCounts[i] != 0) {
+                    add(other.mOffset + i, other.mCounts[i]);
+                }
+            }
+        }
+
+        private void extend(int index) {
+            int low = Math.min(index, mOffset);
+            int high = Math.max(index, mOffset + mCounts.length - 1);
+            int length = Math.min(MAX_BUCKETS, Math.max(high - low + 1, 2 * mCounts.length));
+            // Leave room in the direction of growth, and collapse the lowest buckets if needed
+            int offset = index < mOffset ? high - length + 1 : Math.max(low, high - length + 1);
+            long[] counts = new long[length];
+            for (int i = 0; i < mCounts.length; i++) {
+                if (mCounts[i] != 0) {
+                    counts[Math.max(mOffset + i, offset) - offset] += mCounts[i];
+                }
+            }
+            mCounts = counts;
+            mOffset = offset;
+        }
+
+        /** Returns the index of the bucket of a rank, in ascending order. */
+        int getIndex(long rank) {
+            long seen = 0;
+            for (int i = 0; i < mCounts.length; i++) {
+                seen += mCounts[i];
+                if (seen > rank) {
+                    return mOffset + i;
+                }
+            }
+            throw new IllegalStateException("Rank " + rank + " out of " + mTotal);
+        }
+
+        @Override
+        public String toString() {
+            StringBuilder builder = new StringBuilder();
+            for (int i = 0; i < mCounts.length; i++) {
+                if (mCounts[i] != 0) {
+                    if (builder.length() > 0) {
+                        builder.append(' ');
+                    }
+                    builder.append(mOffset + i).append(':').append(mCounts[i]);
+                }
+            }
+            return builder.toString();
+        }
+
+        void parse(String buckets) {
+            if (buckets.isEmpty()) {
+                return;
+            }
+            for (String bucket : buckets.split(" ")) {
+                int colon = bucket.indexOf(':');
+                add(
+                        Integer.parseInt(bucket.substring(0, colon)),
+                        Long.parseLong(bucket.substring(colon + 1)));
+            }
+        }
+    }
+}
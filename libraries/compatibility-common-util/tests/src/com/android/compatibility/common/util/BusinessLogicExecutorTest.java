@@ -0,0 +1,315 @@
+/*
+ * Copyright (C) 2026 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.android.compatibility.common.util;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import org.junit.AssumptionViolatedException;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.junit.runners.JUnit4;
+
+import java.lang.reflect.Method;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/** Unit tests for {@link BusinessLogicExecutor}. */
+@RunWith(JUnit4.class)
+public class BusinessLogicExecutorTest {
+    private static final String RULES = Rules.class.getName();
+
+    @Test
+    public void testResolution() throws Exception {
+        FakeExecutor executor = new FakeExecutor(new FakeDevice("device"), new TestObject());
+        for (int i = 0; i < 2; i++) {
+            assertEquals("none", executor.invokeMethod(RULES + ".none"));
+            assertEquals("one:a", executor.invokeMethod(RULES + ".one", "a"));
+            assertEquals("two:a,b", executor.invokeMethod(RULES + ".two", "a", "b"));
+            assertEquals("array:[a, b, c]",
+                    executor.invokeMethod(RULES + ".array", "a", "b", "c"));
+            assertEquals("array:[]", executor.invokeMethod(RULES + ".array"));
+            assertEquals("device:device:[a, b]",
+                    executor.invokeMethod(RULES + ".withDevice", "a", "b"));
+            assertEquals("static:a", executor.invokeMethod(RULES + "#staticMethod", "a"));
+            assertTrue(executor.executeCondition(RULES + ".isEqual", "a", "a"));
+            assertFalse(executor.executeCondition(RULES + ".isEqual", "a", "b"));
+        }
+        // Every invocation is resolved by the executor
+        assertEquals(18, executor.mResolutions);
+    }
+
+    @Test
+    public void testOverloads() throws Exception {
+        FakeExecutor executor = new FakeExecutor(new FakeDevice("device"), new TestObject());
+        // Several overloads match, the grouped methods must keep the order of getMethods()
+        for (int i = 0; i < 2; i++) {
+            for (String[] args : new String[][] {{}, {"a"}, {"a", "b"}, {"a", "b", "c"}}) {
+                assertEquals(runUncached(executor, "overloaded", args),
+                        executor.invokeMethod(RULES + ".overloaded", args));
+            }
+        }
+    }
+
+    @Test
+    public void testDevicePerExecutor() throws Exception {
+        FakeExecutor first = new FakeExecutor(new FakeDevice("first"), new TestObject());
+        FakeExecutor second = new FakeExecutor(new FakeDevice("second"), new TestObject());
+        assertEquals("device:first:[a]", first.invokeMethod(RULES + ".withDevice", "a"));
+        assertEquals("device:second:[b]", second.invokeMethod(RULES + ".withDevice", "b"));
+        assertEquals("device:first:[c]", first.invokeMethod(RULES + ".withDevice", "c"));
+    }
+
+    @Test
+    public void testTestObject() throws Exception {
+        TestObject testObject = new TestObject();
+        FakeExecutor executor = new FakeExecutor(new FakeDevice("device"), testObject);
+        for (int i = 0; i < 2; i++) {
+            executor.executeAction(TestObject.class.getName() + ".record", "a" + i);
+        }
+        assertEquals(Arrays.asList("a0", "a1"), testObject.mRecorded);
+    }
+
+    @Test
+    public void testExceptions() throws Exception {
+        FakeExecutor executor = new FakeExecutor(new FakeDevice("device"), new TestObject());
+        for (int i = 0; i < 2; i++) {
+            try {
+                executor.executeAction(RULES + ".fail", "message");
+                fail("Expected a RuntimeException");
+            } catch (RuntimeException e) {
+                assertEquals("message", e.getMessage());
+            }
+            try {
+                executor.executeAction(RULES + ".skip", "message");
+                fail("Expected an AssumptionViolatedException");
+            } catch (AssumptionViolatedException e) {
+                // expected
+            }
+            try {
+                executor.executeCondition(RULES + ".missing", "a");
+                fail("Expected a RuntimeException");
+            } catch (RuntimeException e) {
+                assertTrue(e.getMessage().contains("No method"));
+            }
+        }
+    }
+
+    @Test
+    public void testResolutionFromArgumentValues() throws Exception {
+        FakeExecutor executor = new FakeExecutor(new FakeDevice("device"), new TestObject()) {
+            @Override
+            protected ResolvedMethod getResolvedMethod(Class cls, String methodName,
+                    String... args) throws ClassNotFoundException {
+                if (args.length == 1 && args[0].isEmpty()) {
+                    return super.getResolvedMethod(cls, "none");
+                }
+                return super.getResolvedMethod(cls, methodName, args);
+            }
+        };
+        for (int i = 0; i < 2; i++) {
+            assertEquals("one:a", executor.invokeMethod(RULES + ".one", "a"));
+            assertEquals("none", executor.invokeMethod(RULES + ".one", ""));
+        }
+        assertEquals(4, executor.mResolutions);
+    }
+
+    /** Resolve and invoke a rule like before methods were grouped by name. */
+    private static Object runUncached(FakeExecutor executor, String methodName, String[] args)
+            throws Exception {
+        Class<?> cls = Class.forName(RULES);
+        Object instance = cls.getDeclaredConstructor().newInstance();
+        List<Object> resolved = executor.resolve(cls, methodName, true, args);
+        Method method = (Method) resolved.get(0);
+        return method.invoke(instance, resolved.subList(1, resolved.size()).toArray());
+    }
+
+    /** Stands for the device or context that executors supply to business logic methods. */
+    public static class FakeDevice {
+        private final String mName;
+
+        public FakeDevice(String name) {
+            mName = name;
+        }
+
+        @Override
+        public String toString() {
+            return mName;
+        }
+    }
+
+    /** Business logic methods. */
+    public static class Rules {
+        public String none() {
+            return "none";
+        }
+
+        public String one(String a) {
+            return "one:" + a;
+        }
+
+        public String two(String a, String b) {
+            return "two:" + a + "," + b;
+        }
+
+        public String array(String[] args) {
+            return "array:" + Arrays.toString(args);
+        }
+
+        public String overloaded() {
+            return "none";
+        }
+
+        public String overloaded(String a) {
+            return "one:" + a;
+        }
+
+        public String overloaded(String a, String b) {
+            return "two:" + a + "," + b;
+        }
+
+        public String overloaded(String... args) {
+            return "array:" + Arrays.toString(args);
+        }
+
+        public String withDevice(FakeDevice device, String[] args) {
+            return "device:" + device + ":" + Arrays.toString(args);
+        }
+
+        public static String staticMethod(String a) {
+            return "static:" + a;
+        }
+
+        public boolean isEqual(String a, String b) {
+            return a.equals(b);
+        }
+
+        public void fail(String message) {
+            throw new AssertionError(message);
+        }
+
+        public void skip(String message) {
+            throw new AssumptionViolatedException(message);
+        }
+    }
+
+    /** A test case with business logic methods. */
+    public static class TestObject {
+        final List<String> mRecorded = new ArrayList<>();
+
+        public void record(String value) {
+            mRecorded.add(value);
+        }
+    }
+
+    /**
+     * Resolves methods like the device-side and host-side executors: string parameters take the
+     * next argument, a string array the remaining ones, and the device is injected.
+     */
+    private static class FakeExecutor extends BusinessLogicExecutor {
+        private final FakeDevice mDevice;
+        private final Object mTestObject;
+        int mResolutions;
+
+        FakeExecutor(FakeDevice device, Object testObject) {
+            mDevice = device;
+            mTestObject = testObject;
+        }
+
+        @Override
+        protected String formatExecutionString(String method, String... args) {
+            return String.format("%s(%s)", method, String.join(", ", formatArgs(args)));
+        }
+
+        @Override
+        public void logInfo(String format, Object... args) {}
+
+        @Override
+        public void logDebug(String format, Object... args) {}
+
+        @Override
+        protected Object getTestObject() {
+            return mTestObject;
+        }
+
+        @Override
+        protected ResolvedMethod getResolvedMethod(Class cls, String methodName, String... args)
+                throws ClassNotFoundException {
+            mResolutions++;
+            List<Object> resolved = resolve(cls, methodName, false, args);
+            ResolvedMethod rm = new ResolvedMethod((Method) resolved.get(0));
+            for (Object arg : resolved.subList(1, resolved.size())) {
+                rm.addArg(arg);
+            }
+            return rm;
+        }
+
+        /**
+         * Returns the method followed by its arguments.
+         * @param scan whether to scan the methods of the class rather than use getMethodsWithName
+         */
+        List<Object> resolve(Class cls, String methodName, boolean scan, String... args) {
+            List<Method> methods = new ArrayList<>();
+            if (scan) {
+                for (Method m : cls.getMethods()) {
+                    if (methodName.equals(m.getName())) {
+                        methods.add(m);
+                    }
+                }
+            } else {
+                methods = getMethodsWithName(cls, methodName);
+            }
+            for (Method m : methods) {
+                List<Object> resolved = new ArrayList<>();
+                resolved.add(m);
+                int paramTypesMatched = 0;
+                int argsUsed = 0;
+                Class[] paramTypes = m.getParameterTypes();
+                for (Class paramType : paramTypes) {
+                    if (argsUsed == args.length && paramType.equals(String.class)) {
+                        break; // too few args
+                    }
+                    switch (paramType.getName()) {
+                        case STRING_CLASS:
+                            resolved.add(args[argsUsed++]);
+                            paramTypesMatched++;
+                            break;
+                        case STRING_ARRAY_CLASS:
+                            resolved.add(Arrays.copyOfRange(args, argsUsed, args.length));
+                            argsUsed = args.length;
+                            paramTypesMatched++;
+                            break;
+                        default:
+                            if (paramType == FakeDevice.class) {
+                                resolved.add(mDevice);
+                                paramTypesMatched++;
+                            }
+                            break;
+                    }
+                }
+                if (argsUsed == args.length && paramTypesMatched == paramTypes.length) {
+                    return resolved;
+                }
+            }
+            throw new RuntimeException(String.format(
+                    "No method %s in %s for %d args", methodName, cls.getName(), args.length));
+        }
+    }
+}
@@ -0,0 +1,185 @@
+/*
+ * Copyright (C) 2026 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.android.compatibility.common.util;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import com.android.tradefed.util.FileUtil;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.junit.runners.JUnit4;
+
+import java.io.DataInputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.file.Files;
+import java.security.MessageDigest;
+import java.util.Random;
+
+/** Unit tests for {@link ChecksumReporter}. */
+@RunWith(JUnit4.class)
+public class ChecksumReporterTest {
+    private static final String FINGERPRINT = "example_build_fingerprint";
+    private static final double FPP = 0.000001;
+    private static final short VERSION = 1;
+
+    private File mResultDir;
+    private IInvocationResult mInvocation;
+    private IModuleResult mModule;
+    private ITestResult mTest;
+
+    @Before
+    public void setUp() throws Exception {
+        mResultDir = FileUtil.createTempDir("checksum");
+        mInvocation = new InvocationResult();
+        mInvocation.setBuildFingerprint(FINGERPRINT);
+        mModule = mInvocation.getOrCreateModule(
+                AbiUtils.createId("arm64-v8a", "CtsFooTestCases"));
+        mTest = mModule.getOrCreateResult("android.foo.FooTest").getOrCreateResult("testFoo");
+        mTest.setResultStatus(TestStatus.PASS);
+    }
+
+    @After
+    public void tearDown() throws Exception {
+        FileUtil.recursiveDelete(mResultDir);
+    }
+
+    @Test
+    public void testCalculateFileChecksum() throws Exception {
+        // Empty, smaller and larger than the read buffer
+        for (int size : new int[] {0, 100, 3 * 1024 * 1024 + 7}) {
+            File file = writeFile(mResultDir, "file" + size, size);
+            byte[] expected =
+                    MessageDigest.getInstance("SHA-256").digest(Files.readAllBytes(file.toPath()));
+            assertArrayEquals(expected, ChecksumReporter.calculateFileChecksum(file));
+        }
+    }
+
+    @Test
+    public void testAddDirectory() throws Exception {
+        File logs = new File(mResultDir, "logs");
+        File nested = new File(logs, "nested");
+        nested.mkdirs();
+        File logcat = writeFile(logs, "logcat.txt", 200 * 1024);
+        File bugreport = writeFile(nested, "bugreport.zip", 2 * 1024 * 1024);
+
+        ChecksumReporter reporter = new ChecksumReporter(10, FPP, VERSION);
+        reporter.addDirectory(mResultDir);
+
+        String base = mResultDir.getName();
+        assertTrue(reporter.containsFile(logcat, base + "/logs"));
+        assertTrue(reporter.containsFile(bugreport, base + "/logs/nested"));
+        assertFalse(reporter.containsFile(bugreport, base + "/logs"));
+
+        writeFile(nested, "bugreport.zip", 2 * 1024 * 1024);
+        assertFalse(reporter.containsFile(bugreport, base + "/logs/nested"));
+    }
+
+    @Test
+    public void testSaveAndLoad() throws Exception {
+        File logcat = writeFile(mResultDir, "logcat.txt", 1000);
+        ChecksumReporter reporter = new ChecksumReporter(10, FPP, VERSION);
+        reporter.addInvocation(mInvocation);
+        reporter.addDirectory(mResultDir);
+        reporter.saveToFile(mResultDir);
+
+        try (DataInputStream in = new DataInputStream(
+                new FileInputStream(new File(mResultDir, ChecksumReporter.NAME)))) {
+            assertEquals(ChecksumReporter.BINARY_FORMAT_CODE, in.readShort());
+        }
+        checkLoaded(ChecksumReporter.load(mResultDir), logcat);
+    }
+
+    @Test
+    public void testLoad_serializedFormat() throws Exception {
+        File logcat = writeFile(mResultDir, "logcat.txt", 1000);
+        ChecksumReporter reporter = new ChecksumReporter(10, FPP, VERSION);
+        reporter.addInvocation(mInvocation);
+        reporter.addDirectory(mResultDir);
+        reporter.saveToSerializedFile(mResultDir);
+
+        checkLoaded(ChecksumReporter.load(mResultDir), logcat);
+    }
+
+    @Test(expected = ChecksumReporter.ChecksumValidationException.class)
+    public void testLoad_unknownFormat() throws Exception {
+        writeFile(mResultDir, ChecksumReporter.NAME, 100);
+        ChecksumReporter.load(mResultDir);
+    }
+
+    @Test
+    public void testAddDirectory_manyFiles() throws Exception {
+        // More files than hashing threads, over repeated calls sharing the pool
+        File logs = new File(mResultDir, "logs");
+        logs.mkdirs();
+        File[] files = new File[20];
+        for (int i = 0; i < files.length; i++) {
+            files[i] = writeFile(logs, "log" + i + ".txt", 1000 + i);
+        }
+        for (int round = 0; round < 2; round++) {
+            ChecksumReporter reporter = new ChecksumReporter(10, FPP, VERSION);
+            reporter.addDirectory(mResultDir);
+            for (File file : files) {
+                assertTrue(reporter.containsFile(file, mResultDir.getName() + "/logs"));
+            }
+        }
+    }
+
+    @Test
+    public void testAddDirectory_unreadableFile() throws Exception {
+        // Like addFile, an unreadable file gets an empty checksum without failing the others
+        File logcat = writeFile(mResultDir, "logcat.txt", 1000);
+        File missing = new File(mResultDir, "missing.txt");
+        Files.createSymbolicLink(missing.toPath(), new File("/no/such/file").toPath());
+
+        ChecksumReporter reporter = new ChecksumReporter(10, FPP, VERSION);
+        reporter.addDirectory(mResultDir);
+        assertTrue(reporter.containsFile(logcat, mResultDir.getName()));
+        assertFalse(reporter.containsFile(missing, mResultDir.getName()));
+
+        assertTrue(ChecksumReporter.tryCreateChecksum(mResultDir, mInvocation));
+        ChecksumReporter loaded = ChecksumReporter.load(mResultDir);
+        assertTrue(loaded.containsFile(logcat, mResultDir.getName()));
+    }
+
+    private void checkLoaded(ChecksumReporter loaded, File logcat) {
+        assertTrue(loaded.containsFile(logcat, mResultDir.getName()));
+        assertTrue(loaded.containsTestResult(mTest, mModule, FINGERPRINT));
+        assertTrue(loaded.containsModuleResult(mModule, FINGERPRINT));
+        mTest.setResultStatus(TestStatus.FAIL);
+        assertFalse(loaded.containsTestResult(mTest, mModule, FINGERPRINT));
+    }
+
+    private static File writeFile(File dir, String name, int size) throws IOException {
+        File file = new File(dir, name);
+        byte[] content = new byte[size];
+        new Random().nextBytes(content);
+        try (OutputStream out = new FileOutputStream(file)) {
+            out.write(content);
+        }
+        return file;
+    }
+}
@@ -0,0 +1,328 @@
+/*
+ * Copyright (C) 2026 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.android.compatibility.common.util;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.junit.runners.JUnit4;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/** Unit tests for {@link LogcatInspector}, against a simulated logcat. */
+@RunWith(JUnit4.class)
+public class LogcatInspectorTest {
+    // Max time between the last string being logged and the end of a streaming wait.
+    private static final long MAX_LATENCY_MS = 500;
+    private static final int NOISE_LINES = 100000;
+
+    private FakeLogcat mLogcat;
+    private Thread mWriter;
+
+    @Before
+    public void setUp() {
+        mLogcat = new FakeLogcat();
+        mLogcat.setStreaming(true);
+    }
+
+    @After
+    public void tearDown() throws Exception {
+        if (mWriter != null) {
+            mWriter.interrupt();
+            mWriter.join();
+        }
+    }
+
+    @Test
+    public void testOrderedMatcher() {
+        LogcatInspector.OrderedMatcher matcher =
+                new LogcatInspector.OrderedMatcher("she", "he", "hers", "");
+        assertFalse(matcher.accept("ushers"));
+        assertEquals(1, matcher.mNext);
+        // At most one string per line
+        assertFalse(matcher.accept("ushers"));
+        assertEquals(2, matcher.mNext);
+        assertFalse(matcher.accept("his"));
+        assertFalse(matcher.accept("hershey"));
+        assertEquals(3, matcher.mNext);
+        assertTrue(matcher.accept("anything"));
+    }
+
+    @Test
+    public void testStreaming() throws Exception {
+        // Let the inspector catch up before the last string, so that only its latency is measured
+        mLogcat.mPauseBeforeMs = 500;
+        writeInBackground(NOISE_LINES, "first", "second", "third");
+
+        mLogcat.assertLogcatContainsInOrder("*:I", 30, "first", "second", "third");
+
+        assertTrue(mLogcat.sinceLogged("third") < MAX_LATENCY_MS);
+        assertEquals(1, mLogcat.logcatCommands().size());
+    }
+
+    @Test
+    public void testStreaming_mark() throws Exception {
+        mLogcat.log("before");
+        String mark = mLogcat.mark("TAG");
+        writeInBackground(NOISE_LINES / 10, "after");
+
+        mLogcat.assertLogcatContainsInOrder("*:I", 30, mark, "after");
+    }
+
+    @Test
+    public void testStreaming_notInOrder() throws Exception {
+        writeInBackground(NOISE_LINES / 10, "second", "first");
+
+        try {
+            mLogcat.assertLogcatContainsInOrder("*:I", 1, "first", "second");
+            fail("Expected an AssertionError");
+        } catch (AssertionError e) {
+            assertTrue(e.getMessage().contains("Couldn't find second after first"));
+        }
+        assertEquals(1, mLogcat.logcatCommands().size());
+    }
+
+    @Test
+    public void testStreaming_resumesWhenStreamEnds() throws Exception {
+        // Each logcat process dies after 1000 lines; reading the log from the start again would
+        // find "second" after "first".
+        mLogcat.mMaxLinesPerStream = 1000;
+        for (int i = 0; i < 2500; i++) {
+            mLogcat.log(i == 100 ? "second" : i == 1500 ? "first" : "noise " + i);
+        }
+
+        mLogcat.assertLogcatDoesNotContainInOrder(3, "first", "second");
+
+        List<String> commands = mLogcat.logcatCommands();
+        assertTrue(commands.size() >= 3);
+        assertTrue(commands.get(1).contains(" -T "));
+        assertEquals(2500 + commands.size() - 1, mLogcat.mLinesRead);
+    }
+
+    @Test
+    public void testPolling() throws Exception {
+        mLogcat.setStreaming(false);
+        writeInBackground(NOISE_LINES / 10, "first", "second");
+
+        mLogcat.assertLogcatContainsInOrder("*:I", 30, "first", "second");
+
+        assertTrue(mLogcat.logcatCommands().get(0).contains(" -d "));
+    }
+
+    @Test
+    public void testStreaming_resumesWithinSameTimestamp() throws Exception {
+        // Each logcat process dies in the middle of lines sharing a timestamp, which it prints
+        // again when restarted: only the lines read before must be skipped.
+        mLogcat.mMaxLinesPerStream = 3;
+        mLogcat.mLinesPerTimestamp = 2;
+        for (String message : new String[] {"noise 0", "noise 1", "first", "second", "third"}) {
+            mLogcat.log(message);
+        }
+
+        mLogcat.assertLogcatContainsInOrder("*:I", 3, "first", "second", "third");
+
+        List<String> commands = mLogcat.logcatCommands();
+        assertEquals(2, commands.size());
+        assertTrue(commands.get(1).contains(" -T "));
+    }
+
+    /** Logs the strings spread over lines of noise, as fast as possible. */
+    private void writeInBackground(int noiseLines, String... strings) {
+        mWriter =
+                new Thread(
+                        () -> {
+                            for (int i = 0; i < strings.length; i++) {
+                                for (int j = 0; j < noiseLines / strings.length; j++) {
+                                    mLogcat.log("noise " + j);
+                                }
+                                if (i == strings.length - 1 && mLogcat.mPauseBeforeMs > 0) {
+                                    try {
+                                        Thread.sleep(mLogcat.mPauseBeforeMs);
+                                    } catch (InterruptedException e) {
+                                        return;
+                                    }
+                                }
+                                mLogcat.log(strings[i]);
+                            }
+                        });
+        mWriter.start();
+    }
+
+    /** An in-memory logcat buffer, with logcat dumps and streams reading from it. */
+    private static class FakeLogcat extends LogcatInspector {
+        private static final Pattern LOG_PATTERN = Pattern.compile("log -t (\\S+) (.*)");
+        private static final Pattern TIME_PATTERN = Pattern.compile(" -T (\\d+)\\.(\\d{6}) ");
+
+        private final List<String> mLines = new ArrayList<>();
+        private final List<Long> mEpochs = new ArrayList<>();
+        private final List<Long> mLoggedMs = new ArrayList<>();
+        private final List<String> mCommands = Collections.synchronizedList(new ArrayList<>());
+        private long mEpochMicroseconds = System.currentTimeMillis() * 1000;
+        volatile int mMaxLinesPerStream = Integer.MAX_VALUE;
+        volatile int mLinesPerTimestamp = 1;
+        volatile long mPauseBeforeMs = 0;
+        volatile long mLinesRead = 0;
+
+        void log(String message) {
+            log("FakeTag", message);
+        }
+
+        void log(String tag, String message) {
+            synchronized (mLines) {
+                if (mLines.size() % mLinesPerTimestamp == 0) {
+                    mEpochMicroseconds++;
+                }
+                mLines.add(
+                        String.format(
+                                "%d.%06d  1000  1001 I %s: %s",
+                                mEpochMicroseconds / 1000000,
+                                mEpochMicroseconds % 1000000,
+                                tag,
+                                message));
+                mEpochs.add(mEpochMicroseconds);
+                mLoggedMs.add(System.currentTimeMillis());
+                mLines.notifyAll();
+            }
+        }
+
+        /** Returns the time since the line with a message was logged. */
+        long sinceLogged(String message) {
+            long now = System.currentTimeMillis();
+            synchronized (mLines) {
+                for (int i = 0; i < mLines.size(); i++) {
+                    if (mLines.get(i).endsWith(": " + message)) {
+                        return now - mLoggedMs.get(i);
+                    }
+                }
+            }
+            throw new AssertionError(message + " not logged");
+        }
+
+        List<String> logcatCommands() {
+            List<String> commands = new ArrayList<>();
+            synchronized (mCommands) {
+                for (String command : mCommands) {
+                    if (command.startsWith("logcat ")) {
+                        commands.add(command);
+                    }
+                }
+            }
+            return commands;
+        }
+
+        @Override
+        protected InputStream executeShellCommand(String command) throws IOException {
+            mCommands.add(command);
+            Matcher log = LOG_PATTERN.matcher(command);
+            if (log.matches()) {
+                log(log.group(1), log.group(2));
+                return new ByteArrayInputStream(new byte[0]);
+            }
+            if (command.contains(" -d ")) {
+                StringBuilder dump = new StringBuilder();
+                synchronized (mLines) {
+                    for (String line : mLines) {
+                        dump.append(line).append('\n');
+                    }
+                    mLinesRead += mLines.size();
+                }
+                return new ByteArrayInputStream(dump.toString().getBytes(StandardCharsets.UTF_8));
+            }
+            int start = 0;
+            Matcher time = TIME_PATTERN.matcher(command);
+            if (time.find()) {
+                long epoch =
+                        Long.parseLong(time.group(1)) * 1000000 + Long.parseLong(time.group(2));
+                synchronized (mLines) {
+                    while (start < mEpochs.size() && mEpochs.get(start) < epoch) {
+                        start++;
+                    }
+                }
+            }
+            return new FollowingStream(start);
+        }
+
+        /** Follows the buffer from a line, like logcat without -d. */
+        private class FollowingStream extends InputStream {
+            private int mNextLine;
+            private int mLinesServed = 0;
+            private byte[] mCurrent = new byte[0];
+            private int mPosition = 0;
+            private boolean mClosed = false;
+
+            FollowingStream(int start) {
+                mNextLine = start;
+            }
+
+            @Override
+            public int read() throws IOException {
+                byte[] b = new byte[1];
+                return read(b, 0, 1) < 0 ? -1 : b[0] & 0xff;
+            }
+
+            @Override
+            public int read(byte[] b, int off, int len) throws IOException {
+                synchronized (mLines) {
+                    while (mPosition == mCurrent.length) {
+                        if (mClosed || mLinesServed == mMaxLinesPerStream) {
+                            return -1;
+                        }
+                        if (mNextLine < mLines.size()) {
+                            String line = mLines.get(mNextLine++) + "\n";
+                            mCurrent = line.getBytes(StandardCharsets.UTF_8);
+                            mPosition = 0;
+                            mLinesServed++;
+                            mLinesRead++;
+                        } else {
+                            try {
+                                mLines.wait();
+                            } catch (InterruptedException e) {
+                                throw new IOException(e);
+                            }
+                        }
+                    }
+                    int count = Math.min(len, mCurrent.length - mPosition);
+                    System.arraycopy(mCurrent, mPosition, b, off, count);
+                    mPosition += count;
+                    return count;
+                }
+            }
+
+            @Override
+            public void close() {
+                synchronized (mLines) {
+                    mClosed = true;
+                    mLines.notifyAll();
+                }
+            }
+        }
+    }
+}
@@ -78,4 +78,34 @@ public class MetricsXmlSerializerTest extends TestCase {
 
         assertEquals(EXPECTED_XML, mByteArrayOutputStream.toString("utf-8"));
     }
-}
\ No newline at end of file
+
+    public void testSerialize_stat() throws IOException {
+        StreamingStat stat = new StreamingStat();
+        stat.addAll(VALUES);
+        mLocalReportLog.setSummary("Sample", stat, ResultType.LOWER_BETTER, ResultUnit.MS);
+
+        xmlSerializer.startDocument("utf-8", true);
+        new MetricsXmlSerializer(xmlSerializer, true).serialize(mLocalReportLog);
+        xmlSerializer.endDocument();
+
+        String xml = mByteArrayOutputStream.toString("utf-8");
+        assertTrue(xml, xml.contains(
+                "<Summary message=\"Sample\" scoreType=\"lower_better\" unit=\"ms\">22493.0"
+                        + "</Summary><Stat count=\"5\" mean=\"22493.0\""));
+        assertTrue(xml, xml.contains("positive_buckets=\"0:1 120:1 153:1 355:1 581:1\""));
+    }
+
+    public void testSerialize_statNotIncluded() throws IOException {
+        StreamingStat stat = new StreamingStat();
+        stat.addAll(VALUES);
+        mLocalReportLog.setSummary("Sample", stat, ResultType.LOWER_BETTER, ResultUnit.MS);
+
+        xmlSerializer.startDocument("utf-8", true);
+        mMetricsXmlSerializer.serialize(mLocalReportLog);
+        xmlSerializer.endDocument();
+
+        assertEquals(HEADER
+                + "<Summary message=\"Sample\" scoreType=\"lower_better\" unit=\"ms\">22493.0"
+                + "</Summary>", mByteArrayOutputStream.toString("utf-8"));
+    }
+}
@@ -29,6 +29,7 @@ import java.io.InputStream;
 import java.io.OutputStream;
 import java.util.ArrayList;
 import java.util.List;
+import java.util.Map;
 
 import static org.junit.Assert.*;
 
@@ -94,6 +95,136 @@ public class ReadElfTest {
                 TEST_EXE_X8664B, TEST_EXE_X8664B_READELF, ReadElf.ARCH_X86, 64, ReadElf.ET_DYN);
     }
 
+    /**
+     * Test {@link ReadElf#getDynamicSymbol} looks symbols up through the hash tables like through
+     * the whole Dynamic Symbol Table
+     *
+     * @throws Exception
+     */
+    @Test
+    public void testDynamicSymbolLookup() throws Exception {
+        for (String elfFileName :
+                new String[] {TEST_SO_ARM32B, TEST_SO_ARM64B, TEST_EXE_X8632B, TEST_EXE_X8664B}) {
+            File targetFile = getResrouceFile(elfFileName);
+            ReadElf fullElf = ReadElf.read(targetFile);
+            ReadElf.Symbol[] dynSymbolArr = fullElf.getDynSymArr();
+            Map<String, ReadElf.Symbol> dynSymbols = fullElf.getDynamicSymbols();
+            fullElf.close();
+
+            try (ReadElf elf = ReadElf.read(targetFile)) {
+                for (int i = 1; i < dynSymbolArr.length; i++) {
+                    String name = dynSymbolArr[i].name;
+                    ReadElf.Symbol expected = dynSymbols.get(name);
+                    ReadElf.Symbol actual = elf.getDynamicSymbol(name);
+                    String message = elfFileName + " " + name;
+                    assertNotNull(message, actual);
+                    assertEquals(message, expected.toString(), actual.toString());
+                    assertEquals(message, expected.value, actual.value);
+                    assertEquals(message, expected.size, actual.size);
+                    assertEquals(
+                            message, expected.getExternalLibVer(), actual.getExternalLibVer());
+                    assertEquals(message, expected.getVerDefLibName(), actual.getVerDefLibName());
+                    assertEquals(message, expected.getVerDefVersion(), actual.getVerDefVersion());
+                }
+                assertNull(elf.getDynamicSymbol("no_such_symbol"));
+            }
+        }
+    }
+
+    /**
+     * Test the GNU and SysV hash tables of an ARM 32-bit Shared Object that has both
+     *
+     * @throws Exception
+     */
+    @Test
+    public void testHashLookups() throws Exception {
+        try (ReadElf elf = ReadElf.read(getResrouceFile(TEST_SO_ARM32B))) {
+            ReadElf.Symbol[] dynSymbolArr = elf.getDynSymArr();
+            for (int i = 1; i < dynSymbolArr.length; i++) {
+                String name = dynSymbolArr[i].name;
+                assertEquals(name, i, elf.gnuHashLookup(name));
+                assertEquals(name, i, elf.sysvHashLookup(name));
+            }
+            assertEquals(-1, elf.gnuHashLookup("no_such_symbol"));
+            assertEquals(-1, elf.sysvHashLookup("no_such_symbol"));
+        }
+    }
+
+    /**
+     * Test {@link ReadElf#getDynamicSymbol} finds the same symbol as a linear scan of the Dynamic
+     * Symbol Table for every symbol, including the names that are not in it
+     *
+     * @throws Exception
+     */
+    @Test
+    public void testDynamicSymbolLookupMatchesLinearScan() throws Exception {
+        for (String elfFileName :
+                new String[] {TEST_SO_ARM32B, TEST_SO_ARM64B, TEST_EXE_X8632B, TEST_EXE_X8664B}) {
+            File targetFile = getResrouceFile(elfFileName);
+            ReadElf.Symbol[] dynSymbolArr;
+            try (ReadElf fullElf = ReadElf.read(targetFile)) {
+                dynSymbolArr = fullElf.getDynSymArr();
+            }
+
+            List<String> names = new ArrayList<>();
+            for (int i = 1; i < dynSymbolArr.length; i++) {
+                names.add(dynSymbolArr[i].name);
+                names.add(dynSymbolArr[i].name + "_");
+            }
+            try (ReadElf elf = ReadElf.read(targetFile)) {
+                for (String name : names) {
+                    ReadElf.Symbol expected = null;
+                    for (int i = 1; i < dynSymbolArr.length; i++) {
+                        if (dynSymbolArr[i].name.equals(name)) {
+                            expected = dynSymbolArr[i];
+                        }
+                    }
+                    ReadElf.Symbol actual = elf.getDynamicSymbol(name);
+                    String message = elfFileName + " " + name;
+                    if (expected == null) {
+                        assertNull(message, actual);
+                    } else {
+                        assertNotNull(message, actual);
+                        assertEquals(message, expected.toString(), actual.toString());
+                        assertEquals(message, expected.value, actual.value);
+                    }
+                }
+            }
+        }
+    }
+
+    /**
+     * Test {@link ReadElf} fails to read once closed
+     *
+     * @throws Exception
+     */
+    @Test
+    public void testClose() throws Exception {
+        ReadElf elf = ReadElf.read(getResrouceFile(TEST_SO_ARM64B));
+        assertNotNull(elf.getDynamicSymbol("dlopen"));
+        elf.getDynamicSymbols();
+        elf.close();
+        try {
+            elf.getDynamicSymbol("dlopen");
+            fail("Expected an IOException");
+        } catch (IOException expected) {
+            assertEquals("closed", expected.getMessage());
+        }
+        try {
+            elf.getDynamicSymbols();
+            fail("Expected an IOException");
+        } catch (IOException expected) {
+            assertEquals("closed", expected.getMessage());
+        }
+        try {
+            elf.getRoData();
+            fail("Expected an IOException");
+        } catch (IOException expected) {
+            assertEquals("closed", expected.getMessage());
+        }
+        assertNull(elf.getSymbol("dlopen"));
+    }
+
     /**
      * Compares {@link ReadElf} returns same results with Linux readelf cmd on the same ELF file
      *
@@ -106,6 +106,33 @@ public class ReportLogTest extends TestCase {
         assertEquals("Sample", report.getSummary().getMessage());
     }
 
+    public void testSerializeAndParse_stat() throws Exception {
+        StreamingStat stat = new StreamingStat();
+        for (int i = 0; i < 100000; i++) {
+            stat.add(i % 1000 - 100);
+        }
+        mReportLog.setSummary("Sample", stat, ResultType.LOWER_BETTER, ResultUnit.MS);
+        // Parsers that predate StreamingStat don't expect the element, so it is only included when
+        // asked for.
+        String xml = ReportLog.serialize(mReportLog);
+        assertFalse(xml.contains("<Stat"));
+        assertNull(ReportLog.parse(xml).getSummary().getStat());
+
+        xml = ReportLog.serialize(mReportLog, true);
+        assertTrue(xml.contains("<Stat count=\"100000\""));
+
+        Metric summary = ReportLog.parse(xml).getSummary();
+        assertEquals(stat.getMean(), summary.getValues()[0], 0);
+        StreamingStat parsed = summary.getStat();
+        assertEquals(stat.getCount(), parsed.getCount());
+        assertEquals(stat.getMean(), parsed.getMean(), 0);
+        assertEquals(stat.getStddev(), parsed.getStddev(), 1e-9);
+        assertEquals(stat.getMin(), parsed.getMin(), 0);
+        assertEquals(stat.getMax(), parsed.getMax(), 0);
+        assertEquals(stat.getMedian(), parsed.getMedian(), 0);
+        assertEquals(stat.getQuantile(0.95), parsed.getQuantile(0.95), 0);
+    }
+
     public void testLimits_source() throws Exception {
         // Should pass with a short source.
         Metric metric = new Metric(SOURCE, MESSAGE, 1.0, ResultType.HIGHER_BETTER, ResultUnit.BYTE);
@@ -422,6 +422,87 @@ public class ResultHandlerTest extends TestCase {
         checkLightResult(lightResult);
     }
 
+    public void testGetLightResults_multipleResults() throws Exception {
+        for (int i = 0; i < 5; i++) {
+            writeResultDir(resultsDir, i % 2 == 0);
+        }
+        List<IInvocationResult> lightResults = ResultHandler.getLightResults(resultsDir);
+        assertEquals("Expected five results", 5, lightResults.size());
+        for (IInvocationResult lightResult : lightResults) {
+            checkLightResult(lightResult);
+            assertEquals("Incorrect build fingerprint",
+                    EXAMPLE_BUILD_FINGERPRINT, lightResult.getBuildFingerprint());
+            assertEquals("Incorrect command line args",
+                    COMMAND_LINE_ARGS, lightResult.getCommandLineArgs());
+        }
+    }
+
+    public void testGetLightResults_usesIndexForUnchangedResults() throws Exception {
+        File resultDir = writeResultDir(resultsDir, false);
+        File resultFile = new File(resultDir, ResultHandler.TEST_RESULT_FILE_NAME);
+        assertEquals("Expected one result", 1, ResultHandler.getLightResults(resultsDir).size());
+
+        // Same size and modification time, but not a result file anymore: it is not read again
+        long lastModified = resultFile.lastModified();
+        char[] garbage = new char[(int) resultFile.length()];
+        Arrays.fill(garbage, 'x');
+        try (FileWriter writer = new FileWriter(resultFile)) {
+            writer.write(garbage);
+        }
+        resultFile.setLastModified(lastModified);
+        List<IInvocationResult> lightResults = ResultHandler.getLightResults(resultsDir);
+        assertEquals("Expected one result", 1, lightResults.size());
+        checkLightResult(lightResults.get(0));
+
+        // Once modified, it is read again
+        resultFile.setLastModified(lastModified - 10000);
+        assertEquals("Expected no result", 0, ResultHandler.getLightResults(resultsDir).size());
+    }
+
+    public void testGetLightResults_duplicatedTests() throws Exception {
+        // A test that was retried in the same module, and a module that appears twice
+        String moduleACases = String.format(XML_CASE, CLASS_A, String.join("",
+                String.format(XML_TEST_FAIL, METHOD_1, MESSAGE, STACK_TRACE, BUG_REPORT, LOGCAT,
+                        SCREENSHOT),
+                String.format(XML_TEST_PASS, METHOD_1),
+                String.format(XML_TEST_PASS, METHOD_2)));
+        String moduleAAgainCases = String.format(XML_CASE, CLASS_A, String.format(XML_TEST_FAIL,
+                METHOD_2, MESSAGE, STACK_TRACE, BUG_REPORT, LOGCAT, SCREENSHOT));
+        String moduleBCases = String.format(XML_CASE, CLASS_A,
+                String.format(XML_TEST_PASS, METHOD_1));
+        String modules = String.join("",
+                String.format(XML_MODULE, NAME_A, ABI, DEVICE_A, RUNTIME_A, DONE_B, moduleACases),
+                String.format(XML_MODULE, NAME_A, ABI, DEVICE_A, RUNTIME_A, DONE_B,
+                        moduleAAgainCases),
+                String.format(XML_MODULE, NAME_B, ABI, DEVICE_B, RUNTIME_B, DONE_B, moduleBCases));
+        String buildInfo = String.format(XML_BUILD_INFO, EXAMPLE_BUILD_FINGERPRINT,
+                EXAMPLE_BUILD_ID, EXAMPLE_BUILD_PRODUCT);
+        String output = String.format(XML_BASE, START_MS, END_MS, START_DISPLAY, END_DISPLAY,
+                SUITE_NAME, SUITE_VERSION, SUITE_PLAN, SUITE_BUILD, REPORT_VERSION, DEVICES,
+                "", OS_NAME, OS_VERSION, OS_ARCH, JAVA_VENDOR, JAVA_VERSION, REFERENCE_URL,
+                LOG_URL, COMMAND_LINE_ARGS, buildInfo, String.format(XML_SUMMARY, 4, 2),
+                modules);
+        File resultDir = FileUtil.createTempDir("12345", resultsDir);
+        try (FileWriter writer = new FileWriter(
+                new File(resultDir, ResultHandler.TEST_RESULT_FILE_NAME))) {
+            writer.write(output);
+        }
+
+        IInvocationResult full = ResultHandler.getResultFromDir(resultDir);
+        List<IInvocationResult> lightResults = ResultHandler.getLightResults(resultsDir);
+        assertEquals("Expected one result", 1, lightResults.size());
+        IInvocationResult light = lightResults.get(0);
+        assertEquals("Expected 2 passes", 2, full.countResults(TestStatus.PASS));
+        assertEquals("Expected 1 failure", 1, full.countResults(TestStatus.FAIL));
+        assertEquals("Incorrect passes",
+                full.countResults(TestStatus.PASS), light.countResults(TestStatus.PASS));
+        assertEquals("Incorrect failures",
+                full.countResults(TestStatus.FAIL), light.countResults(TestStatus.FAIL));
+        assertEquals("Incorrect modules", full.getModules().size(), light.getModules().size());
+        assertEquals("Incorrect completed modules",
+                full.getModuleCompleteCount(), light.getModuleCompleteCount());
+    }
+
     static File writeResultDir(File resultsDir, boolean newTestFormat) throws IOException {
         String buildInfo = String.format(XML_BUILD_INFO, EXAMPLE_BUILD_FINGERPRINT,
                 EXAMPLE_BUILD_ID, EXAMPLE_BUILD_PRODUCT);
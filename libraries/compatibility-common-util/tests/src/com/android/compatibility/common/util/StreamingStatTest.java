@@ -0,0 +1,192 @@
+/*
+ * Copyright (C) 2026 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.android.compatibility.common.util;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.junit.runners.JUnit4;
+
+import java.util.Arrays;
+import java.util.Random;
+
+/** Unit tests for {@link StreamingStat}. */
+@RunWith(JUnit4.class)
+public class StreamingStatTest {
+    private static final double[] QUANTILES = {0, 0.01, 0.25, 0.5, 0.75, 0.95, 0.99, 1};
+
+    @Test
+    public void testEmpty() {
+        StreamingStat stat = new StreamingStat();
+        assertEquals(0, stat.getCount());
+        assertTrue(Double.isNaN(stat.getMean()));
+        assertTrue(Double.isNaN(stat.getStddev()));
+        assertTrue(Double.isNaN(stat.getMedian()));
+    }
+
+    @Test
+    public void testGetStatResult() {
+        double[] values = latencies(100000, new Random(0));
+        StreamingStat stat = new StreamingStat();
+        stat.addAll(values);
+
+        Stat.StatResult expected = Stat.getStat(values);
+        Stat.StatResult actual = stat.getStatResult();
+        assertEquals(expected.mDataCount, actual.mDataCount);
+        assertEquals(expected.mAverage, actual.mAverage, expected.mAverage * 1e-9);
+        assertEquals(expected.mStddev, actual.mStddev, expected.mStddev * 1e-9);
+        assertEquals(expected.mMin, actual.mMin, 0);
+        assertEquals(expected.mMax, actual.mMax, 0);
+        assertEquals(expected.mMedian, actual.mMedian, expected.mMedian * 0.01);
+    }
+
+    @Test
+    public void testQuantiles() {
+        for (double accuracy : new double[] {0.05, 0.01, 0.002}) {
+            double[] values = latencies(200000, new Random(1));
+            StreamingStat stat = new StreamingStat(accuracy);
+            stat.addAll(values);
+            checkQuantiles(values, stat);
+        }
+    }
+
+    @Test
+    public void testQuantiles_negativeAndZero() {
+        Random random = new Random(2);
+        double[] values = new double[50000];
+        for (int i = 0; i < values.length; i++) {
+            values[i] = i % 10 == 0 ? 0 : random.nextGaussian() * 100;
+        }
+        StreamingStat stat = new StreamingStat();
+        stat.addAll(values);
+        checkQuantiles(values, stat);
+    }
+
+    @Test
+    public void testQuantiles_wideRange() {
+        // 60 orders of magnitude: beyond MAX_BUCKETS, only the values closest to 0 lose accuracy
+        Random random = new Random(3);
+        double[] values = new double[50000];
+        for (int i = 0; i < values.length; i++) {
+            values[i] = Math.pow(10, random.nextDouble() * 60 - 30);
+        }
+        StreamingStat stat = new StreamingStat();
+        stat.addAll(values);
+        Arrays.sort(values);
+        for (double q : new double[] {0.5, 0.75, 0.99, 1}) {
+            double exact = values[(int) (q * (values.length - 1))];
+            assertEquals("q" + q, exact, stat.getQuantile(q), exact * 0.01);
+        }
+        assertEquals(values[0], stat.getMin(), 0);
+    }
+
+    @Test
+    public void testMerge() {
+        Random random = new Random(4);
+        StreamingStat all = new StreamingStat();
+        StreamingStat merged = new StreamingStat();
+        for (int i = 0; i < 4; i++) {
+            // Different scales, so that the buckets of each part need to be extended
+            double[] values = latencies(50000, random);
+            for (int j = 0; j < values.length; j++) {
+                values[j] *= Math.pow(100, i);
+            }
+            StreamingStat part = new StreamingStat();
+            part.addAll(values);
+            all.addAll(values);
+            merged.merge(part);
+        }
+        merged.merge(new StreamingStat());
+
+        assertEquals(all.getCount(), merged.getCount());
+        assertEquals(all.getMean(), merged.getMean(), all.getMean() * 1e-9);
+        assertEquals(all.getVariance(), merged.getVariance(), all.getVariance() * 1e-9);
+        assertEquals(all.getMin(), merged.getMin(), 0);
+        assertEquals(all.getMax(), merged.getMax(), 0);
+        for (double q : QUANTILES) {
+            assertEquals("q" + q, all.getQuantile(q), merged.getQuantile(q), 0);
+        }
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testMerge_differentAccuracies() {
+        new StreamingStat(0.01).merge(new StreamingStat(0.02));
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testAdd_nan() {
+        new StreamingStat().add(Double.NaN);
+    }
+
+    @Test
+    public void testMerge_quantileAccuracy() {
+        // Parts of uneven sizes and signs, merged in both orders, against the exact quantiles
+        Random random = new Random(5);
+        double[] values = new double[100000];
+        for (int i = 0; i < values.length; i++) {
+            values[i] = i % 7 == 0 ? 0 : (i % 3 == 0 ? -1 : 1) * Math.exp(random.nextGaussian());
+        }
+        int[] bounds = {0, 10, 1000, 40000, values.length};
+        StreamingStat forward = new StreamingStat();
+        StreamingStat backward = new StreamingStat();
+        StreamingStat[] parts = new StreamingStat[bounds.length - 1];
+        for (int i = 0; i < parts.length; i++) {
+            parts[i] = new StreamingStat();
+            parts[i].addAll(Arrays.copyOfRange(values, bounds[i], bounds[i + 1]));
+        }
+        for (int i = 0; i < parts.length; i++) {
+            forward.merge(parts[i]);
+            backward.merge(parts[parts.length - 1 - i]);
+        }
+
+        Stat.StatResult expected = Stat.getStat(values);
+        for (StreamingStat merged : new StreamingStat[] {forward, backward}) {
+            assertEquals(values.length, merged.getCount());
+            assertEquals(expected.mAverage, merged.getMean(), 1e-9);
+            assertEquals(expected.mStddev, merged.getStddev(), 1e-9);
+            checkQuantiles(values, merged);
+        }
+        for (double q : QUANTILES) {
+            assertEquals("q" + q, forward.getQuantile(q), backward.getQuantile(q), 0);
+        }
+    }
+
+    /** Checks the quantiles of all the values are within the relative accuracy. */
+    private static void checkQuantiles(double[] values, StreamingStat stat) {
+        double[] sorted = Arrays.copyOf(values, values.length);
+        Arrays.sort(sorted);
+        for (double q : QUANTILES) {
+            double exact = sorted[(int) (q * (sorted.length - 1))];
+            assertEquals(
+                    "q" + q + " at accuracy " + stat.getRelativeAccuracy(),
+                    exact,
+                    stat.getQuantile(q),
+                    Math.abs(exact) * stat.getRelativeAccuracy() * (1 + 1e-9));
+        }
+    }
+
+    /** Returns log-normally distributed values, like latencies in ms. */
+    private static double[] latencies(int count, Random random) {
+        double[] values = new double[count];
+        for (int i = 0; i < count; i++) {
+            values[i] = Math.exp(2 + random.nextGaussian());
+        }
+        return values;
+    }
+}
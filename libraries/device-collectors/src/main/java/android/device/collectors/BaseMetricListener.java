@@ -17,6 +17,7 @@ package android.device.collectors;
 
 import android.device.collectors.annotations.MetricOption;
 import android.device.collectors.annotations.OptionClass;
+import android.device.collectors.util.CollectorOverhead;
 import android.device.collectors.util.SendToInstrumentation;
 import android.os.Bundle;
 import android.os.Environment;
@@ -44,6 +45,7 @@ import java.util.HashSet;
 import java.util.Map;
 import java.util.List;
 import java.util.Set;
+import java.util.concurrent.atomic.AtomicInteger;
 
 /**
  * Base implementation of a device metric listener that will capture and output metrics for each
@@ -64,6 +66,12 @@ import java.util.Set;
  * group using '--exclude-filter-group [group name]'.
  * Several group name can be passed using a comma separated argument.
  *
+ * Overhead accounting:
+ * With '--report-collector-overhead true', the wall time, thread CPU time, allocated bytes and
+ * shell commands spent in the collector callbacks are reported as '[collector]_overhead_*'
+ * metrics, per test and for the run. With '--collector-overhead-budget-ms [ms]', a collector
+ * spending more than that in the callbacks of a single test is flagged with a
+ * '[collector]_overhead_over_budget' metric.
  */
 public class BaseMetricListener extends InstrumentationRunListener {
 
@@ -88,6 +96,11 @@ public class BaseMetricListener extends InstrumentationRunListener {
     // to 3. Metric will not be collected for 1st,2nd and 3rd iteration.
     public static final String SKIP_METRIC_UNTIL_ITERATION = "skip_metric_until_iteration";
 
+    // Report the time, CPU, allocations and shell commands spent in the collector callbacks.
+    public static final String REPORT_OVERHEAD = "report-collector-overhead";
+    // Flag the collector when its callbacks take longer than this for a single test.
+    public static final String OVERHEAD_BUDGET_MS = "collector-overhead-budget-ms";
+
     private static final String NAMESPACE_SEPARATOR = ":";
 
     private DataRecord mRunData;
@@ -106,6 +119,16 @@ public class BaseMetricListener extends InstrumentationRunListener {
     // which do not have the information to invoke InstrumentationRunFinished() to report metrics.
     private boolean mReportAsInstrumentationResults = false;
 
+    private boolean mReportOverhead = false;
+    private boolean mMeasureOverhead = false;
+    private long mOverheadBudgetMs = 0;
+    private final CollectorOverhead mTestOverhead = new CollectorOverhead();
+    private final CollectorOverhead mRunOverhead = new CollectorOverhead();
+    // Number of shell commands issued through executeCommandBlocking, from any thread.
+    private final AtomicInteger mShellCommandCount = new AtomicInteger();
+    // Total wall time spent in the callbacks of all the tests of the run.
+    private long mTestsOverheadMs = 0;
+
     public BaseMetricListener() {
         mIncludeFilters = new ArrayList<>();
         mExcludeFilters = new ArrayList<>();
@@ -128,7 +151,11 @@ public class BaseMetricListener extends InstrumentationRunListener {
         if (!mLogOnly) {
             try {
                 mRunData = createDataRecord();
+                mRunOverhead.reset();
+                mTestsOverheadMs = 0;
+                beginOverhead(mRunOverhead);
                 onTestRunStart(mRunData, description);
+                endOverhead(mRunOverhead, "run_start");
             } catch (RuntimeException e) {
                 // Prevent exception from reporting events.
                 Log.e(getTag(), "Exception during onTestRunStart.", e);
@@ -143,11 +170,19 @@ public class BaseMetricListener extends InstrumentationRunListener {
         Trace.beginSection(this.getClass().getSimpleName() + ":testRunFinished");
         if (!mLogOnly) {
             try {
+                beginOverhead(mRunOverhead);
                 onTestRunEnd(mRunData, result);
+                endOverhead(mRunOverhead, "run_end");
             } catch (RuntimeException e) {
                 // Prevent exception from reporting events.
                 Log.e(getTag(), "Exception during onTestRunEnd.", e);
             }
+            reportOverhead(mRunData, mRunOverhead, false);
+            if (mReportOverhead && mRunData != null) {
+                mRunData.addStringMetric(
+                        getOverheadPrefix() + "_overhead_tests_wall_ms",
+                        String.valueOf(mTestsOverheadMs));
+            }
         }
         cleanUp();
         super.testRunFinished(result);
@@ -165,7 +200,10 @@ public class BaseMetricListener extends InstrumentationRunListener {
         if (shouldRun(description)) {
             try {
                 mTestData = createDataRecord();
+                mTestOverhead.reset();
+                beginOverhead(mTestOverhead);
                 onTestStart(mTestData, description);
+                endOverhead(mTestOverhead, "test_start");
             } catch (RuntimeException e) {
                 // Prevent exception from reporting events.
                 Log.e(getTag(), "Exception during onTestStart.", e);
@@ -180,7 +218,9 @@ public class BaseMetricListener extends InstrumentationRunListener {
         Description description = failure.getDescription();
         if (shouldRun(description)) {
             try {
+                beginOverhead(mTestOverhead);
                 onTestFail(mTestData, description, failure);
+                endOverhead(mTestOverhead, "test_fail");
             } catch (RuntimeException e) {
                 // Prevent exception from reporting events.
                 Log.e(getTag(), "Exception during onTestFail.", e);
@@ -194,11 +234,14 @@ public class BaseMetricListener extends InstrumentationRunListener {
         Trace.beginSection(this.getClass().getSimpleName() + ":testFinished");
         if (shouldRun(description)) {
             try {
+                beginOverhead(mTestOverhead);
                 onTestEnd(mTestData, description);
+                endOverhead(mTestOverhead, "test_end");
             } catch (RuntimeException e) {
                 // Prevent exception from reporting events.
                 Log.e(getTag(), "Exception during onTestEnd.", e);
             }
+            reportOverhead(mTestData, mTestOverhead, true);
             if (mTestData.hasMetrics()) {
                 // Only send the status progress if there are metrics
                 if (mReportAsInstrumentationResults) {
@@ -222,6 +265,55 @@ public class BaseMetricListener extends InstrumentationRunListener {
         }
     }
 
+    private void beginOverhead(CollectorOverhead overhead) {
+        if (mMeasureOverhead) {
+            overhead.begin(mShellCommandCount.get());
+        }
+    }
+
+    private void endOverhead(CollectorOverhead overhead, String phase) {
+        if (mMeasureOverhead) {
+            overhead.end(phase, mShellCommandCount.get());
+        }
+    }
+
+    /** Returns the name of the collector used in the overhead metric keys. */
+    private String getOverheadPrefix() {
+        String name = this.getClass().getSimpleName();
+        if (name.isEmpty()) {
+            // Anonymous class.
+            name = this.getClass().getName();
+            name = name.substring(name.lastIndexOf('.') + 1);
+        }
+        return name;
+    }
+
+    /**
+     * Adds the overhead metrics to {@code data}. The overhead of each test is also added to the
+     * run total, and checked against the budget.
+     */
+    private void reportOverhead(DataRecord data, CollectorOverhead overhead, boolean isTest) {
+        if (!mMeasureOverhead || data == null) {
+            return;
+        }
+        String prefix = getOverheadPrefix();
+        if (mReportOverhead) {
+            for (Map.Entry<String, String> metric : overhead.getMetrics(prefix).entrySet()) {
+                data.addStringMetric(metric.getKey(), metric.getValue());
+            }
+        }
+        if (!isTest) {
+            return;
+        }
+        long wallMs = overhead.getWallTimeMs();
+        mTestsOverheadMs += wallMs;
+        if (mOverheadBudgetMs > 0 && wallMs > mOverheadBudgetMs) {
+            Log.w(getTag(), String.format("Collector overhead of %dms exceeds the budget of %dms.",
+                    wallMs, mOverheadBudgetMs));
+            data.addStringMetric(prefix + "_overhead_over_budget", "true");
+        }
+    }
+
     /**
      * Set up the metric collector.
      *
@@ -331,6 +423,7 @@ public class BaseMetricListener extends InstrumentationRunListener {
      * @return byte array of execution result
      */
     public byte[] executeCommandBlocking(String command) {
+        mShellCommandCount.incrementAndGet();
         try (
                 InputStream is = new ParcelFileDescriptor.AutoCloseInputStream(
                         getInstrumentation().getUiAutomation().executeShellCommand(command));
@@ -443,6 +536,9 @@ public class BaseMetricListener extends InstrumentationRunListener {
             // Reset to collect for all the iterations.
             mCollectIterationInterval = 1;
         }
+        mReportOverhead = Boolean.parseBoolean(args.getString(REPORT_OVERHEAD, "false"));
+        mOverheadBudgetMs = Long.parseLong(args.getString(OVERHEAD_BUDGET_MS, "0"));
+        mMeasureOverhead = mReportOverhead || mOverheadBudgetMs > 0;
         String logOnly = args.getString(ARGUMENT_LOG_ONLY);
         if (logOnly != null) {
             mLogOnly = Boolean.parseBoolean(logOnly);
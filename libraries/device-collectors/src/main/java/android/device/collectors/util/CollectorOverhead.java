@@ -0,0 +1,132 @@
+/*
+ * Copyright (C) 2026 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package android.device.collectors.util;
+
+import android.os.Debug;
+import android.os.SystemClock;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * Accounts for the time, CPU and allocations spent by a metric collector in its callbacks, so that
+ * the cost of each collector can be reported next to its metrics.
+ *
+ * <p>Each callback is measured between {@link #begin(int)} and {@link #end(String, int)}. Wall
+ * and CPU time are those of the calling thread. Allocated bytes come from the ART runtime
+ * statistics, which are process-wide: they also include whatever other threads allocated during
+ * the callback, and are reported as -1 when the runtime does not expose them.
+ */
+public class CollectorOverhead {
+    private static final String BYTES_ALLOCATED_STAT = "art.gc.bytes-allocated";
+
+    /** Index of each counter in a phase. */
+    private static final int WALL_NANOS = 0;
+    private static final int CPU_NANOS = 1;
+    private static final int ALLOC_BYTES = 2;
+    private static final int SHELL_COMMANDS = 3;
+    private static final int COUNTERS = 4;
+
+    private final Map<String, long[]> mPhases = new LinkedHashMap<>();
+    private final long[] mBegin = new long[COUNTERS];
+
+    /** Starts measuring a callback, given the number of shell commands issued so far. */
+    public void begin(int shellCommandCount) {
+        mBegin[WALL_NANOS] = SystemClock.elapsedRealtimeNanos();
+        mBegin[CPU_NANOS] = Debug.threadCpuTimeNanos();
+        mBegin[ALLOC_BYTES] = getBytesAllocated();
+        mBegin[SHELL_COMMANDS] = shellCommandCount;
+    }
+
+    /**
+     * Stops measuring a callback, and adds its cost to the given phase.
+     *
+     * @param phase name of the callback, e.g. "test_end".
+     * @param shellCommandCount number of shell commands issued so far.
+     */
+    public void end(String phase, int shellCommandCount) {
+        long[] end = new long[COUNTERS];
+        end[WALL_NANOS] = SystemClock.elapsedRealtimeNanos();
+        end[CPU_NANOS] = Debug.threadCpuTimeNanos();
+        end[ALLOC_BYTES] = getBytesAllocated();
+        end[SHELL_COMMANDS] = shellCommandCount;
+
+        long[] counters = mPhases.computeIfAbsent(phase, key -> new long[COUNTERS]);
+        for (int i = 0; i < COUNTERS; i++) {
+            if (i == ALLOC_BYTES && (mBegin[i] < 0 || end[i] < 0)) {
+                counters[i] = -1;
+            } else if (counters[i] >= 0) {
+                counters[i] += end[i] - mBegin[i];
+            }
+        }
+    }
+
+    /** Forgets all the measured phases. */
+    public void reset() {
+        mPhases.clear();
+    }
+
+    /** Returns the wall time spent in all the measured phases, in milliseconds. */
+    public long getWallTimeMs() {
+        long total = 0;
+        for (long[] counters : mPhases.values()) {
+            total += counters[WALL_NANOS];
+        }
+        return total / 1_000_000L;
+    }
+
+    /**
+     * Returns the overhead metrics for every measured phase and for their total, with keys
+     * "[prefix]_overhead_[phase]_[counter]" and "[prefix]_overhead_[counter]".
+     */
+    public Map<String, String> getMetrics(String prefix) {
+        Map<String, String> metrics = new LinkedHashMap<>();
+        long[] total = new long[COUNTERS];
+        for (Map.Entry<String, long[]> phase : mPhases.entrySet()) {
+            long[] counters = phase.getValue();
+            putCounters(metrics, prefix + "_overhead_" + phase.getKey(), counters);
+            for (int i = 0; i < COUNTERS; i++) {
+                total[i] = (total[i] < 0 || counters[i] < 0) ? -1 : total[i] + counters[i];
+            }
+        }
+        if (!mPhases.isEmpty()) {
+            putCounters(metrics, prefix + "_overhead", total);
+        }
+        return metrics;
+    }
+
+    private static void putCounters(Map<String, String> metrics, String key, long[] counters) {
+        metrics.put(key + "_wall_ms", String.valueOf(counters[WALL_NANOS] / 1e6));
+        metrics.put(key + "_cpu_ms", String.valueOf(counters[CPU_NANOS] / 1e6));
+        if (counters[ALLOC_BYTES] >= 0) {
+            metrics.put(key + "_alloc_bytes", String.valueOf(counters[ALLOC_BYTES]));
+        }
+        metrics.put(key + "_shell_commands", String.valueOf(counters[SHELL_COMMANDS]));
+    }
+
+    private static long getBytesAllocated() {
+        String stat = Debug.getRuntimeStat(BYTES_ALLOCATED_STAT);
+        if (stat == null) {
+            return -1;
+        }
+        try {
+            return Long.parseLong(stat);
+        } catch (NumberFormatException e) {
+            return -1;
+        }
+    }
+}
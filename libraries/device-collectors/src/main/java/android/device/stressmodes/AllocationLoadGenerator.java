@@ -0,0 +1,64 @@
+/*
+ * Copyright (C) 2026 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package android.device.stressmodes;
+
+import java.util.Arrays;
+
+/**
+ * A {@link LoadGenerator} that allocates short-lived objects at a target rate, in MB/s, to put
+ * pressure on the garbage collector. A small ring of live objects per worker keeps some of them
+ * alive for a while so that not everything dies in the thread-local allocation buffer.
+ */
+public class AllocationLoadGenerator extends LoadGenerator {
+    private static final double BYTES_PER_MB = 1e6;
+    // Size of each allocated object.
+    private static final int OBJECT_SIZE = 4096;
+    // Number of objects kept alive per worker.
+    private static final int LIVE_OBJECTS = 256;
+    // Largest number of allocations between two pacing checks.
+    private static final int MAX_BATCH = 64;
+
+    private final Object[][] mLive;
+    private final int[] mCursors;
+
+    public AllocationLoadGenerator(double targetMbPerSecond, int threadCount) {
+        super("alloc", "mbps", targetMbPerSecond, BYTES_PER_MB, threadCount);
+        mLive = new Object[threadCount][LIVE_OBJECTS];
+        mCursors = new int[threadCount];
+    }
+
+    @Override
+    protected void onStop() {
+        for (Object[] live : mLive) {
+            Arrays.fill(live, null);
+        }
+    }
+
+    @Override
+    protected long doWork(int worker, long maxAmount) {
+        int count = (int) Math.max(1, Math.min(maxAmount / OBJECT_SIZE, MAX_BATCH));
+        Object[] live = mLive[worker];
+        int cursor = mCursors[worker];
+        for (int i = 0; i < count; i++) {
+            byte[] object = new byte[OBJECT_SIZE];
+            object[0] = (byte) i;
+            live[cursor] = object;
+            cursor = (cursor + 1) % LIVE_OBJECTS;
+        }
+        mCursors[worker] = cursor;
+        return (long) count * OBJECT_SIZE;
+    }
+}
@@ -0,0 +1,45 @@
+/*
+ * Copyright (C) 2026 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package android.device.stressmodes;
+
+import android.app.ActivityManager;
+
+/**
+ * A {@link LoadGenerator} that issues binder transactions to system_server at a target rate, in
+ * operations per second. By default each operation is {@link ActivityManager#isUserAMonkey()},
+ * a cheap uncached call that mostly measures the transaction itself.
+ */
+public class BinderLoadGenerator extends LoadGenerator {
+    private final Runnable mOperation;
+
+    public BinderLoadGenerator(double targetOpsPerSecond, int threadCount) {
+        this(targetOpsPerSecond, threadCount, ActivityManager::isUserAMonkey);
+    }
+
+    /**
+     * @param operation a single binder transaction to repeat.
+     */
+    public BinderLoadGenerator(double targetOpsPerSecond, int threadCount, Runnable operation) {
+        super("binder", "ops", targetOpsPerSecond, 1, threadCount);
+        mOperation = operation;
+    }
+
+    @Override
+    protected long doWork(int worker, long maxAmount) {
+        mOperation.run();
+        return 1;
+    }
+}
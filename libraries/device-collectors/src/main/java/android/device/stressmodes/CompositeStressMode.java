@@ -0,0 +1,216 @@
+/*
+ * Copyright (C) 2026 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package android.device.stressmodes;
+
+import android.device.collectors.BaseMetricListener;
+import android.device.collectors.DataRecord;
+import android.device.collectors.annotations.OptionClass;
+import android.os.Bundle;
+import android.util.Log;
+
+import androidx.annotation.VisibleForTesting;
+
+import org.junit.runner.Description;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * A stress mode that runs any combination of calibrated {@link LoadGenerator}s in the background
+ * of each test, and reports the target and achieved load of each of them as test metrics.
+ *
+ * <p>Options (a generator is enabled by setting its target):
+ *
+ * <p>-e stress-cpu-percent 150 : CPU time, in percent of one core.
+ *
+ * <p>-e stress-membw-mbps 2000 : memory bandwidth, in MB/s copied.
+ *
+ * <p>-e stress-alloc-mbps 200 : Java heap allocation rate, in MB/s.
+ *
+ * <p>-e stress-binder-ops 1000 : binder transactions to system_server, per second.
+ *
+ * <p>-e stress-io-mbps 50 : storage reads and writes, in MB/s.
+ *
+ * <p>-e stress-io-read-percent 30 : share of I/O operations that are reads; defaults to 0.
+ *
+ * <p>-e stress-io-random-percent 50 : share of I/O operations at a random offset rather than
+ * sequential; defaults to 0.
+ *
+ * <p>-e stress-io-block-kb 4 : size of each I/O operation, in KiB; defaults to 256.
+ *
+ * <p>-e stress-io-file-mb 256 : size of the file used by each I/O thread; defaults to 64.
+ *
+ * <p>-e stress-io-fsync-every 16 : number of writes between two fsync; defaults to 0 (never).
+ *
+ * <p>-e stress-[cpu|membw|alloc|binder|io]-threads 2 : number of threads sharing that target,
+ * which is also the I/O queue depth; defaults to the number of whole cores for CPU, and to 1
+ * otherwise.
+ */
+@OptionClass(alias = "composite-stress-mode")
+public class CompositeStressMode extends BaseMetricListener {
+    private static final String TAG = CompositeStressMode.class.getSimpleName();
+
+    @VisibleForTesting static final String CPU_PERCENT = "stress-cpu-percent";
+    @VisibleForTesting static final String MEMORY_BANDWIDTH_MBPS = "stress-membw-mbps";
+    @VisibleForTesting static final String ALLOCATION_MBPS = "stress-alloc-mbps";
+    @VisibleForTesting static final String BINDER_OPS = "stress-binder-ops";
+    @VisibleForTesting static final String IO_MBPS = "stress-io-mbps";
+    @VisibleForTesting static final String IO_READ_PERCENT = "stress-io-read-percent";
+    @VisibleForTesting static final String IO_RANDOM_PERCENT = "stress-io-random-percent";
+    @VisibleForTesting static final String IO_BLOCK_KB = "stress-io-block-kb";
+    @VisibleForTesting static final String IO_FILE_MB = "stress-io-file-mb";
+    @VisibleForTesting static final String IO_FSYNC_EVERY = "stress-io-fsync-every";
+    @VisibleForTesting static final String THREADS_FORMAT = "stress-%s-threads";
+
+    @VisibleForTesting static final String TARGET_METRIC_FORMAT = "stress_%s_target_%s";
+    @VisibleForTesting static final String ACHIEVED_METRIC_FORMAT = "stress_%s_achieved_%s";
+    @VisibleForTesting static final String EXTRA_METRIC_FORMAT = "stress_%s_%s";
+
+    private final List<LoadGenerator> mGenerators = new ArrayList<>();
+
+    public CompositeStressMode() {
+        super();
+    }
+
+    /**
+     * Constructor to simulate receiving the instrumentation arguments. Should not be used except
+     * for testing.
+     */
+    @VisibleForTesting
+    CompositeStressMode(Bundle args) {
+        super(args);
+    }
+
+    @Override
+    public void setupAdditionalArgs() {
+        Bundle args = getArgsBundle();
+        mGenerators.clear();
+
+        String cpu = args.getString(CPU_PERCENT);
+        if (cpu != null) {
+            double percent = Double.parseDouble(cpu);
+            int threads = getThreads(args, "cpu", (int) Math.ceil(percent / 100));
+            mGenerators.add(new CpuLoadGenerator(percent, threads));
+        }
+        String memoryBandwidth = args.getString(MEMORY_BANDWIDTH_MBPS);
+        if (memoryBandwidth != null) {
+            mGenerators.add(
+                    new MemoryBandwidthLoadGenerator(
+                            Double.parseDouble(memoryBandwidth), getThreads(args, "membw", 1)));
+        }
+        String allocation = args.getString(ALLOCATION_MBPS);
+        if (allocation != null) {
+            mGenerators.add(
+                    new AllocationLoadGenerator(
+                            Double.parseDouble(allocation), getThreads(args, "alloc", 1)));
+        }
+        String binder = args.getString(BINDER_OPS);
+        if (binder != null) {
+            mGenerators.add(
+                    new BinderLoadGenerator(
+                            Double.parseDouble(binder), getThreads(args, "binder", 1)));
+        }
+        String io = args.getString(IO_MBPS);
+        if (io != null) {
+            mGenerators.add(
+                    new StorageIoLoadGenerator(
+                            getIoDirectory(),
+                            Double.parseDouble(io),
+                            getThreads(args, "io", 1),
+                            Integer.parseInt(args.getString(IO_READ_PERCENT, "0")),
+                            Integer.parseInt(args.getString(IO_RANDOM_PERCENT, "0")),
+                            Integer.parseInt(args.getString(IO_BLOCK_KB, "256")) * 1024,
+                            Long.parseLong(args.getString(IO_FILE_MB, "64")) * 1024 * 1024,
+                            Integer.parseInt(args.getString(IO_FSYNC_EVERY, "0"))));
+        }
+    }
+
+    private static int getThreads(Bundle args, String name, int defaultThreads) {
+        String threads = args.getString(String.format(THREADS_FORMAT, name));
+        return threads != null ? Integer.parseInt(threads) : Math.max(1, defaultThreads);
+    }
+
+    @VisibleForTesting
+    File getIoDirectory() {
+        return getInstrumentation().getContext().getCacheDir();
+    }
+
+    @VisibleForTesting
+    List<LoadGenerator> getGenerators() {
+        return mGenerators;
+    }
+
+    @Override
+    protected void onSetUp() {
+        // Set up what the generators keep across tests now, rather than in the first test.
+        for (LoadGenerator generator : mGenerators) {
+            try {
+                generator.prepare();
+            } catch (Exception e) {
+                Log.e(TAG, "Failed to prepare " + generator.getName() + " load", e);
+            }
+        }
+    }
+
+    @Override
+    public void onTestStart(DataRecord testData, Description description) {
+        for (LoadGenerator generator : mGenerators) {
+            try {
+                generator.start();
+            } catch (Exception e) {
+                Log.e(TAG, "Failed to start " + generator.getName() + " load", e);
+            }
+        }
+        Log.i(TAG, "Stress started: " + mGenerators);
+    }
+
+    @Override
+    public void onTestEnd(DataRecord testData, Description description) {
+        for (LoadGenerator generator : mGenerators) {
+            try {
+                generator.stop();
+            } catch (Exception e) {
+                Log.e(TAG, "Failed to stop " + generator.getName() + " load", e);
+            }
+            testData.addStringMetric(
+                    String.format(TARGET_METRIC_FORMAT, generator.getName(), generator.getUnit()),
+                    String.valueOf(generator.getTarget()));
+            testData.addStringMetric(
+                    String.format(
+                            ACHIEVED_METRIC_FORMAT, generator.getName(), generator.getUnit()),
+                    String.valueOf(generator.getAchieved()));
+            for (Map.Entry<String, String> metric : generator.getExtraMetrics().entrySet()) {
+                testData.addStringMetric(
+                        String.format(EXTRA_METRIC_FORMAT, generator.getName(), metric.getKey()),
+                        metric.getValue());
+            }
+        }
+        Log.i(TAG, "Stress finished: " + mGenerators);
+    }
+
+    @Override
+    protected void onCleanUp() {
+        for (LoadGenerator generator : mGenerators) {
+            try {
+                generator.release();
+            } catch (Exception e) {
+                Log.e(TAG, "Failed to release " + generator.getName() + " load", e);
+            }
+        }
+    }
+}
@@ -0,0 +1,53 @@
+/*
+ * Copyright (C) 2026 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package android.device.stressmodes;
+
+import android.os.Debug;
+
+/**
+ * A {@link LoadGenerator} that keeps the CPU busy for a target percentage of one core, e.g. 150
+ * means one and a half cores worth of CPU time, spread across the worker threads.
+ */
+public class CpuLoadGenerator extends LoadGenerator {
+    // One percent of a core for one second, in CPU nanoseconds.
+    private static final double NANOS_PER_PERCENT = 1e7;
+    // Longest busy spin between two pacing checks.
+    private static final long MAX_SPIN_NANOS = 1_000_000L;
+
+    private final long[] mSink;
+
+    public CpuLoadGenerator(double targetPercent, int threadCount) {
+        super("cpu", "percent", targetPercent, NANOS_PER_PERCENT, threadCount);
+        mSink = new long[threadCount];
+    }
+
+    @Override
+    protected long doWork(int worker, long maxAmount) {
+        final long budget = Math.min(maxAmount, MAX_SPIN_NANOS);
+        final long start = Debug.threadCpuTimeNanos();
+        long spent = 0;
+        long x = mSink[worker] + 1;
+        while (spent < budget) {
+            // A few iterations of a cheap LCG between two clock reads.
+            for (int i = 0; i < 256; i++) {
+                x = x * 6364136223846793005L + 1442695040888963407L;
+            }
+            spent = Debug.threadCpuTimeNanos() - start;
+        }
+        mSink[worker] = x;
+        return spent;
+    }
+}
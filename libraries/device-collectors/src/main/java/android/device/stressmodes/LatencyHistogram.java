@@ -0,0 +1,106 @@
+/*
+ * Copyright (C) 2026 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package android.device.stressmodes;
+
+import java.util.Arrays;
+
+/**
+ * A fixed-size, allocation-free histogram of latencies with a bounded relative error, used to
+ * compute percentiles of operations issued by a {@link LoadGenerator}.
+ *
+ * <p>Values below 2^{@value #SUB_BUCKET_BITS} are counted exactly; larger values are counted in
+ * 2^{@value #SUB_BUCKET_BITS} linear sub-buckets per power of two, i.e. with an error of at most
+ * about 3%. Not thread-safe: use one histogram per thread and {@link #add(LatencyHistogram)} them.
+ */
+public class LatencyHistogram {
+    private static final int SUB_BUCKET_BITS = 5;
+    private static final int SUB_BUCKETS = 1 << SUB_BUCKET_BITS;
+    private static final int BUCKET_COUNT = (64 - SUB_BUCKET_BITS + 1) * SUB_BUCKETS;
+
+    private final long[] mCounts = new long[BUCKET_COUNT];
+    private long mTotalCount;
+    private long mMax;
+
+    /** Records one value, which must not be negative. */
+    public void record(long value) {
+        mCounts[indexOf(Math.max(0, value))]++;
+        mTotalCount++;
+        mMax = Math.max(mMax, value);
+    }
+
+    /** Adds all the values recorded in {@code other} to this histogram. */
+    public void add(LatencyHistogram other) {
+        for (int i = 0; i < BUCKET_COUNT; i++) {
+            mCounts[i] += other.mCounts[i];
+        }
+        mTotalCount += other.mTotalCount;
+        mMax = Math.max(mMax, other.mMax);
+    }
+
+    /** Forgets all the recorded values. */
+    public void reset() {
+        Arrays.fill(mCounts, 0);
+        mTotalCount = 0;
+        mMax = 0;
+    }
+
+    public long getCount() {
+        return mTotalCount;
+    }
+
+    public long getMax() {
+        return mMax;
+    }
+
+    /**
+     * Returns the value at the given percentile, in [0, 100], i.e. the highest value of the bucket
+     * holding that rank, or 0 if nothing was recorded.
+     */
+    public long getPercentile(double percentile) {
+        if (mTotalCount == 0) {
+            return 0;
+        }
+        long rank = (long) Math.ceil(percentile / 100 * mTotalCount);
+        rank = Math.max(1, Math.min(rank, mTotalCount));
+        long seen = 0;
+        for (int i = 0; i < BUCKET_COUNT; i++) {
+            seen += mCounts[i];
+            if (seen >= rank) {
+                return Math.min(highestValueOf(i), mMax);
+            }
+        }
+        return mMax;
+    }
+
+    private static int indexOf(long value) {
+        if (value < SUB_BUCKETS) {
+            return (int) value;
+        }
+        // Keep the SUB_BUCKET_BITS + 1 most significant bits of the value.
+        int shift = 63 - Long.numberOfLeadingZeros(value) - SUB_BUCKET_BITS;
+        return (shift + 1) * SUB_BUCKETS + (int) (value >>> shift) - SUB_BUCKETS;
+    }
+
+    private static long highestValueOf(int index) {
+        if (index < 2 * SUB_BUCKETS) {
+            return index;
+        }
+        int shift = index / SUB_BUCKETS - 1;
+        long mantissa = index % SUB_BUCKETS + SUB_BUCKETS;
+        return ((mantissa + 1) << shift) - 1;
+    }
+}
@@ -0,0 +1,281 @@
+/*
+ * Copyright (C) 2026 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package android.device.stressmodes;
+
+import android.util.Log;
+
+import androidx.annotation.VisibleForTesting;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Base class of a background load generator that self-calibrates to a target intensity.
+ *
+ * <p>Each worker thread runs in fixed pacing periods. Within a period it calls {@link
+ * #doWork(int, long)} until its share of the target amount for the period is done, then sleeps
+ * until the next period. Any shortfall or excess is carried over to the next period, so the
+ * achieved average converges to the target regardless of how fast the device executes a unit of
+ * work. Amounts are expressed in a generator-specific base unit (bytes, operations, CPU
+ * nanoseconds); {@code unitScale} converts them to the unit used in options and metrics.
+ */
+public abstract class LoadGenerator {
+    private static final String TAG = LoadGenerator.class.getSimpleName();
+
+    // Default pacing period for all generators.
+    @VisibleForTesting static final long DEFAULT_PERIOD_MS = 50;
+
+    // Max number of periods worth of backlog carried over when a worker falls behind.
+    private static final int MAX_CARRY_PERIODS = 4;
+
+    /** Source of time for the pacing, replaced in tests to make it deterministic. */
+    @VisibleForTesting
+    interface Clock {
+        /** Returns the current time, in nanoseconds, with the semantics of System.nanoTime(). */
+        long nanoTime();
+
+        /** Sleeps the calling thread for the given time. */
+        void sleep(long nanos) throws InterruptedException;
+    }
+
+    private static final Clock SYSTEM_CLOCK =
+            new Clock() {
+                @Override
+                public long nanoTime() {
+                    return System.nanoTime();
+                }
+
+                @Override
+                public void sleep(long nanos) throws InterruptedException {
+                    Thread.sleep(nanos / 1_000_000L, (int) (nanos % 1_000_000L));
+                }
+            };
+
+    private final String mName;
+    private final String mUnit;
+    private final double mTarget;
+    private final double mUnitScale;
+    private final int mThreadCount;
+    private final long mPeriodNanos;
+    private final Clock mClock;
+    private final AtomicLong mDone = new AtomicLong();
+    private final List<Thread> mThreads = new ArrayList<>();
+    private volatile boolean mStop = true;
+    private boolean mPrepared;
+    private long mStartNanos;
+    private long mStopNanos;
+
+    /**
+     * @param name short name used in thread names and metric keys.
+     * @param unit name of the unit of {@code target}, used in metric keys.
+     * @param target target intensity, in {@code unit} per second, across all threads.
+     * @param unitScale number of base units in one {@code unit}.
+     * @param threadCount number of worker threads sharing the target.
+     */
+    protected LoadGenerator(
+            String name, String unit, double target, double unitScale, int threadCount) {
+        this(name, unit, target, unitScale, threadCount, DEFAULT_PERIOD_MS, SYSTEM_CLOCK);
+    }
+
+    @VisibleForTesting
+    LoadGenerator(
+            String name,
+            String unit,
+            double target,
+            double unitScale,
+            int threadCount,
+            long periodMs,
+            Clock clock) {
+        if (target <= 0 || threadCount <= 0) {
+            throw new IllegalArgumentException(
+                    String.format(
+                            "%s: incorrect target %f %s on %d threads",
+                            name, target, unit, threadCount));
+        }
+        mName = name;
+        mUnit = unit;
+        mTarget = target;
+        mUnitScale = unitScale;
+        mThreadCount = threadCount;
+        mPeriodNanos = periodMs * 1_000_000L;
+        mClock = clock;
+    }
+
+    /**
+     * Performs a short unit of work on the given worker thread.
+     *
+     * @param worker index of the calling worker, in [0, threadCount).
+     * @param maxAmount amount, in base units, left in the current period; implementations should
+     *     do at most about this much so that pacing stays accurate.
+     * @return amount of work actually done, in base units.
+     */
+    protected abstract long doWork(int worker, long maxAmount) throws Exception;
+
+    /**
+     * Called on the calling thread before the first start, to set up what the workers keep across
+     * runs, such as the files they read.
+     */
+    protected void onPrepare() throws Exception {}
+
+    /** Called on the calling thread before the workers start. */
+    protected void onStart() throws Exception {}
+
+    /** Called on the calling thread after all the workers have stopped. */
+    protected void onStop() throws Exception {}
+
+    /** Called on the calling thread once the generator is released, after it stopped. */
+    protected void onRelease() throws Exception {}
+
+    /**
+     * Sets up what the workers keep across runs, if not done yet. Called by {@link #start()}, but
+     * can be called earlier so that the set up is not part of the first run.
+     */
+    public final synchronized void prepare() throws Exception {
+        if (!mPrepared) {
+            onPrepare();
+            mPrepared = true;
+        }
+    }
+
+    /** Starts the worker threads. */
+    public final synchronized void start() throws Exception {
+        if (!mStop) {
+            return;
+        }
+        prepare();
+        onStart();
+        mStop = false;
+        mDone.set(0);
+        mThreads.clear();
+        mStartNanos = mClock.nanoTime();
+        for (int i = 0; i < mThreadCount; i++) {
+            final int worker = i;
+            Thread thread = new Thread(() -> runWorker(worker), "Stress-" + mName + "-" + i);
+            thread.setDaemon(true);
+            mThreads.add(thread);
+            thread.start();
+        }
+    }
+
+    /** Stops the worker threads and waits for them to exit. */
+    public final synchronized void stop() throws Exception {
+        if (mStop) {
+            return;
+        }
+        mStop = true;
+        for (Thread thread : mThreads) {
+            thread.interrupt();
+        }
+        for (Thread thread : mThreads) {
+            thread.join();
+        }
+        mStopNanos = mClock.nanoTime();
+        onStop();
+    }
+
+    /** Stops the worker threads if needed, and releases what they kept across runs. */
+    public final synchronized void release() throws Exception {
+        stop();
+        if (mPrepared) {
+            mPrepared = false;
+            onRelease();
+        }
+    }
+
+    private void runWorker(int worker) {
+        final double targetPerNano = mTarget * mUnitScale / mThreadCount / 1e9;
+        final long perPeriod = Math.max(1, (long) (targetPerNano * mPeriodNanos));
+        final long start = mClock.nanoTime();
+        long done = 0;
+        long periodEnd = start + mPeriodNanos;
+        try {
+            while (!mStop) {
+                // Amount this worker should have done by the end of the period, minus what it did.
+                long expected = (long) (targetPerNano * (periodEnd - start));
+                long due = expected - done;
+                if (due > perPeriod * MAX_CARRY_PERIODS) {
+                    // Forget the backlog the device could not keep up with.
+                    done = expected - perPeriod * MAX_CARRY_PERIODS;
+                    due = perPeriod * MAX_CARRY_PERIODS;
+                }
+                while (due > 0 && !mStop && mClock.nanoTime() < periodEnd) {
+                    long amount = doWork(worker, due);
+                    done += amount;
+                    due -= amount;
+                    mDone.addAndGet(amount);
+                }
+                long sleepNanos = periodEnd - mClock.nanoTime();
+                if (sleepNanos > 0) {
+                    mClock.sleep(sleepNanos);
+                }
+                periodEnd = Math.max(periodEnd, mClock.nanoTime()) + mPeriodNanos;
+            }
+        } catch (InterruptedException e) {
+            // Asked to stop.
+        } catch (Exception e) {
+            // Interrupting a worker to stop it can also fail the work it was doing, such as I/O.
+            if (!mStop) {
+                Log.e(TAG, mName + " load generator failed", e);
+            }
+        }
+    }
+
+    /** Returns the short name of this generator. */
+    public String getName() {
+        return mName;
+    }
+
+    /** Returns the unit of the target and achieved intensity. */
+    public String getUnit() {
+        return mUnit;
+    }
+
+    /** Returns the target intensity, in {@link #getUnit()} per second. */
+    public double getTarget() {
+        return mTarget;
+    }
+
+    /**
+     * Returns additional generator-specific metrics about the last run, keyed by a name that is
+     * unique within this generator. Only called after {@link #stop()}.
+     */
+    public Map<String, String> getExtraMetrics() {
+        return Collections.emptyMap();
+    }
+
+    /** Returns the achieved intensity since the last start, in {@link #getUnit()} per second. */
+    public synchronized double getAchieved() {
+        // Read under the lock of start() and stop() so that the start and stop times are those of
+        // the same run.
+        long end = mStop ? mStopNanos : mClock.nanoTime();
+        long elapsed = end - mStartNanos;
+        if (elapsed <= 0) {
+            return 0;
+        }
+        return mDone.get() / mUnitScale / (elapsed / 1e9);
+    }
+
+    @Override
+    public String toString() {
+        return String.format(
+                "%s: target %.2f %s, achieved %.2f %s", mName, mTarget, mUnit, getAchieved(),
+                mUnit);
+    }
+}
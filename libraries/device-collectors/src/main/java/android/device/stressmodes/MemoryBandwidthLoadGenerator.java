@@ -0,0 +1,65 @@
+/*
+ * Copyright (C) 2026 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package android.device.stressmodes;
+
+/**
+ * A {@link LoadGenerator} that consumes a target memory bandwidth, in MB/s, by copying between
+ * two buffers per worker large enough not to fit in the caches. Each copied byte counts once even
+ * though it is both read and written.
+ */
+public class MemoryBandwidthLoadGenerator extends LoadGenerator {
+    private static final double BYTES_PER_MB = 1e6;
+    // Per-worker buffer size, larger than the last-level cache of current devices.
+    private static final int BUFFER_SIZE = 16 * 1024 * 1024;
+    // Largest single copy between two pacing checks.
+    private static final int MAX_CHUNK = 256 * 1024;
+
+    private final byte[][] mSources;
+    private final byte[][] mDestinations;
+    private final int[] mOffsets;
+
+    public MemoryBandwidthLoadGenerator(double targetMbPerSecond, int threadCount) {
+        super("membw", "mbps", targetMbPerSecond, BYTES_PER_MB, threadCount);
+        mSources = new byte[threadCount][];
+        mDestinations = new byte[threadCount][];
+        mOffsets = new int[threadCount];
+    }
+
+    @Override
+    protected void onStart() {
+        for (int i = 0; i < mSources.length; i++) {
+            mSources[i] = new byte[BUFFER_SIZE];
+            mDestinations[i] = new byte[BUFFER_SIZE];
+        }
+    }
+
+    @Override
+    protected void onStop() {
+        for (int i = 0; i < mSources.length; i++) {
+            mSources[i] = null;
+            mDestinations[i] = null;
+        }
+    }
+
+    @Override
+    protected long doWork(int worker, long maxAmount) {
+        int offset = mOffsets[worker];
+        int length = (int) Math.min(Math.min(maxAmount, MAX_CHUNK), BUFFER_SIZE - offset);
+        System.arraycopy(mSources[worker], offset, mDestinations[worker], offset, length);
+        mOffsets[worker] = (offset + length) % BUFFER_SIZE;
+        return length;
+    }
+}
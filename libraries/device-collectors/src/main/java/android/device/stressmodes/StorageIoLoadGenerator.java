@@ -0,0 +1,267 @@
+/*
+ * Copyright (C) 2026 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package android.device.stressmodes;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.StandardOpenOption;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Random;
+
+/**
+ * A {@link LoadGenerator} that drives storage I/O at a target rate, in MB/s read plus written.
+ *
+ * <p>Each worker thread owns one file and one direct buffer, so the number of threads is the
+ * queue depth. Every operation is a read with probability {@code readPercent} and a write
+ * otherwise, at a random block-aligned offset with probability {@code randomPercent} and at the
+ * next sequential offset otherwise. Writes are followed by an fsync every {@code fsyncEvery}
+ * writes. The latency of every operation, including its fsync if any, is recorded so that
+ * percentiles can be reported next to the achieved throughput.
+ *
+ * <p>The files are laid out once, when the generator is prepared, and kept across runs until it is
+ * released, so that tests measured with this load do not also pay for the set up.
+ *
+ * <p>Reads may be served from the page cache; use a file size larger than the free memory of the
+ * device to make sure they reach storage.
+ */
+public class StorageIoLoadGenerator extends LoadGenerator {
+    private static final double BYTES_PER_MB = 1e6;
+    private static final int DEFAULT_BLOCK_SIZE = 256 * 1024;
+    private static final long DEFAULT_FILE_SIZE = 64L * 1024 * 1024;
+
+    private final File mDirectory;
+    private final int mReadPercent;
+    private final int mRandomPercent;
+    private final int mBlockSize;
+    private final long mBlockCount;
+    private final int mFsyncEvery;
+    private final Worker[] mWorkers;
+
+    /** Per-worker state, only touched by its worker thread while running. */
+    private static class Worker {
+        File mFile;
+        FileChannel mChannel;
+        ByteBuffer mBuffer;
+        Random mRandom;
+        long mNextBlock;
+        int mWritesSinceSync;
+        long mBytesRead;
+        long mBytesWritten;
+        long mFsyncCount;
+        final LatencyHistogram mReadLatencyUs = new LatencyHistogram();
+        final LatencyHistogram mWriteLatencyUs = new LatencyHistogram();
+    }
+
+    /** Sequential writes of 256KiB to a 64MiB file per thread, never synced. */
+    public StorageIoLoadGenerator(File directory, double targetMbPerSecond, int threadCount) {
+        this(directory, targetMbPerSecond, threadCount, 0, 0, DEFAULT_BLOCK_SIZE,
+                DEFAULT_FILE_SIZE, 0);
+    }
+
+    /**
+     * @param directory where the worker files are created.
+     * @param targetMbPerSecond target of bytes read plus written, in MB/s.
+     * @param threadCount number of worker threads, i.e. queue depth.
+     * @param readPercent share of operations that are reads, in [0, 100].
+     * @param randomPercent share of operations at a random offset, in [0, 100].
+     * @param blockSize size of each operation, in bytes.
+     * @param fileSize size of each worker file, in bytes.
+     * @param fsyncEvery number of writes between two fsync, or 0 to never sync.
+     */
+    public StorageIoLoadGenerator(
+            File directory,
+            double targetMbPerSecond,
+            int threadCount,
+            int readPercent,
+            int randomPercent,
+            int blockSize,
+            long fileSize,
+            int fsyncEvery) {
+        super("io", "mbps", targetMbPerSecond, BYTES_PER_MB, threadCount);
+        if (readPercent < 0 || readPercent > 100 || randomPercent < 0 || randomPercent > 100
+                || blockSize <= 0 || fileSize < blockSize || fsyncEvery < 0) {
+            throw new IllegalArgumentException(
+                    String.format(
+                            "io: incorrect pattern read=%d%% random=%d%% block=%d file=%d"
+                                    + " fsync=%d",
+                            readPercent, randomPercent, blockSize, fileSize, fsyncEvery));
+        }
+        mDirectory = directory;
+        mReadPercent = readPercent;
+        mRandomPercent = randomPercent;
+        mBlockSize = blockSize;
+        mBlockCount = fileSize / blockSize;
+        mFsyncEvery = fsyncEvery;
+        mWorkers = new Worker[threadCount];
+    }
+
+    @Override
+    protected void onPrepare() throws IOException {
+        for (int i = 0; i < mWorkers.length; i++) {
+            Worker worker = new Worker();
+            mWorkers[i] = worker;
+            worker.mFile = new File(mDirectory, "stress-io-" + i + ".bin");
+            worker.mChannel =
+                    FileChannel.open(
+                            worker.mFile.toPath(),
+                            StandardOpenOption.CREATE,
+                            StandardOpenOption.READ,
+                            StandardOpenOption.WRITE,
+                            StandardOpenOption.TRUNCATE_EXISTING);
+            worker.mBuffer = ByteBuffer.allocateDirect(mBlockSize);
+            worker.mRandom = new Random(i);
+            // Fill with non-zero data so that compressing or deduplicating storage still writes.
+            for (int j = 0; j < mBlockSize; j++) {
+                worker.mBuffer.put(j, (byte) (j * 31 + i));
+            }
+            if (mReadPercent > 0) {
+                // Reads need the whole file to exist.
+                for (long block = 0; block < mBlockCount; block++) {
+                    worker.mBuffer.clear();
+                    writeFully(worker.mChannel, worker.mBuffer, block * mBlockSize);
+                }
+                worker.mChannel.force(false);
+            }
+        }
+    }
+
+    @Override
+    protected void onStart() throws IOException {
+        for (Worker worker : mWorkers) {
+            if (!worker.mChannel.isOpen()) {
+                // Interrupting a worker in the middle of an operation to stop it closes its
+                // channel.
+                worker.mChannel =
+                        FileChannel.open(
+                                worker.mFile.toPath(),
+                                StandardOpenOption.READ,
+                                StandardOpenOption.WRITE);
+            }
+            // Metrics are per run.
+            worker.mBytesRead = 0;
+            worker.mBytesWritten = 0;
+            worker.mFsyncCount = 0;
+            worker.mReadLatencyUs.reset();
+            worker.mWriteLatencyUs.reset();
+        }
+    }
+
+    @Override
+    protected void onRelease() throws IOException {
+        for (int i = 0; i < mWorkers.length; i++) {
+            Worker worker = mWorkers[i];
+            if (worker == null) {
+                continue;
+            }
+            mWorkers[i] = null;
+            worker.mChannel.close();
+            worker.mFile.delete();
+        }
+    }
+
+    @Override
+    protected long doWork(int index, long maxAmount) throws IOException {
+        Worker worker = mWorkers[index];
+        long block;
+        if (mRandomPercent > 0 && worker.mRandom.nextInt(100) < mRandomPercent) {
+            block = (long) (worker.mRandom.nextDouble() * mBlockCount);
+        } else {
+            block = worker.mNextBlock;
+        }
+        worker.mNextBlock = (block + 1) % mBlockCount;
+        long position = block * mBlockSize;
+        boolean read = mReadPercent > 0 && worker.mRandom.nextInt(100) < mReadPercent;
+        // Do no more than what is left in the pacing period, so that low targets are still met.
+        int size = (int) Math.min(mBlockSize, maxAmount);
+
+        worker.mBuffer.clear();
+        worker.mBuffer.limit(size);
+        long start = System.nanoTime();
+        if (read) {
+            readFully(worker.mChannel, worker.mBuffer, position);
+            worker.mReadLatencyUs.record((System.nanoTime() - start) / 1000);
+            worker.mBytesRead += size;
+        } else {
+            writeFully(worker.mChannel, worker.mBuffer, position);
+            if (mFsyncEvery > 0 && ++worker.mWritesSinceSync >= mFsyncEvery) {
+                worker.mChannel.force(false);
+                worker.mWritesSinceSync = 0;
+                worker.mFsyncCount++;
+            }
+            worker.mWriteLatencyUs.record((System.nanoTime() - start) / 1000);
+            worker.mBytesWritten += size;
+        }
+        return size;
+    }
+
+    private static void readFully(FileChannel channel, ByteBuffer buffer, long position)
+            throws IOException {
+        while (buffer.hasRemaining()) {
+            int read = channel.read(buffer, position + buffer.position());
+            if (read < 0) {
+                break;
+            }
+        }
+    }
+
+    private static void writeFully(FileChannel channel, ByteBuffer buffer, long position)
+            throws IOException {
+        while (buffer.hasRemaining()) {
+            channel.write(buffer, position + buffer.position());
+        }
+    }
+
+    @Override
+    public Map<String, String> getExtraMetrics() {
+        LatencyHistogram reads = new LatencyHistogram();
+        LatencyHistogram writes = new LatencyHistogram();
+        long bytesRead = 0;
+        long bytesWritten = 0;
+        long fsyncs = 0;
+        for (Worker worker : mWorkers) {
+            if (worker == null) {
+                continue;
+            }
+            reads.add(worker.mReadLatencyUs);
+            writes.add(worker.mWriteLatencyUs);
+            bytesRead += worker.mBytesRead;
+            bytesWritten += worker.mBytesWritten;
+            fsyncs += worker.mFsyncCount;
+        }
+        Map<String, String> metrics = new LinkedHashMap<>();
+        metrics.put("read_mb", String.valueOf(bytesRead / BYTES_PER_MB));
+        metrics.put("write_mb", String.valueOf(bytesWritten / BYTES_PER_MB));
+        metrics.put("fsync_count", String.valueOf(fsyncs));
+        addLatencyMetrics(metrics, "read", reads);
+        addLatencyMetrics(metrics, "write", writes);
+        return metrics;
+    }
+
+    private static void addLatencyMetrics(
+            Map<String, String> metrics, String op, LatencyHistogram histogram) {
+        if (histogram.getCount() == 0) {
+            return;
+        }
+        metrics.put(op + "_count", String.valueOf(histogram.getCount()));
+        metrics.put(op + "_latency_p50_us", String.valueOf(histogram.getPercentile(50)));
+        metrics.put(op + "_latency_p90_us", String.valueOf(histogram.getPercentile(90)));
+        metrics.put(op + "_latency_p99_us", String.valueOf(histogram.getPercentile(99)));
+        metrics.put(op + "_latency_max_us", String.valueOf(histogram.getMax()));
+    }
+}
@@ -20,6 +20,7 @@ import android.device.collectors.annotations.MetricOption;
 import android.device.collectors.annotations.OptionClass;
 import android.device.collectors.util.SendToInstrumentation;
 import android.os.Bundle;
+import android.os.SystemClock;
 
 import androidx.test.runner.AndroidJUnit4;
 
@@ -773,4 +774,74 @@ public class BaseMetricListenerInstrumentedTest {
                         Mockito.eq(SendToInstrumentation.INST_STATUS_IN_PROGRESS),
                         Mockito.any(Bundle.class));
     }
+
+    /** Test that the collector overhead is reported per test and per run when enabled. */
+    @MetricOption(group = "testGroup")
+    @Test
+    public void testReportOverhead() throws Exception {
+        Bundle args = new Bundle();
+        args.putString(BaseMetricListener.REPORT_OVERHEAD, "true");
+        mListener = createWithArgs(args);
+        mListener.setInstrumentation(mMockInstrumentation);
+        String prefix = mListener.getClass().getName();
+        prefix = prefix.substring(prefix.lastIndexOf('.') + 1);
+
+        Description runDescription = Description.createSuiteDescription("run");
+        mListener.testRunStarted(runDescription);
+        Description testDescription = Description.createTestDescription("class", "method");
+        mListener.testStarted(testDescription);
+        mListener.testFinished(testDescription);
+        mListener.testRunFinished(new Result());
+        Bundle resultBundle = new Bundle();
+        mListener.instrumentationRunFinished(System.out, resultBundle, new Result());
+
+        ArgumentCaptor<Bundle> capture = ArgumentCaptor.forClass(Bundle.class);
+        Mockito.verify(mMockInstrumentation)
+                .sendStatus(Mockito.eq(
+                        SendToInstrumentation.INST_STATUS_IN_PROGRESS), capture.capture());
+        Bundle check = capture.getValue();
+        assertEquals(TEST_END_VALUE + "method", check.getString(TEST_END_KEY));
+        assertTrue(check.containsKey(prefix + "_overhead_test_start_wall_ms"));
+        assertTrue(check.containsKey(prefix + "_overhead_test_end_cpu_ms"));
+        assertEquals("0", check.getString(prefix + "_overhead_test_end_shell_commands"));
+        assertTrue(check.containsKey(prefix + "_overhead_wall_ms"));
+        assertFalse(check.containsKey(prefix + "_overhead_over_budget"));
+
+        assertEquals(RUN_END_VALUE, resultBundle.getString(RUN_END_KEY));
+        assertTrue(resultBundle.containsKey(prefix + "_overhead_run_start_wall_ms"));
+        assertTrue(resultBundle.containsKey(prefix + "_overhead_run_end_wall_ms"));
+        assertTrue(resultBundle.containsKey(prefix + "_overhead_tests_wall_ms"));
+    }
+
+    /** Test that a collector slower than the overhead budget is flagged. */
+    @MetricOption(group = "testGroup")
+    @Test
+    public void testOverheadBudget() throws Exception {
+        Bundle args = new Bundle();
+        args.putString(BaseMetricListener.OVERHEAD_BUDGET_MS, "10");
+        BaseMetricListener listener =
+                new BaseMetricListener(args) {
+                    @Override
+                    public void onTestEnd(DataRecord testData, Description description) {
+                        SystemClock.sleep(50);
+                    }
+                };
+        listener.setInstrumentation(mMockInstrumentation);
+        String prefix = listener.getClass().getName();
+        prefix = prefix.substring(prefix.lastIndexOf('.') + 1);
+
+        listener.testRunStarted(Description.createSuiteDescription("run"));
+        Description testDescription = Description.createTestDescription("class", "method");
+        listener.testStarted(testDescription);
+        listener.testFinished(testDescription);
+
+        ArgumentCaptor<Bundle> capture = ArgumentCaptor.forClass(Bundle.class);
+        Mockito.verify(mMockInstrumentation)
+                .sendStatus(Mockito.eq(
+                        SendToInstrumentation.INST_STATUS_IN_PROGRESS), capture.capture());
+        Bundle check = capture.getValue();
+        // Only the budget flag is reported since the overhead metrics were not requested.
+        assertEquals("true", check.getString(prefix + "_overhead_over_budget"));
+        assertEquals(1, check.size());
+    }
 }
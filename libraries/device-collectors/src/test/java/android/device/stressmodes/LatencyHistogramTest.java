@@ -0,0 +1,73 @@
+/*
+ * Copyright (C) 2026 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package android.device.stressmodes;
+
+import static com.google.common.truth.Truth.assertThat;
+
+import androidx.test.runner.AndroidJUnit4;
+
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+/**
+ * Android Unit tests for {@link LatencyHistogram}.
+ *
+ * <p>To run: atest CollectorDeviceLibTest:android.device.stressmodes.LatencyHistogramTest
+ */
+@RunWith(AndroidJUnit4.class)
+public class LatencyHistogramTest {
+
+    @Test
+    public void testSmallValuesAreExact() {
+        LatencyHistogram histogram = new LatencyHistogram();
+        for (int i = 1; i <= 10; i++) {
+            histogram.record(i);
+        }
+        assertThat(histogram.getCount()).isEqualTo(10);
+        assertThat(histogram.getPercentile(50)).isEqualTo(5);
+        assertThat(histogram.getPercentile(90)).isEqualTo(9);
+        assertThat(histogram.getPercentile(100)).isEqualTo(10);
+    }
+
+    @Test
+    public void testLargeValuesHaveBoundedError() {
+        LatencyHistogram histogram = new LatencyHistogram();
+        for (int i = 1; i <= 100_000; i++) {
+            histogram.record(i);
+        }
+        assertThat((double) histogram.getPercentile(50)).isWithin(50_000 * 0.04).of(50_000);
+        assertThat((double) histogram.getPercentile(99)).isWithin(99_000 * 0.04).of(99_000);
+        assertThat(histogram.getMax()).isEqualTo(100_000);
+    }
+
+    @Test
+    public void testAdd() {
+        LatencyHistogram first = new LatencyHistogram();
+        LatencyHistogram second = new LatencyHistogram();
+        first.record(1);
+        second.record(1_000_000);
+        first.add(second);
+        assertThat(first.getCount()).isEqualTo(2);
+        assertThat(first.getPercentile(50)).isEqualTo(1);
+        assertThat(first.getPercentile(100)).isEqualTo(1_000_000);
+    }
+
+    @Test
+    public void testEmpty() {
+        assertThat(new LatencyHistogram().getPercentile(99)).isEqualTo(0);
+    }
+}
@@ -0,0 +1,225 @@
+/*
+ * Copyright (C) 2026 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package android.device.stressmodes;
+
+import static com.google.common.truth.Truth.assertThat;
+
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.verify;
+
+import android.device.collectors.DataRecord;
+import android.os.Bundle;
+import android.os.SystemClock;
+
+import androidx.test.runner.AndroidJUnit4;
+
+import org.junit.Test;
+import org.junit.runner.Description;
+import org.junit.runner.RunWith;
+
+import java.io.File;
+import java.io.RandomAccessFile;
+import java.nio.file.Files;
+import java.util.Map;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Android Unit tests for {@link LoadGenerator} and {@link CompositeStressMode}.
+ *
+ * <p>To run: atest CollectorDeviceLibTest:android.device.stressmodes.LoadGeneratorTest
+ */
+@RunWith(AndroidJUnit4.class)
+public class LoadGeneratorTest {
+
+    /**
+     * Fake clock that only advances when the generator works or sleeps. Once it reaches its end
+     * time, the worker is blocked until it is stopped, so that the test sees a run of exactly that
+     * length whatever the load of the machine running it.
+     */
+    private static class FakeClock implements LoadGenerator.Clock {
+        private final long mEndNanos;
+        private final CountDownLatch mEnded = new CountDownLatch(1);
+        private volatile long mNanos;
+
+        FakeClock(long durationNanos) {
+            mEndNanos = durationNanos;
+        }
+
+        @Override
+        public long nanoTime() {
+            return mNanos;
+        }
+
+        @Override
+        public void sleep(long nanos) throws InterruptedException {
+            advance(nanos);
+        }
+
+        void advance(long nanos) throws InterruptedException {
+            if (mNanos >= mEndNanos) {
+                mEnded.countDown();
+                // Wait for stop() to interrupt the worker.
+                new CountDownLatch(1).await();
+            }
+            mNanos += nanos;
+        }
+
+        void awaitEnd() throws InterruptedException {
+            assertThat(mEnded.await(10, TimeUnit.SECONDS)).isTrue();
+        }
+    }
+
+    /** Fake generator whose unit of work has a fixed cost and size, on a {@link FakeClock}. */
+    private static class FakeLoadGenerator extends LoadGenerator {
+        private final AtomicInteger mCalls = new AtomicInteger();
+        private final FakeClock mClock;
+        private final long mWorkNanos;
+        private final long mWorkAmount;
+
+        FakeLoadGenerator(double target, FakeClock clock, long workNanos, long workAmount) {
+            super("fake", "ops", target, 1, 1, 20, clock);
+            mClock = clock;
+            mWorkNanos = workNanos;
+            mWorkAmount = workAmount;
+        }
+
+        @Override
+        protected long doWork(int worker, long maxAmount) throws InterruptedException {
+            mClock.advance(mWorkNanos);
+            mCalls.incrementAndGet();
+            return mWorkAmount;
+        }
+    }
+
+    @Test
+    public void testAchievesTarget() throws Exception {
+        // Each unit of work is 10 ops for 10us: the generator must pace down to 5000 ops/s.
+        FakeClock clock = new FakeClock(TimeUnit.SECONDS.toNanos(1));
+        FakeLoadGenerator generator = new FakeLoadGenerator(5000, clock, 10_000, 10);
+        generator.start();
+        clock.awaitEnd();
+        generator.stop();
+
+        assertThat(generator.getAchieved()).isWithin(1).of(5000);
+        assertThat(generator.mCalls.get()).isEqualTo(500);
+    }
+
+    @Test
+    public void testReportsShortfall() throws Exception {
+        // Each unit of work is 1 op for 1ms: one thread cannot do more than 1000 ops/s.
+        FakeClock clock = new FakeClock(TimeUnit.SECONDS.toNanos(1));
+        FakeLoadGenerator generator = new FakeLoadGenerator(5000, clock, 1_000_000, 1);
+        generator.start();
+        clock.awaitEnd();
+        generator.stop();
+
+        assertThat(generator.getAchieved()).isWithin(1).of(1000);
+    }
+
+    @Test
+    public void testIncorrectTarget() {
+        try {
+            new FakeLoadGenerator(0, new FakeClock(0), 0, 1);
+        } catch (IllegalArgumentException expected) {
+            return;
+        }
+        throw new AssertionError("An IllegalArgumentException should have been thrown");
+    }
+
+    @Test
+    public void testCompositeStressModeReportsEnabledGenerators() throws Exception {
+        Bundle args = new Bundle();
+        args.putString(CompositeStressMode.CPU_PERCENT, "50");
+        args.putString(CompositeStressMode.ALLOCATION_MBPS, "10");
+        args.putString(String.format(CompositeStressMode.THREADS_FORMAT, "alloc"), "2");
+        CompositeStressMode stressMode = new CompositeStressMode(args);
+        stressMode.setUp();
+
+        assertThat(stressMode.getGenerators()).hasSize(2);
+        assertThat(stressMode.getGenerators().get(0)).isInstanceOf(CpuLoadGenerator.class);
+        assertThat(stressMode.getGenerators().get(1)).isInstanceOf(AllocationLoadGenerator.class);
+
+        DataRecord data = mock(DataRecord.class);
+        Description description = Description.createTestDescription("class", "method");
+        stressMode.onTestStart(data, description);
+        SystemClock.sleep(200);
+        stressMode.onTestEnd(data, description);
+
+        verify(data).addStringMetric("stress_cpu_target_percent", "50.0");
+        verify(data).addStringMetric("stress_alloc_target_mbps", "10.0");
+        assertThat(stressMode.getGenerators().get(0).getAchieved()).isGreaterThan(0.0);
+    }
+
+    @Test
+    public void testStorageIoMixedPattern() throws Exception {
+        File directory = Files.createTempDirectory("stress-io").toFile();
+        StorageIoLoadGenerator generator =
+                new StorageIoLoadGenerator(directory, 20, 2, 50, 50, 4096, 1024 * 1024, 8);
+        generator.prepare();
+
+        // Files are laid out when prepared, since reads need all of them.
+        File[] files = directory.listFiles();
+        assertThat(files).hasLength(2);
+        for (File file : files) {
+            assertThat(file.length()).isEqualTo(1024 * 1024);
+        }
+        for (int i = 0; i < 100; i++) {
+            assertThat(generator.doWork(i % 2, Long.MAX_VALUE)).isEqualTo(4096);
+        }
+        Map<String, String> metrics = generator.getExtraMetrics();
+        assertThat(
+                        Long.parseLong(metrics.get("read_count"))
+                                + Long.parseLong(metrics.get("write_count")))
+                .isEqualTo(100);
+        assertThat(metrics).containsKey("read_latency_p99_us");
+        assertThat(metrics).containsKey("write_latency_p99_us");
+        assertThat(Long.parseLong(metrics.get("fsync_count"))).isGreaterThan(0L);
+
+        // An operation does no more than what is left in the pacing period.
+        assertThat(generator.doWork(0, 1000)).isEqualTo(1000);
+
+        generator.release();
+        assertThat(directory.list()).isEmpty();
+        directory.delete();
+    }
+
+    @Test
+    public void testStorageIoKeepsFilesAcrossRuns() throws Exception {
+        File directory = Files.createTempDirectory("stress-io").toFile();
+        StorageIoLoadGenerator generator =
+                new StorageIoLoadGenerator(directory, 20, 1, 100, 0, 4096, 64 * 1024, 0);
+        generator.start();
+        generator.stop();
+        File file = directory.listFiles()[0];
+        try (RandomAccessFile marked = new RandomAccessFile(file, "rw")) {
+            marked.write(0x7f);
+        }
+
+        // A later run only reads the file, without laying it out again.
+        generator.start();
+        generator.stop();
+        assertThat(directory.listFiles()).asList().containsExactly(file);
+        try (RandomAccessFile marked = new RandomAccessFile(file, "r")) {
+            assertThat(marked.read()).isEqualTo(0x7f);
+        }
+
+        generator.release();
+        assertThat(directory.list()).isEmpty();
+        directory.delete();
+    }
+}
@@ -0,0 +1,399 @@
+/*
+ * Copyright (C) 2026 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package android.platform.test.rule;
+
+import android.os.Bundle;
+import android.os.RemoteException;
+import android.os.SystemClock;
+import android.util.Log;
+import androidx.annotation.VisibleForTesting;
+import androidx.test.InstrumentationRegistry;
+
+import com.android.helpers.ThermalHelper;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.List;
+
+import org.junit.runner.Description;
+
+/**
+ * This rule waits for the DUT to become quiescent before a test case.
+ *
+ * <p>Unlike {@link CoolDownRule}, which polls a single temperature at a coarse interval and then
+ * always sleeps a fixed amount of time, this rule samples several signals at a fine interval and
+ * returns as soon as every enabled signal is below its threshold and no longer trending upwards
+ * over the last "quiescence-window" samples. The supported signals are:
+ *
+ * <ul>
+ *   <li>device temperature, enabled by "quiescence-device-temperature-name" (escaped the same way
+ *       as for {@link CoolDownRule}) and bounded by "quiescence-target-temperature";
+ *   <li>1-minute load average, enabled by "quiescence-load-threshold";
+ *   <li>mean current CPU frequency in kHz, enabled by "quiescence-cpu-freq-threshold";
+ *   <li>paged I/O throughput in KiB/s, enabled by "quiescence-io-threshold".
+ * </ul>
+ *
+ * <p>Load, frequency and I/O are read together with a single shell command per sample. The time
+ * spent waiting and the last value of every enabled signal are reported to the instrumentation as
+ * metrics.
+ */
+public class QuiescenceRule extends TestWatcher {
+
+    private static final String LOG_TAG = QuiescenceRule.class.getSimpleName();
+
+    // Metrics will be reported under the "status in progress" like {@link StopwatchRule}.
+    @VisibleForTesting static final int INST_STATUS_IN_PROGRESS = 2;
+
+    // Interval in milliseconds between two samples; defaults to 1s
+    @VisibleForTesting static final String POLL_INTERVAL_OPTION = "quiescence-poll-interval-ms";
+
+    // Max wait time in seconds, for the device to settle; defaults to 20 minutes
+    @VisibleForTesting static final String MAX_WAIT_OPTION = "quiescence-max-wait";
+
+    // Number of samples used to detect a trend; defaults to 5
+    @VisibleForTesting static final String WINDOW_OPTION = "quiescence-window";
+
+    // Max rise per sample, as a fraction of the threshold, still considered stable; defaults to 1%
+    @VisibleForTesting static final String TREND_TOLERANCE_OPTION = "quiescence-trend-tolerance";
+
+    // If test should be aborted if device is still busy after the max wait; defaults to false
+    @VisibleForTesting static final String ABORT_ON_TIMEOUT_OPTION = "quiescence-abort-on-timeout";
+
+    // If the screen should be turned off while waiting; defaults to true
+    @VisibleForTesting static final String SCREEN_OFF_OPTION = "quiescence-screen-off";
+
+    @VisibleForTesting
+    static final String DEVICE_TEMPERATURE_NAME_OPTION = "quiescence-device-temperature-name";
+
+    @VisibleForTesting
+    static final String TARGET_TEMPERATURE_OPTION = "quiescence-target-temperature";
+
+    @VisibleForTesting static final String LOAD_THRESHOLD_OPTION = "quiescence-load-threshold";
+
+    @VisibleForTesting
+    static final String CPU_FREQ_THRESHOLD_OPTION = "quiescence-cpu-freq-threshold";
+
+    @VisibleForTesting static final String IO_THRESHOLD_OPTION = "quiescence-io-threshold";
+
+    @VisibleForTesting static final String WAIT_TIME_METRIC = "quiescence_wait_time_ms";
+    @VisibleForTesting static final String SAMPLE_COUNT_METRIC = "quiescence_sample_count";
+    @VisibleForTesting static final String TIMED_OUT_METRIC = "quiescence_timed_out";
+    @VisibleForTesting static final String TEMPERATURE_METRIC = "quiescence_temperature";
+    @VisibleForTesting static final String LOAD_METRIC = "quiescence_load_last_minute";
+    @VisibleForTesting static final String CPU_FREQ_METRIC = "quiescence_cpu_freq_khz";
+    @VisibleForTesting static final String IO_METRIC = "quiescence_io_kbps";
+
+    private static final String LOAD_CMD = "cat /proc/loadavg";
+    private static final String CPU_FREQ_CMD =
+            "cat /sys/devices/system/cpu/cpu*/cpufreq/scaling_cur_freq";
+    private static final String IO_CMD = "grep -E '^pgpg(in|out) ' /proc/vmstat";
+
+    private long mPollIntervalMs = 1000;
+    private long mMaxWaitSecs = 60 * 20;
+    private int mWindowSize = 5;
+    private double mTrendTolerance = 0.01;
+    private boolean mAbortOnTimeout = false;
+    private boolean mScreenOff = true;
+    private String mDeviceTemperatureName = "";
+
+    private ThermalHelper mThermalHelper;
+    private Signal mTemperature;
+    private Signal mLoad;
+    private Signal mCpuFreq;
+    private Signal mIo;
+    private final List<Signal> mSignals = new ArrayList<>();
+
+    // Previous paged I/O counter and its timestamp, to derive a rate between two samples.
+    private long mLastIoKb = -1;
+    private long mLastIoTimeMs = -1;
+
+    @Override
+    protected void starting(Description description) {
+        Bundle args = getArguments();
+        mPollIntervalMs = Long.parseLong(args.getString(POLL_INTERVAL_OPTION, "1000"));
+        mMaxWaitSecs = Long.parseLong(args.getString(MAX_WAIT_OPTION, "1200"));
+        mWindowSize = Integer.parseInt(args.getString(WINDOW_OPTION, "5"));
+        mTrendTolerance = Double.parseDouble(args.getString(TREND_TOLERANCE_OPTION, "0.01"));
+        mAbortOnTimeout = Boolean.parseBoolean(args.getString(ABORT_ON_TIMEOUT_OPTION, "false"));
+        mScreenOff = Boolean.parseBoolean(args.getString(SCREEN_OFF_OPTION, "true"));
+        if (mWindowSize < 2) {
+            throw new IllegalArgumentException(
+                    String.format("Invalid quiescence window: %d samples", mWindowSize));
+        }
+
+        mSignals.clear();
+        mLastIoKb = -1;
+        mLastIoTimeMs = -1;
+        mDeviceTemperatureName =
+                CoolDownRule.unescapeOptionStr(args.getString(DEVICE_TEMPERATURE_NAME_OPTION, ""));
+        mTemperature = null;
+        if (!mDeviceTemperatureName.isEmpty()) {
+            int target = Integer.parseInt(args.getString(TARGET_TEMPERATURE_OPTION, "35"));
+            if (target > 100 || target <= 0) {
+                throw new IllegalArgumentException(
+                        String.format(
+                                "Invalid target temperature: %d degree Celsius", target));
+            }
+            mTemperature = addSignal(TEMPERATURE_METRIC, target);
+            mThermalHelper = initThermalHelper();
+        }
+        mLoad = addSignal(LOAD_METRIC, args.getString(LOAD_THRESHOLD_OPTION, ""));
+        mCpuFreq = addSignal(CPU_FREQ_METRIC, args.getString(CPU_FREQ_THRESHOLD_OPTION, ""));
+        mIo = addSignal(IO_METRIC, args.getString(IO_THRESHOLD_OPTION, ""));
+
+        if (mSignals.isEmpty()) {
+            Log.w(LOG_TAG, "No quiescence signal configured. Skipped waiting for DUT to settle.");
+            return;
+        }
+
+        try {
+            // Turn off the screen if necessary.
+            final boolean screenOnOriginal = mScreenOff && getUiDevice().isScreenOn();
+            if (screenOnOriginal) {
+                getUiDevice().sleep();
+            }
+
+            waitForQuiescence();
+
+            // Turn on the screen if necessary.
+            if (screenOnOriginal && !getUiDevice().isScreenOn()) {
+                getUiDevice().wakeUp();
+            }
+        } catch (RemoteException e) {
+            throw new RuntimeException("Could not wait for the device to settle.", e);
+        }
+    }
+
+    @VisibleForTesting
+    ThermalHelper initThermalHelper() {
+        return new ThermalHelper();
+    }
+
+    private Signal addSignal(String name, String threshold) {
+        if (threshold.isEmpty()) {
+            return null;
+        }
+        return addSignal(name, Double.parseDouble(threshold));
+    }
+
+    private Signal addSignal(String name, double threshold) {
+        Signal signal = new Signal(name, threshold, mWindowSize);
+        mSignals.add(signal);
+        return signal;
+    }
+
+    private void waitForQuiescence() {
+        long start = System.currentTimeMillis();
+        long maxWaitMs = mMaxWaitSecs * 1000;
+        int samples = 0;
+        boolean settled = false;
+
+        while (true) {
+            sample(start);
+            samples++;
+            settled = isSettled();
+            if (settled || elapsedMs(start) >= maxWaitMs) {
+                break;
+            }
+            sleepMs(mPollIntervalMs);
+        }
+
+        long waitMs = elapsedMs(start);
+        if (settled) {
+            Log.i(LOG_TAG, String.format("Device settled after %dms: %s", waitMs, mSignals));
+        } else {
+            Log.w(LOG_TAG, String.format("Device still busy after %dms: %s", waitMs, mSignals));
+        }
+        reportMetrics(waitMs, samples, !settled);
+        if (!settled && mAbortOnTimeout) {
+            throw new IllegalStateException(
+                    String.format("Device did not settle after wait timeout: %s", mSignals));
+        }
+    }
+
+    /** Takes one sample of every enabled signal. */
+    private void sample(long start) {
+        if (mTemperature != null) {
+            mTemperature.add(getDeviceTemperature(mDeviceTemperatureName));
+        }
+        if (mLoad == null && mCpuFreq == null && mIo == null) {
+            return;
+        }
+
+        StringBuilder cmd = new StringBuilder();
+        if (mLoad != null) {
+            cmd.append(LOAD_CMD).append("; ");
+        }
+        if (mIo != null) {
+            cmd.append(IO_CMD).append("; ");
+        }
+        if (mCpuFreq != null) {
+            cmd.append(CPU_FREQ_CMD).append("; ");
+        }
+        String output = executeShellCommand(cmd.toString());
+        long nowMs = elapsedMs(start);
+
+        double load = -1;
+        long freqSum = 0;
+        int freqCount = 0;
+        long ioKb = 0;
+        for (String line : output.split("\n")) {
+            String[] tokens = line.trim().split("\\s+");
+            try {
+                if (tokens.length == 5 && tokens[3].contains("/")) {
+                    // 1.39 1.10 1.21 2/2679 6380
+                    load = Double.parseDouble(tokens[0]);
+                } else if (tokens.length == 2 && tokens[0].startsWith("pgpg")) {
+                    // pgpgin 123456
+                    ioKb += Long.parseLong(tokens[1]);
+                } else if (tokens.length == 1 && !tokens[0].isEmpty()) {
+                    // 1804800
+                    freqSum += Long.parseLong(tokens[0]);
+                    freqCount++;
+                }
+            } catch (NumberFormatException e) {
+                Log.w(LOG_TAG, "Not able to parse sample line: " + line);
+            }
+        }
+
+        if (mLoad != null && load >= 0) {
+            mLoad.add(load);
+        }
+        if (mCpuFreq != null && freqCount > 0) {
+            mCpuFreq.add((double) freqSum / freqCount);
+        }
+        if (mIo != null) {
+            if (mLastIoKb >= 0 && nowMs > mLastIoTimeMs) {
+                mIo.add((ioKb - mLastIoKb) * 1000.0 / (nowMs - mLastIoTimeMs));
+            }
+            mLastIoKb = ioKb;
+            mLastIoTimeMs = nowMs;
+        }
+    }
+
+    private boolean isSettled() {
+        for (Signal signal : mSignals) {
+            if (!signal.isSettled(mTrendTolerance)) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private void reportMetrics(long waitMs, int samples, boolean timedOut) {
+        Bundle result = new Bundle();
+        result.putLong(WAIT_TIME_METRIC, waitMs);
+        result.putInt(SAMPLE_COUNT_METRIC, samples);
+        result.putBoolean(TIMED_OUT_METRIC, timedOut);
+        for (Signal signal : mSignals) {
+            if (signal.hasValue()) {
+                result.putDouble(signal.mName, signal.last());
+            }
+        }
+        sendStatus(result);
+    }
+
+    @VisibleForTesting
+    void sendStatus(Bundle result) {
+        InstrumentationRegistry.getInstrumentation().sendStatus(INST_STATUS_IN_PROGRESS, result);
+    }
+
+    @VisibleForTesting
+    void sleepMs(long milliSeconds) {
+        SystemClock.sleep(milliSeconds);
+    }
+
+    @VisibleForTesting
+    long elapsedMs(long start) {
+        return System.currentTimeMillis() - start;
+    }
+
+    /**
+     * @param name : temperature name in need.
+     * @return Device temperature in degree Celsius
+     */
+    @VisibleForTesting
+    double getDeviceTemperature(String name) {
+        return mThermalHelper.getTemperature(name);
+    }
+
+    /**
+     * A sliding window of samples of one signal. The signal is settled once the window is full,
+     * the latest sample is at or below the threshold and the least-squares slope over the window
+     * does not rise by more than the tolerated fraction of the threshold per sample.
+     */
+    @VisibleForTesting
+    static class Signal {
+        private final String mName;
+        private final double mThreshold;
+        private final int mWindowSize;
+        private final ArrayDeque<Double> mWindow = new ArrayDeque<>();
+
+        Signal(String name, double threshold, int windowSize) {
+            mName = name;
+            mThreshold = threshold;
+            mWindowSize = windowSize;
+        }
+
+        void add(double value) {
+            if (mWindow.size() == mWindowSize) {
+                mWindow.removeFirst();
+            }
+            mWindow.addLast(value);
+        }
+
+        boolean hasValue() {
+            return !mWindow.isEmpty();
+        }
+
+        double last() {
+            return mWindow.getLast();
+        }
+
+        boolean isSettled(double tolerance) {
+            if (mWindow.size() < mWindowSize || last() > mThreshold) {
+                return false;
+            }
+            return slope() <= tolerance * Math.abs(mThreshold);
+        }
+
+        /** Least-squares slope of the window, in signal units per sample. */
+        double slope() {
+            int n = mWindow.size();
+            double meanX = (n - 1) / 2.0;
+            double meanY = 0;
+            for (double y : mWindow) {
+                meanY += y;
+            }
+            meanY /= n;
+            double num = 0;
+            double den = 0;
+            int x = 0;
+            for (double y : mWindow) {
+                num += (x - meanX) * (y - meanY);
+                den += (x - meanX) * (x - meanX);
+                x++;
+            }
+            return den == 0 ? 0 : num / den;
+        }
+
+        @Override
+        public String toString() {
+            return String.format(
+                    "%s=%s (threshold %s)", mName, hasValue() ? last() : "n/a", mThreshold);
+        }
+    }
+}
@@ -0,0 +1,260 @@
+/*
+ * Copyright (C) 2026 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package android.platform.test.rule;
+
+import android.os.Bundle;
+import android.os.Looper;
+import android.os.SystemClock;
+import android.util.Log;
+import androidx.annotation.VisibleForTesting;
+import androidx.test.InstrumentationRegistry;
+
+import org.junit.runner.Description;
+
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.FileWriter;
+import java.io.IOException;
+import java.io.Writer;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * A rule that samples the stacks of selected threads while the test is running, aggregates
+ * identical stacks in memory and writes them as a collapsed-stack file at the end of the test.
+ *
+ * <p>Unlike {@link SamplerRule}, which dumps every thread as text once a second, this rule only
+ * looks at the threads listed in "stack-profiler-threads" (comma separated thread names, where
+ * "test" is the thread running the test and "main" is the main looper thread; defaults to
+ * "test,main") every "stack-profiler-interval-ms" milliseconds (defaults to 10ms). Each line of
+ * the output is {@code thread;outermost.Frame;...;innermost.Frame count}, which can be fed
+ * directly to flamegraph.pl or speedscope.
+ *
+ * <p>The rule is disabled unless "stack-profiler-enabled" is true. It reports the number of
+ * samples, the achieved sample rate and the time spent sampling as metrics.
+ */
+public class StackSamplingProfilerRule extends TestWatcher {
+    private static final String LOG_TAG = StackSamplingProfilerRule.class.getSimpleName();
+
+    // Metrics will be reported under the "status in progress" like {@link StopwatchRule}.
+    @VisibleForTesting static final int INST_STATUS_IN_PROGRESS = 2;
+
+    @VisibleForTesting static final String ENABLED_OPTION = "stack-profiler-enabled";
+    @VisibleForTesting static final String INTERVAL_OPTION = "stack-profiler-interval-ms";
+    @VisibleForTesting static final String THREADS_OPTION = "stack-profiler-threads";
+    @VisibleForTesting static final String MAX_DEPTH_OPTION = "stack-profiler-max-depth";
+
+    @VisibleForTesting static final String TEST_THREAD = "test";
+    @VisibleForTesting static final String MAIN_THREAD = "main";
+
+    @VisibleForTesting static final String SAMPLE_COUNT_METRIC = "stack_profiler_sample_count";
+    @VisibleForTesting static final String SAMPLE_RATE_METRIC = "stack_profiler_sample_rate_hz";
+    @VisibleForTesting static final String OVERHEAD_METRIC = "stack_profiler_overhead_ms";
+
+    @VisibleForTesting
+    static final String OVERHEAD_PERCENT_METRIC = "stack_profiler_overhead_percent";
+
+    private Sampler mSampler;
+
+    @Override
+    protected void starting(Description description) {
+        if (!Boolean.parseBoolean(getArguments().getString(ENABLED_OPTION, "false"))) {
+            return;
+        }
+        long intervalMs = Long.parseLong(getArguments().getString(INTERVAL_OPTION, "10"));
+        int maxDepth = Integer.parseInt(getArguments().getString(MAX_DEPTH_OPTION, "64"));
+        List<Thread> threads =
+                resolveThreads(getArguments().getString(THREADS_OPTION, "test,main").split(","));
+        if (threads.isEmpty()) {
+            Log.w(LOG_TAG, "No thread to sample. Skipped profiling.");
+            return;
+        }
+        mSampler = new Sampler(threads, intervalMs, maxDepth);
+        mSampler.start();
+    }
+
+    @Override
+    protected void finished(Description description) {
+        if (mSampler == null) {
+            return;
+        }
+        final Sampler sampler = mSampler;
+        mSampler = null;
+        sampler.interrupt();
+        try {
+            sampler.join();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+
+        final File file = getOutputFile(description);
+        try (Writer writer = new BufferedWriter(new FileWriter(file))) {
+            sampler.writeCollapsed(writer);
+        } catch (IOException e) {
+            Log.e(LOG_TAG, "Failed to write stack samples to " + file, e);
+        }
+
+        long durationMs = Math.max(1, sampler.mEndMs - sampler.mStartMs);
+        double overheadMs = sampler.mSamplingNanos / 1e6;
+        Bundle result = new Bundle();
+        result.putInt(SAMPLE_COUNT_METRIC, sampler.mSampleCount);
+        result.putDouble(SAMPLE_RATE_METRIC, sampler.mSampleCount * 1000.0 / durationMs);
+        result.putDouble(OVERHEAD_METRIC, overheadMs);
+        result.putDouble(OVERHEAD_PERCENT_METRIC, overheadMs * 100.0 / durationMs);
+        sendStatus(result);
+        Log.d(
+                LOG_TAG,
+                String.format(
+                        "%d samples in %dms (%.1fms sampling), written to %s",
+                        sampler.mSampleCount, durationMs, overheadMs, file));
+    }
+
+    private List<Thread> resolveThreads(String[] names) {
+        List<Thread> threads = new ArrayList<>();
+        for (String name : names) {
+            name = name.trim();
+            if (TEST_THREAD.equals(name)) {
+                threads.add(Thread.currentThread());
+            } else if (MAIN_THREAD.equals(name)) {
+                threads.add(Looper.getMainLooper().getThread());
+            } else if (!name.isEmpty()) {
+                for (Thread thread : Thread.getAllStackTraces().keySet()) {
+                    if (name.equals(thread.getName())) {
+                        threads.add(thread);
+                    }
+                }
+            }
+        }
+        return threads;
+    }
+
+    @VisibleForTesting
+    File getOutputFile(Description description) {
+        return ArtifactSaver.artifactFile(
+                "StackSamples-" + description.getTestClass().getSimpleName() + "."
+                        + description.getMethodName() + ".collapsed");
+    }
+
+    @VisibleForTesting
+    void sendStatus(Bundle result) {
+        InstrumentationRegistry.getInstrumentation().sendStatus(INST_STATUS_IN_PROGRESS, result);
+    }
+
+    /** Background thread taking the samples and aggregating them by identical stack. */
+    private static class Sampler extends Thread {
+        private final List<Thread> mThreads;
+        private final long mIntervalMs;
+        private final int mMaxDepth;
+        private final Map<StackKey, int[]> mCounts = new HashMap<>();
+        private int mSampleCount = 0;
+        private long mSamplingNanos = 0;
+        private long mStartMs;
+        private long mEndMs;
+
+        Sampler(List<Thread> threads, long intervalMs, int maxDepth) {
+            super(LOG_TAG);
+            setDaemon(true);
+            mThreads = threads;
+            mIntervalMs = intervalMs;
+            mMaxDepth = maxDepth;
+        }
+
+        @Override
+        public void run() {
+            mStartMs = SystemClock.elapsedRealtime();
+            try {
+                while (!isInterrupted()) {
+                    long start = System.nanoTime();
+                    for (Thread thread : mThreads) {
+                        StackTraceElement[] stack = thread.getStackTrace();
+                        if (stack.length == 0) {
+                            continue;
+                        }
+                        if (stack.length > mMaxDepth) {
+                            stack = Arrays.copyOf(stack, mMaxDepth);
+                        }
+                        StackKey key = new StackKey(thread.getName(), stack);
+                        int[] count = mCounts.get(key);
+                        if (count == null) {
+                            mCounts.put(key, new int[] {1});
+                        } else {
+                            count[0]++;
+                        }
+                    }
+                    mSampleCount++;
+                    mSamplingNanos += System.nanoTime() - start;
+                    sleep(mIntervalMs);
+                }
+            } catch (InterruptedException e) {
+                // The test has finished.
+            } finally {
+                mEndMs = SystemClock.elapsedRealtime();
+            }
+        }
+
+        /** Must only be called once the sampler thread has been joined. */
+        void writeCollapsed(Writer writer) throws IOException {
+            StringBuilder line = new StringBuilder();
+            for (Map.Entry<StackKey, int[]> entry : mCounts.entrySet()) {
+                StackKey key = entry.getKey();
+                line.setLength(0);
+                line.append(key.mThreadName.replace(';', '_').replace(' ', '_'));
+                // Stack traces are innermost first, collapsed stacks are outermost first.
+                for (int i = key.mFrames.length - 1; i >= 0; i--) {
+                    line.append(';')
+                            .append(key.mFrames[i].getClassName())
+                            .append('.')
+                            .append(key.mFrames[i].getMethodName());
+                }
+                line.append(' ').append(entry.getValue()[0]).append('\n');
+                writer.write(line.toString());
+            }
+        }
+    }
+
+    /** Aggregation key; compares frames without turning them into strings on every sample. */
+    private static class StackKey {
+        private final String mThreadName;
+        private final StackTraceElement[] mFrames;
+        private final int mHash;
+
+        StackKey(String threadName, StackTraceElement[] frames) {
+            mThreadName = threadName;
+            mFrames = frames;
+            mHash = 31 * threadName.hashCode() + Arrays.hashCode(frames);
+        }
+
+        @Override
+        public int hashCode() {
+            return mHash;
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (!(o instanceof StackKey)) {
+                return false;
+            }
+            StackKey other = (StackKey) o;
+            return mHash == other.mHash
+                    && mThreadName.equals(other.mThreadName)
+                    && Arrays.equals(mFrames, other.mFrames);
+        }
+    }
+}
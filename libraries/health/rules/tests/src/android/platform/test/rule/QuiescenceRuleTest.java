@@ -0,0 +1,217 @@
+/*
+ * Copyright (C) 2026 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package android.platform.test.rule;
+
+import static com.google.common.truth.Truth.assertThat;
+import static org.junit.Assert.fail;
+import static org.mockito.Mockito.mock;
+
+import android.os.Bundle;
+import androidx.test.uiautomator.UiDevice;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.List;
+
+import org.junit.Test;
+import org.junit.runner.Description;
+import org.junit.runner.RunWith;
+import org.junit.runners.JUnit4;
+import org.junit.runners.model.Statement;
+
+/** Unit test the logic for {@link QuiescenceRule} */
+@RunWith(JUnit4.class)
+public class QuiescenceRuleTest {
+    private static final long POLL_INTERVAL = 200;
+    private static final String OPS_TEST = "test";
+    private static final String OPS_SLEEP = "sleep 200 milli seconds";
+
+    /** Tests that the rule returns as soon as every signal is stable below its threshold. */
+    @Test
+    public void testStopsWhenSettled() throws Throwable {
+        TestableRule rule = new TestableRule();
+        rule.addArg(QuiescenceRule.LOAD_THRESHOLD_OPTION, "2.0");
+        rule.addArg(QuiescenceRule.CPU_FREQ_THRESHOLD_OPTION, "1000000");
+        rule.setLoads(5.0, 3.0, 2.5, 1.5, 1.2, 1.0, 1.0, 1.0, 1.0);
+        rule.setFreqs(800000, 800000, 800000, 800000, 800000, 800000, 800000, 800000, 800000);
+
+        rule.apply(rule.getTestStatement(), Description.createTestDescription("clzz", "mthd"))
+                .evaluate();
+
+        // The window (3 samples) is falling and below the threshold on the 4th sample.
+        assertThat(rule.mShellCount).isEqualTo(4);
+        assertThat(rule.mOperations)
+                .containsExactly(OPS_SLEEP, OPS_SLEEP, OPS_SLEEP, OPS_TEST)
+                .inOrder();
+        assertThat(rule.mMetrics.getBoolean(QuiescenceRule.TIMED_OUT_METRIC)).isFalse();
+        assertThat(rule.mMetrics.getInt(QuiescenceRule.SAMPLE_COUNT_METRIC)).isEqualTo(4);
+        assertThat(rule.mMetrics.getLong(QuiescenceRule.WAIT_TIME_METRIC))
+                .isEqualTo(3 * POLL_INTERVAL);
+        assertThat(rule.mMetrics.getDouble(QuiescenceRule.LOAD_METRIC)).isEqualTo(1.5);
+        assertThat(rule.mMetrics.getDouble(QuiescenceRule.CPU_FREQ_METRIC)).isEqualTo(800000.0);
+    }
+
+    /** Tests that a rising signal below the threshold is not considered settled. */
+    @Test
+    public void testWaitsForTrend() throws Throwable {
+        TestableRule rule = new TestableRule();
+        rule.addArg(QuiescenceRule.LOAD_THRESHOLD_OPTION, "2.0");
+        rule.setLoads(0.5, 1.0, 1.5, 1.5, 1.5, 1.5);
+
+        rule.apply(rule.getTestStatement(), Description.createTestDescription("clzz", "mthd"))
+                .evaluate();
+
+        assertThat(rule.mShellCount).isEqualTo(5);
+        assertThat(rule.mMetrics.getBoolean(QuiescenceRule.TIMED_OUT_METRIC)).isFalse();
+    }
+
+    /** Tests that the paged I/O rate is derived from two consecutive samples. */
+    @Test
+    public void testIoRate() throws Throwable {
+        TestableRule rule = new TestableRule();
+        rule.addArg(QuiescenceRule.IO_THRESHOLD_OPTION, "100");
+        // 200ms apart: 1000KiB -> 5000KiB/s, then 10KiB -> 50KiB/s.
+        rule.setIo(0, 1000, 1010, 1020, 1030, 1040);
+
+        rule.apply(rule.getTestStatement(), Description.createTestDescription("clzz", "mthd"))
+                .evaluate();
+
+        // The first sample only primes the counter.
+        assertThat(rule.mShellCount).isEqualTo(4);
+        assertThat(rule.mMetrics.getDouble(QuiescenceRule.IO_METRIC)).isEqualTo(50.0);
+    }
+
+    /** Tests that the rule throws if the device is still busy and abort is requested. */
+    @Test
+    public void testTimeoutAbort() throws Throwable {
+        TestableRule rule = new TestableRule();
+        rule.addArg(QuiescenceRule.LOAD_THRESHOLD_OPTION, "2.0");
+        rule.addArg(QuiescenceRule.MAX_WAIT_OPTION, "1");
+        rule.addArg(QuiescenceRule.ABORT_ON_TIMEOUT_OPTION, "true");
+        rule.setLoads(5.0, 5.0, 5.0, 5.0, 5.0, 5.0, 5.0, 5.0);
+
+        try {
+            rule.apply(rule.getTestStatement(), Description.createTestDescription("clzz", "mthd"))
+                    .evaluate();
+            fail("An exception should have been thrown.");
+        } catch (IllegalStateException e) {
+            assertThat(rule.mOperations).doesNotContain(OPS_TEST);
+            assertThat(rule.mMetrics.getBoolean(QuiescenceRule.TIMED_OUT_METRIC)).isTrue();
+            assertThat(rule.mMetrics.getLong(QuiescenceRule.WAIT_TIME_METRIC))
+                    .isAtLeast(1000L);
+        }
+    }
+
+    /** Tests that this rule is skipped if no signal is configured. */
+    @Test
+    public void testNoSignal() throws Throwable {
+        TestableRule rule = new TestableRule();
+
+        rule.apply(rule.getTestStatement(), Description.createTestDescription("clzz", "mthd"))
+                .evaluate();
+
+        assertThat(rule.mOperations).containsExactly(OPS_TEST);
+        assertThat(rule.mShellCount).isEqualTo(0);
+        assertThat(rule.mMetrics).isNull();
+    }
+
+    private static class TestableRule extends QuiescenceRule {
+        private final UiDevice mUiDevice = mock(UiDevice.class);
+        private final Bundle mBundle = new Bundle();
+        private final List<String> mOperations = new ArrayList<>();
+        private Iterator<Double> mLoads = null;
+        private Iterator<Integer> mFreqs = null;
+        private Iterator<Integer> mIo = null;
+        private Bundle mMetrics = null;
+        private int mShellCount = 0;
+        private long mTotalSleepMs = 0;
+
+        TestableRule() {
+            addArg(QuiescenceRule.POLL_INTERVAL_OPTION, String.valueOf(POLL_INTERVAL));
+            addArg(QuiescenceRule.WINDOW_OPTION, "3");
+            addArg(QuiescenceRule.SCREEN_OFF_OPTION, "false");
+        }
+
+        void addArg(String key, String value) {
+            mBundle.putString(key, value);
+        }
+
+        void setLoads(Double... loads) {
+            mLoads = Arrays.asList(loads).iterator();
+        }
+
+        void setFreqs(Integer... freqs) {
+            mFreqs = Arrays.asList(freqs).iterator();
+        }
+
+        void setIo(Integer... kbs) {
+            mIo = Arrays.asList(kbs).iterator();
+        }
+
+        @Override
+        protected UiDevice getUiDevice() {
+            return mUiDevice;
+        }
+
+        @Override
+        protected Bundle getArguments() {
+            return mBundle;
+        }
+
+        @Override
+        protected String executeShellCommand(String cmd) {
+            mShellCount++;
+            StringBuilder output = new StringBuilder();
+            if (mLoads != null) {
+                output.append(mLoads.next()).append(" 1.10 1.21 2/2679 6380\n");
+            }
+            if (mIo != null) {
+                output.append(String.format("pgpgin %d\npgpgout 0\n", mIo.next()));
+            }
+            if (mFreqs != null) {
+                int freq = mFreqs.next();
+                output.append(freq).append('\n').append(freq).append('\n');
+            }
+            return output.toString();
+        }
+
+        @Override
+        void sendStatus(Bundle result) {
+            mMetrics = result;
+        }
+
+        @Override
+        void sleepMs(long milliSeconds) {
+            mOperations.add(String.format("sleep %d milli seconds", milliSeconds));
+            mTotalSleepMs += milliSeconds;
+        }
+
+        @Override
+        long elapsedMs(long start) {
+            return mTotalSleepMs;
+        }
+
+        Statement getTestStatement() {
+            return new Statement() {
+                @Override
+                public void evaluate() throws Throwable {
+                    mOperations.add(OPS_TEST);
+                }
+            };
+        }
+    }
+}
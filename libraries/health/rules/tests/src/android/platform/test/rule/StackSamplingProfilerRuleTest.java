@@ -0,0 +1,134 @@
+/*
+ * Copyright (C) 2026 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package android.platform.test.rule;
+
+import static com.google.common.truth.Truth.assertThat;
+
+import android.os.Bundle;
+import android.os.SystemClock;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.util.List;
+
+import org.junit.Test;
+import org.junit.runner.Description;
+import org.junit.runner.RunWith;
+import org.junit.runners.JUnit4;
+import org.junit.runners.model.Statement;
+
+/** Unit test the logic for {@link StackSamplingProfilerRule} */
+@RunWith(JUnit4.class)
+public class StackSamplingProfilerRuleTest {
+    private static final Description DESCRIPTION =
+            Description.createTestDescription(StackSamplingProfilerRuleTest.class, "mthd");
+
+    /** Tests that samples of the test thread are aggregated into collapsed stacks. */
+    @Test
+    public void testCollapsedStacks() throws Throwable {
+        TestableRule rule = new TestableRule();
+        rule.addArg(StackSamplingProfilerRule.ENABLED_OPTION, "true");
+        rule.addArg(StackSamplingProfilerRule.THREADS_OPTION, "test");
+        rule.addArg(StackSamplingProfilerRule.INTERVAL_OPTION, "5");
+
+        rule.apply(spinningStatement(500), DESCRIPTION).evaluate();
+
+        List<String> lines = Files.readAllLines(rule.mOutput.toPath());
+        assertThat(lines).isNotEmpty();
+        long spinning = 0;
+        long total = 0;
+        for (String line : lines) {
+            int split = line.lastIndexOf(' ');
+            long count = Long.parseLong(line.substring(split + 1));
+            total += count;
+            if (line.contains(StackSamplingProfilerRuleTest.class.getName() + ".spin;")
+                    || line.contains(StackSamplingProfilerRuleTest.class.getName() + ".spin ")) {
+                spinning += count;
+            }
+        }
+        // The same stack is sampled many times but only written once.
+        assertThat(lines.size()).isLessThan((int) total);
+        assertThat(spinning).isGreaterThan(total / 2);
+
+        int samples = rule.mMetrics.getInt(StackSamplingProfilerRule.SAMPLE_COUNT_METRIC);
+        assertThat((long) samples).isEqualTo(total);
+        assertThat(rule.mMetrics.getDouble(StackSamplingProfilerRule.SAMPLE_RATE_METRIC))
+                .isGreaterThan(0.0);
+        assertThat(rule.mMetrics.containsKey(StackSamplingProfilerRule.OVERHEAD_PERCENT_METRIC))
+                .isTrue();
+    }
+
+    /** Tests that the rule does nothing unless enabled. */
+    @Test
+    public void testDisabled() throws Throwable {
+        TestableRule rule = new TestableRule();
+
+        rule.apply(spinningStatement(10), DESCRIPTION).evaluate();
+
+        assertThat(rule.mMetrics).isNull();
+        assertThat(rule.mOutput.length()).isEqualTo(0);
+    }
+
+    private static Statement spinningStatement(long durationMs) {
+        return new Statement() {
+            @Override
+            public void evaluate() throws Throwable {
+                spin(durationMs);
+            }
+        };
+    }
+
+    private static long spin(long durationMs) {
+        long end = SystemClock.elapsedRealtime() + durationMs;
+        long counter = 0;
+        while (SystemClock.elapsedRealtime() < end) {
+            counter++;
+        }
+        return counter;
+    }
+
+    private static class TestableRule extends StackSamplingProfilerRule {
+        private final Bundle mBundle = new Bundle();
+        private final File mOutput;
+        private Bundle mMetrics = null;
+
+        TestableRule() throws IOException {
+            mOutput = File.createTempFile("StackSamples", ".collapsed");
+            mOutput.deleteOnExit();
+        }
+
+        void addArg(String key, String value) {
+            mBundle.putString(key, value);
+        }
+
+        @Override
+        protected Bundle getArguments() {
+            return mBundle;
+        }
+
+        @Override
+        File getOutputFile(Description description) {
+            return mOutput;
+        }
+
+        @Override
+        void sendStatus(Bundle result) {
+            mMetrics = result;
+        }
+    }
+}
@@ -18,15 +18,24 @@ package com.android.junitxml;
 
 import org.junit.Test;
 import org.junit.internal.TextListener;
+import org.junit.runner.Computer;
+import org.junit.runner.Description;
 import org.junit.runner.JUnitCore;
+import org.junit.runner.Request;
 import org.junit.runner.Result;
+import org.junit.runner.Runner;
+import org.junit.runner.manipulation.Filter;
+import org.junit.runner.manipulation.NoTestsRemainException;
+import org.junit.runner.notification.RunListener;
 
 import java.io.File;
-import java.io.FileNotFoundException;
 import java.io.FileOutputStream;
 import java.io.IOException;
 import java.lang.reflect.Method;
-import java.util.stream.Stream;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
 
 /**
  * A JUnit runner that is intended to use as replacement of JUnitCore
@@ -38,19 +47,38 @@ import java.util.stream.Stream;
  *     {@code TEST_WORKSPACE=[...]
  *            XML_OUTPUT_FILE=[...]
  *            java -cp junitxml.jar [...] \
- *            com.android.junitxml.JUnitXmlRunner [Test classes]}
+ *            com.android.junitxml.JUnitXmlRunner [Options] [Test classes]}
+ *
+ * <p>Supported options:
+ * <ul>
+ *   <li>{@code --workers=N} runs tests on a pool of N worker threads, by default 1.
+ *   <li>{@code --parallel=classes|methods} runs either whole test classes or the methods of each
+ *       class concurrently when there is more than one worker, by default classes.
+ *   <li>{@code --shard_count=N} and {@code --shard_index=I} run only the I-th of N shards of the
+ *       tests, split by whatever is run concurrently, so that a suite can be split across
+ *       processes. The env variables TEST_TOTAL_SHARDS and TEST_SHARD_INDEX are used when these
+ *       are not provided.
+ * </ul>
  */
 public class JUnitXmlRunner {
 
-    private static XmlRunListener getRunListener() {
+    private static final String WORKERS_OPTION = "--workers=";
+    private static final String PARALLEL_OPTION = "--parallel=";
+    private static final String SHARD_COUNT_OPTION = "--shard_count=";
+    private static final String SHARD_INDEX_OPTION = "--shard_index=";
+
+    private static RunListener getRunListener(boolean merging, Description suite) {
         String outputFile = System.getenv("XML_OUTPUT_FILE");
         String suiteName = System.getenv("TEST_WORKSPACE");
         if (outputFile != null && outputFile.length() > 0) {
+            suiteName = suiteName != null ? suiteName : "Unknown test suite";
             try {
-                return new XmlRunListener(
-                        new FileOutputStream(outputFile),
-                        suiteName != null ? suiteName : "Unknown test suite");
-            } catch (FileNotFoundException e) {
+                if (merging) {
+                    return new MergingXmlRunListener(
+                            new FileOutputStream(outputFile), suiteName, suite);
+                }
+                return new XmlRunListener(new FileOutputStream(outputFile), suiteName);
+            } catch (IOException e) {
                 e.printStackTrace();
             }
         }
@@ -72,32 +100,63 @@ public class JUnitXmlRunner {
     public static void main(String... args) {
         JUnitCore core = new JUnitCore();
         try {
-            Class[] as =
-                    Stream.of(args)
-                            .map(
-                                    test -> {
-                                        try {
-                                            return Class.forName(test);
-                                        } catch (ClassNotFoundException e) {
-                                            throw new RuntimeException(e);
-                                        }
-                                    })
-                            .toArray(Class[]::new);
+            int workers = 1;
+            WorkerPoolComputer.Mode mode = WorkerPoolComputer.Mode.CLASSES;
+            int shardCount = parseInt(System.getenv("TEST_TOTAL_SHARDS"), 1);
+            int shardIndex = parseInt(System.getenv("TEST_SHARD_INDEX"), 0);
+            List<Class> classes = new ArrayList<>();
+            for (String arg : args) {
+                if (arg.startsWith(WORKERS_OPTION)) {
+                    workers = Integer.parseInt(arg.substring(WORKERS_OPTION.length()));
+                } else if (arg.startsWith(PARALLEL_OPTION)) {
+                    mode =
+                            WorkerPoolComputer.Mode.valueOf(
+                                    arg.substring(PARALLEL_OPTION.length()).toUpperCase());
+                } else if (arg.startsWith(SHARD_COUNT_OPTION)) {
+                    shardCount = Integer.parseInt(arg.substring(SHARD_COUNT_OPTION.length()));
+                } else if (arg.startsWith(SHARD_INDEX_OPTION)) {
+                    shardIndex = Integer.parseInt(arg.substring(SHARD_INDEX_OPTION.length()));
+                } else {
+                    try {
+                        classes.add(Class.forName(arg));
+                    } catch (ClassNotFoundException e) {
+                        throw new RuntimeException(e);
+                    }
+                }
+            }
+            if (shardIndex < 0 || shardIndex >= shardCount) {
+                throw new IllegalArgumentException(
+                        "shard_index " + shardIndex + " is not within shard_count " + shardCount);
+            }
+            acknowledgeSharding();
+
+            Class[] as = getShardClasses(classes, mode, shardIndex, shardCount);
+            Computer computer =
+                    workers > 1 ? new WorkerPoolComputer(workers, mode) : new Computer();
+            Runner runner = Request.classes(computer, as).getRunner();
+            int testCount = calcTestCount(as);
+            if (mode == WorkerPoolComputer.Mode.METHODS && shardCount > 1) {
+                runner = getShardRunner(runner, computer, shardIndex, shardCount);
+                testCount = getTestCount(runner);
+            }
+
             TextListener textListener = new TextListener(System.out);
             core.addListener(textListener);
-            XmlRunListener xmlListener = getRunListener();
+            RunListener xmlListener = getRunListener(workers > 1, runner.getDescription());
             if (xmlListener != null) {
                 core.addListener(xmlListener);
             }
 
             // Add AtestRunListener to communicate with ATest.
-            AtestRunListener atestRunListener = getAtestRunListener(calcTestCount(as));
+            AtestRunListener atestRunListener = getAtestRunListener(testCount);
             if (atestRunListener != null) {
                 core.addListener(atestRunListener);
             }
-            Result result = core.run(as);
-            if (xmlListener != null) {
-                xmlListener.endTestSuite();
+            Result result = core.run(runner);
+            if (xmlListener instanceof MergingXmlRunListener) {
+                ((MergingXmlRunListener) xmlListener).endTestSuite();
+            } else if (xmlListener != null) {
+                ((XmlRunListener) xmlListener).endTestSuite();
             }
             System.exit(result.wasSuccessful() ? 0 : 1);
         } catch (IOException e) {
@@ -105,6 +164,54 @@ public class JUnitXmlRunner {
         }
     }
 
+    private static int parseInt(String value, int defaultValue) {
+        return value != null && value.length() > 0 ? Integer.parseInt(value) : defaultValue;
+    }
+
+    /** Lets the test environment know that sharding is supported, as it requests. */
+    private static void acknowledgeSharding() throws IOException {
+        String statusFile = System.getenv("TEST_SHARD_STATUS_FILE");
+        if (statusFile != null && statusFile.length() > 0) {
+            new FileOutputStream(statusFile, /* append= */ true).close();
+        }
+    }
+
+    /**
+     * Returns the classes to run in a shard: those dealt to it in turn when splitting classes,
+     * or else all of them, leaving their methods to {@link #getShardRunner}.
+     */
+    static Class[] getShardClasses(
+            List<Class> classes, WorkerPoolComputer.Mode mode, int shardIndex, int shardCount) {
+        if (mode != WorkerPoolComputer.Mode.CLASSES) {
+            return classes.toArray(new Class[0]);
+        }
+        List<Class> shard = new ArrayList<>();
+        for (int i = shardIndex; i < classes.size(); i += shardCount) {
+            shard.add(classes.get(i));
+        }
+        return shard.toArray(new Class[0]);
+    }
+
+    /**
+     * Filters a runner down to the tests dealt to a shard in turn, or returns an empty runner
+     * when there are more shards than tests and none are left.
+     */
+    static Runner getShardRunner(Runner runner, Computer computer, int shardIndex, int shardCount) {
+        try {
+            new ShardFilter(runner.getDescription(), shardIndex, shardCount).apply(runner);
+            return runner;
+        } catch (NoTestsRemainException e) {
+            // More shards than tests, this shard has nothing to run.
+            return Request.classes(computer).getRunner();
+        }
+    }
+
+    /** Returns the number of tests of a runner, which is 0 for an empty suite. */
+    static int getTestCount(Runner runner) {
+        // An empty suite has no children, so it is counted as a test itself.
+        return runner.getDescription().getChildren().isEmpty() ? 0 : runner.testCount();
+    }
+
     private static int calcTestCount(Class[] as) {
         int count = 0;
         for (Class cls : as) {
@@ -117,5 +224,54 @@ public class JUnitXmlRunner {
         }
         return count;
     }
-}
 
+    /**
+     * {@link Filter} that deals the tests of a suite out to the shards in turn, in the order they
+     * are described, and keeps only those dealt to one shard.
+     */
+    private static class ShardFilter extends Filter {
+
+        private final Set<Description> mTests = new HashSet<>();
+
+        private final int mShardIndex;
+
+        private final int mShardCount;
+
+        private int mDealt = 0;
+
+        ShardFilter(Description suite, int shardIndex, int shardCount) {
+            mShardIndex = shardIndex;
+            mShardCount = shardCount;
+            deal(suite);
+        }
+
+        private void deal(Description description) {
+            if (description.isTest()) {
+                if (mDealt++ % mShardCount == mShardIndex) {
+                    mTests.add(description);
+                }
+            }
+            for (Description child : description.getChildren()) {
+                deal(child);
+            }
+        }
+
+        @Override
+        public boolean shouldRun(Description description) {
+            if (description.isTest()) {
+                return mTests.contains(description);
+            }
+            for (Description child : description.getChildren()) {
+                if (shouldRun(child)) {
+                    return true;
+                }
+            }
+            return false;
+        }
+
+        @Override
+        public String describe() {
+            return "shard " + mShardIndex + " of " + mShardCount;
+        }
+    }
+}
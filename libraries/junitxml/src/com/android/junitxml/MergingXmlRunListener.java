@@ -0,0 +1,263 @@
+/*
+ * Copyright (C) 2026 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.android.junitxml;
+
+import org.junit.runner.Description;
+import org.junit.runner.notification.Failure;
+import org.junit.runner.notification.RunListener;
+import org.w3c.dom.Element;
+import org.w3c.dom.NamedNodeMap;
+import org.w3c.dom.Node;
+
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import javax.xml.parsers.DocumentBuilder;
+import javax.xml.parsers.DocumentBuilderFactory;
+
+/**
+ * {@link RunListener} that keeps the results of each test class in its own {@link XmlRunListener},
+ * writing to its own file, and merges them into a single report when the suite ends, streaming
+ * it one class at a time.
+ *
+ * <p>This allows test classes, or the methods of a class, to be run concurrently while producing
+ * the same report as running them one after another would: classes are reported in the order
+ * they were run in, and the tests of each class in the order they are described by its runner.
+ * Events from concurrent tests need no locking here, since JUnit serializes calls to listeners
+ * that are not annotated as thread-safe.
+ */
+public class MergingXmlRunListener extends RunListener implements XmlConstants {
+
+    private static final double ONE_SECOND = 1000.0;
+
+    private final OutputStream mOutputStream;
+
+    private final String mSuiteName;
+
+    private final File mPartsDirectory;
+
+    /** The description of each class run, in the order they are reported. */
+    private final List<Description> mClasses;
+
+    /** The index of the class each test description belongs to. */
+    private final Map<Description, Integer> mClassIndexes = new HashMap<>();
+
+    /** The order each test description is reported in within its class. */
+    private final Map<Description, Integer> mTestOrder = new HashMap<>();
+
+    /** The listener and file for each class, created when its first test is seen. */
+    private final XmlRunListener[] mListeners;
+
+    private final File[] mParts;
+
+    private final long mStartTime;
+
+    /**
+     * @param out the stream the merged report is written to.
+     * @param suiteName the name of the test suite.
+     * @param suite the description of the suite being run, whose children are the test classes.
+     */
+    public MergingXmlRunListener(OutputStream out, String suiteName, Description suite)
+            throws IOException {
+        mOutputStream = out;
+        mSuiteName = suiteName;
+        mPartsDirectory = Files.createTempDirectory("junitxml").toFile();
+        mClasses = suite.getChildren();
+        // One more listener than there are classes, for any test that cannot be matched to one.
+        mListeners = new XmlRunListener[mClasses.size() + 1];
+        mParts = new File[mClasses.size() + 1];
+        for (int i = 0; i < mClasses.size(); i++) {
+            index(mClasses.get(i), i);
+        }
+        mStartTime = System.currentTimeMillis();
+    }
+
+    private void index(Description description, int classIndex) {
+        mClassIndexes.put(description, classIndex);
+        mTestOrder.put(description, mTestOrder.size());
+        for (Description child : description.getChildren()) {
+            index(child, classIndex);
+        }
+    }
+
+    private XmlRunListener listenerFor(Description description) throws IOException {
+        Integer classIndex = mClassIndexes.get(description);
+        if (classIndex == null) {
+            // Tests that were not described up front, such as those created while running.
+            classIndex = mClasses.size();
+            for (int i = 0; i < mClasses.size(); i++) {
+                if (description.getClassName().equals(mClasses.get(i).getClassName())) {
+                    classIndex = i;
+                    break;
+                }
+            }
+        }
+        if (mListeners[classIndex] == null) {
+            mParts[classIndex] = new File(mPartsDirectory, classIndex + ".xml");
+            mListeners[classIndex] =
+                    new XmlRunListener(
+                            new FileOutputStream(mParts[classIndex]),
+                            mSuiteName,
+                            /* writeProperties= */ false);
+        }
+        return mListeners[classIndex];
+    }
+
+    @Override
+    public void testStarted(Description description) throws Exception {
+        listenerFor(description).testStarted(description);
+    }
+
+    @Override
+    public void testFinished(Description description) throws Exception {
+        listenerFor(description).testFinished(description);
+    }
+
+    @Override
+    public void testFailure(Failure failure) throws Exception {
+        listenerFor(failure.getDescription()).testFailure(failure);
+    }
+
+    @Override
+    public void testAssumptionFailure(Failure failure) {
+        try {
+            listenerFor(failure.getDescription()).testAssumptionFailure(failure);
+        } catch (IOException e) {
+            e.printStackTrace();
+        }
+    }
+
+    @Override
+    public void testIgnored(Description description) throws Exception {
+        listenerFor(description).testIgnored(description);
+    }
+
+    /** Ends the report of each class, then merges them into the output stream. */
+    public void endTestSuite() throws IOException {
+        Writer writer =
+                new BufferedWriter(new OutputStreamWriter(mOutputStream, StandardCharsets.UTF_8));
+        try {
+            int tests = 0;
+            int failures = 0;
+            int errors = 0;
+            int skipped = 0;
+            for (XmlRunListener listener : mListeners) {
+                if (listener != null) {
+                    listener.endTestSuite();
+                    tests += listener.getTests();
+                    failures += listener.getFailures();
+                    errors += listener.getErrors();
+                    skipped += listener.getSkipped();
+                }
+            }
+
+            StreamingXmlWriter xmlWriter = new StreamingXmlWriter(writer);
+            xmlWriter.startDocument();
+            xmlWriter.startElement(ELEMENT_TESTSUITE);
+            xmlWriter.attribute(ATTR_TESTSUITE_NAME, mSuiteName);
+            xmlWriter.attribute(ATTR_TESTSUITE_HOSTNAME, XmlRunListener.getHostname());
+            xmlWriter.attribute(ATTR_TESTSUITE_TESTS, "" + tests);
+            xmlWriter.attribute(ATTR_TESTSUITE_FAILURES, "" + failures);
+            xmlWriter.attribute(ATTR_TESTSUITE_ERRORS, "" + errors);
+            xmlWriter.attribute(ATTR_TESTSUITE_SKIPPED, "" + skipped);
+            xmlWriter.attribute(
+                    ATTR_TESTSUITE_TIME,
+                    "" + ((System.currentTimeMillis() - mStartTime) / ONE_SECOND));
+            XmlRunListener.writeProperties(xmlWriter);
+
+            // Only one class is held in memory at a time, to sort the tests of those run
+            // concurrently, which finish in any order, into the order they are described.
+            DocumentBuilder documentBuilder =
+                    DocumentBuilderFactory.newInstance().newDocumentBuilder();
+            for (File part : mParts) {
+                if (part == null) {
+                    continue;
+                }
+                List<Element> testCases = new ArrayList<>();
+                Element partRoot = documentBuilder.parse(part).getDocumentElement();
+                for (Node child = partRoot.getFirstChild();
+                        child != null;
+                        child = child.getNextSibling()) {
+                    if (child.getNodeType() == Node.ELEMENT_NODE) {
+                        testCases.add((Element) child);
+                    }
+                }
+                testCases.sort((a, b) -> Integer.compare(getTestOrder(a), getTestOrder(b)));
+                for (Element testCase : testCases) {
+                    copy(testCase, xmlWriter);
+                }
+                xmlWriter.flush();
+            }
+            xmlWriter.endDocument();
+        } catch (IOException e) {
+            throw e;
+        } catch (Exception e) {
+            throw new IOException("Unable to merge log files", e);
+        } finally {
+            for (File part : mParts) {
+                if (part != null) {
+                    part.delete();
+                }
+            }
+            mPartsDirectory.delete();
+            writer.flush();
+            if (mOutputStream != System.out && mOutputStream != System.err) {
+                writer.close();
+            }
+        }
+    }
+
+    /** Writes an element of a part, without the indentation it was written with. */
+    private static void copy(Element element, StreamingXmlWriter xmlWriter) throws IOException {
+        xmlWriter.startElement(element.getTagName());
+        NamedNodeMap attributes = element.getAttributes();
+        for (int i = 0; i < attributes.getLength(); i++) {
+            Node attribute = attributes.item(i);
+            xmlWriter.attribute(attribute.getNodeName(), attribute.getNodeValue());
+        }
+        // Text such as stack traces is only written into elements without child elements.
+        boolean hasElements = element.getElementsByTagName("*").getLength() > 0;
+        for (Node child = element.getFirstChild(); child != null; child = child.getNextSibling()) {
+            if (child.getNodeType() == Node.ELEMENT_NODE) {
+                copy((Element) child, xmlWriter);
+            } else if (!hasElements && child.getNodeType() == Node.TEXT_NODE) {
+                xmlWriter.text(child.getNodeValue());
+            }
+        }
+        xmlWriter.endElement();
+    }
+
+    private int getTestOrder(Element testCase) {
+        Description description =
+                Description.createTestDescription(
+                        testCase.getAttribute(ATTR_TESTCASE_CLASSNAME),
+                        testCase.getAttribute(ATTR_TESTCASE_NAME));
+        Integer order = mTestOrder.get(description);
+        return order != null ? order : Integer.MAX_VALUE;
+    }
+}
@@ -0,0 +1,164 @@
+/*
+ * Copyright (C) 2026 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.android.junitxml;
+
+import java.io.IOException;
+import java.io.Writer;
+import java.util.ArrayDeque;
+import java.util.Deque;
+
+/**
+ * Minimal, indenting XML writer in the style of {@code javax.xml.stream.XMLStreamWriter}, which
+ * is not available to every platform this library runs on.
+ *
+ * <p>Elements are written as soon as they are started, so the document is never held in memory.
+ * Attributes must be written directly after their element is started, and elements with text
+ * content are not indented within, so that the text is kept exactly as it is.
+ */
+class StreamingXmlWriter {
+
+    private static final String INDENT = "    ";
+
+    private final Writer mWriter;
+
+    private final Deque<String> mOpenElements = new ArrayDeque<>();
+
+    /** Whether the start tag of the innermost element is still open for attributes. */
+    private boolean mInStartTag = false;
+
+    /** Whether the innermost element has text content, so should not be indented within. */
+    private boolean mHasText = false;
+
+    StreamingXmlWriter(Writer writer) {
+        mWriter = writer;
+    }
+
+    void startDocument() throws IOException {
+        mWriter.write("<?xml version=\"1.0\" encoding=\"UTF-8\"?>");
+    }
+
+    void startElement(String name) throws IOException {
+        closeStartTag();
+        if (!mHasText) {
+            newLine(mOpenElements.size());
+        }
+        mWriter.write('<');
+        mWriter.write(name);
+        mOpenElements.push(name);
+        mInStartTag = true;
+        mHasText = false;
+    }
+
+    void attribute(String name, String value) throws IOException {
+        if (!mInStartTag) {
+            throw new IllegalStateException("Attribute " + name + " written outside start tag");
+        }
+        mWriter.write(' ');
+        mWriter.write(name);
+        mWriter.write("=\"");
+        escape(value, /* attribute= */ true);
+        mWriter.write('"');
+    }
+
+    /** Writes raw characters into the start tag of the innermost element, such as padding. */
+    void rawInStartTag(String characters) throws IOException {
+        if (!mInStartTag) {
+            throw new IllegalStateException("Characters written outside start tag");
+        }
+        mWriter.write(characters);
+    }
+
+    void text(String text) throws IOException {
+        closeStartTag();
+        escape(text, /* attribute= */ false);
+        mHasText = true;
+    }
+
+    void endElement() throws IOException {
+        String name = mOpenElements.pop();
+        if (mInStartTag) {
+            mWriter.write("/>");
+            mInStartTag = false;
+        } else {
+            if (!mHasText) {
+                newLine(mOpenElements.size());
+            }
+            mWriter.write("</");
+            mWriter.write(name);
+            mWriter.write('>');
+        }
+        // Text is only written into elements without child elements.
+        mHasText = false;
+    }
+
+    void endDocument() throws IOException {
+        while (!mOpenElements.isEmpty()) {
+            endElement();
+        }
+        mWriter.write(System.lineSeparator());
+    }
+
+    void flush() throws IOException {
+        mWriter.flush();
+    }
+
+    private void closeStartTag() throws IOException {
+        if (mInStartTag) {
+            mWriter.write('>');
+            mInStartTag = false;
+        }
+    }
+
+    private void newLine(int depth) throws IOException {
+        mWriter.write(System.lineSeparator());
+        for (int i = 0; i < depth; i++) {
+            mWriter.write(INDENT);
+        }
+    }
+
+    private void escape(String value, boolean attribute) throws IOException {
+        for (int i = 0; i < value.length(); i++) {
+            char c = value.charAt(i);
+            switch (c) {
+                case '&':
+                    mWriter.write("&amp;");
+                    break;
+                case '<':
+                    mWriter.write("&lt;");
+                    break;
+                case '>':
+                    mWriter.write("&gt;");
+                    break;
+                case '"':
+                    mWriter.write(attribute ? "&quot;" : "\"");
+                    break;
+                case '\n':
+                    mWriter.write(attribute ? "&#10;" : "\n");
+                    break;
+                case '\r':
+                    mWriter.write("&#13;");
+                    break;
+                case '\t':
+                    mWriter.write(attribute ? "&#9;" : "\t");
+                    break;
+                default:
+                    // Characters not allowed in XML 1.0 at all, such as most control characters.
+                    mWriter.write(c < 0x20 || c == 0xFFFE || c == 0xFFFF ? '\uFFFD' : c);
+            }
+        }
+    }
+}
@@ -0,0 +1,119 @@
+/*
+ * Copyright (C) 2026 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.android.junitxml;
+
+import org.junit.runner.Computer;
+import org.junit.runner.Runner;
+import org.junit.runners.ParentRunner;
+import org.junit.runners.model.InitializationError;
+import org.junit.runners.model.RunnerBuilder;
+import org.junit.runners.model.RunnerScheduler;
+
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * {@link Computer} that runs either the test classes, or the test methods of each class, on a
+ * fixed size pool of worker threads instead of one after another.
+ *
+ * <p>Unlike {@link org.junit.experimental.ParallelComputer}, only one level is run concurrently, so
+ * the number of tests running at once never exceeds the number of workers. When running methods
+ * concurrently, the classes are still run one after another, so their class level fixtures are
+ * not shared between concurrent tests.
+ */
+class WorkerPoolComputer extends Computer {
+
+    /** What is run concurrently. */
+    enum Mode {
+        CLASSES,
+        METHODS,
+    }
+
+    private final int mWorkers;
+
+    private final Mode mMode;
+
+    WorkerPoolComputer(int workers, Mode mode) {
+        if (workers < 1) {
+            throw new IllegalArgumentException("workers must be at least 1, was " + workers);
+        }
+        mWorkers = workers;
+        mMode = mode;
+    }
+
+    @Override
+    public Runner getSuite(RunnerBuilder builder, Class<?>[] classes) throws InitializationError {
+        Runner suite = super.getSuite(builder, classes);
+        return mMode == Mode.CLASSES ? parallelize(suite) : suite;
+    }
+
+    @Override
+    protected Runner getRunner(RunnerBuilder builder, Class<?> testClass) throws Throwable {
+        Runner runner = super.getRunner(builder, testClass);
+        return mMode == Mode.METHODS ? parallelize(runner) : runner;
+    }
+
+    private Runner parallelize(Runner runner) {
+        if (runner instanceof ParentRunner) {
+            ((ParentRunner<?>) runner).setScheduler(new WorkerPoolScheduler(mWorkers));
+        }
+        return runner;
+    }
+
+    /** Schedules the children of a single runner on its own pool of worker threads. */
+    private static class WorkerPoolScheduler implements RunnerScheduler {
+
+        private static final AtomicInteger POOL_COUNT = new AtomicInteger();
+
+        private final ExecutorService mExecutor;
+
+        WorkerPoolScheduler(int workers) {
+            int pool = POOL_COUNT.incrementAndGet();
+            AtomicInteger workerCount = new AtomicInteger();
+            ThreadFactory threadFactory =
+                    r -> {
+                        Thread thread =
+                                new Thread(
+                                        r,
+                                        "junitxml-pool-" + pool + "-worker-"
+                                                + workerCount.incrementAndGet());
+                        thread.setDaemon(true);
+                        return thread;
+                    };
+            mExecutor = Executors.newFixedThreadPool(workers, threadFactory);
+        }
+
+        @Override
+        public void schedule(Runnable childStatement) {
+            mExecutor.execute(childStatement);
+        }
+
+        @Override
+        public void finished() {
+            mExecutor.shutdown();
+            try {
+                mExecutor.awaitTermination(Long.MAX_VALUE, TimeUnit.MILLISECONDS);
+            } catch (InterruptedException e) {
+                mExecutor.shutdownNow();
+                Thread.currentThread().interrupt();
+            }
+        }
+    }
+}
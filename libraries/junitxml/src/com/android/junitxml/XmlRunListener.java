@@ -20,37 +20,36 @@ import org.junit.Ignore;
 import org.junit.runner.Description;
 import org.junit.runner.notification.Failure;
 import org.junit.runner.notification.RunListener;
-import org.w3c.dom.Document;
-import org.w3c.dom.Element;
-import org.w3c.dom.Text;
 
 import java.io.BufferedWriter;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
 import java.io.IOException;
+import java.io.InputStream;
 import java.io.OutputStream;
 import java.io.OutputStreamWriter;
-import java.io.Writer;
+import java.io.UncheckedIOException;
 import java.net.InetAddress;
 import java.net.UnknownHostException;
-import java.text.SimpleDateFormat;
-import java.util.Date;
-import java.util.HashSet;
-import java.util.Hashtable;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
 import java.util.Properties;
-import java.util.Set;
-
-import javax.xml.parsers.DocumentBuilder;
-import javax.xml.parsers.DocumentBuilderFactory;
-import javax.xml.transform.OutputKeys;
-import javax.xml.transform.Source;
-import javax.xml.transform.Transformer;
-import javax.xml.transform.TransformerException;
-import javax.xml.transform.TransformerFactory;
-import javax.xml.transform.dom.DOMSource;
-import javax.xml.transform.stream.StreamResult;
 
 /**
  * {@link RunListener} to write JUnit4 test results to XML in a format adapted from the schema used
  * by Ant in {@code org.apache.tools.ant.taskdefs.optional.junit.XMLJUnitResultFormatter}.
+ *
+ * <p>Each test case is written and flushed as soon as it finishes, so only the tests that are
+ * running are held in memory, and the results so far are on disk if the run never ends. The
+ * summary counts of the suite are not known until then, so space is reserved for them in the
+ * start tag of the suite and they are written into it by {@link #endTestSuite()}. When not writing
+ * to a file that can be written at any position, such as to a pipe, the report is written to a
+ * temporary file first and copied to the stream at the end.
  */
 public class XmlRunListener extends RunListener implements XmlConstants {
 
@@ -58,65 +57,105 @@ public class XmlRunListener extends RunListener implements XmlConstants {
 
     private static final String TESTCASE_NAME_UNKNOWN = "unknown";
 
-    private Document mDocument;
+    /** Characters reserved in the start tag of the suite for its summary attributes. */
+    private static final int SUMMARY_SIZE = 128;
+
+    /** The tests that have started but not yet finished. */
+    private final Map<Description, RunningTest> mRunningTests = new HashMap<>();
+
+    private final OutputStream mOutputStream;
 
-    private Element mRootElement;
+    /** The file the report is written to, either the output or a temporary copy of it. */
+    private final FileOutputStream mFileStream;
 
-    private final Hashtable<Description, Element> mTestElements = new Hashtable<>();
+    private final File mTemporaryFile;
 
-    private final Set<Description> mFailedTests = new HashSet<>();
+    private final StreamingXmlWriter mXmlWriter;
 
-    private final Set<Description> mErrorTests = new HashSet<>();
+    /** Position in the file of the space reserved for the summary attributes. */
+    private long mSummaryPosition;
 
-    private final Set<Description> mSkippedTests = new HashSet<>();
+    private int mTests = 0;
 
-    private final Set<Description> mIgnoredTests = new HashSet<>();
+    private int mFailures = 0;
 
-    private final Hashtable<Description, Long> mTestStarts = new Hashtable<>();
+    private int mErrors = 0;
 
-    private OutputStream mOutputStream;
+    private int mSkipped = 0;
 
     private long mStartTime;
 
-    private static DocumentBuilder getDocumentBuilder() {
-        try {
-            return DocumentBuilderFactory.newInstance().newDocumentBuilder();
-        } catch (final Exception exc) {
-            throw new ExceptionInInitializerError(exc);
-        }
+    public XmlRunListener(OutputStream out, String suiteName) {
+        this(out, suiteName, /* writeProperties= */ true);
     }
 
-    public XmlRunListener(OutputStream out, String suiteName) {
-        mDocument = getDocumentBuilder().newDocument();
-        mRootElement = mDocument.createElement(ELEMENT_TESTSUITE);
+    /**
+     * @param writeProperties whether to write the system properties into the report, which is
+     *     only needed once when reports are merged.
+     */
+    XmlRunListener(OutputStream out, String suiteName, boolean writeProperties) {
         mOutputStream = out;
-        startTestSuite(suiteName);
+        try {
+            if (out instanceof FileOutputStream && isSeekable((FileOutputStream) out)) {
+                mFileStream = (FileOutputStream) out;
+                mTemporaryFile = null;
+            } else {
+                mTemporaryFile = File.createTempFile("junitxml", ".xml");
+                mFileStream = new FileOutputStream(mTemporaryFile);
+            }
+            mXmlWriter =
+                    new StreamingXmlWriter(
+                            new BufferedWriter(
+                                    new OutputStreamWriter(mFileStream, StandardCharsets.UTF_8)));
+            startTestSuite(suiteName, writeProperties);
+        } catch (IOException e) {
+            throw new UncheckedIOException("Unable to write log file", e);
+        }
     }
 
-    private void startTestSuite(String suiteName) {
-        mRootElement.setAttribute(ATTR_TESTSUITE_NAME, suiteName);
-
-        SimpleDateFormat simpleDateFormat = new SimpleDateFormat("yyyy-MM-dd'T'HH:mm:ss");
-        String timestamp = simpleDateFormat.format(new Date());
-        mRootElement.setAttribute(ATTR_TESTSUITE_TIME, timestamp);
+    /** Returns whether the summary can be written back into the file of a stream. */
+    private static boolean isSeekable(FileOutputStream out) {
+        try {
+            out.getChannel().position();
+            return true;
+        } catch (IOException e) {
+            // Pipes and terminals, such as /dev/stdout, have no position.
+            return false;
+        }
+    }
 
-        mRootElement.setAttribute(ATTR_TESTSUITE_HOSTNAME, getHostname());
+    private void startTestSuite(String suiteName, boolean writeProperties) throws IOException {
+        mXmlWriter.startDocument();
+        mXmlWriter.startElement(ELEMENT_TESTSUITE);
+        mXmlWriter.attribute(ATTR_TESTSUITE_NAME, suiteName);
+        mXmlWriter.attribute(ATTR_TESTSUITE_HOSTNAME, getHostname());
+        mXmlWriter.flush();
+        mSummaryPosition = mFileStream.getChannel().position();
+        mXmlWriter.rawInStartTag(pad("", SUMMARY_SIZE));
 
-        Element propsElement = mDocument.createElement(ELEMENT_PROPERTIES);
-        mRootElement.appendChild(propsElement);
         mStartTime = System.currentTimeMillis();
+        if (writeProperties) {
+            writeProperties(mXmlWriter);
+        }
+        mXmlWriter.flush();
+    }
+
+    /** Writes the system properties of this JVM. */
+    static void writeProperties(StreamingXmlWriter xmlWriter) throws IOException {
+        xmlWriter.startElement(ELEMENT_PROPERTIES);
         final Properties props = System.getProperties();
         if (props != null) {
-            for (Object name : props.keySet()) {
-                Element propElement = mDocument.createElement(ELEMENT_PROPERTY);
-                propElement.setAttribute(ATTR_PROPERTY_NAME, (String) name);
-                propElement.setAttribute(ATTR_PROPERTY_VALUE, props.getProperty((String) name));
-                propsElement.appendChild(propElement);
+            for (String name : props.stringPropertyNames()) {
+                xmlWriter.startElement(ELEMENT_PROPERTY);
+                xmlWriter.attribute(ATTR_PROPERTY_NAME, name);
+                xmlWriter.attribute(ATTR_PROPERTY_VALUE, props.getProperty(name));
+                xmlWriter.endElement();
             }
         }
+        xmlWriter.endElement();
     }
 
-    private String getHostname() {
+    static String getHostname() {
         String hostname = "localhost";
         try {
             InetAddress localHost = InetAddress.getLocalHost();
@@ -130,144 +169,220 @@ public class XmlRunListener extends RunListener implements XmlConstants {
     }
 
     public void endTestSuite() throws IOException {
-        mRootElement.setAttribute(ATTR_TESTSUITE_TESTS, "" + mTestStarts.size());
-        mRootElement.setAttribute(ATTR_TESTSUITE_FAILURES, "" + mFailedTests.size());
-        mRootElement.setAttribute(ATTR_TESTSUITE_ERRORS, "" + mErrorTests.size());
-        mRootElement.setAttribute(ATTR_TESTSUITE_SKIPPED, "" + mSkippedTests.size());
-
-        mRootElement.setAttribute(
-                ATTR_TESTSUITE_TIME,
-                "" + ((System.currentTimeMillis() - mStartTime) / ONE_SECOND));
-        if (mOutputStream != null) {
-            Writer writer = null;
-            try {
-                writer = new BufferedWriter(new OutputStreamWriter(mOutputStream, "UTF8"));
-
-                Transformer transformer;
-
-                transformer = TransformerFactory.newInstance().newTransformer();
-                javax.xml.transform.Result output = new StreamResult(writer);
-                Source input = new DOMSource(mRootElement);
-                transformer.setOutputProperty(OutputKeys.INDENT, "yes");
-                transformer.transform(input, output);
-
-            } catch (final IOException | TransformerException exc) {
-                throw new IOException("Unable to write log file", exc);
-            } finally {
-                if (writer != null) {
-                    try {
-                        writer.flush();
-                    } catch (final IOException ex) {
-                        // ignore
-                    }
-                    if (mOutputStream != System.out && mOutputStream != System.err) {
-                        writer.close();
+        try {
+            mXmlWriter.endDocument();
+            mXmlWriter.flush();
+
+            String summary =
+                    summaryAttribute(ATTR_TESTSUITE_TESTS, "" + mTests)
+                            + summaryAttribute(ATTR_TESTSUITE_FAILURES, "" + mFailures)
+                            + summaryAttribute(ATTR_TESTSUITE_ERRORS, "" + mErrors)
+                            + summaryAttribute(ATTR_TESTSUITE_SKIPPED, "" + mSkipped)
+                            + summaryAttribute(
+                                    ATTR_TESTSUITE_TIME,
+                                    "" + ((System.currentTimeMillis() - mStartTime) / ONE_SECOND));
+            ByteBuffer summaryBytes =
+                    ByteBuffer.wrap(pad(summary, SUMMARY_SIZE).getBytes(StandardCharsets.UTF_8));
+            long position = mSummaryPosition;
+            while (summaryBytes.hasRemaining()) {
+                position += mFileStream.getChannel().write(summaryBytes, position);
+            }
+
+            if (mTemporaryFile != null) {
+                mFileStream.close();
+                try (InputStream in = new FileInputStream(mTemporaryFile)) {
+                    byte[] buffer = new byte[8192];
+                    for (int count; (count = in.read(buffer)) != -1; ) {
+                        mOutputStream.write(buffer, 0, count);
                     }
                 }
             }
+        } catch (final IOException exc) {
+            throw new IOException("Unable to write log file", exc);
+        } finally {
+            if (mTemporaryFile != null) {
+                mFileStream.close();
+                mTemporaryFile.delete();
+            }
+            try {
+                mOutputStream.flush();
+            } catch (final IOException ex) {
+                // ignore
+            }
+            if (mOutputStream != System.out && mOutputStream != System.err) {
+                mOutputStream.close();
+            }
         }
     }
 
-    @SuppressWarnings("ThrowableResultOfMethodCallIgnored")
-    @Override
-    public void testFailure(Failure failure) throws Exception {
-        Description description = failure.getDescription();
-        testFinished(description);
+    private static String summaryAttribute(String name, String value) {
+        return " " + name + "=\"" + value + "\"";
+    }
 
-        if (failure.getException() instanceof AssertionError) {
-            formatError(ELEMENT_FAILURE, failure);
-            mFailedTests.add(description);
-        } else {
-            formatError(ELEMENT_ERROR, failure);
-            mErrorTests.add(description);
+    private static String pad(String value, int length) throws IOException {
+        if (value.length() > length) {
+            throw new IOException("Summary does not fit in the space reserved: " + value);
         }
+        StringBuilder padded = new StringBuilder(length).append(value);
+        while (padded.length() < length) {
+            padded.append(' ');
+        }
+        return padded.toString();
     }
 
-    private void formatError(String type, Failure failure) throws Exception {
-        final Element failureOrError = mDocument.createElement(type);
-        Element currentTest;
-        if (failure.getDescription() != null) {
-            currentTest = mTestElements.get(failure.getDescription());
-        } else {
-            currentTest = mRootElement;
-        }
+    /** Returns the number of tests written so far. */
+    int getTests() {
+        return mTests;
+    }
 
-        currentTest.appendChild(failureOrError);
+    /** Returns the number of tests written so far with failures. */
+    int getFailures() {
+        return mFailures;
+    }
 
-        final String message = failure.getMessage();
-        if (message != null && message.length() > 0) {
-            failureOrError.setAttribute(ATTR_FAILURE_MESSAGE, message);
-        }
-        failureOrError.setAttribute(
-                ATTR_FAILURE_TYPE,
-                failure.getDescription().getClassName());
+    /** Returns the number of tests written so far with errors. */
+    int getErrors() {
+        return mErrors;
+    }
 
-        final String stackTrace = failure.getTrace();
-        final Text trace = mDocument.createTextNode(stackTrace);
-        failureOrError.appendChild(trace);
+    /** Returns the number of tests written so far that were skipped by a failed assumption. */
+    int getSkipped() {
+        return mSkipped;
     }
 
+    @SuppressWarnings("ThrowableResultOfMethodCallIgnored")
     @Override
-    public void testFinished(Description description) throws Exception {
-        if (!mTestStarts.containsKey(description)) {
-            testStarted(description);
+    public void testFailure(Failure failure) throws Exception {
+        Description description = failure.getDescription();
+        RunningTest test = mRunningTests.get(description);
+        boolean running = test != null;
+        if (!running) {
+            // Failures outside of any test, such as of a class, are reported as a test of its own.
+            test = new RunningTest(System.currentTimeMillis());
         }
 
-        Element currentTest;
-        if (!mFailedTests.contains(description) && !mErrorTests.contains(description)
-                && !mSkippedTests.contains(description) && !mIgnoredTests
-                .contains(description)) {
-            currentTest = mDocument.createElement(ELEMENT_TESTCASE);
-            final String methodName = description.getMethodName();
-            currentTest.setAttribute(
-                    ATTR_TESTCASE_NAME,
-                    methodName == null ? TESTCASE_NAME_UNKNOWN : methodName);
-            // a TestSuite can contain Tests from multiple classes,
-            // even tests with the same name - disambiguate them.
-            currentTest.setAttribute(ATTR_TESTCASE_CLASSNAME, description.getClassName());
-            mRootElement.appendChild(currentTest);
-            mTestElements.put(description, currentTest);
-
+        if (failure.getException() instanceof AssertionError) {
+            test.mFailures.add(failure);
         } else {
-            currentTest = mTestElements.get(description);
+            test.mErrors.add(failure);
         }
 
-        final long l = mTestStarts.get(description);
-        currentTest.setAttribute(
-                ATTR_TESTCASE_TIME, "" + ((System.currentTimeMillis() - l) / ONE_SECOND));
+        if (!running) {
+            writeTestCase(description, test);
+        }
+    }
+
+    @Override
+    public void testFinished(Description description) throws Exception {
+        RunningTest test = mRunningTests.remove(description);
+        writeTestCase(
+                description, test != null ? test : new RunningTest(System.currentTimeMillis()));
     }
 
     @Override
     public void testStarted(Description description) throws Exception {
-        mTestStarts.put(description, System.currentTimeMillis());
+        mRunningTests.put(description, new RunningTest(System.currentTimeMillis()));
     }
 
     @Override
     public void testIgnored(Description description) throws Exception {
         Ignore ignoreAnnotation = description.getAnnotation(Ignore.class);
-        formatSkip(description, ignoreAnnotation != null ? ignoreAnnotation.value() : null);
-        mIgnoredTests.add(description);
+        RunningTest test = new RunningTest(System.currentTimeMillis());
+        test.mIgnoredMessage = ignoreAnnotation != null ? ignoreAnnotation.value() : null;
+        test.mIgnored = true;
+        writeTestCase(description, test);
     }
 
     @Override
     public void testAssumptionFailure(Failure failure) {
-        try {
-            formatSkip(failure.getDescription(), failure.getMessage());
-        } catch (Exception e) {
-            e.printStackTrace();
+        Description description = failure.getDescription();
+        RunningTest test = mRunningTests.get(description);
+        boolean running = test != null;
+        if (!running) {
+            test = new RunningTest(System.currentTimeMillis());
+        }
+        test.mSkippedMessage = failure.getMessage();
+        test.mSkipped = true;
+
+        if (!running) {
+            try {
+                writeTestCase(description, test);
+            } catch (Exception e) {
+                e.printStackTrace();
+            }
         }
-        mSkippedTests.add(failure.getDescription());
     }
 
-    private void formatSkip(Description description, String message) throws Exception {
-        testFinished(description);
+    private void writeTestCase(Description description, RunningTest test) throws IOException {
+        mXmlWriter.startElement(ELEMENT_TESTCASE);
+        final String methodName = description.getMethodName();
+        mXmlWriter.attribute(
+                ATTR_TESTCASE_NAME, methodName == null ? TESTCASE_NAME_UNKNOWN : methodName);
+        // a TestSuite can contain Tests from multiple classes,
+        // even tests with the same name - disambiguate them.
+        mXmlWriter.attribute(ATTR_TESTCASE_CLASSNAME, description.getClassName());
+        mXmlWriter.attribute(
+                ATTR_TESTCASE_TIME,
+                "" + ((System.currentTimeMillis() - test.mStartTime) / ONE_SECOND));
+
+        for (Failure failure : test.mFailures) {
+            formatError(ELEMENT_FAILURE, failure);
+        }
+        for (Failure failure : test.mErrors) {
+            formatError(ELEMENT_ERROR, failure);
+        }
+        if (test.mIgnored) {
+            formatSkip(test.mIgnoredMessage);
+        }
+        if (test.mSkipped) {
+            formatSkip(test.mSkippedMessage);
+        }
+        mXmlWriter.endElement();
+        mXmlWriter.flush();
 
-        final Element skippedElement = mDocument.createElement(ELEMENT_SKIPPED);
+        mTests++;
+        if (!test.mFailures.isEmpty()) {
+            mFailures++;
+        }
+        if (!test.mErrors.isEmpty()) {
+            mErrors++;
+        }
+        if (test.mSkipped) {
+            mSkipped++;
+        }
+    }
+
+    private void formatError(String type, Failure failure) throws IOException {
+        mXmlWriter.startElement(type);
+        final String message = failure.getMessage();
+        if (message != null && message.length() > 0) {
+            mXmlWriter.attribute(ATTR_FAILURE_MESSAGE, message);
+        }
+        mXmlWriter.attribute(ATTR_FAILURE_TYPE, failure.getDescription().getClassName());
+        mXmlWriter.text(failure.getTrace());
+        mXmlWriter.endElement();
+    }
+
+    private void formatSkip(String message) throws IOException {
+        mXmlWriter.startElement(ELEMENT_SKIPPED);
         if (message != null) {
-            skippedElement.setAttribute(ATTR_SKIPPED_MESSAGE, message);
+            mXmlWriter.attribute(ATTR_SKIPPED_MESSAGE, message);
         }
+        mXmlWriter.endElement();
+    }
 
-        Element currentTest = mTestElements.get(description);
-        currentTest.appendChild(skippedElement);
+    /** A test that has started but not finished, and what has been reported about it so far. */
+    private static class RunningTest {
+        final long mStartTime;
+        final List<Failure> mFailures = new ArrayList<>(0);
+        final List<Failure> mErrors = new ArrayList<>(0);
+        boolean mIgnored = false;
+        String mIgnoredMessage;
+        boolean mSkipped = false;
+        String mSkippedMessage;
+
+        RunningTest(long startTime) {
+            mStartTime = startTime;
+        }
     }
 }
@@ -0,0 +1,205 @@
+/*
+ * Copyright (C) 2026 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.android.junitxml;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assume.assumeTrue;
+
+import org.junit.BeforeClass;
+import org.junit.FixMethodOrder;
+import org.junit.Test;
+import org.junit.runner.Computer;
+import org.junit.runner.Description;
+import org.junit.runner.JUnitCore;
+import org.junit.runner.Request;
+import org.junit.runner.Result;
+import org.junit.runner.RunWith;
+import org.junit.runner.Runner;
+import org.junit.runners.JUnit4;
+import org.junit.runners.MethodSorters;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+/** Unit tests for the sharding of {@link JUnitXmlRunner}. */
+@RunWith(JUnit4.class)
+public class JUnitXmlRunnerTest {
+
+    private static final List<Class> SAMPLE_CLASSES =
+            Arrays.asList(
+                    FirstSampleTests.class, SecondSampleTests.class, ThirdSampleTests.class);
+
+    /** The number of tests in the sample classes. */
+    private static final int SAMPLE_TESTS = 6;
+
+    /** Whether the sample classes are run by these tests, rather than found by a test runner. */
+    private static volatile boolean sRunningSamples = false;
+
+    @Test
+    public void testShards_classes() {
+        for (int shardCount = 1; shardCount <= SAMPLE_CLASSES.size() + 1; shardCount++) {
+            assertShardsPartitionTests(WorkerPoolComputer.Mode.CLASSES, shardCount);
+        }
+    }
+
+    @Test
+    public void testShards_methods() {
+        for (int shardCount = 1; shardCount <= SAMPLE_TESTS + 1; shardCount++) {
+            assertShardsPartitionTests(WorkerPoolComputer.Mode.METHODS, shardCount);
+        }
+    }
+
+    @Test
+    public void testShards_methodsInDescribedOrder() {
+        assertEquals(
+                Arrays.asList("first.a", "first.c", "second.b"),
+                testNames(getShard(WorkerPoolComputer.Mode.METHODS, 0, 2)));
+        assertEquals(
+                Arrays.asList("first.b", "second.a", "third.a"),
+                testNames(getShard(WorkerPoolComputer.Mode.METHODS, 1, 2)));
+    }
+
+    @Test
+    public void testShards_moreShardsThanTests() {
+        int shardCount = SAMPLE_TESTS + 2;
+        Runner runner = getShard(WorkerPoolComputer.Mode.METHODS, SAMPLE_TESTS + 1, shardCount);
+        assertEquals(0, JUnitXmlRunner.getTestCount(runner));
+
+        Result result = runSamples(runner);
+        assertTrue(result.wasSuccessful());
+        assertEquals(0, result.getRunCount());
+    }
+
+    @Test
+    public void testShards_run() {
+        for (WorkerPoolComputer.Mode mode : WorkerPoolComputer.Mode.values()) {
+            int runCount = 0;
+            for (int shardIndex = 0; shardIndex < 4; shardIndex++) {
+                Result result = runSamples(getShard(mode, shardIndex, 4));
+                assertTrue(result.wasSuccessful());
+                runCount += result.getRunCount();
+            }
+            assertEquals(SAMPLE_TESTS, runCount);
+        }
+    }
+
+    /** Checks that the shards are disjoint and together hold every test of the samples. */
+    private static void assertShardsPartitionTests(WorkerPoolComputer.Mode mode, int shardCount) {
+        Set<String> allTests = new HashSet<>();
+        int shardTests = 0;
+        for (int shardIndex = 0; shardIndex < shardCount; shardIndex++) {
+            Runner runner = getShard(mode, shardIndex, shardCount);
+            List<String> tests = testNames(runner);
+            assertEquals(tests.size(), JUnitXmlRunner.getTestCount(runner));
+            shardTests += tests.size();
+            allTests.addAll(tests);
+        }
+        String message = mode + " in " + shardCount + " shards";
+        assertEquals(message, SAMPLE_TESTS, shardTests);
+        assertEquals(message, SAMPLE_TESTS, allTests.size());
+    }
+
+    /** Returns the runner for a shard of the samples, as {@link JUnitXmlRunner#main} builds it. */
+    private static Runner getShard(WorkerPoolComputer.Mode mode, int shardIndex, int shardCount) {
+        Computer computer = new Computer();
+        Class[] classes =
+                JUnitXmlRunner.getShardClasses(SAMPLE_CLASSES, mode, shardIndex, shardCount);
+        Runner runner = Request.classes(computer, classes).getRunner();
+        if (mode == WorkerPoolComputer.Mode.METHODS && shardCount > 1) {
+            runner = JUnitXmlRunner.getShardRunner(runner, computer, shardIndex, shardCount);
+        }
+        return runner;
+    }
+
+    /** Returns the tests of a runner as "class.method", with the class name shortened. */
+    private static List<String> testNames(Runner runner) {
+        List<String> names = new ArrayList<>();
+        addTestNames(runner.getDescription(), names);
+        return names;
+    }
+
+    private static void addTestNames(Description description, List<String> names) {
+        if (description.isTest() && description.getTestClass() != null) {
+            String className = description.getTestClass().getSimpleName();
+            names.add(
+                    className.substring(0, className.indexOf("Sample")).toLowerCase()
+                            + "."
+                            + description.getMethodName());
+        }
+        for (Description child : description.getChildren()) {
+            addTestNames(child, names);
+        }
+    }
+
+    private static Result runSamples(Runner runner) {
+        sRunningSamples = true;
+        try {
+            return new JUnitCore().run(runner);
+        } finally {
+            sRunningSamples = false;
+        }
+    }
+
+    /** Sample tests, which are skipped unless run by these tests. */
+    @FixMethodOrder(MethodSorters.NAME_ASCENDING)
+    public static class FirstSampleTests {
+        @BeforeClass
+        public static void setUpClass() {
+            assumeTrue(sRunningSamples);
+        }
+
+        @Test
+        public void a() {}
+
+        @Test
+        public void b() {}
+
+        @Test
+        public void c() {}
+    }
+
+    /** Sample tests, which are skipped unless run by these tests. */
+    @FixMethodOrder(MethodSorters.NAME_ASCENDING)
+    public static class SecondSampleTests {
+        @BeforeClass
+        public static void setUpClass() {
+            assumeTrue(sRunningSamples);
+        }
+
+        @Test
+        public void a() {}
+
+        @Test
+        public void b() {}
+    }
+
+    /** Sample tests, which are skipped unless run by these tests. */
+    @FixMethodOrder(MethodSorters.NAME_ASCENDING)
+    public static class ThirdSampleTests {
+        @BeforeClass
+        public static void setUpClass() {
+            assumeTrue(sRunningSamples);
+        }
+
+        @Test
+        public void a() {}
+    }
+}
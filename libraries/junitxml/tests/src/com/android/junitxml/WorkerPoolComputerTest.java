@@ -0,0 +1,249 @@
+/*
+ * Copyright (C) 2026 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.android.junitxml;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assume.assumeTrue;
+
+import org.junit.Before;
+import org.junit.BeforeClass;
+import org.junit.Test;
+import org.junit.runner.JUnitCore;
+import org.junit.runner.Result;
+import org.junit.runner.RunWith;
+import org.junit.runners.JUnit4;
+
+import java.util.HashSet;
+import java.util.Set;
+import java.util.concurrent.CyclicBarrier;
+import java.util.concurrent.TimeUnit;
+
+/** Unit tests for {@link WorkerPoolComputer}. */
+@RunWith(JUnit4.class)
+public class WorkerPoolComputerTest {
+
+    private static final int WORKERS = 2;
+
+    private static final long BARRIER_TIMEOUT_MS = 10000;
+
+    /** How long each sample test runs for once its workers are all busy. */
+    private static final long HOLD_MS = 50;
+
+    /** Whether the sample classes are run by these tests, rather than found by a test runner. */
+    private static volatile boolean sRunningSamples = false;
+
+    /** Holds each sample test until as many as there are workers are running. */
+    private static CyclicBarrier sBarrier;
+
+    private static final Object sLock = new Object();
+
+    /** The classes of the sample tests running, and the most tests seen running at once. */
+    private static final Set<Class<?>> sRunningClasses = new HashSet<>();
+
+    private static int sRunning;
+
+    private static int sMaxRunning;
+
+    private static boolean sClassesOverlapped;
+
+    @Before
+    public void setUp() {
+        sBarrier = new CyclicBarrier(WORKERS);
+        sRunning = 0;
+        sMaxRunning = 0;
+        sClassesOverlapped = false;
+        sRunningClasses.clear();
+    }
+
+    @Test
+    public void testClasses() {
+        Result result =
+                runSamples(
+                        WorkerPoolComputer.Mode.CLASSES,
+                        FirstClassTests.class,
+                        SecondClassTests.class,
+                        ThirdClassTests.class,
+                        FourthClassTests.class);
+
+        assertTrue(result.getFailures().toString(), result.wasSuccessful());
+        assertEquals(4, result.getRunCount());
+        assertEquals(WORKERS, sMaxRunning);
+    }
+
+    @Test
+    public void testMethods() {
+        Result result =
+                runSamples(
+                        WorkerPoolComputer.Mode.METHODS,
+                        FirstMethodTests.class,
+                        SecondMethodTests.class);
+
+        assertTrue(result.getFailures().toString(), result.wasSuccessful());
+        assertEquals(8, result.getRunCount());
+        assertEquals(WORKERS, sMaxRunning);
+        assertFalse("Tests of different classes ran at once", sClassesOverlapped);
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testNoWorkers() {
+        new WorkerPoolComputer(0, WorkerPoolComputer.Mode.CLASSES);
+    }
+
+    private static Result runSamples(WorkerPoolComputer.Mode mode, Class<?>... classes) {
+        sRunningSamples = true;
+        try {
+            return new JUnitCore().run(new WorkerPoolComputer(WORKERS, mode), classes);
+        } finally {
+            sRunningSamples = false;
+        }
+    }
+
+    /**
+     * Runs a sample test: waits for as many tests as there are workers to be running at once,
+     * which fails if they are not run concurrently, and records which tests overlapped.
+     */
+    private static void runSample(Class<?> testClass) throws Exception {
+        synchronized (sLock) {
+            sRunning++;
+            sMaxRunning = Math.max(sMaxRunning, sRunning);
+            sRunningClasses.add(testClass);
+            sClassesOverlapped |= sRunningClasses.size() > 1;
+        }
+        try {
+            sBarrier.await(BARRIER_TIMEOUT_MS, TimeUnit.MILLISECONDS);
+            // Long enough for any test wrongly run at the same time to overlap with this one
+            Thread.sleep(HOLD_MS);
+        } finally {
+            synchronized (sLock) {
+                sRunning--;
+                if (sRunning == 0) {
+                    sRunningClasses.clear();
+                }
+            }
+        }
+    }
+
+    /** Sample tests run concurrently by class, which are skipped unless run by these tests. */
+    public static class FirstClassTests {
+        @BeforeClass
+        public static void setUpClass() {
+            assumeTrue(sRunningSamples);
+        }
+
+        @Test
+        public void test() throws Exception {
+            runSample(FirstClassTests.class);
+        }
+    }
+
+    /** Sample tests run concurrently by class, which are skipped unless run by these tests. */
+    public static class SecondClassTests {
+        @BeforeClass
+        public static void setUpClass() {
+            assumeTrue(sRunningSamples);
+        }
+
+        @Test
+        public void test() throws Exception {
+            runSample(SecondClassTests.class);
+        }
+    }
+
+    /** Sample tests run concurrently by class, which are skipped unless run by these tests. */
+    public static class ThirdClassTests {
+        @BeforeClass
+        public static void setUpClass() {
+            assumeTrue(sRunningSamples);
+        }
+
+        @Test
+        public void test() throws Exception {
+            runSample(ThirdClassTests.class);
+        }
+    }
+
+    /** Sample tests run concurrently by class, which are skipped unless run by these tests. */
+    public static class FourthClassTests {
+        @BeforeClass
+        public static void setUpClass() {
+            assumeTrue(sRunningSamples);
+        }
+
+        @Test
+        public void test() throws Exception {
+            runSample(FourthClassTests.class);
+        }
+    }
+
+    /** Sample tests run concurrently by method, which are skipped unless run by these tests. */
+    public static class FirstMethodTests {
+        @BeforeClass
+        public static void setUpClass() {
+            assumeTrue(sRunningSamples);
+        }
+
+        @Test
+        public void a() throws Exception {
+            runSample(FirstMethodTests.class);
+        }
+
+        @Test
+        public void b() throws Exception {
+            runSample(FirstMethodTests.class);
+        }
+
+        @Test
+        public void c() throws Exception {
+            runSample(FirstMethodTests.class);
+        }
+
+        @Test
+        public void d() throws Exception {
+            runSample(FirstMethodTests.class);
+        }
+    }
+
+    /** Sample tests run concurrently by method, which are skipped unless run by these tests. */
+    public static class SecondMethodTests {
+        @BeforeClass
+        public static void setUpClass() {
+            assumeTrue(sRunningSamples);
+        }
+
+        @Test
+        public void a() throws Exception {
+            runSample(SecondMethodTests.class);
+        }
+
+        @Test
+        public void b() throws Exception {
+            runSample(SecondMethodTests.class);
+        }
+
+        @Test
+        public void c() throws Exception {
+            runSample(SecondMethodTests.class);
+        }
+
+        @Test
+        public void d() throws Exception {
+            runSample(SecondMethodTests.class);
+        }
+    }
+}
@@ -0,0 +1,338 @@
+/*
+ * Copyright (C) 2026 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.android.junitxml;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+import static org.junit.Assume.assumeTrue;
+
+import org.junit.BeforeClass;
+import org.junit.FixMethodOrder;
+import org.junit.Ignore;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import org.junit.runner.Computer;
+import org.junit.runner.Description;
+import org.junit.runner.JUnitCore;
+import org.junit.runner.Request;
+import org.junit.runner.RunWith;
+import org.junit.runner.notification.RunListener;
+import org.junit.runners.JUnit4;
+import org.junit.runners.MethodSorters;
+import org.w3c.dom.Element;
+import org.w3c.dom.Node;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.InputStream;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import javax.xml.parsers.DocumentBuilderFactory;
+
+/** Unit tests for {@link XmlRunListener} and {@link MergingXmlRunListener}. */
+@RunWith(JUnit4.class)
+public class XmlRunListenerTest implements XmlConstants {
+
+    private static final String SUITE_NAME = "suite";
+
+    /**
+     * The test cases reported for the sample classes, in the order they run, as the class name,
+     * test name and the element holding the result, if any.
+     */
+    private static final String[][] EXPECTED_TEST_CASES = {
+        {SampleTests.class.getName(), "errors", ELEMENT_ERROR},
+        {SampleTests.class.getName(), "fails", ELEMENT_FAILURE},
+        {SampleTests.class.getName(), "ignored", ELEMENT_SKIPPED},
+        {SampleTests.class.getName(), "passes", ""},
+        {SampleTests.class.getName(), "skipped", ELEMENT_SKIPPED},
+        {FailingBeforeClassTests.class.getName(), "unknown", ELEMENT_ERROR},
+    };
+
+    /** Whether the sample classes are run by these tests, rather than found by a test runner. */
+    private static volatile boolean sRunningSamples = false;
+
+    @Rule public TemporaryFolder mTemporaryFolder = new TemporaryFolder();
+
+    @Test
+    public void testReport_fileOutput() throws Exception {
+        File report = mTemporaryFolder.newFile();
+        XmlRunListener listener = new XmlRunListener(new FileOutputStream(report), SUITE_NAME);
+
+        runSamples(listener);
+        listener.endTestSuite();
+
+        assertReport(Files.readAllBytes(report.toPath()));
+    }
+
+    @Test
+    public void testReport_streamOutput() throws Exception {
+        ByteArrayOutputStream report = new ByteArrayOutputStream();
+        XmlRunListener listener = new XmlRunListener(report, SUITE_NAME);
+
+        runSamples(listener);
+        listener.endTestSuite();
+
+        assertReport(report.toByteArray());
+    }
+
+    @Test
+    public void testReport_pipeOutput() throws Exception {
+        File fifo = new File(mTemporaryFolder.getRoot(), "report.fifo");
+        Process mkfifo = new ProcessBuilder("mkfifo", fifo.getPath()).start();
+        assumeTrue(mkfifo.waitFor() == 0);
+        CompletableFuture<byte[]> report =
+                CompletableFuture.supplyAsync(
+                        () -> {
+                            try (InputStream in = new FileInputStream(fifo)) {
+                                ByteArrayOutputStream out = new ByteArrayOutputStream();
+                                byte[] buffer = new byte[8192];
+                                for (int count; (count = in.read(buffer)) != -1; ) {
+                                    out.write(buffer, 0, count);
+                                }
+                                return out.toByteArray();
+                            } catch (Exception e) {
+                                throw new RuntimeException(e);
+                            }
+                        });
+        XmlRunListener listener = new XmlRunListener(new FileOutputStream(fifo), SUITE_NAME);
+
+        runSamples(listener);
+        listener.endTestSuite();
+
+        assertReport(report.get());
+    }
+
+    @Test
+    public void testMergingReport_streamOutput() throws Exception {
+        ByteArrayOutputStream report = new ByteArrayOutputStream();
+        Request request = Request.classes(SampleTests.class, FailingBeforeClassTests.class);
+        MergingXmlRunListener listener =
+                new MergingXmlRunListener(
+                        report, SUITE_NAME, request.getRunner().getDescription());
+
+        runSamples(listener);
+        listener.endTestSuite();
+
+        assertReport(report.toByteArray());
+    }
+
+    @Test
+    public void testMergingReport_methodsFinishingOutOfOrder() throws Exception {
+        ByteArrayOutputStream report = new ByteArrayOutputStream();
+        Computer computer = new WorkerPoolComputer(3, WorkerPoolComputer.Mode.METHODS);
+        Request request = Request.classes(computer, OutOfOrderTests.class, SampleTests.class);
+        MergingXmlRunListener listener =
+                new MergingXmlRunListener(
+                        report, SUITE_NAME, request.getRunner().getDescription());
+        List<String> finished = Collections.synchronizedList(new ArrayList<>());
+        OutOfOrderTests.sFinishedB = new CountDownLatch(1);
+        OutOfOrderTests.sFinishedC = new CountDownLatch(1);
+
+        JUnitCore core = new JUnitCore();
+        core.addListener(listener);
+        core.addListener(
+                new RunListener() {
+                    @Override
+                    public void testFinished(Description description) {
+                        if (description.getTestClass() != OutOfOrderTests.class) {
+                            return;
+                        }
+                        finished.add(description.getMethodName());
+                        if (description.getMethodName().equals("b")) {
+                            OutOfOrderTests.sFinishedB.countDown();
+                        } else if (description.getMethodName().equals("c")) {
+                            OutOfOrderTests.sFinishedC.countDown();
+                        }
+                    }
+                });
+        sRunningSamples = true;
+        try {
+            core.run(request);
+        } finally {
+            sRunningSamples = false;
+        }
+        listener.endTestSuite();
+
+        assertEquals(Arrays.asList("c", "b", "a"), finished);
+        Element suite = parseReport(report.toByteArray());
+        assertEquals("8", suite.getAttribute(ATTR_TESTSUITE_TESTS));
+        assertEquals("2", suite.getAttribute(ATTR_TESTSUITE_FAILURES));
+        assertEquals("1", suite.getAttribute(ATTR_TESTSUITE_ERRORS));
+        assertEquals("1", suite.getAttribute(ATTR_TESTSUITE_SKIPPED));
+        List<String[]> expected = new ArrayList<>();
+        expected.add(new String[] {OutOfOrderTests.class.getName(), "a", ""});
+        expected.add(new String[] {OutOfOrderTests.class.getName(), "b", ELEMENT_FAILURE});
+        expected.add(new String[] {OutOfOrderTests.class.getName(), "c", ""});
+        expected.addAll(Arrays.asList(EXPECTED_TEST_CASES).subList(0, 5));
+        assertTestCases(expected, suite);
+    }
+
+    private static void runSamples(RunListener listener) {
+        JUnitCore core = new JUnitCore();
+        core.addListener(listener);
+        sRunningSamples = true;
+        try {
+            core.run(Request.classes(SampleTests.class, FailingBeforeClassTests.class));
+        } finally {
+            sRunningSamples = false;
+        }
+    }
+
+    /** Checks the summary and test cases of a report of the sample classes. */
+    private static void assertReport(byte[] report) throws Exception {
+        Element suite = parseReport(report);
+        assertEquals("6", suite.getAttribute(ATTR_TESTSUITE_TESTS));
+        assertEquals("1", suite.getAttribute(ATTR_TESTSUITE_FAILURES));
+        assertEquals("2", suite.getAttribute(ATTR_TESTSUITE_ERRORS));
+        assertEquals("1", suite.getAttribute(ATTR_TESTSUITE_SKIPPED));
+        assertTestCases(Arrays.asList(EXPECTED_TEST_CASES), suite);
+    }
+
+    /** Parses a report and checks the attributes and properties common to all reports. */
+    private static Element parseReport(byte[] report) throws Exception {
+        Element suite =
+                DocumentBuilderFactory.newInstance()
+                        .newDocumentBuilder()
+                        .parse(new ByteArrayInputStream(report))
+                        .getDocumentElement();
+        assertEquals(ELEMENT_TESTSUITE, suite.getTagName());
+        assertEquals(SUITE_NAME, suite.getAttribute(ATTR_TESTSUITE_NAME));
+        Double.parseDouble(suite.getAttribute(ATTR_TESTSUITE_TIME));
+        assertEquals(1, suite.getElementsByTagName(ELEMENT_PROPERTIES).getLength());
+        return suite;
+    }
+
+    /**
+     * Checks the test cases of a report, as the class name, test name and the element holding
+     * the result, if any.
+     */
+    private static void assertTestCases(List<String[]> expected, Element suite) {
+        List<String[]> testCases = new ArrayList<>();
+        for (Element testCase : childElements(suite, ELEMENT_TESTCASE)) {
+            List<Element> results = childElements(testCase, null);
+            testCases.add(
+                    new String[] {
+                        testCase.getAttribute(ATTR_TESTCASE_CLASSNAME),
+                        testCase.getAttribute(ATTR_TESTCASE_NAME),
+                        results.isEmpty() ? "" : results.get(0).getTagName()
+                    });
+            assertTrue(results.size() <= 1);
+        }
+        assertEquals(expected.size(), testCases.size());
+        for (int i = 0; i < expected.size(); i++) {
+            assertArrayEquals(expected.get(i), testCases.get(i));
+        }
+    }
+
+    /** Returns the child elements of an element, only those with the given tag name if any. */
+    private static List<Element> childElements(Element element, String tagName) {
+        List<Element> children = new ArrayList<>();
+        for (Node child = element.getFirstChild(); child != null; child = child.getNextSibling()) {
+            if (child.getNodeType() == Node.ELEMENT_NODE
+                    && (tagName == null || tagName.equals(child.getNodeName()))) {
+                children.add((Element) child);
+            }
+        }
+        return children;
+    }
+
+    /** Sample tests with each outcome, which are skipped unless run by these tests. */
+    @FixMethodOrder(MethodSorters.NAME_ASCENDING)
+    public static class SampleTests {
+        @BeforeClass
+        public static void setUpClass() {
+            assumeTrue(sRunningSamples);
+        }
+
+        @Test
+        public void passes() {}
+
+        @Test
+        public void fails() {
+            fail("Expected failure");
+        }
+
+        @Test
+        public void errors() {
+            throw new IllegalStateException("Expected error");
+        }
+
+        @Test
+        public void skipped() {
+            assumeTrue("Expected assumption failure", false);
+        }
+
+        @Ignore("Expected ignore")
+        @Test
+        public void ignored() {}
+    }
+
+    /**
+     * Sample tests that finish in the reverse of the order they are described in when run
+     * concurrently, each waiting for the next one to finish.
+     */
+    @FixMethodOrder(MethodSorters.NAME_ASCENDING)
+    public static class OutOfOrderTests {
+        static CountDownLatch sFinishedB;
+
+        static CountDownLatch sFinishedC;
+
+        @BeforeClass
+        public static void setUpClass() {
+            assumeTrue(sRunningSamples);
+        }
+
+        @Test
+        public void a() throws Exception {
+            assertTrue(sFinishedB.await(10, TimeUnit.SECONDS));
+        }
+
+        @Test
+        public void b() throws Exception {
+            assertTrue(sFinishedC.await(10, TimeUnit.SECONDS));
+            fail("Expected failure");
+        }
+
+        @Test
+        public void c() {}
+    }
+
+    /** Sample tests whose {@link BeforeClass} fails when run by these tests. */
+    public static class FailingBeforeClassTests {
+        @BeforeClass
+        public static void setUpClass() {
+            assumeTrue(sRunningSamples);
+            throw new IllegalStateException("Expected class error");
+        }
+
+        @Test
+        public void neverRuns() {}
+    }
+}
@@ -29,6 +29,8 @@ import org.kxml2.io.KXmlParser;
 import org.xmlpull.v1.XmlPullParser;
 
 import java.io.BufferedReader;
+import java.io.File;
+import java.io.IOException;
 import java.io.InputStreamReader;
 import java.io.Reader;
 import java.util.ArrayList;
@@ -63,6 +65,16 @@ public class FrameworkResources extends ResourceRepository {
         return new ResourceItem(name);
     }
 
+    /**
+     * Returns the public resources of the given type, in the order they are declared in
+     * public.xml, once they are loaded.
+     */
+    @NotNull
+    List<ResourceItem> getPublicResources(@NotNull ResourceType type) {
+        List<ResourceItem> items = mPublicResourceMap.get(type);
+        return items == null ? Collections.emptyList() : items;
+    }
+
     /**
      * Reads the public.xml file in data/res/values/ for a given resource folder and builds up
      * a map of public resources.
@@ -73,6 +85,67 @@ public class FrameworkResources extends ResourceRepository {
      * @param logger a logger to report issues to
      */
     public void loadPublicResources(@Nullable ILogger logger) {
+        loadPublicResources(logger, null);
+    }
+
+    /**
+     * Loads the resources and the public resources, from the snapshot saved in the given folder
+     * when they were last loaded from the same resource folder content, if there is one. Otherwise
+     * they are loaded from their files, as with {@link #loadResources()} and
+     * {@link #loadPublicResources(ILogger)}, and a snapshot is saved for the next time.
+     *
+     * @param snapshotFolder the folder the snapshots are saved in.
+     * @param logger a logger to report issues to
+     */
+    public void loadResources(@NotNull File snapshotFolder, @Nullable ILogger logger) {
+        File snapshotFile;
+        try {
+            snapshotFile = ResourceSnapshot.getSnapshotFile(getResFolder(), snapshotFolder);
+        } catch (IOException e) {
+            if (logger != null) {
+                logger.error(e, "Can't list the resource folder %s", getResFolder());
+            }
+            loadResources();
+            loadPublicResources(logger);
+            return;
+        }
+
+        try {
+            ResourceSnapshot.Reader reader = ResourceSnapshot.Reader.open(snapshotFile);
+            if (reader != null) {
+                restoreResources(reader);
+                mPublicResourceMap.clear();
+                while (reader.nextPublicResource()) {
+                    ResourceType type = ResourceType.fromXmlValue(reader.getPublicTypeName());
+                    if (type != null) {
+                        addPublicResource(type, reader.getPublicName());
+                    }
+                }
+                reader.end();
+                makePublicResourceMapUnmodifiable();
+                return;
+            }
+        } catch (IOException e) {
+            if (logger != null) {
+                logger.warning("Can't read the resource snapshot %s: %s", snapshotFile, e);
+            }
+        }
+
+        mPublicResourceMap.clear();
+        ResourceSnapshot.Recorder recorder = new ResourceSnapshot.Recorder();
+        loadResources(recorder);
+        loadPublicResources(logger, recorder);
+        try {
+            recorder.save(snapshotFile);
+        } catch (IOException e) {
+            if (logger != null) {
+                logger.warning("Can't save the resource snapshot %s: %s", snapshotFile, e);
+            }
+        }
+    }
+
+    private void loadPublicResources(@Nullable ILogger logger,
+            @Nullable ResourceSnapshot.Recorder recorder) {
         IAbstractFolder valueFolder = getResFolder().getFolder(SdkConstants.FD_RES_VALUES);
         if (!valueFolder.exists()) {
             return;
@@ -122,52 +195,10 @@ public class FrameworkResources extends ResourceRepository {
                                 lastTypeName = typeName;
                             }
                             if (type != null) {
-                                ResourceItem match = null;
-                                Map<String, ResourceItem> map = mResourceMap.get(type);
-                                if (map != null) {
-                                    match = map.get(name);
-                                }
-
-                                if (match != null) {
-                                    List<ResourceItem> publicList = mPublicResourceMap.get(type);
-                                    if (publicList == null) {
-                                        // Pick initial size for the list to hold the public
-                                        // resources. We could just use map.size() here,
-                                        // but they're usually much bigger; for example,
-                                        // in one platform version, there are 1500 drawables
-                                        // and 1200 strings but only 175 and 25 public ones
-                                        // respectively.
-                                        int size;
-                                        switch (type) {
-                                            case STYLE:
-                                                size = 500;
-                                                break;
-                                            case ATTR:
-                                                size = 1050;
-                                                break;
-                                            case DRAWABLE:
-                                                size = 200;
-                                                break;
-                                            case ID:
-                                                size = 50;
-                                                break;
-                                            case LAYOUT:
-                                            case COLOR:
-                                            case STRING:
-                                            case ANIM:
-                                            case INTERPOLATOR:
-                                                size = 30;
-                                                break;
-                                            default:
-                                                size = 10;
-                                                break;
-                                        }
-                                        publicList = new ArrayList<>(size);
-                                        mPublicResourceMap.put(type, publicList);
-                                    }
-
-                                    publicList.add(match);
+                                if (recorder != null) {
+                                    recorder.recordPublicResource(typeName, name);
                                 }
+                                addPublicResource(type, name);
                             }
                         }
                     } else if (event == XmlPullParser.END_DOCUMENT) {
@@ -181,6 +212,62 @@ public class FrameworkResources extends ResourceRepository {
             }
         }
 
+        makePublicResourceMapUnmodifiable();
+    }
+
+    /**
+     * Adds a resource to the map of public resources, if it exists.
+     */
+    private void addPublicResource(@NotNull ResourceType type, @NotNull String name) {
+        ResourceItem match = null;
+        Map<String, ResourceItem> map = mResourceMap.get(type);
+        if (map != null) {
+            match = map.get(name);
+        }
+
+        if (match != null) {
+            List<ResourceItem> publicList = mPublicResourceMap.get(type);
+            if (publicList == null) {
+                // Pick initial size for the list to hold the public
+                // resources. We could just use map.size() here,
+                // but they're usually much bigger; for example,
+                // in one platform version, there are 1500 drawables
+                // and 1200 strings but only 175 and 25 public ones
+                // respectively.
+                int size;
+                switch (type) {
+                    case STYLE:
+                        size = 500;
+                        break;
+                    case ATTR:
+                        size = 1050;
+                        break;
+                    case DRAWABLE:
+                        size = 200;
+                        break;
+                    case ID:
+                        size = 50;
+                        break;
+                    case LAYOUT:
+                    case COLOR:
+                    case STRING:
+                    case ANIM:
+                    case INTERPOLATOR:
+                        size = 30;
+                        break;
+                    default:
+                        size = 10;
+                        break;
+                }
+                publicList = new ArrayList<>(size);
+                mPublicResourceMap.put(type, publicList);
+            }
+
+            publicList.add(match);
+        }
+    }
+
+    private void makePublicResourceMapUnmodifiable() {
         // put unmodifiable list for all res type in the public resource map
         // this will simplify access
         for (ResourceType type : ResourceType.values()) {
@@ -73,6 +73,28 @@ public final class IdGeneratingResourceFile extends ResourceFile
         // Parse the file and look for @+id/ entries
         parseFileForIds();
 
+        ResourceSnapshot.Recorder recorder = context.getSnapshotRecorder();
+        if (recorder != null) {
+            recorder.recordIds(mIdResources.keySet());
+        }
+
+        // create the resource items in the repository
+        updateResourceItems(context);
+    }
+
+    @Override
+    void restore(ScanningContext context, ResourceSnapshot.Reader reader) throws IOException {
+        // Add the ids found in the file when the snapshot was taken, as the parser would
+        for (String id : reader.readIds()) {
+            addResourceValue(
+                    new ResourceValueImpl(
+                            new ResourceReference(
+                                    ResourceNamespace.fromBoolean(isFramework()),
+                                    ResourceType.ID,
+                                    id),
+                            null));
+        }
+
         // create the resource items in the repository
         updateResourceItems(context);
     }
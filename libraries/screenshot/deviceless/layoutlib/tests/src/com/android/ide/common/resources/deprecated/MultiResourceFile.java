@@ -23,9 +23,11 @@ import com.android.ide.common.resources.deprecated.ValueResourceParser.IValueRes
 import com.android.io.IAbstractFile;
 import com.android.io.StreamException;
 import com.android.resources.ResourceType;
+import com.android.tools.layoutlib.annotations.Nullable;
 import com.android.utils.XmlUtils;
 
 import org.xml.sax.SAXException;
+import org.xml.sax.helpers.DefaultHandler;
 
 import java.io.IOException;
 import java.util.Collection;
@@ -63,8 +65,20 @@ public final class MultiResourceFile extends ResourceFile implements IValueResou
     @Override
     protected void load(ScanningContext context) {
         // need to parse the file and find the content.
-        parseFile();
+        parseFile(context.getSnapshotRecorder());
 
+        loadResourceItems(context);
+    }
+
+    @Override
+    void restore(ScanningContext context, ResourceSnapshot.Reader reader) throws IOException {
+        // find the content parsed from the file when the snapshot was taken.
+        reader.replayValues(new ValueResourceParser(this, isFramework(), null));
+
+        loadResourceItems(context);
+    }
+
+    private void loadResourceItems(ScanningContext context) {
         // create new ResourceItems for the new content.
         mResourceTypeList = Collections.unmodifiableCollection(mResourceItems.keySet());
 
@@ -88,7 +102,7 @@ public final class MultiResourceFile extends ResourceFile implements IValueResou
         mResourceItems.clear();
 
         // need to parse the file and find the content.
-        parseFile();
+        parseFile(null);
 
         // create new ResourceItems for the new content.
         mResourceTypeList = Collections.unmodifiableCollection(mResourceItems.keySet());
@@ -139,12 +153,22 @@ public final class MultiResourceFile extends ResourceFile implements IValueResou
 
     /**
      * Parses the file and creates a list of {@link ResourceType}.
+     *
+     * @param recorder the recorder of the snapshot taken while parsing, or null.
      */
-    private void parseFile() {
+    private void parseFile(@Nullable ResourceSnapshot.Recorder recorder) {
+        DefaultHandler handler = new ValueResourceParser(this, isFramework(), null);
+        if (recorder != null) {
+            handler = recorder.recordValues(handler);
+        }
         try {
             SAXParser parser = XmlUtils.createSaxParser(sParserFactory);
-            parser.parse(getFile().getContents(), new ValueResourceParser(this, isFramework(), null));
+            parser.parse(getFile().getContents(), handler);
         } catch (ParserConfigurationException | IOException | StreamException | SAXException ignore) {
+        } finally {
+            if (recorder != null) {
+                recorder.endValues();
+            }
         }
     }
 
@@ -21,6 +21,8 @@ import com.android.ide.common.resources.configuration.Configurable;
 import com.android.ide.common.resources.configuration.FolderConfiguration;
 import com.android.resources.ResourceType;
 
+import java.io.IOException;
+
 /**
  * @deprecated This class is part of an obsolete resource repository system that is no longer used
  *     in production code. The class is preserved temporarily for LayoutLib tests.
@@ -39,6 +41,17 @@ public abstract class ResourceFile implements Configurable {
     protected abstract void load(ScanningContext context);
     protected abstract void update(ScanningContext context);
 
+    /**
+     * Loads the file from what was read from it when a snapshot was taken, instead of the file
+     * itself. Files that are not read when loaded are loaded as usual.
+     *
+     * @param context a context object with state for the current update.
+     * @param reader the reader of the snapshot, at the record of this file.
+     */
+    void restore(ScanningContext context, ResourceSnapshot.Reader reader) throws IOException {
+        load(context);
+    }
+
     @Override
     public FolderConfiguration getConfiguration() {
         return mFolder.getConfiguration();
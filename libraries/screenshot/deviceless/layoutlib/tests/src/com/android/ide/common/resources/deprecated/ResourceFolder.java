@@ -26,6 +26,7 @@ import com.android.resources.ResourceFolderType;
 import com.android.resources.ResourceType;
 import com.android.utils.SdkUtils;
 
+import java.io.IOException;
 import java.util.List;
 
 /**
@@ -72,8 +73,7 @@ public final class ResourceFolder implements Configurable {
             if (kind != ResourceDeltaKind.REMOVED) {
                 // create a ResourceFile for it.
 
-                resFile = createResourceFile(file);
-                resFile.load(context);
+                resFile = loadFile(file, context);
             }
         } else {
             if (kind != ResourceDeltaKind.REMOVED) {
@@ -84,6 +84,36 @@ public final class ResourceFolder implements Configurable {
         return resFile;
     }
 
+    /**
+     * Creates the {@link ResourceFile} of a file and loads it, recording it in the snapshot taken
+     * by the scan, if any.
+     */
+    private ResourceFile loadFile(TestFileWrapper file, ScanningContext context) {
+        ResourceSnapshot.Recorder recorder = context.getSnapshotRecorder();
+        if (recorder != null) {
+            recorder.recordFile(file);
+        }
+        ResourceFile resFile = createResourceFile(file);
+        resFile.load(context);
+        return resFile;
+    }
+
+    /**
+     * Creates the {@link ResourceFile} of a file and loads it from what was read from the file
+     * when the snapshot was taken, instead of the file itself.
+     *
+     * @param file the underlying resource file.
+     * @param context a context object with state for the current update.
+     * @param reader the reader of the snapshot, at the record of the file.
+     * @return the {@link ResourceFile} that was created.
+     */
+    ResourceFile restoreFile(TestFileWrapper file, ScanningContext context,
+            ResourceSnapshot.Reader reader) throws IOException {
+        ResourceFile resFile = createResourceFile(file);
+        resFile.restore(context, reader);
+        return resFile;
+    }
+
     private ResourceFile createResourceFile(TestFileWrapper file) {
         // check if that's a single or multi resource type folder. We have a special case
         // for ID generating resource types (layout/menu, and XML drawables, etc.).
@@ -136,9 +166,7 @@ public final class ResourceFolder implements Configurable {
         // If the file actually exists, the resource folder  may not have been
         // scanned yet; add it lazily
         if (file.exists()) {
-            ResourceFile resFile = createResourceFile(file);
-            resFile.load(context);
-            return resFile;
+            return loadFile(file, context);
         }
 
         return null;
@@ -26,6 +26,8 @@ import com.android.resources.ResourceType;
 import com.android.tools.layoutlib.annotations.NotNull;
 import com.android.tools.layoutlib.annotations.Nullable;
 
+import java.io.File;
+import java.io.IOException;
 import java.util.ArrayList;
 import java.util.Collection;
 import java.util.EnumMap;
@@ -84,8 +86,19 @@ public abstract class ResourceRepository {
      * @return true if the repository was just re-initialized.
      */
     private synchronized boolean ensureInitialized() {
+        return ensureInitialized(null);
+    }
+
+    /**
+     * Ensures that the repository has been initialized, recording what is read from each file
+     * into the given snapshot recorder if it is initialized now.
+     *
+     * @return true if the repository was just re-initialized.
+     */
+    private synchronized boolean ensureInitialized(
+            @Nullable ResourceSnapshot.Recorder snapshotRecorder) {
         if (mCleared && !mInitializing) {
-            ScanningContext context = new ScanningContext();
+            ScanningContext context = new ScanningContext(snapshotRecorder);
             mInitializing = true;
 
             IAbstractResource[] resources = mResourceFolder.listMembers();
@@ -315,6 +328,54 @@ public abstract class ResourceRepository {
         ensureInitialized();
     }
 
+    /**
+     * Loads the resources, recording what is read from each file into a snapshot.
+     */
+    void loadResources(@NotNull ResourceSnapshot.Recorder snapshotRecorder) {
+        clear();
+        ensureInitialized(snapshotRecorder);
+    }
+
+    /**
+     * Loads the resources from a snapshot taken when they were last loaded from their files,
+     * without reading the resource folder.
+     *
+     * @param reader the reader of the snapshot.
+     * @throws IOException if the snapshot could not be read, in which case the repository is left
+     *     cleared.
+     */
+    synchronized void restoreResources(@NotNull ResourceSnapshot.Reader reader)
+            throws IOException {
+        clear();
+        ScanningContext context = new ScanningContext();
+        mInitializing = true;
+        try {
+            String folderName = null;
+            TestFolderWrapper folder = null;
+            ResourceFolder resFolder = null;
+            while (reader.nextFile()) {
+                if (!reader.getFolderName().equals(folderName)) {
+                    folderName = reader.getFolderName();
+                    folder = mResourceFolder.getFolder(folderName);
+                    resFolder = processFolder(folder);
+                    if (resFolder == null) {
+                        throw new IOException("Invalid resource folder " + folderName);
+                    }
+                }
+                resFolder.restoreFile(
+                        new TestFileWrapper(new File(folder, reader.getFileName())),
+                        context,
+                        reader);
+            }
+            mCleared = false;
+        } catch (IOException e) {
+            clear();
+            throw e;
+        } finally {
+            mInitializing = false;
+        }
+    }
+
     protected void removeFile(@NotNull Collection<ResourceType> types,
             @NotNull ResourceFile file) {
         ensureInitialized();
@@ -0,0 +1,473 @@
+/*
+ * Copyright (C) 2026 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.android.ide.common.resources.deprecated;
+
+import com.android.tools.layoutlib.annotations.NotNull;
+import com.android.tools.layoutlib.annotations.Nullable;
+
+import org.xml.sax.Attributes;
+import org.xml.sax.SAXException;
+import org.xml.sax.helpers.AttributesImpl;
+import org.xml.sax.helpers.DefaultHandler;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.FileVisitResult;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.SimpleFileVisitor;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+
+/**
+ * Binary snapshot of what was read from the files of a resource folder when loading a
+ * {@link ResourceRepository}, so that a later load of the same folder, in another process, does
+ * not need to list the folder or parse any of its files.
+ * <p>
+ * The snapshot is a sequence of records, one for each resource file in the order they were loaded,
+ * followed by the public resources of {@link FrameworkResources}. The record of a values file holds
+ * the events of its XML parser, which are replayed into a new {@link ValueResourceParser}, so the
+ * resource values are created by the same code as when the file is parsed. The record of a file
+ * generating ids holds the names of the ids.
+ * <p>
+ * Each snapshot is saved in a file named after a hash of the path, size and modification time of
+ * every file in the resource folder, so that a snapshot is never used for resources other than
+ * those it was taken from.
+ */
+final class ResourceSnapshot {
+    private static final int MAGIC = 0x4C524553; // LRES
+    /** Version of the format, to be increased whenever it changes. */
+    private static final int VERSION = 1;
+
+    private static final byte RECORD_FILE = 1;
+    private static final byte RECORD_PUBLIC = 2;
+    private static final byte RECORD_END = 3;
+
+    private static final byte EVENT_START_ELEMENT = 1;
+    private static final byte EVENT_END_ELEMENT = 2;
+    private static final byte EVENT_CHARACTERS = 3;
+    private static final byte EVENT_END = 4;
+
+    private ResourceSnapshot() {}
+
+    /**
+     * Returns the file in the given snapshot folder holding the snapshot of the given resource
+     * folder in its current state.
+     *
+     * @param resFolder the resource folder.
+     * @param snapshotFolder the folder the snapshots are saved in.
+     * @throws IOException if the content of the resource folder cannot be listed.
+     */
+    @NotNull
+    static File getSnapshotFile(@NotNull File resFolder, @NotNull File snapshotFolder)
+            throws IOException {
+        Path root = resFolder.toPath();
+        // Sorted so that the hash does not depend on the order the files are listed in.
+        Map<String, String> files = new TreeMap<>();
+        Files.walkFileTree(root, new SimpleFileVisitor<Path>() {
+            @Override
+            public FileVisitResult visitFile(Path file, BasicFileAttributes attributes) {
+                files.put(root.relativize(file).toString(),
+                        attributes.size() + ":" + attributes.lastModifiedTime().toMillis());
+                return FileVisitResult.CONTINUE;
+            }
+        });
+
+        MessageDigest digest;
+        try {
+            digest = MessageDigest.getInstance("SHA-256");
+        } catch (NoSuchAlgorithmException e) {
+            throw new IOException(e);
+        }
+        digest.update(Integer.toString(VERSION).getBytes(StandardCharsets.UTF_8));
+        for (Map.Entry<String, String> file : files.entrySet()) {
+            digest.update(file.getKey().getBytes(StandardCharsets.UTF_8));
+            digest.update((byte) 0);
+            digest.update(file.getValue().getBytes(StandardCharsets.UTF_8));
+            digest.update((byte) 0);
+        }
+        StringBuilder name = new StringBuilder("resources-");
+        for (byte b : digest.digest()) {
+            name.append(String.format("%02x", b));
+        }
+        return new File(snapshotFolder, name.append(".bin").toString());
+    }
+
+    /**
+     * Records a snapshot while the resources are loaded from their files.
+     */
+    static final class Recorder {
+        private final Encoder mEncoder = new Encoder();
+
+        Recorder() {
+            mEncoder.writeInt(MAGIC);
+            mEncoder.writeInt(VERSION);
+        }
+
+        /**
+         * Starts the record of a resource file, which is followed by what was read from it, if
+         * anything.
+         */
+        void recordFile(@NotNull TestFileWrapper file) {
+            mEncoder.writeByte(RECORD_FILE);
+            mEncoder.writeString(file.getParentFile().getName());
+            mEncoder.writeString(file.getName());
+        }
+
+        /**
+         * Returns a handler recording the events of the XML parser of a values file before passing
+         * them to the given handler. {@link #endValues()} must be called once the file is parsed,
+         * even if parsing failed.
+         */
+        @NotNull
+        DefaultHandler recordValues(@NotNull DefaultHandler handler) {
+            return new DefaultHandler() {
+                @Override
+                public void startElement(String uri, String localName, String qName,
+                        Attributes attributes) throws SAXException {
+                    mEncoder.writeByte(EVENT_START_ELEMENT);
+                    mEncoder.writeString(qName);
+                    mEncoder.writeVarInt(attributes.getLength());
+                    for (int i = 0; i < attributes.getLength(); i++) {
+                        mEncoder.writeString(attributes.getQName(i));
+                        mEncoder.writeString(attributes.getValue(i));
+                    }
+                    handler.startElement(uri, localName, qName, attributes);
+                }
+
+                @Override
+                public void endElement(String uri, String localName, String qName)
+                        throws SAXException {
+                    mEncoder.writeByte(EVENT_END_ELEMENT);
+                    mEncoder.writeString(qName);
+                    handler.endElement(uri, localName, qName);
+                }
+
+                @Override
+                public void characters(char[] ch, int start, int length) throws SAXException {
+                    mEncoder.writeByte(EVENT_CHARACTERS);
+                    mEncoder.writeString(new String(ch, start, length));
+                    handler.characters(ch, start, length);
+                }
+            };
+        }
+
+        void endValues() {
+            mEncoder.writeByte(EVENT_END);
+        }
+
+        void recordIds(@NotNull Collection<String> names) {
+            mEncoder.writeVarInt(names.size());
+            for (String name : names) {
+                mEncoder.writeString(name);
+            }
+        }
+
+        void recordPublicResource(@NotNull String typeName, @NotNull String name) {
+            mEncoder.writeByte(RECORD_PUBLIC);
+            mEncoder.writeString(typeName);
+            mEncoder.writeString(name);
+        }
+
+        /**
+         * Ends the snapshot and saves it in the given file. The file is replaced atomically, so
+         * that other processes reading it never see a partial snapshot.
+         */
+        void save(@NotNull File snapshotFile) throws IOException {
+            mEncoder.writeByte(RECORD_END);
+            Path folder = snapshotFile.getParentFile().toPath();
+            Files.createDirectories(folder);
+            Path tmp = Files.createTempFile(folder, snapshotFile.getName(), ".tmp");
+            try {
+                Files.write(tmp, mEncoder.toByteArray());
+                Files.move(tmp, snapshotFile.toPath(), StandardCopyOption.ATOMIC_MOVE,
+                        StandardCopyOption.REPLACE_EXISTING);
+            } finally {
+                Files.deleteIfExists(tmp);
+            }
+        }
+    }
+
+    /**
+     * Reads a snapshot back, in the order it was recorded.
+     */
+    static final class Reader {
+        private final ByteBuffer mBuffer;
+        private final List<String> mStrings = new ArrayList<>();
+        private String mFolderName;
+        private String mFileName;
+        private String mPublicTypeName;
+        private String mPublicName;
+
+        private Reader(@NotNull ByteBuffer buffer) {
+            mBuffer = buffer;
+        }
+
+        /**
+         * Opens the snapshot saved in the given file.
+         *
+         * @return the reader, or null if the file does not exist.
+         * @throws IOException if the file cannot be read or is not a snapshot.
+         */
+        @Nullable
+        static Reader open(@NotNull File snapshotFile) throws IOException {
+            if (!snapshotFile.isFile()) {
+                return null;
+            }
+            MappedByteBuffer buffer;
+            try (FileChannel channel =
+                    FileChannel.open(snapshotFile.toPath(), StandardOpenOption.READ)) {
+                buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+            }
+            Reader reader = new Reader(buffer);
+            if (reader.readInt() != MAGIC || reader.readInt() != VERSION) {
+                throw new IOException("Not a resource snapshot: " + snapshotFile);
+            }
+            return reader;
+        }
+
+        /**
+         * Moves to the record of the next resource file, if there is one.
+         *
+         * @return true if a file record was read, false if there are no more.
+         */
+        boolean nextFile() throws IOException {
+            if (peekByte() != RECORD_FILE) {
+                return false;
+            }
+            readByte();
+            mFolderName = readString();
+            mFileName = readString();
+            return true;
+        }
+
+        @NotNull
+        String getFolderName() {
+            return mFolderName;
+        }
+
+        @NotNull
+        String getFileName() {
+            return mFileName;
+        }
+
+        /**
+         * Replays the events of the XML parser of the current values file into the given handler.
+         */
+        void replayValues(@NotNull DefaultHandler handler) throws IOException {
+            try {
+                while (true) {
+                    byte event = readByte();
+                    switch (event) {
+                        case EVENT_START_ELEMENT:
+                            String qName = readString();
+                            AttributesImpl attributes = new AttributesImpl();
+                            for (int i = readVarInt(); i > 0; i--) {
+                                String name = readString();
+                                attributes.addAttribute("", "", name, "CDATA", readString());
+                            }
+                            handler.startElement("", "", qName, attributes);
+                            break;
+                        case EVENT_END_ELEMENT:
+                            handler.endElement("", "", readString());
+                            break;
+                        case EVENT_CHARACTERS:
+                            char[] characters = readString().toCharArray();
+                            handler.characters(characters, 0, characters.length);
+                            break;
+                        case EVENT_END:
+                            return;
+                        default:
+                            throw new IOException("Unexpected event in resource snapshot: "
+                                    + event);
+                    }
+                }
+            } catch (SAXException e) {
+                throw new IOException(e);
+            }
+        }
+
+        /**
+         * Returns the names of the ids generated by the current file.
+         */
+        @NotNull
+        List<String> readIds() throws IOException {
+            int count = readVarInt();
+            List<String> names = new ArrayList<>(count);
+            for (int i = 0; i < count; i++) {
+                names.add(readString());
+            }
+            return names;
+        }
+
+        /**
+         * Moves to the next public resource, if there is one.
+         *
+         * @return true if a public resource was read, false if there are no more.
+         */
+        boolean nextPublicResource() throws IOException {
+            if (peekByte() != RECORD_PUBLIC) {
+                return false;
+            }
+            readByte();
+            mPublicTypeName = readString();
+            mPublicName = readString();
+            return true;
+        }
+
+        @NotNull
+        String getPublicTypeName() {
+            return mPublicTypeName;
+        }
+
+        @NotNull
+        String getPublicName() {
+            return mPublicName;
+        }
+
+        /**
+         * Checks that the whole snapshot was read.
+         */
+        void end() throws IOException {
+            if (readByte() != RECORD_END) {
+                throw new IOException("Unexpected record in resource snapshot");
+            }
+        }
+
+        private byte peekByte() throws IOException {
+            try {
+                return mBuffer.get(mBuffer.position());
+            } catch (IndexOutOfBoundsException e) {
+                throw new IOException("Truncated resource snapshot", e);
+            }
+        }
+
+        private byte readByte() throws IOException {
+            try {
+                return mBuffer.get();
+            } catch (BufferUnderflowException e) {
+                throw new IOException("Truncated resource snapshot", e);
+            }
+        }
+
+        private int readInt() throws IOException {
+            try {
+                return mBuffer.getInt();
+            } catch (BufferUnderflowException e) {
+                throw new IOException("Truncated resource snapshot", e);
+            }
+        }
+
+        private int readVarInt() throws IOException {
+            int value = 0;
+            for (int shift = 0; shift < 32; shift += 7) {
+                byte b = readByte();
+                value |= (b & 0x7F) << shift;
+                if (b >= 0) {
+                    return value;
+                }
+            }
+            throw new IOException("Malformed resource snapshot");
+        }
+
+        /**
+         * Reads a string, which is either a new one or the index of one already read.
+         */
+        @NotNull
+        private String readString() throws IOException {
+            int index = readVarInt();
+            if (index > 0) {
+                if (index > mStrings.size()) {
+                    throw new IOException("Malformed resource snapshot");
+                }
+                return mStrings.get(index - 1);
+            }
+            int length = readVarInt();
+            if (length > mBuffer.remaining()) {
+                throw new IOException("Truncated resource snapshot");
+            }
+            byte[] bytes = new byte[length];
+            mBuffer.get(bytes);
+            String string = new String(bytes, StandardCharsets.UTF_8);
+            mStrings.add(string);
+            return string;
+        }
+    }
+
+    /**
+     * Writes the snapshot, with each distinct string written only once.
+     */
+    private static final class Encoder {
+        private final ByteArrayOutputStream mOut = new ByteArrayOutputStream(1 << 20);
+        private final Map<String, Integer> mStrings = new HashMap<>();
+
+        void writeByte(byte b) {
+            mOut.write(b);
+        }
+
+        void writeInt(int value) {
+            mOut.write(value >>> 24);
+            mOut.write(value >>> 16);
+            mOut.write(value >>> 8);
+            mOut.write(value);
+        }
+
+        void writeVarInt(int value) {
+            while ((value & ~0x7F) != 0) {
+                mOut.write((value & 0x7F) | 0x80);
+                value >>>= 7;
+            }
+            mOut.write(value);
+        }
+
+        /**
+         * Writes a string as the index of the same string written before, or as 0 followed by
+         * the string itself if it was never written.
+         */
+        void writeString(@NotNull String string) {
+            Integer index = mStrings.get(string);
+            if (index != null) {
+                writeVarInt(index);
+                return;
+            }
+            mStrings.put(string, mStrings.size() + 1);
+            writeVarInt(0);
+            byte[] bytes = string.getBytes(StandardCharsets.UTF_8);
+            writeVarInt(bytes.length);
+            mOut.write(bytes, 0, bytes.length);
+        }
+
+        @NotNull
+        byte[] toByteArray() {
+            return mOut.toByteArray();
+        }
+    }
+}
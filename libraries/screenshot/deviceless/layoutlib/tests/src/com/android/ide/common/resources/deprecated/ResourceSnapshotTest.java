@@ -0,0 +1,323 @@
+/*
+ * Copyright (C) 2026 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.android.ide.common.resources.deprecated;
+
+import com.android.ide.common.rendering.api.ResourceValue;
+import com.android.ide.common.resources.ResourceValueMap;
+import com.android.ide.common.resources.configuration.FolderConfiguration;
+import com.android.resources.ResourceType;
+import com.android.utils.ILogger;
+
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeSet;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotEquals;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assume.assumeTrue;
+
+public class ResourceSnapshotTest {
+    private static final String PLATFORM_DIR_PROPERTY = "platform.dir";
+
+    private static final String STRINGS =
+            "<resources>\n"
+            + "    <string name=\"hello\">Hello</string>\n"
+            + "    <string name=\"escaped\">It\\'s &lt;b&gt; &amp; \\n</string>\n"
+            + "    <string name=\"styled\">Some <b>bold</b> <xliff:g>%1$d</xliff:g></string>\n"
+            + "    <item type=\"id\" name=\"declared_id\" />\n"
+            + "    <dimen name=\"margin\">4dp</dimen>\n"
+            + "</resources>\n";
+
+    @Rule public TemporaryFolder mTemporaryFolder = new TemporaryFolder();
+
+    private File mResDir;
+    private File mSnapshotDir;
+    private final List<String> mLogs = new ArrayList<>();
+    private final ILogger mLogger = new ILogger() {
+        @Override
+        public void error(Throwable t, String msgFormat, Object... args) {
+            mLogs.add("error: " + String.format(msgFormat, args));
+        }
+
+        @Override
+        public void warning(String msgFormat, Object... args) {
+            mLogs.add("warning: " + String.format(msgFormat, args));
+        }
+
+        @Override
+        public void info(String msgFormat, Object... args) {}
+
+        @Override
+        public void verbose(String msgFormat, Object... args) {}
+    };
+
+    @Before
+    public void setUp() throws IOException {
+        mResDir = mTemporaryFolder.newFolder("res");
+        mSnapshotDir = new File(mTemporaryFolder.getRoot(), "snapshots");
+        writeFile("values/strings.xml", STRINGS);
+        writeFile("values/attrs.xml",
+                "<resources>\n"
+                + "    <attr name=\"orientation\">\n"
+                + "        <enum name=\"horizontal\" value=\"0\" />\n"
+                + "        <enum name=\"vertical\" value=\"1\" />\n"
+                + "    </attr>\n"
+                + "    <attr name=\"gravity\">\n"
+                + "        <flag name=\"top\" value=\"0x30\" />\n"
+                + "        <flag name=\"fill\" value=\"0xffffffff\" />\n"
+                + "    </attr>\n"
+                + "    <declare-styleable name=\"View\">\n"
+                + "        <attr name=\"orientation\" />\n"
+                + "        <attr name=\"android:text\" />\n"
+                + "        <attr name=\"size\" format=\"dimension\" />\n"
+                + "    </declare-styleable>\n"
+                + "</resources>\n");
+        writeFile("values/styles.xml",
+                "<resources>\n"
+                + "    <style name=\"Theme\">\n"
+                + "        <item name=\"colorPrimary\">#ff000000</item>\n"
+                + "    </style>\n"
+                + "    <style name=\"Theme.Light\" parent=\"Theme\">\n"
+                + "        <item name=\"colorPrimary\">@color/white</item>\n"
+                + "        <item name=\"android:textSize\">12sp</item>\n"
+                + "    </style>\n"
+                + "    <string-array name=\"planets\">\n"
+                + "        <item>Mercury</item>\n"
+                + "        <item>@string/hello</item>\n"
+                + "    </string-array>\n"
+                + "    <integer-array name=\"sizes\">\n"
+                + "        <item>1</item>\n"
+                + "        <item>2</item>\n"
+                + "    </integer-array>\n"
+                + "    <color name=\"white\">#ffffffff</color>\n"
+                + "</resources>\n");
+        writeFile("values/public.xml",
+                "<resources>\n"
+                + "    <public type=\"attr\" name=\"orientation\" id=\"0x01010000\" />\n"
+                + "    <public type=\"string\" name=\"hello\" id=\"0x01040000\" />\n"
+                + "    <public type=\"style\" name=\"Theme\" id=\"0x01030000\" />\n"
+                + "    <public type=\"id\" name=\"title\" id=\"0x01020000\" />\n"
+                + "    <public type=\"string\" name=\"missing\" id=\"0x01040001\" />\n"
+                + "    <java-symbol type=\"string\" name=\"escaped\" />\n"
+                + "</resources>\n");
+        writeFile("values/broken.xml",
+                "<resources>\n"
+                + "    <bool name=\"before_error\">true</bool>\n"
+                + "    <bool name=\"unclosed\">true</resources>\n");
+        writeFile("values-fr/strings.xml",
+                "<resources>\n"
+                + "    <string name=\"hello\">Bonjour</string>\n"
+                + "</resources>\n");
+        writeFile("values-v21/styles.xml",
+                "<resources>\n"
+                + "    <style name=\"Theme\" parent=\"Theme.Base\" />\n"
+                + "</resources>\n");
+        writeFile("layout/main.xml",
+                "<LinearLayout xmlns:android=\"http://schemas.android.com/apk/res/android\"\n"
+                + "        android:id=\"@+id/root\">\n"
+                + "    <TextView android:id=\"@+id/title\" />\n"
+                + "    <TextView android:id=\"@+android:id/summary\"\n"
+                + "            android:layout_below=\"@id/title\" />\n"
+                + "</LinearLayout>\n");
+        writeFile("layout-land/main.xml",
+                "<FrameLayout xmlns:android=\"http://schemas.android.com/apk/res/android\"\n"
+                + "        android:id=\"@+id/land_root\" />\n");
+        writeFile("menu/options.xml",
+                "<menu xmlns:android=\"http://schemas.android.com/apk/res/android\">\n"
+                + "    <item android:id=\"@+id/settings\" />\n"
+                + "</menu>\n");
+        writeFile("drawable/shape.xml",
+                "<shape xmlns:android=\"http://schemas.android.com/apk/res/android\" />\n");
+        writeFile("drawable-hdpi/icon.png", "not really a png");
+    }
+
+    @Test
+    public void testSnapshotMatchesParsedResources() {
+        FrameworkResources parsed = loadParsed(mResDir);
+
+        // The first load parses the files and saves a snapshot, the second one replays it.
+        FrameworkResources recorded = loadFromSnapshot(mResDir);
+        assertEquals(1, mSnapshotDir.list().length);
+        FrameworkResources replayed = loadFromSnapshot(mResDir);
+        assertEquals(1, mSnapshotDir.list().length);
+        assertEquals(Collections.emptyList(), mLogs);
+
+        assertRepositoriesEqual(parsed, recorded, mResDir);
+        assertRepositoriesEqual(parsed, replayed, mResDir);
+    }
+
+    @Test
+    public void testSnapshotIsReplayedWithoutReadingFiles() throws IOException {
+        loadFromSnapshot(mResDir);
+
+        // Change a value without changing the size or modification time of the file, which the
+        // snapshot does not detect, to tell whether the values come from the snapshot.
+        File strings = new File(mResDir, "values/strings.xml");
+        long lastModified = strings.lastModified();
+        Files.write(strings.toPath(),
+                STRINGS.replace(">Hello<", ">Howdy<").getBytes(StandardCharsets.UTF_8));
+        assertTrue(strings.setLastModified(lastModified));
+
+        assertEquals("Howdy", getDefaultValue(loadParsed(mResDir), ResourceType.STRING, "hello"));
+        assertEquals("Hello",
+                getDefaultValue(loadFromSnapshot(mResDir), ResourceType.STRING, "hello"));
+    }
+
+    @Test
+    public void testChangedResourcesTakeNewSnapshot() throws IOException {
+        loadFromSnapshot(mResDir);
+
+        writeFile("values/strings.xml", STRINGS.replace(">Hello<", ">Hello again<"));
+        FrameworkResources reloaded = loadFromSnapshot(mResDir);
+        assertEquals("Hello again", getDefaultValue(reloaded, ResourceType.STRING, "hello"));
+        assertEquals(2, mSnapshotDir.list().length);
+
+        assertRepositoriesEqual(loadParsed(mResDir), loadFromSnapshot(mResDir), mResDir);
+        assertEquals(2, mSnapshotDir.list().length);
+    }
+
+    @Test
+    public void testTruncatedSnapshotIsReplaced() throws IOException {
+        loadFromSnapshot(mResDir);
+        File snapshot = mSnapshotDir.listFiles()[0];
+        byte[] content = Files.readAllBytes(snapshot.toPath());
+        FrameworkResources parsed = loadParsed(mResDir);
+
+        // Cut the snapshot in the middle of the resource files, then at its very end, after the
+        // public resources were read.
+        for (int length : new int[] {content.length / 2, content.length - 1}) {
+            mLogs.clear();
+            try (RandomAccessFile file = new RandomAccessFile(snapshot, "rw")) {
+                file.setLength(length);
+            }
+
+            FrameworkResources reloaded = loadFromSnapshot(mResDir);
+            assertEquals(1, mLogs.size());
+            assertTrue(mLogs.get(0), mLogs.get(0).startsWith("warning: Can't read"));
+            assertRepositoriesEqual(parsed, reloaded, mResDir);
+            assertArrayEquals(content, Files.readAllBytes(snapshot.toPath()));
+        }
+    }
+
+    @Test
+    public void testFrameworkSnapshotMatchesParsedResources() {
+        String platformDir = System.getProperty(PLATFORM_DIR_PROPERTY);
+        assumeTrue(platformDir != null);
+        File resDir = new File(platformDir, "data/res");
+        assumeTrue(resDir.isDirectory());
+
+        FrameworkResources parsed = loadParsed(resDir);
+        FrameworkResources recorded = loadFromSnapshot(resDir);
+        FrameworkResources replayed = loadFromSnapshot(resDir);
+        assertEquals(Collections.emptyList(), mLogs);
+        assertFalse(parsed.getPublicResources(ResourceType.ATTR).isEmpty());
+
+        assertRepositoriesEqual(parsed, recorded, resDir);
+        assertRepositoriesEqual(parsed, replayed, resDir);
+    }
+
+    private FrameworkResources loadParsed(File resDir) {
+        FrameworkResources resources = new FrameworkResources(new TestFolderWrapper(resDir));
+        resources.loadResources();
+        resources.loadPublicResources(mLogger);
+        return resources;
+    }
+
+    private FrameworkResources loadFromSnapshot(File resDir) {
+        FrameworkResources resources = new FrameworkResources(new TestFolderWrapper(resDir));
+        resources.loadResources(mSnapshotDir, mLogger);
+        return resources;
+    }
+
+    private void writeFile(String path, String content) throws IOException {
+        File file = new File(mResDir, path);
+        file.getParentFile().mkdirs();
+        Files.write(file.toPath(), content.getBytes(StandardCharsets.UTF_8));
+    }
+
+    private static String getDefaultValue(ResourceRepository resources, ResourceType type,
+            String name) {
+        FolderConfiguration config = FolderConfiguration.getConfig(new String[] {"values"});
+        return resources.getConfiguredResources(config).get(type).get(name).getValue();
+    }
+
+    /**
+     * Checks that two repositories of the same resource folder have the same resources, with the
+     * same values in the configuration of each of its folders, and the same public resources.
+     */
+    private static void assertRepositoriesEqual(FrameworkResources expected,
+            FrameworkResources actual, File resDir) {
+        for (ResourceType type : ResourceType.values()) {
+            assertEquals(type.getName(), getNames(expected, type), getNames(actual, type));
+            assertEquals(type.getName(), getNames(expected.getPublicResources(type)),
+                    getNames(actual.getPublicResources(type)));
+        }
+
+        Set<String> folderNames = new TreeSet<>();
+        for (File folder : resDir.listFiles()) {
+            folderNames.add(folder.getName());
+        }
+        int configs = 0;
+        for (String folderName : folderNames) {
+            FolderConfiguration config = FolderConfiguration.getConfig(folderName.split("-"));
+            if (config == null) {
+                continue;
+            }
+            Map<ResourceType, ResourceValueMap> expectedValues =
+                    expected.getConfiguredResources(config);
+            Map<ResourceType, ResourceValueMap> actualValues =
+                    actual.getConfiguredResources(config);
+            for (ResourceType type : ResourceType.values()) {
+                assertEquals(folderName + " " + type.getName(),
+                        new HashMap<String, ResourceValue>(expectedValues.get(type)),
+                        new HashMap<String, ResourceValue>(actualValues.get(type)));
+            }
+            configs++;
+        }
+        assertNotEquals(0, configs);
+    }
+
+    private static Set<String> getNames(ResourceRepository resources, ResourceType type) {
+        Map<String, ResourceItem> items = resources.mResourceMap.get(type);
+        return items == null ? Collections.emptySet() : new TreeSet<>(items.keySet());
+    }
+
+    private static List<String> getNames(List<ResourceItem> items) {
+        List<String> names = new ArrayList<>();
+        for (ResourceItem item : items) {
+            names.add(item.getName());
+        }
+        return names;
+    }
+}
@@ -15,6 +15,8 @@
  */
 package com.android.ide.common.resources.deprecated;
 
+import com.android.tools.layoutlib.annotations.Nullable;
+
 /**
  * @deprecated This class is part of an obsolete resource repository system that is no longer used
  *     in production code. The class is preserved temporarily for LayoutLib tests.
@@ -22,6 +24,26 @@ package com.android.ide.common.resources.deprecated;
 @Deprecated
 public class ScanningContext {
     private boolean mNeedsFullAapt;
+    @Nullable private final ResourceSnapshot.Recorder mSnapshotRecorder;
+
+    public ScanningContext() {
+        this(null);
+    }
+
+    /**
+     * Creates a context for a scan recording what it reads from each file into a snapshot.
+     */
+    ScanningContext(@Nullable ResourceSnapshot.Recorder snapshotRecorder) {
+        mSnapshotRecorder = snapshotRecorder;
+    }
+
+    /**
+     * Returns the recorder of the snapshot taken by this scan, or null if none is taken.
+     */
+    @Nullable
+    ResourceSnapshot.Recorder getSnapshotRecorder() {
+        return mSnapshotRecorder;
+    }
 
     /**
      * Marks that a full aapt compilation of the resources is necessary because it has
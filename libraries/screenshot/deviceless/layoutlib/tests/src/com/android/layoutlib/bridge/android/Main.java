@@ -16,7 +16,12 @@
 
 package com.android.layoutlib.bridge.android;
 
+import com.android.ide.common.resources.deprecated.ResourceSnapshotTest;
 import com.android.layoutlib.bridge.android.SampleRenderTest;
+import com.android.layoutlib.bridge.intensive.util.ImageUtilsTest;
+import com.android.layoutlib.bridge.intensive.util.perf.BaselineComparisonTest;
+import com.android.layoutlib.bridge.intensive.util.perf.LongStatsCollectorTest;
+import com.android.layoutlib.bridge.intensive.util.perf.SteadyStateDetectorTest;
 import org.junit.runner.RunWith;
 import org.junit.runners.Suite;
 import org.junit.runners.Suite.SuiteClasses;
@@ -26,7 +31,12 @@ import org.junit.runners.Suite.SuiteClasses;
  */
 @RunWith(Suite.class)
 @SuiteClasses({
-    SampleRenderTest.class
+    SampleRenderTest.class,
+    ImageUtilsTest.class,
+    BaselineComparisonTest.class,
+    LongStatsCollectorTest.class,
+    SteadyStateDetectorTest.class,
+    ResourceSnapshotTest.class
 })
 public class Main {
 }
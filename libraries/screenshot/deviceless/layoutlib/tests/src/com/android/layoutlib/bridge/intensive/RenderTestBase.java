@@ -85,6 +85,10 @@ import static org.junit.Assert.fail;
  * falls back to getClass().getProtectionDomain().getCodeSource().getLocation()
  * <p>
  * The app resources are at: test_res.dir/testApp/MyApplication/app/src/main/res
+ * <p>
+ * The framework resources are loaded from a snapshot taken when they were last loaded from the
+ * same files, if there is one, which is saved in the directory set by the resource.snapshot.dir
+ * system property, or in a directory of java.io.tmpdir otherwise.
  */
 public class RenderTestBase {
 
@@ -105,6 +109,7 @@ public class RenderTestBase {
     private static final String KEYBOARD_DIR_PROPERTY = "keyboard.dir";
     private static final String PLATFORM_DIR_PROPERTY = "platform.dir";
     private static final String RESOURCE_DIR_PROPERTY = "test_res.dir";
+    private static final String RESOURCE_SNAPSHOT_DIR_PROPERTY = "resource.snapshot.dir";
 
     private static final String NATIVE_LIB_DIR_PATH;
     private static final String FONT_DIR;
@@ -223,6 +228,14 @@ public class RenderTestBase {
         return keyboardDir;
     }    
 
+    private static File getResourceSnapshotDir() {
+        String snapshotDir = System.getProperty(RESOURCE_SNAPSHOT_DIR_PROPERTY);
+        if (snapshotDir == null) {
+            return new File(System.getProperty("java.io.tmpdir"), "layoutlib-resources");
+        }
+        return new File(snapshotDir);
+    }
+
     private static String getPlatformDir() {
         String platformDir = System.getProperty(PLATFORM_DIR_PROPERTY);
         if (platformDir != null && !platformDir.isEmpty() && new File(platformDir).isDirectory()) {
@@ -378,8 +391,7 @@ public class RenderTestBase {
         File data_dir = new File(PLATFORM_DIR, "data");
         File res = new File(data_dir, "res");
         sFrameworkRepo = new FrameworkResources(new TestFolderWrapper(res));
-        sFrameworkRepo.loadResources();
-        sFrameworkRepo.loadPublicResources(getLogger());
+        sFrameworkRepo.loadResources(getResourceSnapshotDir(), getLogger());
 
         sProjectResources =
                 new ResourceRepository(new TestFolderWrapper(TEST_RES_DIR + "/" + APP_TEST_RES),
@@ -17,17 +17,30 @@
 package com.android.layoutlib.bridge.intensive.util;
 
 import android.annotation.NonNull;
+import android.annotation.Nullable;
 
 import java.awt.Color;
 import java.awt.Graphics;
 import java.awt.image.BufferedImage;
+import java.awt.image.DataBuffer;
+import java.awt.image.DataBufferByte;
+import java.awt.image.DataBufferInt;
+import java.awt.image.PixelInterleavedSampleModel;
+import java.awt.image.Raster;
+import java.awt.image.SampleModel;
+import java.awt.image.SinglePixelPackedSampleModel;
 import java.io.File;
 import java.io.IOException;
 import java.io.InputStream;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
 
 import javax.imageio.ImageIO;
 
+import static java.awt.image.BufferedImage.TYPE_4BYTE_ABGR;
 import static java.awt.image.BufferedImage.TYPE_INT_ARGB;
+import static java.awt.image.BufferedImage.TYPE_INT_RGB;
 import static java.io.File.separatorChar;
 import static org.junit.Assert.assertEquals;
 import static org.junit.Assert.assertTrue;
@@ -53,10 +66,22 @@ public class ImageUtils {
 
     private static final double MAX_PERCENT_DIFFERENCE = 0.1;
 
+    /**
+     * Maximum number of pixels of the golden images kept decoded in memory, 64MB worth of ARGB
+     * pixels, so that tests comparing with the same golden image several times, such as
+     * performance tests, only decode it once.
+     */
+    private static final long MAX_CACHED_GOLDEN_PIXELS = 16 * 1024 * 1024;
+
+    /** Decoded golden images, converted to ARGB, by path, in least recently used order. */
+    private static final LinkedHashMap<String, BufferedImage> sGoldenImages =
+            new LinkedHashMap<>(16, 0.75f, true);
+    private static long sCachedGoldenPixels;
+
     public static void requireSimilar(@NonNull String relativePath, @NonNull BufferedImage image)
             throws IOException {
-        InputStream is = ImageUtils.class.getClassLoader().getResourceAsStream(relativePath);
-        if (is == null) {
+        BufferedImage goldenImage = getGoldenImage(relativePath);
+        if (goldenImage == null) {
             String message = "Unable to load golden image: " + relativePath + "\n";
             message = saveImageAndAppendMessage(image, message, relativePath);
             if (FAIL_ON_MISSING_GOLDEN) {
@@ -66,23 +91,62 @@ public class ImageUtils {
             }
         }
         else {
-            try {
-                BufferedImage goldenImage = ImageIO.read(is);
-                assertImageSimilar(relativePath, goldenImage, image, MAX_PERCENT_DIFFERENCE);
-            } finally {
-                is.close();
+            assertImageSimilar(relativePath, goldenImage, image, MAX_PERCENT_DIFFERENCE);
+        }
+    }
+
+    /**
+     * Returns the golden image at the given path, converted to ARGB, from the cache if it was
+     * decoded before.
+     *
+     * @return the image, or null if there is none at the given path.
+     */
+    @Nullable
+    private static BufferedImage getGoldenImage(@NonNull String relativePath) throws IOException {
+        BufferedImage goldenImage = sGoldenImages.get(relativePath);
+        if (goldenImage != null) {
+            return goldenImage;
+        }
+
+        try (InputStream is =
+                ImageUtils.class.getClassLoader().getResourceAsStream(relativePath)) {
+            if (is == null) {
+                return null;
+            }
+            goldenImage = toArgb(ImageIO.read(is));
+        }
+
+        long pixels = (long) goldenImage.getWidth() * goldenImage.getHeight();
+        if (pixels <= MAX_CACHED_GOLDEN_PIXELS) {
+            sGoldenImages.put(relativePath, goldenImage);
+            sCachedGoldenPixels += pixels;
+            Iterator<Map.Entry<String, BufferedImage>> eldest =
+                    sGoldenImages.entrySet().iterator();
+            while (sCachedGoldenPixels > MAX_CACHED_GOLDEN_PIXELS) {
+                BufferedImage evicted = eldest.next().getValue();
+                eldest.remove();
+                sCachedGoldenPixels -= (long) evicted.getWidth() * evicted.getHeight();
             }
         }
+        return goldenImage;
+    }
+
+    @NonNull
+    private static BufferedImage toArgb(@NonNull BufferedImage image) {
+        if (image.getType() == TYPE_INT_ARGB) {
+            return image;
+        }
+        BufferedImage temp = new BufferedImage(image.getWidth(), image.getHeight(),
+                TYPE_INT_ARGB);
+        Graphics g = temp.getGraphics();
+        g.drawImage(image, 0, 0, null);
+        g.dispose();
+        return temp;
     }
 
     public static void assertImageSimilar(String relativePath, BufferedImage goldenImage,
             BufferedImage image, double maxPercentDifferent) throws IOException {
-        if (goldenImage.getType() != TYPE_INT_ARGB) {
-            BufferedImage temp = new BufferedImage(goldenImage.getWidth(), goldenImage.getHeight(),
-                    TYPE_INT_ARGB);
-            temp.getGraphics().drawImage(goldenImage, 0, 0, null);
-            goldenImage = temp;
-        }
+        goldenImage = toArgb(goldenImage);
         assertEquals(TYPE_INT_ARGB, goldenImage.getType());
 
         int imageWidth = Math.min(goldenImage.getWidth(), image.getWidth());
@@ -94,56 +158,27 @@ public class ImageUtils {
         // goldenImage = blur(goldenImage, 6);
         // image = blur(image, 6);
 
-        int width = 3 * imageWidth;
-        @SuppressWarnings("UnnecessaryLocalVariable")
-        int height = imageHeight; // makes code more readable
-        BufferedImage deltaImage = new BufferedImage(width, height, TYPE_INT_ARGB);
-        Graphics g = deltaImage.getGraphics();
+        // 3 different colors, 256 color levels
+        long total = imageHeight * imageWidth * 3L * 256L;
 
-        // Compute delta map
+        // Compute the delta over whole rows of pixels, stopping as soon as the images are known
+        // to differ too much. The delta image is only drawn if the images differ.
+        RowReader goldenRows = new RowReader(goldenImage, imageWidth);
+        RowReader rows = new RowReader(image, imageWidth);
         long delta = 0;
         for (int y = 0; y < imageHeight; y++) {
-            for (int x = 0; x < imageWidth; x++) {
-                int goldenRgb = goldenImage.getRGB(x, y);
-                int rgb = image.getRGB(x, y);
-                if (goldenRgb == rgb) {
-                    deltaImage.setRGB(imageWidth + x, y, 0x00808080);
-                    continue;
-                }
-
-                // If the pixels have no opacity, don't delta colors at all
-                if (((goldenRgb & 0xFF000000) == 0) && (rgb & 0xFF000000) == 0) {
-                    deltaImage.setRGB(imageWidth + x, y, 0x00808080);
-                    continue;
-                }
-
-                int deltaR = ((rgb & 0xFF0000) >>> 16) - ((goldenRgb & 0xFF0000) >>> 16);
-                int newR = 128 + deltaR & 0xFF;
-                int deltaG = ((rgb & 0x00FF00) >>> 8) - ((goldenRgb & 0x00FF00) >>> 8);
-                int newG = 128 + deltaG & 0xFF;
-                int deltaB = (rgb & 0x0000FF) - (goldenRgb & 0x0000FF);
-                int newB = 128 + deltaB & 0xFF;
-
-                int avgAlpha = ((((goldenRgb & 0xFF000000) >>> 24)
-                        + ((rgb & 0xFF000000) >>> 24)) / 2) << 24;
-
-                int newRGB = avgAlpha | newR << 16 | newG << 8 | newB;
-                deltaImage.setRGB(imageWidth + x, y, newRGB);
-
-                delta += Math.abs(deltaR);
-                delta += Math.abs(deltaG);
-                delta += Math.abs(deltaB);
+            delta += getRowDelta(goldenRows.read(y), goldenRows.getOffset(), rows.read(y),
+                    rows.getOffset(), imageWidth);
+            if (getPercentDifference(delta, total) > maxPercentDifferent) {
+                break;
             }
         }
-
-        // 3 different colors, 256 color levels
-        long total = imageHeight * imageWidth * 3L * 256L;
-        float percentDifference = (float) (delta * 100 / (double) total);
+        float percentDifference = getPercentDifference(delta, total);
 
         String error = null;
         String imageName = getName(relativePath);
         if (percentDifference > maxPercentDifferent) {
-            error = String.format("Images differ (by %.1f%%)", percentDifference);
+            error = "Images differ";
         } else if (Math.abs(goldenImage.getWidth() - image.getWidth()) >= 2) {
             error = "Widths differ too much for " + imageName + ": " +
                     goldenImage.getWidth() + "x" + goldenImage.getHeight() +
@@ -155,6 +190,18 @@ public class ImageUtils {
         }
 
         if (error != null) {
+            int width = 3 * imageWidth;
+            @SuppressWarnings("UnnecessaryLocalVariable")
+            int height = imageHeight; // makes code more readable
+            BufferedImage deltaImage = new BufferedImage(width, height, TYPE_INT_ARGB);
+            Graphics g = deltaImage.getGraphics();
+
+            delta = drawDelta(goldenImage, image, deltaImage, imageWidth, imageHeight);
+            if (percentDifference > maxPercentDifferent) {
+                error = String.format("Images differ (by %.1f%%)",
+                        getPercentDifference(delta, total));
+            }
+
             // Expected on the left
             // Golden on the right
             g.drawImage(goldenImage, 0, 0, null);
@@ -166,6 +213,7 @@ public class ImageUtils {
                 g.drawString("Expected", 10, 20);
                 g.drawString("Actual", 2 * imageWidth + 10, 20);
             }
+            g.dispose();
 
             File output = new File(getFailureDir(), "delta-" + imageName);
             if (output.exists()) {
@@ -178,8 +226,159 @@ public class ImageUtils {
             System.out.println(error);
             fail(error);
         }
+    }
 
-        g.dispose();
+    private static float getPercentDifference(long delta, long total) {
+        return (float) (delta * 100 / (double) total);
+    }
+
+    /**
+     * Returns the sum of the differences of the color components of two rows of ARGB pixels,
+     * ignoring the pixels that are fully transparent in both rows.
+     */
+    private static long getRowDelta(int[] goldenRow, int goldenOffset, int[] row, int offset,
+            int width) {
+        long delta = 0;
+        for (int x = 0; x < width; x++) {
+            int goldenRgb = goldenRow[goldenOffset + x];
+            int rgb = row[offset + x];
+            if (goldenRgb == rgb) {
+                continue;
+            }
+
+            // If the pixels have no opacity, don't delta colors at all
+            if (((goldenRgb & 0xFF000000) == 0) && (rgb & 0xFF000000) == 0) {
+                continue;
+            }
+
+            delta += Math.abs(((rgb & 0xFF0000) >>> 16) - ((goldenRgb & 0xFF0000) >>> 16));
+            delta += Math.abs(((rgb & 0x00FF00) >>> 8) - ((goldenRgb & 0x00FF00) >>> 8));
+            delta += Math.abs((rgb & 0x0000FF) - (goldenRgb & 0x0000FF));
+        }
+        return delta;
+    }
+
+    /**
+     * Draws the delta map of two images in the middle third of the delta image.
+     *
+     * @return the sum of the differences of the color components of the two images.
+     */
+    private static long drawDelta(BufferedImage goldenImage, BufferedImage image,
+            BufferedImage deltaImage, int imageWidth, int imageHeight) {
+        long delta = 0;
+        for (int y = 0; y < imageHeight; y++) {
+            for (int x = 0; x < imageWidth; x++) {
+                int goldenRgb = goldenImage.getRGB(x, y);
+                int rgb = image.getRGB(x, y);
+                if (goldenRgb == rgb) {
+                    deltaImage.setRGB(imageWidth + x, y, 0x00808080);
+                    continue;
+                }
+
+                // If the pixels have no opacity, don't delta colors at all
+                if (((goldenRgb & 0xFF000000) == 0) && (rgb & 0xFF000000) == 0) {
+                    deltaImage.setRGB(imageWidth + x, y, 0x00808080);
+                    continue;
+                }
+
+                int deltaR = ((rgb & 0xFF0000) >>> 16) - ((goldenRgb & 0xFF0000) >>> 16);
+                int newR = 128 + deltaR & 0xFF;
+                int deltaG = ((rgb & 0x00FF00) >>> 8) - ((goldenRgb & 0x00FF00) >>> 8);
+                int newG = 128 + deltaG & 0xFF;
+                int deltaB = (rgb & 0x0000FF) - (goldenRgb & 0x0000FF);
+                int newB = 128 + deltaB & 0xFF;
+
+                int avgAlpha = ((((goldenRgb & 0xFF000000) >>> 24)
+                        + ((rgb & 0xFF000000) >>> 24)) / 2) << 24;
+
+                int newRGB = avgAlpha | newR << 16 | newG << 8 | newB;
+                deltaImage.setRGB(imageWidth + x, y, newRGB);
+
+                delta += Math.abs(deltaR);
+                delta += Math.abs(deltaG);
+                delta += Math.abs(deltaB);
+            }
+        }
+        return delta;
+    }
+
+    /**
+     * Reads the rows of an image as ARGB pixels, the same as {@link BufferedImage#getRGB}
+     * returns. The pixels of ARGB images are read in place from their raster, and those of RGB
+     * and ABGR images are converted from their raster, without going through the color model.
+     */
+    static class RowReader {
+        private final BufferedImage mImage;
+        private final int mWidth;
+        private final int mType;
+        private int[] mPixels;
+        private byte[] mBytes;
+        private int mScanlineStride;
+        private int mRowOffset;
+        private int[] mRow;
+
+        RowReader(BufferedImage image, int width) {
+            mImage = image;
+            mWidth = width;
+            Raster raster = image.getRaster();
+            SampleModel sampleModel = raster.getSampleModel();
+            DataBuffer dataBuffer = raster.getDataBuffer();
+            // Only whole images are read from their raster, not sub-images of a larger one.
+            boolean whole = raster.getSampleModelTranslateX() == 0
+                    && raster.getSampleModelTranslateY() == 0
+                    && dataBuffer.getNumBanks() == 1
+                    && dataBuffer.getOffset() == 0;
+            int type = image.getType();
+            if (whole && (type == TYPE_INT_ARGB || type == TYPE_INT_RGB)
+                    && sampleModel instanceof SinglePixelPackedSampleModel) {
+                mPixels = ((DataBufferInt) dataBuffer).getData();
+                mScanlineStride =
+                        ((SinglePixelPackedSampleModel) sampleModel).getScanlineStride();
+            } else if (whole && type == TYPE_4BYTE_ABGR
+                    && sampleModel instanceof PixelInterleavedSampleModel) {
+                mBytes = ((DataBufferByte) dataBuffer).getData();
+                mScanlineStride = ((PixelInterleavedSampleModel) sampleModel).getScanlineStride();
+            } else {
+                type = -1;
+            }
+            mType = type;
+            if (mType != TYPE_INT_ARGB) {
+                mRow = new int[width];
+            }
+        }
+
+        /**
+         * Returns the array holding the given row, starting at {@link #getOffset()}.
+         */
+        int[] read(int y) {
+            switch (mType) {
+                case TYPE_INT_ARGB:
+                    mRowOffset = y * mScanlineStride;
+                    return mPixels;
+                case TYPE_INT_RGB:
+                    for (int x = 0, i = y * mScanlineStride; x < mWidth; x++, i++) {
+                        mRow[x] = 0xFF000000 | (mPixels[i] & 0xFFFFFF);
+                    }
+                    break;
+                case TYPE_4BYTE_ABGR:
+                    for (int x = 0, i = y * mScanlineStride; x < mWidth; x++, i += 4) {
+                        mRow[x] = (mBytes[i] & 0xFF) << 24
+                                | (mBytes[i + 3] & 0xFF) << 16
+                                | (mBytes[i + 2] & 0xFF) << 8
+                                | (mBytes[i + 1] & 0xFF);
+                    }
+                    break;
+                default:
+                    mImage.getRGB(0, y, mWidth, 1, mRow, 0, mWidth);
+                    break;
+            }
+            mRowOffset = 0;
+            return mRow;
+        }
+
+        int getOffset() {
+            return mRowOffset;
+        }
     }
 
     /**
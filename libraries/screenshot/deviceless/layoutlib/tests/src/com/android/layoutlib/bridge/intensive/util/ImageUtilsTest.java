@@ -0,0 +1,113 @@
+/*
+ * Copyright (C) 2026 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.android.layoutlib.bridge.intensive.util;
+
+import com.android.layoutlib.bridge.intensive.util.ImageUtils.RowReader;
+
+import org.junit.Test;
+
+import java.awt.image.BufferedImage;
+import java.awt.image.DataBufferByte;
+import java.awt.image.DataBufferInt;
+import java.util.Random;
+
+import static java.awt.image.BufferedImage.TYPE_3BYTE_BGR;
+import static java.awt.image.BufferedImage.TYPE_4BYTE_ABGR;
+import static java.awt.image.BufferedImage.TYPE_INT_ARGB;
+import static java.awt.image.BufferedImage.TYPE_INT_ARGB_PRE;
+import static java.awt.image.BufferedImage.TYPE_INT_RGB;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertSame;
+
+public class ImageUtilsTest {
+    private static final int WIDTH = 37;
+    private static final int HEIGHT = 23;
+
+    private final Random mRandom = new Random(42);
+
+    @Test
+    public void testRowReaderIntArgb() {
+        BufferedImage image = createImage(TYPE_INT_ARGB);
+        assertRowsEqualRgb(image, WIDTH);
+        assertRowsEqualRgb(image, WIDTH - 5);
+
+        // The pixels are read in place.
+        RowReader reader = new RowReader(image, WIDTH);
+        assertSame(((DataBufferInt) image.getRaster().getDataBuffer()).getData(), reader.read(3));
+        assertEquals(3 * WIDTH, reader.getOffset());
+    }
+
+    @Test
+    public void testRowReaderIntRgb() {
+        // The unused high byte of the pixels is random, the alpha must still be opaque.
+        BufferedImage image = createImage(TYPE_INT_RGB);
+        assertRowsEqualRgb(image, WIDTH);
+        assertRowsEqualRgb(image, WIDTH - 5);
+    }
+
+    @Test
+    public void testRowReader4ByteAbgr() {
+        BufferedImage image = createImage(TYPE_4BYTE_ABGR);
+        assertRowsEqualRgb(image, WIDTH);
+        assertRowsEqualRgb(image, WIDTH - 5);
+    }
+
+    @Test
+    public void testRowReaderOtherTypes() {
+        assertRowsEqualRgb(createImage(TYPE_INT_ARGB_PRE), WIDTH);
+        assertRowsEqualRgb(createImage(TYPE_3BYTE_BGR), WIDTH);
+    }
+
+    @Test
+    public void testRowReaderSubimages() {
+        // Sub-images share the raster of their parent, at an offset and with a stride wider than
+        // their width.
+        for (int type : new int[] {TYPE_INT_ARGB, TYPE_INT_RGB, TYPE_4BYTE_ABGR}) {
+            BufferedImage image = createImage(type);
+            assertRowsEqualRgb(image.getSubimage(3, 2, WIDTH - 10, HEIGHT - 7), WIDTH - 10);
+            assertRowsEqualRgb(image.getSubimage(0, 5, WIDTH - 1, HEIGHT - 5), WIDTH - 3);
+            assertRowsEqualRgb(image.getSubimage(4, 0, WIDTH - 4, HEIGHT), WIDTH - 4);
+        }
+    }
+
+    /**
+     * Creates an image of the given type whose data buffer is filled with random bytes.
+     */
+    private BufferedImage createImage(int type) {
+        BufferedImage image = new BufferedImage(WIDTH, HEIGHT, type);
+        if (image.getRaster().getDataBuffer() instanceof DataBufferInt) {
+            int[] data = ((DataBufferInt) image.getRaster().getDataBuffer()).getData();
+            for (int i = 0; i < data.length; i++) {
+                data[i] = mRandom.nextInt();
+            }
+        } else {
+            mRandom.nextBytes(((DataBufferByte) image.getRaster().getDataBuffer()).getData());
+        }
+        return image;
+    }
+
+    private static void assertRowsEqualRgb(BufferedImage image, int width) {
+        RowReader reader = new RowReader(image, width);
+        for (int y = 0; y < image.getHeight(); y++) {
+            int[] row = reader.read(y);
+            int offset = reader.getOffset();
+            for (int x = 0; x < width; x++) {
+                assertEquals("Pixel " + x + "," + y, image.getRGB(x, y), row[offset + x]);
+            }
+        }
+    }
+}
@@ -0,0 +1,166 @@
+/*
+ * Copyright (C) 2026 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.android.layoutlib.bridge.intensive.util.perf;
+
+import android.annotation.NonNull;
+
+import java.util.Arrays;
+
+/**
+ * Comparison of the times of a test with those of a baseline run, using a Mann-Whitney U test to
+ * tell whether the difference between them is significant or could be due to noise.
+ * <p>
+ * The test makes no assumption on the distribution of the times, which are usually skewed by
+ * garbage collections and other pauses, only that the samples are independent.
+ */
+public class BaselineComparison {
+    /** Probability under which a difference is considered significant. */
+    static final double SIGNIFICANCE_LEVEL = 0.01;
+
+    private final double mBaselineMedian;
+    private final double mMedian;
+    private final double mPValue;
+
+    private BaselineComparison(double baselineMedian, double median, double pValue) {
+        mBaselineMedian = baselineMedian;
+        mMedian = median;
+        mPValue = pValue;
+    }
+
+    /**
+     * Compares the times of a test with those of the baseline.
+     *
+     * @param baseline the times of the baseline run.
+     * @param times the times of the test.
+     */
+    @NonNull
+    static BaselineComparison compare(@NonNull long[] baseline, @NonNull long[] times) {
+        if (baseline.length == 0 || times.length == 0) {
+            throw new IllegalArgumentException("No data");
+        }
+        return new BaselineComparison(median(baseline), median(times),
+                mannWhitneyPValue(baseline, times));
+    }
+
+    public double getBaselineMedian() {
+        return mBaselineMedian;
+    }
+
+    public double getMedian() {
+        return mMedian;
+    }
+
+    /**
+     * Returns the change of the median from the baseline, relative to the baseline.
+     */
+    public double getRelativeChange() {
+        return (mMedian - mBaselineMedian) / mBaselineMedian;
+    }
+
+    /**
+     * Returns the probability of a difference at least as large as the one observed if the times
+     * of the test and of the baseline came from the same distribution.
+     */
+    public double getPValue() {
+        return mPValue;
+    }
+
+    public boolean isSignificant() {
+        return mPValue < SIGNIFICANCE_LEVEL;
+    }
+
+    /**
+     * Returns whether the test is significantly slower than the baseline.
+     */
+    public boolean isRegression() {
+        return isSignificant() && mMedian > mBaselineMedian;
+    }
+
+    @Override
+    public String toString() {
+        return String.format("%+.2f%% (p=%.4f, %s)", getRelativeChange() * 100, mPValue,
+                isSignificant() ? "significant" : "not significant");
+    }
+
+    private static double median(long[] values) {
+        long[] sorted = values.clone();
+        Arrays.sort(sorted);
+        int midPoint = sorted.length / 2;
+        return sorted.length % 2 == 0 ? (sorted[midPoint - 1] + sorted[midPoint]) / 2.0 :
+                sorted[midPoint];
+    }
+
+    /**
+     * Returns the two-sided p-value of the Mann-Whitney U test of the two samples, using the
+     * normal approximation with a correction for ties and continuity.
+     */
+    private static double mannWhitneyPValue(long[] a, long[] b) {
+        int n1 = a.length;
+        int n2 = b.length;
+        int n = n1 + n2;
+        // Sort all the values, remembering which sample each one comes from.
+        long[][] all = new long[n][];
+        for (int i = 0; i < n1; i++) {
+            all[i] = new long[] {a[i], 0};
+        }
+        for (int i = 0; i < n2; i++) {
+            all[n1 + i] = new long[] {b[i], 1};
+        }
+        Arrays.sort(all, (x, y) -> Long.compare(x[0], y[0]));
+
+        // Sum the ranks of the first sample, giving tied values the average of their ranks.
+        double rankSum = 0;
+        double tieCorrection = 0;
+        for (int i = 0; i < n; ) {
+            int j = i;
+            while (j < n && all[j][0] == all[i][0]) {
+                j++;
+            }
+            double rank = (i + 1 + j) / 2.0;
+            for (int k = i; k < j; k++) {
+                if (all[k][1] == 0) {
+                    rankSum += rank;
+                }
+            }
+            double ties = j - i;
+            tieCorrection += ties * ties * ties - ties;
+            i = j;
+        }
+
+        double u = rankSum - n1 * (n1 + 1) / 2.0;
+        double mean = n1 * (double) n2 / 2;
+        double variance = n1 * (double) n2 / 12 * ((n + 1) - tieCorrection / (n * (n - 1.0)));
+        if (variance <= 0) {
+            // All the values are equal.
+            return 1;
+        }
+        double z = Math.max(0, Math.abs(u - mean) - 0.5) / Math.sqrt(variance);
+        return Math.min(1, 2 * (1 - normalCdf(z)));
+    }
+
+    /**
+     * Returns the cumulative distribution function of the standard normal distribution, using the
+     * approximation of the error function from Abramowitz and Stegun, 7.1.26.
+     */
+    private static double normalCdf(double z) {
+        double x = Math.abs(z) / Math.sqrt(2);
+        double t = 1 / (1 + 0.3275911 * x);
+        double erf = 1 - t * (0.254829592 + t * (-0.284496736 + t * (1.421413741
+                + t * (-1.453152027 + t * 1.061405429)))) * Math.exp(-x * x);
+        return z >= 0 ? (1 + erf) / 2 : (1 - erf) / 2;
+    }
+}
@@ -0,0 +1,86 @@
+/*
+ * Copyright (C) 2026 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.android.layoutlib.bridge.intensive.util.perf;
+
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+public class BaselineComparisonTest {
+    private static final double DELTA = 1e-4;
+
+    @Test
+    public void testSmallShiftIsNotSignificant() {
+        BaselineComparison comparison =
+                BaselineComparison.compare(new long[] {1, 2, 3, 4, 5}, new long[] {6, 7, 8, 9, 10});
+
+        // U = 0, mean 12.5, variance 22.9167: z = (12.5 - 0.5) / 4.7871 = 2.5067.
+        assertEquals(0.01219, comparison.getPValue(), DELTA);
+        assertFalse(comparison.isSignificant());
+        assertFalse(comparison.isRegression());
+        assertEquals(3, comparison.getBaselineMedian(), 0);
+        assertEquals(8, comparison.getMedian(), 0);
+        assertEquals(5 / 3.0, comparison.getRelativeChange(), DELTA);
+    }
+
+    @Test
+    public void testSlowerTimesAreRegression() {
+        long[] fast = new long[10];
+        long[] slow = new long[10];
+        for (int i = 0; i < 10; i++) {
+            fast[i] = i + 1;
+            slow[i] = i + 11;
+        }
+
+        BaselineComparison comparison = BaselineComparison.compare(fast, slow);
+        // U = 0, mean 50, variance 175: z = 49.5 / 13.2288 = 3.7418.
+        assertEquals(0.000183, comparison.getPValue(), 1e-5);
+        assertTrue(comparison.isSignificant());
+        assertTrue(comparison.isRegression());
+
+        comparison = BaselineComparison.compare(slow, fast);
+        assertEquals(0.000183, comparison.getPValue(), 1e-5);
+        assertTrue(comparison.isSignificant());
+        assertFalse(comparison.isRegression());
+    }
+
+    @Test
+    public void testTiesAreCorrected() {
+        BaselineComparison comparison =
+                BaselineComparison.compare(new long[] {1, 2, 2, 3}, new long[] {2, 3, 4, 5});
+
+        // Ranks of the baseline: 1, 3, 3, 5.5, so U = 2.5, mean 8 and the variance is reduced
+        // from 12 to 11.2857 by the three 2 and the two 3: z = 5 / 3.3594 = 1.4884.
+        assertEquals(0.13666, comparison.getPValue(), DELTA);
+        assertFalse(comparison.isSignificant());
+    }
+
+    @Test
+    public void testSameTimes() {
+        long[] times = {5, 3, 8, 1, 9};
+        assertEquals(1, BaselineComparison.compare(times, times).getPValue(), DELTA);
+        // All the values are equal.
+        assertEquals(1, BaselineComparison.compare(new long[] {4, 4}, new long[] {4, 4, 4})
+                .getPValue(), 0);
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testNoData() {
+        BaselineComparison.compare(new long[0], new long[] {1});
+    }
+}
@@ -23,9 +23,13 @@ import java.util.Arrays;
 import java.util.function.LongConsumer;
 
 /**
- * Class that collect a series of longs and produces the median, min and max values.
+ * Class that collect a series of longs and produces the median, min and max values, along with
+ * the percentiles, the median absolute deviation and a confidence interval of the median.
  */
 public class LongStatsCollector implements LongConsumer {
+    /** Quantile of the normal distribution for a two-sided 95% confidence interval. */
+    private static final double Z_95 = 1.959964;
+
     private final LongArray mAllValues;
     private long mMin = Long.MAX_VALUE;
     private long mMax = Long.MIN_VALUE;
@@ -37,25 +41,65 @@ public class LongStatsCollector implements LongConsumer {
         return mAllValues.size();
     }
 
+    /**
+     * Returns the values collected, in the order they were collected.
+     */
+    @NonNull
+    public long[] getValues() {
+        int size = mAllValues.size();
+        long[] values = new long[size];
+        for (int i = 0; i < size; i++) {
+            values[i] = mAllValues.get(i);
+        }
+        return values;
+    }
+
     @NonNull
     public Stats getStats() {
         if (mAllValues.size() == 0) {
             throw new IndexOutOfBoundsException("No data");
         }
 
-        double median;
-        int size = mAllValues.size();
-        long[] buffer = new long[size];
+        long[] buffer = getValues();
+        Arrays.sort(buffer);
+        int size = buffer.length;
+
+        double median = percentile(buffer, 0.5);
+        double sum = 0;
+        double[] deviations = new double[size];
         for (int i = 0; i < size; i++) {
-            buffer[i] = mAllValues.get(i);
+            sum += buffer[i];
+            deviations[i] = Math.abs(buffer[i] - median);
         }
+        Arrays.sort(deviations);
+        double mad = percentile(deviations, 0.5);
+
+        // Distribution free confidence interval of the median, given by the order statistics
+        // whose ranks are the bounds of the confidence interval of a binomial(size, 0.5): from
+        // rank floor(size / 2 - halfWidth) to rank ceil(1 + size / 2 + halfWidth), counting from 1.
+        double halfWidth = Z_95 * Math.sqrt(size) / 2;
+        int lower = Math.max(0, (int) Math.floor(size / 2.0 - halfWidth) - 1);
+        int upper = Math.min(size - 1, (int) Math.ceil(size / 2.0 + halfWidth));
+
+        return new Stats(size, mMin, mMax, median, sum / size, percentile(buffer, 0.9),
+                percentile(buffer, 0.99), mad, buffer[lower], buffer[upper]);
+    }
 
-        Arrays.sort(buffer);
-
-        int midPoint = size / 2;
-        median = (size % 2 == 0) ? (buffer[midPoint - 1] + buffer[midPoint]) / 2 : buffer[midPoint];
+    /**
+     * Returns the given percentile of sorted values, interpolating between the closest ranks.
+     */
+    private static double percentile(@NonNull long[] sorted, double percentile) {
+        double rank = percentile * (sorted.length - 1);
+        int below = (int) Math.floor(rank);
+        int above = (int) Math.ceil(rank);
+        return sorted[below] + (rank - below) * (sorted[above] - sorted[below]);
+    }
 
-        return new Stats(mAllValues.size(), mMin, mMax, median);
+    private static double percentile(@NonNull double[] sorted, double percentile) {
+        double rank = percentile * (sorted.length - 1);
+        int below = (int) Math.floor(rank);
+        int above = (int) Math.ceil(rank);
+        return sorted[below] + (rank - below) * (sorted[above] - sorted[below]);
     }
 
     @Override
@@ -70,12 +114,26 @@ public class LongStatsCollector implements LongConsumer {
         private final long mMin;
         private final long mMax;
         private final double mMedian;
-
-        private Stats(int samples, long min, long max, double median) {
+        private final double mMean;
+        private final double mP90;
+        private final double mP99;
+        private final double mMedianAbsoluteDeviation;
+        private final long mMedianLowerBound;
+        private final long mMedianUpperBound;
+
+        private Stats(int samples, long min, long max, double median, double mean, double p90,
+                double p99, double medianAbsoluteDeviation, long medianLowerBound,
+                long medianUpperBound) {
             mSamples = samples;
             mMin = min;
             mMax = max;
             mMedian = median;
+            mMean = mean;
+            mP90 = p90;
+            mP99 = p99;
+            mMedianAbsoluteDeviation = medianAbsoluteDeviation;
+            mMedianLowerBound = medianLowerBound;
+            mMedianUpperBound = medianUpperBound;
         }
 
         public int getSampleCount() {
@@ -93,5 +151,47 @@ public class LongStatsCollector implements LongConsumer {
         public double getMedian() {
             return mMedian;
         }
+
+        public double getMean() {
+            return mMean;
+        }
+
+        public double getP90() {
+            return mP90;
+        }
+
+        public double getP99() {
+            return mP99;
+        }
+
+        /**
+         * Returns the median of the absolute deviations from the median, a measure of the spread
+         * of the values that is not affected by outliers.
+         */
+        public double getMedianAbsoluteDeviation() {
+            return mMedianAbsoluteDeviation;
+        }
+
+        /**
+         * Returns the lower bound of the 95% confidence interval of the median.
+         */
+        public long getMedianLowerBound() {
+            return mMedianLowerBound;
+        }
+
+        /**
+         * Returns the upper bound of the 95% confidence interval of the median.
+         */
+        public long getMedianUpperBound() {
+            return mMedianUpperBound;
+        }
+
+        /**
+         * Returns the half width of the 95% confidence interval of the median, relative to the
+         * median.
+         */
+        public double getRelativeMedianError() {
+            return mMedian == 0 ? 0 : (mMedianUpperBound - mMedianLowerBound) / 2.0 / mMedian;
+        }
     }
 }
@@ -0,0 +1,86 @@
+/*
+ * Copyright (C) 2026 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.android.layoutlib.bridge.intensive.util.perf;
+
+import com.android.layoutlib.bridge.intensive.util.perf.LongStatsCollector.Stats;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Random;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+
+public class LongStatsCollectorTest {
+    private static final double DELTA = 1e-9;
+
+    @Test
+    public void testStats() {
+        List<Long> values = new ArrayList<>();
+        for (long i = 1; i <= 100; i++) {
+            values.add(i);
+        }
+        Collections.shuffle(values, new Random(42));
+        LongStatsCollector collector = new LongStatsCollector(10);
+        values.forEach(collector::accept);
+
+        Stats stats = collector.getStats();
+        assertEquals(100, stats.getSampleCount());
+        assertEquals(1, stats.getMin());
+        assertEquals(100, stats.getMax());
+        assertEquals(50.5, stats.getMedian(), DELTA);
+        assertEquals(50.5, stats.getMean(), DELTA);
+        assertEquals(90.1, stats.getP90(), DELTA);
+        assertEquals(99.01, stats.getP99(), DELTA);
+        assertEquals(25, stats.getMedianAbsoluteDeviation(), DELTA);
+        // The 95% confidence interval of the median of 100 values goes from the 40th to the 61st
+        // value.
+        assertEquals(40, stats.getMedianLowerBound());
+        assertEquals(61, stats.getMedianUpperBound());
+        assertEquals(21 / 2.0 / 50.5, stats.getRelativeMedianError(), DELTA);
+    }
+
+    @Test
+    public void testSmallSample() {
+        LongStatsCollector collector = new LongStatsCollector(10);
+        collector.accept(7);
+
+        Stats stats = collector.getStats();
+        assertEquals(7, stats.getMedian(), DELTA);
+        assertEquals(7, stats.getMedianLowerBound());
+        assertEquals(7, stats.getMedianUpperBound());
+        assertEquals(0, stats.getRelativeMedianError(), DELTA);
+    }
+
+    @Test
+    public void testValuesKeepOrder() {
+        LongStatsCollector collector = new LongStatsCollector(2);
+        collector.accept(3);
+        collector.accept(1);
+        collector.accept(2);
+
+        assertEquals(3, collector.size());
+        assertArrayEquals(new long[] {3, 1, 2}, collector.getValues());
+    }
+
+    @Test(expected = IndexOutOfBoundsException.class)
+    public void testNoData() {
+        new LongStatsCollector(10).getStats();
+    }
+}
@@ -23,19 +23,40 @@ import org.junit.runners.model.FrameworkMethod;
 import org.junit.runners.model.InitializationError;
 import org.junit.runners.model.Statement;
 
+import java.io.File;
+import java.io.IOException;
 import java.lang.annotation.Inherited;
 import java.lang.annotation.Retention;
 import java.lang.annotation.RetentionPolicy;
 
 /**
  * JUnit {@link Runner} that times the test execution and produces some stats.
+ * <p>
+ * By default, each test is warmed up until its times are steady, then measured until the 95%
+ * confidence interval of its median time is within 1% of the median, or until its time budget of
+ * one minute is spent. This can be changed for a class or a method with {@link Configuration}.
+ * <p>
+ * The result of each test is printed, and written as XML in the directory set by the
+ * perf.results.dir system property, or in a directory of java.io.tmpdir otherwise. When the
+ * perf.baseline.dir system property is set to a directory of results from an earlier run, the
+ * times of each test are compared with those of the same test there. If the perf.max.regression
+ * system property is also set, a test fails when it is significantly slower than its baseline by
+ * more than the given percentage.
  */
 public class PerformanceRunner extends BlockJUnit4ClassRunner {
-    private static final int DEFAULT_WARMUP_ITERATIONS = 50;
-    private static final int DEFAULT_RUNS = 100;
+    private static final int DEFAULT_WARMUP_ITERATIONS = -1;
+    private static final int DEFAULT_RUNS = -1;
+    private static final long DEFAULT_TIME_BUDGET_MS = 60_000;
+    private static final double DEFAULT_TARGET_ERROR = 0.01;
+
+    private static final String RESULTS_DIR_PROPERTY = "perf.results.dir";
+    private static final String BASELINE_DIR_PROPERTY = "perf.baseline.dir";
+    private static final String MAX_REGRESSION_PROPERTY = "perf.max.regression";
 
     private final int mWarmUpIterations;
     private final int mRuns;
+    private final long mTimeBudgetMs;
+    private final double mTargetError;
 
     public PerformanceRunner(Class<?> testClass) throws InitializationError {
         super(testClass);
@@ -47,12 +68,20 @@ public class PerformanceRunner extends BlockJUnit4ClassRunner {
         mRuns = classConfig != null && classConfig.runs() != -1 ?
                 classConfig.runs() :
                 DEFAULT_RUNS;
+        mTimeBudgetMs = classConfig != null && classConfig.timeBudgetMs() != -1 ?
+                classConfig.timeBudgetMs() :
+                DEFAULT_TIME_BUDGET_MS;
+        mTargetError = classConfig != null && classConfig.targetError() != -1 ?
+                classConfig.targetError() :
+                DEFAULT_TARGET_ERROR;
     }
 
     @Override
     protected Statement methodInvoker(FrameworkMethod method, Object test) {
         int warmUpIterations;
         int runs;
+        long timeBudgetMs;
+        double targetError;
 
         Configuration methodConfig = method.getAnnotation(Configuration.class);
         warmUpIterations = methodConfig != null && methodConfig.warmUpIterations() != -1 ?
@@ -61,8 +90,66 @@ public class PerformanceRunner extends BlockJUnit4ClassRunner {
         runs = methodConfig != null && methodConfig.runs() != -1 ?
                 methodConfig.runs() :
                 mRuns;
+        timeBudgetMs = methodConfig != null && methodConfig.timeBudgetMs() != -1 ?
+                methodConfig.timeBudgetMs() :
+                mTimeBudgetMs;
+        targetError = methodConfig != null && methodConfig.targetError() != -1 ?
+                methodConfig.targetError() :
+                mTargetError;
         return new TimedStatement(super.methodInvoker(method, test), warmUpIterations, runs,
-                (result) -> System.out.println(result.toString()));
+                timeBudgetMs, targetError, (result) -> report(method, result));
+    }
+
+    /**
+     * Compares the result of a test with its baseline, if any, then prints it and writes it to
+     * the results directory.
+     */
+    private void report(FrameworkMethod method, TimedStatementResult result) {
+        String className = getTestClass().getName();
+        String fileName = className + "." + method.getName() + ".xml";
+
+        String baselineDir = System.getProperty(BASELINE_DIR_PROPERTY);
+        BaselineComparison comparison = null;
+        if (baselineDir != null) {
+            File baseline = new File(baselineDir, fileName);
+            if (baseline.isFile()) {
+                try {
+                    comparison = result.compareWithBaseline(
+                            TimedStatementResult.readTimes(baseline));
+                } catch (IOException | IllegalArgumentException e) {
+                    System.out.println("Unable to compare with baseline: " + e);
+                }
+            } else {
+                System.out.println("No baseline at " + baseline);
+            }
+        }
+
+        System.out.println(result.toString());
+
+        File resultsDir = getResultsDir();
+        try {
+            //noinspection ResultOfMethodCallIgnored
+            resultsDir.mkdirs();
+            result.writeXml(new File(resultsDir, fileName), className, method.getName());
+        } catch (IOException e) {
+            System.out.println("Unable to write result: " + e);
+        }
+
+        String maxRegression = System.getProperty(MAX_REGRESSION_PROPERTY);
+        if (comparison != null && maxRegression != null && comparison.isRegression()
+                && comparison.getRelativeChange() * 100 > Double.parseDouble(maxRegression)) {
+            throw new AssertionError(String.format(
+                    "%s is slower than its baseline by %s, more than the allowed %s%%",
+                    method.getName(), comparison, maxRegression));
+        }
+    }
+
+    private static File getResultsDir() {
+        String resultsDir = System.getProperty(RESULTS_DIR_PROPERTY);
+        if (resultsDir == null) {
+            return new File(System.getProperty("java.io.tmpdir"), "layoutlib-perf");
+        }
+        return new File(resultsDir);
     }
 
     @Override
@@ -70,11 +157,26 @@ public class PerformanceRunner extends BlockJUnit4ClassRunner {
         super.run(notifier);
     }
 
+    /**
+     * Configures how a test class or method is measured. Values left at -1 keep the defaults of
+     * the {@link PerformanceRunner}, or those of the class for a method.
+     */
     @Retention(RetentionPolicy.RUNTIME)
     @Inherited
     public @interface Configuration {
+        /** Number of warm up iterations, instead of warming up until the times are steady. */
         int warmUpIterations() default -1;
 
+        /** Number of runs measured, instead of measuring until the target error is reached. */
         int runs() default -1;
+
+        /** Time after which no more warm up iterations or runs are started. */
+        long timeBudgetMs() default -1;
+
+        /**
+         * Half width of the 95% confidence interval of the median, relative to the median, at
+         * which no more runs are measured.
+         */
+        double targetError() default -1;
     }
 }
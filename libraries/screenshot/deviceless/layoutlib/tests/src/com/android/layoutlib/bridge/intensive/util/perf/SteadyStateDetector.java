@@ -0,0 +1,70 @@
+/*
+ * Copyright (C) 2026 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.android.layoutlib.bridge.intensive.util.perf;
+
+import java.util.Arrays;
+
+/**
+ * Detects when the times of the warm up iterations stop improving, which happens once the code
+ * being measured has been loaded, compiled and its caches filled.
+ * <p>
+ * The times are split in consecutive windows, and the steady state is reached when the medians of
+ * the last two windows differ by less than a given tolerance.
+ */
+class SteadyStateDetector {
+    private final long[] mTimes;
+    private final int mWindow;
+    private final double mTolerance;
+    private int mCount;
+
+    /**
+     * @param window the number of iterations in each window.
+     * @param tolerance the maximum difference between the medians of two windows, relative to the
+     *     median of the last one.
+     */
+    SteadyStateDetector(int window, double tolerance) {
+        mTimes = new long[2 * window];
+        mWindow = window;
+        mTolerance = tolerance;
+    }
+
+    /**
+     * Adds the time of an iteration.
+     *
+     * @return true if the steady state has been reached.
+     */
+    boolean add(long time) {
+        mTimes[mCount++ % mTimes.length] = time;
+        if (mCount < mTimes.length || mCount % mWindow != 0) {
+            return false;
+        }
+        // When a window is complete, the buffer holds the last two windows, oldest first when
+        // the total count is an even number of windows.
+        int last = (mCount / mWindow) % 2 == 0 ? mWindow : 0;
+        double previousMedian = median(mTimes, mWindow - last);
+        double lastMedian = median(mTimes, last);
+        return Math.abs(lastMedian - previousMedian) <= mTolerance * lastMedian;
+    }
+
+    private double median(long[] times, int from) {
+        long[] window = Arrays.copyOfRange(times, from, from + mWindow);
+        Arrays.sort(window);
+        int midPoint = mWindow / 2;
+        return mWindow % 2 == 0 ? (window[midPoint - 1] + window[midPoint]) / 2.0 :
+                window[midPoint];
+    }
+}
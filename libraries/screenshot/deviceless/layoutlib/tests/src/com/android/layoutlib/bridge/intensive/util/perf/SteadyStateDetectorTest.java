@@ -0,0 +1,70 @@
+/*
+ * Copyright (C) 2026 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.android.layoutlib.bridge.intensive.util.perf;
+
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+
+public class SteadyStateDetectorTest {
+    /**
+     * Adds the times to the detector and returns the result of each call, as a string of 0 and 1.
+     */
+    private static String addAll(SteadyStateDetector detector, long... times) {
+        StringBuilder results = new StringBuilder();
+        for (long time : times) {
+            results.append(detector.add(time) ? '1' : '0');
+        }
+        return results.toString();
+    }
+
+    @Test
+    public void testOddWindow() {
+        SteadyStateDetector detector = new SteadyStateDetector(3, 0.1);
+
+        // The first window can not be compared with anything.
+        assertEquals("000", addAll(detector, 100, 90, 80));
+        // Medians of 90 and 50.
+        assertEquals("000", addAll(detector, 50, 50, 50));
+        // Medians of 50 and 50, only checked once the window is complete.
+        assertEquals("001", addAll(detector, 52, 48, 50));
+        // Medians of 50 and 100.
+        assertEquals("000", addAll(detector, 100, 100, 100));
+        // Medians of 100 and 100, with the last window at the start of the buffer.
+        assertEquals("001", addAll(detector, 101, 99, 100));
+    }
+
+    @Test
+    public void testEvenWindow() {
+        SteadyStateDetector detector = new SteadyStateDetector(2, 0.1);
+
+        // Medians of 150 and 105.
+        assertEquals("0000", addAll(detector, 200, 100, 110, 100));
+        // Medians of 105 and 100, within 10% of the last one.
+        assertEquals("01", addAll(detector, 90, 110));
+    }
+
+    @Test
+    public void testTolerance() {
+        SteadyStateDetector detector = new SteadyStateDetector(1, 0.1);
+
+        assertEquals("0", addAll(detector, 110));
+        // 110 is 10% more than 100.
+        assertEquals("1", addAll(detector, 100));
+        // 89 is more than 10% less than 100.
+        assertEquals("0", addAll(detector, 89));
+    }
+}
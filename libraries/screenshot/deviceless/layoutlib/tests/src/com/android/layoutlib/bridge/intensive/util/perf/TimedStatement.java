@@ -20,10 +20,15 @@ import com.android.layoutlib.bridge.intensive.util.TestUtils;
 
 import org.junit.runners.model.Statement;
 
+import android.annotation.Nullable;
+
 import java.io.File;
 import java.io.FileInputStream;
 import java.io.FileOutputStream;
 import java.io.IOException;
+import java.lang.management.GarbageCollectorMXBean;
+import java.lang.management.ManagementFactory;
+import java.lang.management.ThreadMXBean;
 import java.util.Arrays;
 import java.util.Random;
 import java.util.concurrent.Executors;
@@ -38,25 +43,58 @@ import com.google.common.hash.Hashing;
 
 /**
  * JUnit {@link Statement} used to measure some statistics about the test method.
+ * <p>
+ * Unless a fixed number of warm up iterations is given, the method is run until its times are
+ * steady, as detected by {@link SteadyStateDetector}, or until a maximum number of iterations.
+ * Then, unless a fixed number of runs is given, runs are measured until the 95% confidence
+ * interval of the median time is narrow enough, or until the time budget is spent.
  */
 public class TimedStatement extends Statement {
     private static final int CALIBRATION_WARMUP_ITERATIONS = 50;
     private static final int CALIBRATION_RUNS = 100;
 
+    private static final int STEADY_STATE_WINDOW = 10;
+    private static final double STEADY_STATE_TOLERANCE = 0.05;
+    private static final int MAX_WARMUP_ITERATIONS = 500;
+    private static final int MIN_RUNS = 20;
+    private static final int MAX_RUNS = 10000;
+    /**
+     * The confidence interval is checked again once the number of runs has grown by this fraction,
+     * since it sorts all the times so far. This measures at most that fraction more runs than
+     * needed.
+     */
+    private static final double CONFIDENCE_CHECK_GROWTH = 0.1;
+
     private static boolean sIsCalibrated;
     private static double sCalibrated;
 
     private final Statement mStatement;
     private final int mWarmUpIterations;
     private final int mRuns;
+    private final long mTimeBudgetNs;
+    private final double mTargetError;
     private final Runtime mRuntime = Runtime.getRuntime();
     private final Consumer<TimedStatementResult> mCallback;
 
-    TimedStatement(Statement statement, int warmUpIterations, int runs,
-            Consumer<TimedStatementResult> finishedCallback) {
+    /**
+     * @param statement the statement to measure.
+     * @param warmUpIterations the number of warm up iterations, or -1 to warm up until the times
+     *     are steady.
+     * @param runs the number of runs to measure, or -1 to measure runs until the confidence
+     *     interval of the median is narrow enough.
+     * @param timeBudgetMs the time after which no more warm up iterations or runs are started,
+     *     unless their number is fixed.
+     * @param targetError the half width of the 95% confidence interval of the median, relative to
+     *     the median, at which no more runs are measured.
+     * @param finishedCallback the callback receiving the result.
+     */
+    TimedStatement(Statement statement, int warmUpIterations, int runs, long timeBudgetMs,
+            double targetError, Consumer<TimedStatementResult> finishedCallback) {
         mStatement = statement;
         mWarmUpIterations = warmUpIterations;
         mRuns = runs;
+        mTimeBudgetNs = TimeUnit.MILLISECONDS.toNanos(timeBudgetMs);
+        mTargetError = targetError;
         mCallback = finishedCallback;
     }
 
@@ -113,12 +151,12 @@ public class TimedStatement extends Statement {
         LongStatsCollector stats = new LongStatsCollector(CALIBRATION_RUNS);
         for (int i = 0; i < CALIBRATION_RUNS; i++) {
             TestUtils.gc();
-            long start = System.currentTimeMillis();
+            long start = System.nanoTime();
             calibrateMethod();
-            stats.accept(System.currentTimeMillis() - start);
+            stats.accept(System.nanoTime() - start);
         }
 
-        sCalibrated = stats.getStats().getMedian();
+        sCalibrated = stats.getStats().getMedian() / TimeUnit.MILLISECONDS.toNanos(1);
         sIsCalibrated = true;
         System.out.printf("  DONE %fms\n", sCalibrated);
     }
@@ -128,18 +166,80 @@ public class TimedStatement extends Statement {
     }
 
 
+    private static long getGcCount() {
+        long count = 0;
+        for (GarbageCollectorMXBean gc : ManagementFactory.getGarbageCollectorMXBeans()) {
+            count += Math.max(0, gc.getCollectionCount());
+        }
+        return count;
+    }
+
+    private static long getGcTimeMs() {
+        long time = 0;
+        for (GarbageCollectorMXBean gc : ManagementFactory.getGarbageCollectorMXBeans()) {
+            time += Math.max(0, gc.getCollectionTime());
+        }
+        return time;
+    }
+
+    /**
+     * Returns the bytes allocated so far by the current thread, or -1 if they cannot be measured.
+     */
+    private static long getAllocatedBytes() {
+        ThreadMXBean threads = ManagementFactory.getThreadMXBean();
+        if (threads instanceof com.sun.management.ThreadMXBean) {
+            com.sun.management.ThreadMXBean sunThreads = (com.sun.management.ThreadMXBean) threads;
+            if (sunThreads.isThreadAllocatedMemorySupported()
+                    && sunThreads.isThreadAllocatedMemoryEnabled()) {
+                return sunThreads.getThreadAllocatedBytes(Thread.currentThread().getId());
+            }
+        }
+        return -1;
+    }
+
+    /**
+     * Runs the warm up iterations.
+     *
+     * @return the number of iterations run, negated if the times were not steady at the end.
+     */
+    private int warmUp(long deadline) throws Throwable {
+        if (mWarmUpIterations >= 0) {
+            for (int i = 0; i < mWarmUpIterations; i++) {
+                mStatement.evaluate();
+            }
+            return mWarmUpIterations;
+        }
+
+        SteadyStateDetector detector =
+                new SteadyStateDetector(STEADY_STATE_WINDOW, STEADY_STATE_TOLERANCE);
+        int iterations = 0;
+        while (iterations < MAX_WARMUP_ITERATIONS && System.nanoTime() < deadline) {
+            long startTimeNs = System.nanoTime();
+            mStatement.evaluate();
+            iterations++;
+            if (detector.add(System.nanoTime() - startTimeNs)) {
+                return iterations;
+            }
+        }
+        return -iterations;
+    }
+
     @Override
     public void evaluate() throws Throwable {
         if (!sIsCalibrated) {
             doCalibration();
         }
 
-        for (int i = 0; i < mWarmUpIterations; i++) {
-            mStatement.evaluate();
-        }
+        long startNs = System.nanoTime();
+        // At most half of the budget is spent warming up.
+        int warmUp = warmUp(startNs + mTimeBudgetNs / 2);
+        long deadline = startNs + mTimeBudgetNs;
 
-        LongStatsCollector timeStats = new LongStatsCollector(mRuns);
-        LongStatsCollector memoryUseStats = new LongStatsCollector(mRuns);
+        LongStatsCollector timeStats = new LongStatsCollector(mRuns > 0 ? mRuns : MIN_RUNS);
+        LongStatsCollector memoryUseStats = new LongStatsCollector(mRuns > 0 ? mRuns : MIN_RUNS);
+        LongStatsCollector gcCountStats = new LongStatsCollector(mRuns > 0 ? mRuns : MIN_RUNS);
+        LongStatsCollector gcTimeStats = new LongStatsCollector(mRuns > 0 ? mRuns : MIN_RUNS);
+        LongStatsCollector allocationStats = new LongStatsCollector(mRuns > 0 ? mRuns : MIN_RUNS);
         AtomicBoolean collectSamples = new AtomicBoolean(false);
 
         ScheduledExecutorService executorService = Executors.newScheduledThreadPool(1);
@@ -151,28 +251,71 @@ public class TimedStatement extends Statement {
             memoryUseStats.accept(getUsedMemory());
         }, 0, 200, TimeUnit.MILLISECONDS);
 
+        String stopReason;
+        int nextConfidenceCheck = MIN_RUNS;
         try {
-            for (int i = 0; i < mRuns; i++) {
+            while (true) {
                 TestUtils.gc();
+                long gcCount = getGcCount();
+                long gcTimeMs = getGcTimeMs();
+                long allocatedBytes = getAllocatedBytes();
                 collectSamples.set(true);
-                long startTimeMs = System.currentTimeMillis();
+                long startTimeNs = System.nanoTime();
                 mStatement.evaluate();
-                long stopTimeMs = System.currentTimeMillis();
-                collectSamples.set(true);
-                timeStats.accept(stopTimeMs - startTimeMs);
+                long stopTimeNs = System.nanoTime();
+                collectSamples.set(false);
+                timeStats.accept(stopTimeNs - startTimeNs);
+                gcCountStats.accept(getGcCount() - gcCount);
+                gcTimeStats.accept(getGcTimeMs() - gcTimeMs);
+                if (allocatedBytes >= 0) {
+                    allocationStats.accept(getAllocatedBytes() - allocatedBytes);
+                }
 
+                int runs = timeStats.size();
+                if (mRuns >= 0) {
+                    if (runs >= mRuns) {
+                        stopReason = "run count";
+                        break;
+                    }
+                    continue;
+                }
+                if (runs >= nextConfidenceCheck) {
+                    if (timeStats.getStats().getRelativeMedianError() <= mTargetError) {
+                        stopReason = "confidence";
+                        break;
+                    }
+                    nextConfidenceCheck =
+                            runs + Math.max(1, (int) (runs * CONFIDENCE_CHECK_GROWTH));
+                }
+                if (System.nanoTime() >= deadline && runs >= MIN_RUNS) {
+                    stopReason = "time budget";
+                    break;
+                } else if (runs >= MAX_RUNS) {
+                    stopReason = "max runs";
+                    break;
+                }
             }
         } finally {
             executorService.shutdownNow();
+            executorService.awaitTermination(1, TimeUnit.SECONDS);
         }
 
         TimedStatementResult result = new TimedStatementResult(
-                mWarmUpIterations,
-                mRuns,
+                Math.abs(warmUp),
+                warmUp >= 0,
+                stopReason,
                 sCalibrated,
+                timeStats.getValues(),
                 timeStats.getStats(),
-                memoryUseStats.getStats());
+                getStatsOrNull(memoryUseStats),
+                gcCountStats.getStats(),
+                gcTimeStats.getStats(),
+                getStatsOrNull(allocationStats));
         mCallback.accept(result);
     }
 
+    @Nullable
+    private static LongStatsCollector.Stats getStatsOrNull(LongStatsCollector collector) {
+        return collector.size() > 0 ? collector.getStats() : null;
+    }
 }
@@ -18,47 +18,249 @@ package com.android.layoutlib.bridge.intensive.util.perf;
 
 import com.android.layoutlib.bridge.intensive.util.perf.LongStatsCollector.Stats;
 
+import android.annotation.NonNull;
+import android.annotation.Nullable;
+
+import org.w3c.dom.Document;
+import org.w3c.dom.Element;
+
+import java.io.File;
+import java.io.IOException;
 import java.text.DecimalFormat;
+import java.util.Arrays;
+
+import javax.xml.parsers.DocumentBuilderFactory;
+import javax.xml.parsers.ParserConfigurationException;
+import javax.xml.transform.OutputKeys;
+import javax.xml.transform.Transformer;
+import javax.xml.transform.TransformerException;
+import javax.xml.transform.TransformerFactory;
+import javax.xml.transform.dom.DOMSource;
+import javax.xml.transform.stream.StreamResult;
 
 /**
  * Result value of a {@link TimedStatement}
+ * <p>
+ * Times are measured in nanoseconds. Besides being printed, the result can be written to an XML
+ * file holding the statistics and all the measured times, so that later runs can be compared
+ * with it as a baseline.
  */
 public class TimedStatementResult {
     private static final DecimalFormat UNITS_FORMAT = new DecimalFormat("#.##");
+    private static final double NANOS_PER_MS = 1_000_000.0;
 
     private final int mWarmUpIterations;
+    private final boolean mSteadyState;
     private final int mRuns;
+    private final String mStopReason;
     private final double mCalibrationTimeMs;
+    private final long[] mTimes;
     private final Stats mTimeStats;
-    private final Stats mMemoryStats;
+    @Nullable private final Stats mMemoryStats;
+    private final Stats mGcCountStats;
+    private final Stats mGcTimeStats;
+    @Nullable private final Stats mAllocationStats;
+    @Nullable private BaselineComparison mBaselineComparison;
 
-    TimedStatementResult(int warmUpIterations, int runs,
+    /**
+     * @param warmUpIterations the number of warm up iterations run.
+     * @param steadyState whether the times were steady at the end of the warm up.
+     * @param stopReason why no more runs were measured.
+     * @param calibrationTimeMs the time of the calibration method.
+     * @param times the time of each run.
+     * @param memoryStats the memory used, sampled during the runs, or null if no run was sampled.
+     * @param gcCountStats the number of garbage collections during each run.
+     * @param gcTimeStats the time spent in garbage collections during each run, in ms.
+     * @param allocationStats the bytes allocated by each run, or null if they cannot be measured.
+     */
+    TimedStatementResult(int warmUpIterations, boolean steadyState,
+            @NonNull String stopReason,
             double calibrationTimeMs,
-            Stats timeStats,
-            Stats memoryStats) {
+            @NonNull long[] times,
+            @NonNull Stats timeStats,
+            @Nullable Stats memoryStats,
+            @NonNull Stats gcCountStats,
+            @NonNull Stats gcTimeStats,
+            @Nullable Stats allocationStats) {
         mWarmUpIterations = warmUpIterations;
-        mRuns = runs;
+        mSteadyState = steadyState;
+        mRuns = times.length;
+        mStopReason = stopReason;
         mCalibrationTimeMs = calibrationTimeMs;
+        mTimes = times;
         mTimeStats = timeStats;
         mMemoryStats = memoryStats;
+        mGcCountStats = gcCountStats;
+        mGcTimeStats = gcTimeStats;
+        mAllocationStats = allocationStats;
+    }
+
+    @NonNull
+    public Stats getTimeStats() {
+        return mTimeStats;
+    }
+
+    /**
+     * Returns the time of each run, in nanoseconds, in the order they were run.
+     */
+    @NonNull
+    public long[] getTimes() {
+        return mTimes.clone();
+    }
+
+    @Nullable
+    public BaselineComparison getBaselineComparison() {
+        return mBaselineComparison;
+    }
+
+    /**
+     * Compares the times of this result with those of a baseline run.
+     */
+    @NonNull
+    BaselineComparison compareWithBaseline(@NonNull long[] baselineTimes) {
+        mBaselineComparison = BaselineComparison.compare(baselineTimes, mTimes);
+        return mBaselineComparison;
+    }
+
+    /**
+     * Reads the times of a result written by {@link #writeXml(File, String, String)}.
+     */
+    @NonNull
+    static long[] readTimes(@NonNull File file) throws IOException {
+        try {
+            Document document =
+                    DocumentBuilderFactory.newInstance().newDocumentBuilder().parse(file);
+            String times = document.getElementsByTagName("times").item(0).getTextContent().trim();
+            return times.isEmpty() ? new long[0] :
+                    Arrays.stream(times.split("\\s+")).mapToLong(Long::parseLong).toArray();
+        } catch (IOException e) {
+            throw e;
+        } catch (Exception e) {
+            throw new IOException("Unable to read performance result " + file, e);
+        }
+    }
+
+    /**
+     * Writes the result to an XML file.
+     *
+     * @param file the file to write.
+     * @param className the name of the test class.
+     * @param methodName the name of the test method.
+     */
+    void writeXml(@NonNull File file, @NonNull String className, @NonNull String methodName)
+            throws IOException {
+        try {
+            Document document =
+                    DocumentBuilderFactory.newInstance().newDocumentBuilder().newDocument();
+            Element root = document.createElement("benchmark");
+            root.setAttribute("class", className);
+            root.setAttribute("method", methodName);
+            root.setAttribute("warmup-iterations", Integer.toString(mWarmUpIterations));
+            root.setAttribute("steady-state", Boolean.toString(mSteadyState));
+            root.setAttribute("runs", Integer.toString(mRuns));
+            root.setAttribute("stop-reason", mStopReason);
+            root.setAttribute("calibration-ms", Double.toString(mCalibrationTimeMs));
+            document.appendChild(root);
+
+            Element time = appendStats(root, "time", mTimeStats);
+            time.setAttribute("unit", "ns");
+            appendStats(root, "gc-count", mGcCountStats);
+            appendStats(root, "gc-time", mGcTimeStats).setAttribute("unit", "ms");
+            if (mAllocationStats != null) {
+                appendStats(root, "allocation", mAllocationStats).setAttribute("unit", "bytes");
+            }
+            if (mMemoryStats != null) {
+                appendStats(root, "memory", mMemoryStats).setAttribute("unit", "bytes");
+            }
+            if (mBaselineComparison != null) {
+                Element baseline = document.createElement("baseline");
+                baseline.setAttribute("median", Double.toString(
+                        mBaselineComparison.getBaselineMedian()));
+                baseline.setAttribute("relative-change", Double.toString(
+                        mBaselineComparison.getRelativeChange()));
+                baseline.setAttribute("p-value", Double.toString(
+                        mBaselineComparison.getPValue()));
+                baseline.setAttribute("significant", Boolean.toString(
+                        mBaselineComparison.isSignificant()));
+                root.appendChild(baseline);
+            }
+            StringBuilder times = new StringBuilder();
+            for (long t : mTimes) {
+                times.append(times.length() == 0 ? "" : " ").append(t);
+            }
+            Element timesElement = document.createElement("times");
+            timesElement.setTextContent(times.toString());
+            root.appendChild(timesElement);
+
+            Transformer transformer = TransformerFactory.newInstance().newTransformer();
+            transformer.setOutputProperty(OutputKeys.INDENT, "yes");
+            transformer.transform(new DOMSource(document), new StreamResult(file));
+        } catch (ParserConfigurationException | TransformerException e) {
+            throw new IOException("Unable to write performance result " + file, e);
+        }
+    }
+
+    @NonNull
+    private static Element appendStats(@NonNull Element parent, @NonNull String name,
+            @NonNull Stats stats) {
+        Element element = parent.getOwnerDocument().createElement(name);
+        element.setAttribute("samples", Integer.toString(stats.getSampleCount()));
+        element.setAttribute("median", Double.toString(stats.getMedian()));
+        element.setAttribute("mean", Double.toString(stats.getMean()));
+        element.setAttribute("min", Long.toString(stats.getMin()));
+        element.setAttribute("max", Long.toString(stats.getMax()));
+        element.setAttribute("p90", Double.toString(stats.getP90()));
+        element.setAttribute("p99", Double.toString(stats.getP99()));
+        element.setAttribute("mad", Double.toString(stats.getMedianAbsoluteDeviation()));
+        element.setAttribute("median-ci-lower", Long.toString(stats.getMedianLowerBound()));
+        element.setAttribute("median-ci-upper", Long.toString(stats.getMedianUpperBound()));
+        parent.appendChild(element);
+        return element;
+    }
+
+    private String toUnits(double timeNs) {
+        return UNITS_FORMAT.format((timeNs / NANOS_PER_MS / mCalibrationTimeMs) * 100000);
+    }
+
+    private static String toMs(double timeNs) {
+        return String.format("%.3f", timeNs / NANOS_PER_MS);
     }
 
     @Override
     public String toString() {
-        return String.format(
-                "Warm up %d. Runs %d\n" + "Time:             %s ms (min: %s, max %s)\n" +
+        String result = String.format(
+                "Warm up %d (%s). Runs %d (stopped by %s)\n" +
+                        "Time:             %s ms +-%.1f%% (95%% CI %s - %s)\n" +
+                        "                  min %s, p90 %s, p99 %s, max %s, MAD %s ms\n" +
                         "Calibration Time: %f ms\n" +
                         "Calibrated Time:  %s units (min: %s, max %s)\n" +
-                        "Sampled %d times\n" +
-                        "   Memory used:  %d bytes (max %d)\n\n",
-                mWarmUpIterations, mRuns,
-                mTimeStats.getMedian(), mTimeStats.getMin(), mTimeStats.getMax(),
+                        "GC per run:       %.2f collections, %.2f ms\n" +
+                        "Allocated:        %s\n" +
+                        "%s",
+                mWarmUpIterations, mSteadyState ? "steady" : "not steady", mRuns, mStopReason,
+                toMs(mTimeStats.getMedian()), mTimeStats.getRelativeMedianError() * 100,
+                toMs(mTimeStats.getMedianLowerBound()), toMs(mTimeStats.getMedianUpperBound()),
+                toMs(mTimeStats.getMin()), toMs(mTimeStats.getP90()),
+                toMs(mTimeStats.getP99()), toMs(mTimeStats.getMax()),
+                toMs(mTimeStats.getMedianAbsoluteDeviation()),
                 mCalibrationTimeMs,
-                UNITS_FORMAT.format((mTimeStats.getMedian() / mCalibrationTimeMs) * 100000),
-                UNITS_FORMAT.format((mTimeStats.getMin() / mCalibrationTimeMs) * 100000),
-                UNITS_FORMAT.format((mTimeStats.getMax() / mCalibrationTimeMs) * 100000),
-                mMemoryStats.getSampleCount(),
-                (long)mMemoryStats.getMedian() - mMemoryStats.getMin(),
-                mMemoryStats.getMax() - mMemoryStats.getMin());
+                toUnits(mTimeStats.getMedian()), toUnits(mTimeStats.getMin()),
+                toUnits(mTimeStats.getMax()),
+                mGcCountStats.getMean(), mGcTimeStats.getMean(),
+                mAllocationStats != null ?
+                        String.format("%d bytes per run (max %d)",
+                                (long) mAllocationStats.getMedian(), mAllocationStats.getMax()) :
+                        "unknown",
+                mMemoryStats != null ?
+                        String.format("Sampled %d times\n   Memory used:  %d bytes (max %d)\n",
+                                mMemoryStats.getSampleCount(),
+                                (long)mMemoryStats.getMedian() - mMemoryStats.getMin(),
+                                mMemoryStats.getMax() - mMemoryStats.getMin()) :
+                        "");
+        if (mBaselineComparison != null) {
+            result += "Baseline:         " + toMs(mBaselineComparison.getBaselineMedian()) +
+                    " ms, change " + mBaselineComparison + "\n";
+        }
+        return result + "\n";
     }
 }
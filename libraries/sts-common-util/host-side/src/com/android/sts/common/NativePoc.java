@@ -42,9 +42,13 @@ import java.io.FileOutputStream;
 import java.io.IOException;
 import java.io.InputStream;
 import java.io.OutputStream;
+import java.util.ArrayList;
 import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.Set;
 import java.util.concurrent.TimeUnit;
 
 /** Setup and run a native PoC, asserting exit conditions */
@@ -67,6 +71,7 @@ public abstract class NativePoc {
     abstract AfterFunction after();
     abstract NativePocAsserter asserter();
     abstract boolean assumePocExitSuccess();
+    abstract boolean cachePushes();
 
     NativePoc() {}
 
@@ -82,7 +87,8 @@ public abstract class NativePoc {
                 .only32(false)
                 .only64(false)
                 .asserter(new NativePocAsserter() {})
-                .assumePocExitSuccess(true);
+                .assumePocExitSuccess(true)
+                .cachePushes(false);
     }
 
     public static enum Bitness {
@@ -178,6 +184,13 @@ public abstract class NativePoc {
         /** Whether to throw an assumption failure when PoC does not return 0. Defaults true */
         public abstract Builder assumePocExitSuccess(boolean value);
 
+        /**
+         * Whether to keep the PoC and its resources on the device after running, and skip pushing
+         * them again while unchanged. Defaults false. The files are checked and pushed with a
+         * {@link PushCache}; remove them with {@link PushCache#clear} when done.
+         */
+        public abstract Builder cachePushes(boolean value);
+
         abstract NativePoc autoBuild();
 
         /** Build an immutable NativePoc object */
@@ -237,8 +250,8 @@ public abstract class NativePoc {
     private CommandResult runPocAndAssert(final BaseHostJUnit4Test test) throws Exception {
         ITestDevice device = test.getDevice();
 
-        try (AutoCloseable aPoc = withPoc(test, device);
-                AutoCloseable aRes = withResourcesUpload(device);
+        try (AutoCloseable aPoc = cachePushes() ? withCachedPush(test) : withPoc(test, device);
+                AutoCloseable aRes = cachePushes() ? () -> {} : withResourcesUpload(device);
                 AutoCloseable aAssert = asserter().withAutoCloseable(this, device)) {
             // Setup environment variable shell command prefix
             String envStr =
@@ -270,8 +283,54 @@ public abstract class NativePoc {
         return s.replace("'", "'\"'\"'");
     }
 
-    private AutoCloseable withPoc(final BaseHostJUnit4Test test, final ITestDevice device)
-            throws DeviceNotAvailableException, FileNotFoundException {
+    /**
+     * Push the executables and resources of several PoCs to the device in a single transfer,
+     * skipping the files already there. Typically called once per module, with PoCs built with
+     * {@link Builder#cachePushes} so that running them doesn't push anything.
+     *
+     * @param test the instance of BaseHostJUnit4Test this is running in
+     * @param pocs the PoCs to push
+     */
+    public static void pushAll(final BaseHostJUnit4Test test, NativePoc... pocs)
+            throws DeviceNotAvailableException, IOException {
+        ITestDevice device = test.getDevice();
+        Map<String, File> remoteToLocalFiles = new LinkedHashMap<>();
+        Set<String> executables = new HashSet<>();
+        List<File> resTmpFiles = new ArrayList<>();
+        try {
+            for (NativePoc poc : pocs) {
+                String remoteFile = TMP_PATH + poc.pocName();
+                remoteToLocalFiles.put(
+                        remoteFile,
+                        poc.pocPusher(test, device).getLocalFile(poc.pocName() + "_sts"));
+                executables.add(remoteFile);
+                for (String resource : poc.resources()) {
+                    File resTmpFile = extractResource(resource);
+                    resTmpFiles.add(resTmpFile);
+                    remoteToLocalFiles.put(poc.resourcePushLocation() + resource, resTmpFile);
+                }
+            }
+            List<String> pushed = PushCache.of(device).pushAll(remoteToLocalFiles);
+            pushed.retainAll(executables);
+            if (!pushed.isEmpty()) {
+                CommandUtil.runAndCheck(
+                        device,
+                        "chmod 777 "
+                                + pushed.stream().map(f -> "'" + f + "'").collect(joining(" ")));
+            }
+        } finally {
+            resTmpFiles.forEach(File::delete);
+        }
+    }
+
+    private AutoCloseable withCachedPush(final BaseHostJUnit4Test test)
+            throws DeviceNotAvailableException, IOException {
+        pushAll(test, this);
+        // keep the files for the next run
+        return () -> {};
+    }
+
+    private PocPusher pocPusher(final BaseHostJUnit4Test test, final ITestDevice device) {
         PocPusher pocPusher =
                 new PocPusher().setDevice(device).setBuild(test.getBuild()).setAbi(test.getAbi());
         if (only32()) {
@@ -280,6 +339,12 @@ public abstract class NativePoc {
         if (only64()) {
             pocPusher.only64();
         }
+        return pocPusher;
+    }
+
+    private AutoCloseable withPoc(final BaseHostJUnit4Test test, final ITestDevice device)
+            throws DeviceNotAvailableException, FileNotFoundException {
+        PocPusher pocPusher = pocPusher(test, device);
         final String remoteFile = TMP_PATH + pocName();
         pocPusher.pushFile(pocName() + "_sts", remoteFile);
         device.executeShellV2Command(String.format("chmod 777 '%s'", remoteFile));
@@ -298,19 +363,8 @@ public abstract class NativePoc {
     private AutoCloseable withResourcesUpload(final ITestDevice device)
             throws DeviceNotAvailableException, IOException {
         for (String resource : resources()) {
-            File resTmpFile = File.createTempFile("STSNativePoc", "");
+            File resTmpFile = extractResource(resource);
             try {
-                try (InputStream in =
-                                NativePoc.class.getResourceAsStream(RESOURCE_ROOT + resource);
-                        OutputStream out =
-                                new BufferedOutputStream(new FileOutputStream(resTmpFile))) {
-                    byte[] buf = new byte[BUF_SIZE];
-                    int chunkSize;
-                    while ((chunkSize = in.read(buf)) != -1) {
-                        out.write(buf, 0, chunkSize);
-                    }
-                }
-
                 device.pushFile(resTmpFile, resourcePushLocation() + resource);
             } finally {
                 resTmpFile.delete();
@@ -325,6 +379,22 @@ public abstract class NativePoc {
         };
     }
 
+    private static File extractResource(String resource) throws IOException {
+        File resTmpFile = File.createTempFile("STSNativePoc", "");
+        try (InputStream in = NativePoc.class.getResourceAsStream(RESOURCE_ROOT + resource);
+                OutputStream out = new BufferedOutputStream(new FileOutputStream(resTmpFile))) {
+            byte[] buf = new byte[BUF_SIZE];
+            int chunkSize;
+            while ((chunkSize = in.read(buf)) != -1) {
+                out.write(buf, 0, chunkSize);
+            }
+        } catch (IOException | RuntimeException e) {
+            resTmpFile.delete();
+            throw e;
+        }
+        return resTmpFile;
+    }
+
     private void tryRemoveResources(ITestDevice device) throws DeviceNotAvailableException {
         for (String resource : resources()) {
             device.deleteFile(resourcePushLocation() + resource);
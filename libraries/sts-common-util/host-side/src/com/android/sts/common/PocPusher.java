@@ -31,8 +31,11 @@ import org.junit.runner.Description;
 
 import java.io.File;
 import java.io.FileNotFoundException;
+import java.io.IOException;
 import java.util.HashSet;
 import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
 import java.util.Set;
 
 /** Utilities to help push a native PoC executable to the device */
@@ -46,12 +49,14 @@ public class PocPusher extends TestWatcher {
     public boolean bitness64 = true;
     public boolean appendBitness = true;
     public boolean cleanup = true;
+    public boolean cache = false;
 
     @Override
     protected void starting(Description d) {
         bothBitness();
         appendBitness = true;
         cleanup = true;
+        cache = false;
     }
 
     @Override
@@ -60,7 +65,7 @@ public class PocPusher extends TestWatcher {
             String file = it.next();
             try {
                 CLog.i("Cleaning up %s", file);
-                device.deleteFile(file);
+                PushCache.of(device).delete(file);
             } catch (DeviceNotAvailableException e) {
                 CLog.e("Device unavailable when cleaning up %s", file);
                 continue; // try to remove next time
@@ -112,8 +117,21 @@ public class PocPusher extends TestWatcher {
         return this;
     }
 
-    public void pushFile(String testFile, String remoteFile)
-            throws FileNotFoundException, DeviceNotAvailableException {
+    /**
+     * Keep the pushed files on the device and skip pushing them again while they are unchanged.
+     * Cached files are not cleaned up; remove them with {@link PushCache#clear}.
+     */
+    public PocPusher cache(boolean cache) {
+        this.cache = cache;
+        return this;
+    }
+
+    /**
+     * Returns the local file to push for a test file name, appending the bitness if needed.
+     *
+     * @param testFile the name of the test file, without bitness
+     */
+    public File getLocalFile(String testFile) throws FileNotFoundException {
         if (appendBitness) {
             // if neither 32 or 64, nothing would ever be pushed.
             assertTrue("bitness must be 32, 64, or both.", bitness32 || bitness64);
@@ -130,11 +148,46 @@ public class PocPusher extends TestWatcher {
             }
             testFile += bitness;
         }
-        CLog.i("Pushing local: %s to remote: %s", testFile.toString(), remoteFile);
-        File localFile = buildHelper.getTestFile(testFile);
+        return buildHelper.getTestFile(testFile);
+    }
+
+    public void pushFile(String testFile, String remoteFile)
+            throws FileNotFoundException, DeviceNotAvailableException {
+        File localFile = getLocalFile(testFile);
+        if (cache) {
+            try {
+                PushCache.of(device).push(localFile, remoteFile);
+            } catch (IOException e) {
+                throw new IllegalStateException("could not read " + localFile, e);
+            }
+            return;
+        }
+        CLog.i("Pushing local: %s to remote: %s", localFile.toString(), remoteFile);
         device.pushFile(localFile, remoteFile);
         if (cleanup) {
             filesToCleanup.add(remoteFile);
         }
     }
+
+    /**
+     * Push several test files in a single transfer, skipping the ones already on the device.
+     *
+     * @param testToRemoteFiles the names of the test files, without bitness, keyed by the remote
+     *     path to push them to
+     */
+    public void pushFiles(Map<String, String> testToRemoteFiles)
+            throws FileNotFoundException, DeviceNotAvailableException {
+        Map<String, File> remoteToLocalFiles = new LinkedHashMap<>();
+        for (Map.Entry<String, String> file : testToRemoteFiles.entrySet()) {
+            remoteToLocalFiles.put(file.getValue(), getLocalFile(file.getKey()));
+        }
+        try {
+            PushCache.of(device).pushAll(remoteToLocalFiles);
+        } catch (IOException e) {
+            throw new IllegalStateException("could not read the files to push", e);
+        }
+        if (cleanup && !cache) {
+            filesToCleanup.addAll(remoteToLocalFiles.keySet());
+        }
+    }
 }
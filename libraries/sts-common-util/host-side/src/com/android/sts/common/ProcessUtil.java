@@ -23,11 +23,15 @@ import com.android.tradefed.device.ITestDevice;
 import com.android.tradefed.util.CommandResult;
 import com.android.tradefed.util.CommandStatus;
 
+import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.Collection;
 import java.util.HashMap;
+import java.util.LinkedHashSet;
 import java.util.List;
 import java.util.Map;
 import java.util.Optional;
+import java.util.concurrent.TimeUnit;
 import java.util.concurrent.TimeoutException;
 import java.util.regex.Matcher;
 import java.util.regex.Pattern;
@@ -59,6 +63,20 @@ public final class ProcessUtil {
 
     public static final long PROCESS_WAIT_TIMEOUT_MS = 10_000;
     public static final long PROCESS_POLL_PERIOD_MS = 250;
+    // Period of the checks done by the device-side wait commands. Each check forks pgrep and
+    // sleep, so this is kept coarse enough not to load the device or disturb the PoC under test.
+    static final String DEVICE_POLL_PERIOD = "0.2";
+    // Exit codes of the device-side wait commands.
+    static final int WAIT_TIMED_OUT = 3;
+    static final int WAIT_ERROR = 4;
+    static final String SECTION_PREFIX = "@pgrep ";
+    private static final long WAIT_COMMAND_MARGIN_MS = 5_000;
+    // Shell function setting $n to the uptime in centiseconds, read from /proc/uptime without
+    // forking. The fraction always has two digits, prefixed by 1 so it is not read as octal.
+    private static final String READ_UPTIME =
+            "now() { read n _ </proc/uptime; n=$((${n%.*} * 100 + 1${n#*.} - 100)); };";
+    // Shell condition that is true once the deadline set by startDeadline(...) has passed.
+    private static final String DEADLINE_PASSED = "{ now; [ $n -ge $d ]; }";
     public static final String[] INTENT_QUERY_CMDS = {
         "resolve-activity", "query-activities", "query-services", "query-receivers"
     };
@@ -139,20 +157,52 @@ public final class ProcessUtil {
     public static Map<Integer, String> waitProcessRunning(
             ITestDevice device, String pgrepRegex, long timeoutMs)
             throws TimeoutException, DeviceNotAvailableException {
+        return waitProcessesRunning(device, List.of(pgrepRegex), timeoutMs).get(pgrepRegex);
+    }
+
+    /**
+     * Wait until a running process is found for each of the given regexes. The wait happens in a
+     * single device-side command that returns as soon as all the processes are found.
+     *
+     * @param device the device to use
+     * @param pgrepRegexes the regexes for pgrep
+     * @param timeoutMs how long to wait before throwing a TimeoutException
+     * @return the pid to command map from pidsOf(...) of each regex
+     */
+    public static Map<String, Map<Integer, String>> waitProcessesRunning(
+            ITestDevice device, Collection<String> pgrepRegexes, long timeoutMs)
+            throws TimeoutException, DeviceNotAvailableException {
+        List<String> regexes = new ArrayList<>(new LinkedHashSet<>(pgrepRegexes));
         long endTime = System.currentTimeMillis() + timeoutMs;
         while (true) {
-            Optional<Map<Integer, String>> pidToCommand = pidsOf(device, pgrepRegex);
-            if (pidToCommand.isPresent()) {
-                return pidToCommand.get();
+            CommandResult res =
+                    runWaitCommand(
+                            device,
+                            waitProcessesRunningCommand(regexes, remainingMs(endTime)),
+                            remainingMs(endTime));
+            if (res.getExitCode() != null && res.getExitCode() == WAIT_TIMED_OUT) {
+                throw new TimeoutException("processes not running: " + res.getStdout().trim());
             }
+            Map<String, Map<Integer, String>> pidsPerRegex = new HashMap<>();
+            Map<Integer, String> pids = null;
+            for (String line : res.getStdout().split("\n")) {
+                if (line.startsWith(SECTION_PREFIX)) {
+                    pids = new HashMap<>();
+                    int index = Integer.parseInt(line.substring(SECTION_PREFIX.length()).trim());
+                    pidsPerRegex.put(regexes.get(index), pids);
+                } else if (pids != null && !line.isEmpty()) {
+                    String[] pidComm = line.split(" ", 2);
+                    pids.put(Integer.valueOf(pidComm[0]), pidComm.length > 1 ? pidComm[1] : "");
+                }
+            }
+            if (pidsPerRegex.size() == regexes.size()
+                    && pidsPerRegex.values().stream().noneMatch(Map::isEmpty)) {
+                return pidsPerRegex;
+            }
+            // a process exited between the wait and the listing, wait again
             if (System.currentTimeMillis() > endTime) {
                 throw new TimeoutException();
             }
-            try {
-                Thread.sleep(PROCESS_POLL_PERIOD_MS);
-            } catch (InterruptedException e) {
-                // don't care, just keep looping until we time out
-            }
         }
     }
 
@@ -197,30 +247,35 @@ public final class ProcessUtil {
      */
     public static void waitPidExited(ITestDevice device, int pid, long timeoutMs)
             throws TimeoutException, DeviceNotAvailableException, KillException {
-        long endTime = System.currentTimeMillis() + timeoutMs;
-        CommandResult res = null;
-        while (true) {
-            // kill -0 asserts that the process is alive and readable
-            res = device.executeShellV2Command(String.format("kill -0 %d", pid));
-            if (res.getStatus() != CommandStatus.SUCCESS) {
-                String err = res.getStderr();
-                if (!err.contains("No such process")) {
-                    throw new KillException(
-                            "kill -0 returned stderr: " + err,
-                            KillException.Reason.NO_SUCH_PROCESS);
-                }
-                // the process is most likely killed
-                return;
-            }
-            if (System.currentTimeMillis() > endTime) {
-                throw new TimeoutException();
-            }
-            try {
-                Thread.sleep(PROCESS_POLL_PERIOD_MS);
-            } catch (InterruptedException e) {
-                // don't care, just keep looping until we time out
-            }
+        waitPidsExited(device, List.of(pid), timeoutMs);
+    }
+
+    /**
+     * Wait for processes to be exited. The wait happens in a single device-side command that
+     * returns as soon as the last process is exited. It is possible, but unlikely, for a pid to be
+     * reused between the device-side checks.
+     *
+     * @param device the device to use
+     * @param pids the ids of the processes to wait until exited
+     * @param timeoutMs how long to wait before throwing a TimeoutException
+     */
+    public static void waitPidsExited(ITestDevice device, Collection<Integer> pids, long timeoutMs)
+            throws TimeoutException, DeviceNotAvailableException, KillException {
+        if (pids.isEmpty()) {
+            return;
         }
+        CommandResult res =
+                runWaitCommand(device, waitPidsExitedCommand(pids, timeoutMs), timeoutMs);
+        if (res.getStatus() == CommandStatus.SUCCESS) {
+            // all the processes are most likely killed
+            return;
+        }
+        if (res.getExitCode() != null && res.getExitCode() == WAIT_TIMED_OUT) {
+            throw new TimeoutException("processes still running: " + res.getStdout().trim());
+        }
+        throw new KillException(
+                "kill -0 returned stderr: " + res.getStdout().trim(),
+                KillException.Reason.NO_SUCH_PROCESS);
     }
 
     /**
@@ -247,20 +302,23 @@ public final class ProcessUtil {
             throws DeviceNotAvailableException, TimeoutException, KillException {
         CommandResult res = device.executeShellV2Command(String.format("kill -%d %d", signal, pid));
         if (res.getStatus() != CommandStatus.SUCCESS) {
-            String err = res.getStderr();
-            if (err.contains("invalid signal specification")) {
-                throw new KillException(err, KillException.Reason.INVALID_SIGNAL);
-            } else if (err.contains("Operation not permitted")) {
-                throw new KillException(err, KillException.Reason.INSUFFICIENT_PERMISSIONS);
-            } else if (err.contains("No such process")) {
-                throw new KillException(err, KillException.Reason.NO_SUCH_PROCESS);
-            } else {
-                throw new KillException(err, KillException.Reason.UNKNOWN);
-            }
+            throw toKillException(res.getStderr());
         }
         waitPidExited(device, pid, timeoutMs);
     }
 
+    private static KillException toKillException(String err) {
+        if (err.contains("invalid signal specification")) {
+            return new KillException(err, KillException.Reason.INVALID_SIGNAL);
+        } else if (err.contains("Operation not permitted")) {
+            return new KillException(err, KillException.Reason.INSUFFICIENT_PERMISSIONS);
+        } else if (err.contains("No such process")) {
+            return new KillException(err, KillException.Reason.NO_SUCH_PROCESS);
+        } else {
+            return new KillException(err, KillException.Reason.UNKNOWN);
+        }
+    }
+
     /**
      * Send SIGKILL to a all processes matching a pattern.
      *
@@ -297,17 +355,19 @@ public final class ProcessUtil {
             return false;
         }
 
-        for (int pid : pids.get().keySet()) {
-            try {
-                killPid(device, pid, timeoutMs);
-            } catch (KillException e) {
+        // signal all the processes at once, then wait for all of them in one command
+        String pidStr =
+                pids.get().keySet().stream().map(String::valueOf).collect(Collectors.joining(" "));
+        CommandResult res = device.executeShellV2Command("kill -9 " + pidStr);
+        if (res.getStatus() != CommandStatus.SUCCESS) {
+            for (String err : res.getStderr().split("\n")) {
                 // ignore pids that do not exist
-                if (e.getReason() != KillException.Reason.NO_SUCH_PROCESS) {
-                    throw e;
+                if (!err.isEmpty() && !err.contains("No such process")) {
+                    throw toKillException(err);
                 }
             }
         }
-
+        waitPidsExited(device, pids.get().keySet(), timeoutMs);
         return true;
     }
 
@@ -371,6 +431,91 @@ public final class ProcessUtil {
         };
     }
 
+    private static long remainingMs(long endTime) {
+        return Math.max(0, endTime - System.currentTimeMillis());
+    }
+
+    /** Runs a device-side wait command, allowing it a bit more than its own timeout. */
+    private static CommandResult runWaitCommand(ITestDevice device, String cmd, long timeoutMs)
+            throws TimeoutException, DeviceNotAvailableException {
+        CommandResult res =
+                device.executeShellV2Command(
+                        cmd,
+                        timeoutMs + WAIT_COMMAND_MARGIN_MS,
+                        TimeUnit.MILLISECONDS,
+                        0 /* retryAttempts */);
+        if (res.getStatus() == CommandStatus.TIMED_OUT) {
+            throw new TimeoutException();
+        }
+        return res;
+    }
+
+    /**
+     * Returns a shell loop that exits 0 once all the pids are gone, {@link #WAIT_TIMED_OUT} with
+     * the running pids after the timeout, or {@link #WAIT_ERROR} with the kill error if a pid
+     * exists but can't be signaled.
+     */
+    static String waitPidsExitedCommand(Collection<Integer> pids, long timeoutMs) {
+        String pidStr = pids.stream().map(String::valueOf).collect(Collectors.joining(" "));
+        return String.format(
+                "%s while :; do r=; for p in %s; do if kill -0 $p 2>/dev/null; then r=\"$r $p\";"
+                        + " elif [ -d /proc/$p ]; then echo \"$p $(kill -0 $p 2>&1)\"; exit %d;"
+                        + " fi; done; [ -z \"$r\" ] && exit 0; %s && { echo $r; exit %d; };"
+                        + " sleep %s; done",
+                startDeadline(timeoutMs),
+                pidStr,
+                WAIT_ERROR,
+                DEADLINE_PASSED,
+                WAIT_TIMED_OUT,
+                DEVICE_POLL_PERIOD);
+    }
+
+    /**
+     * Returns a shell loop that waits until each regex matches a process, then lists the matches
+     * of each regex after a {@link #SECTION_PREFIX} line.
+     */
+    static String waitProcessesRunningCommand(List<String> pgrepRegexes, long timeoutMs) {
+        StringBuilder vars = new StringBuilder();
+        StringBuilder check = new StringBuilder();
+        StringBuilder list = new StringBuilder();
+        for (int i = 0; i < pgrepRegexes.size(); i++) {
+            vars.append(String.format("r%d=%s; ", i, splitQuote(pgrepRegexes.get(i))));
+            check.append(String.format("pgrep -f \"$r%d\" >/dev/null || m=\"$m %d\"; ", i, i));
+            list.append(String.format("; echo %s%d; pgrep -f -l \"$r%d\"", SECTION_PREFIX, i, i));
+        }
+        return String.format(
+                "%s %swhile :; do m=; %s[ -z \"$m\" ] && break; %s && { echo $m; exit %d; };"
+                        + " sleep %s; done%s; true",
+                startDeadline(timeoutMs),
+                vars,
+                check,
+                DEADLINE_PASSED,
+                WAIT_TIMED_OUT,
+                DEVICE_POLL_PERIOD,
+                list);
+    }
+
+    /**
+     * Quotes each character separately so that the regex doesn't match the command line of the
+     * shell running the wait loop, or of the subshells it forks.
+     */
+    private static String splitQuote(String s) {
+        StringBuilder quoted = new StringBuilder();
+        for (char c : s.toCharArray()) {
+            quoted.append(c == '\'' ? "\\'" : "'" + c + "'");
+        }
+        return quoted.length() == 0 ? "''" : quoted.toString();
+    }
+
+    /**
+     * Returns a shell statement that sets the deadline checked by {@link #DEADLINE_PASSED}. Only
+     * POSIX shell features are used, so that the loops run the same on the device and in tests.
+     */
+    private static String startDeadline(long timeoutMs) {
+        // The uptime counts centiseconds from an unaligned start, don't wait less than timeoutMs.
+        return String.format("%s now; d=$((n + %d));", READ_UPTIME, (timeoutMs + 9) / 10 + 1);
+    }
+
     /**
      * Returns the currently open file names of the specified process. This does not include shared
      * libraries linked by the linker.
@@ -0,0 +1,278 @@
+/*
+ * Copyright (C) 2026 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.android.sts.common;
+
+import static java.util.stream.Collectors.joining;
+
+import com.android.tradefed.device.DeviceNotAvailableException;
+import com.android.tradefed.device.ITestDevice;
+import com.android.tradefed.log.LogUtil.CLog;
+import com.android.tradefed.util.CommandResult;
+
+import com.google.common.hash.Hashing;
+
+import java.io.BufferedOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.WeakHashMap;
+
+/**
+ * Per-device cache of the files pushed to the device, keyed by the content hash of the local file.
+ *
+ * <p>A push is skipped when the remote file still holds the bytes of the last push: the device
+ * hasn't rebooted since, and the remote file has the size and modification time it had right after
+ * the push. Checking all the files of a push takes a single shell command. Several missing files
+ * are pushed in a single archive.
+ *
+ * <p>Files pushed through the cache stay on the device for the next push; remove them with {@link
+ * #delete} or {@link #clear}.
+ */
+public final class PushCache {
+    static final String BOOT_ID_PATH = "/proc/sys/kernel/random/boot_id";
+    static final String ARCHIVE_PATH = "/data/local/tmp/.sts-push-cache.tar";
+    private static final String STAT_SEPARATOR = "|";
+    private static final Map<ITestDevice, PushCache> sCaches =
+            Collections.synchronizedMap(new WeakHashMap<>());
+
+    private final ITestDevice mDevice;
+    private String mBootId = null;
+    private final Map<String, Entry> mEntries = new HashMap<>();
+
+    /** What was pushed to a remote path, and how the remote file looked right after. */
+    private static class Entry {
+        final String mHash;
+        final String mStat;
+
+        Entry(String hash, String stat) {
+            mHash = hash;
+            mStat = stat;
+        }
+    }
+
+    private PushCache(ITestDevice device) {
+        mDevice = device;
+    }
+
+    /** Returns the push cache of a device. */
+    public static PushCache of(ITestDevice device) {
+        return sCaches.computeIfAbsent(device, PushCache::new);
+    }
+
+    /**
+     * Push a file unless the remote file already holds the same bytes.
+     *
+     * @param localFile the file to push
+     * @param remoteFile the absolute path to push to
+     * @return whether the file was pushed
+     */
+    public boolean push(File localFile, String remoteFile)
+            throws DeviceNotAvailableException, IOException {
+        return !pushAll(Map.of(remoteFile, localFile)).isEmpty();
+    }
+
+    /**
+     * Push all the files whose remote file doesn't already hold the same bytes, in a single
+     * transfer.
+     *
+     * @param remoteToLocalFiles the files to push, keyed by the absolute path to push them to
+     * @return the remote paths that were pushed
+     */
+    public synchronized List<String> pushAll(Map<String, File> remoteToLocalFiles)
+            throws DeviceNotAvailableException, IOException {
+        Map<String, String> hashes = new LinkedHashMap<>();
+        for (Map.Entry<String, File> file : remoteToLocalFiles.entrySet()) {
+            hashes.put(file.getKey(), hash(file.getValue()));
+        }
+
+        // only check the device if something could be there already
+        Map<String, String> stats = Collections.emptyMap();
+        if (hashes.keySet().stream().anyMatch(mEntries::containsKey)) {
+            stats = stat(hashes.keySet(), null);
+        }
+        List<String> missing = new ArrayList<>();
+        for (Map.Entry<String, String> hash : hashes.entrySet()) {
+            String remoteFile = hash.getKey();
+            Entry entry = mEntries.get(remoteFile);
+            if (entry == null
+                    || !entry.mHash.equals(hash.getValue())
+                    || !entry.mStat.equals(stats.get(remoteFile))) {
+                missing.add(remoteFile);
+            }
+        }
+        if (missing.isEmpty()) {
+            CLog.d("all %d files already pushed", hashes.size());
+            return missing;
+        }
+
+        String preamble = null;
+        if (missing.size() == 1) {
+            String remoteFile = missing.get(0);
+            File localFile = remoteToLocalFiles.get(remoteFile);
+            CLog.i("Pushing local: %s to remote: %s", localFile, remoteFile);
+            mDevice.pushFile(localFile, remoteFile);
+        } else {
+            CLog.i("Pushing %d files in an archive", missing.size());
+            File archive = File.createTempFile("sts-push-cache", ".tar");
+            try {
+                writeTar(archive, missing, remoteToLocalFiles);
+                mDevice.pushFile(archive, ARCHIVE_PATH);
+            } finally {
+                archive.delete();
+            }
+            preamble = String.format("tar -xf %1$s -C / && rm -f %1$s", ARCHIVE_PATH);
+        }
+
+        // remember how the pushed files look on the device
+        stats = stat(missing, preamble);
+        for (String remoteFile : missing) {
+            String stat = stats.get(remoteFile);
+            if (stat != null) {
+                mEntries.put(remoteFile, new Entry(hashes.get(remoteFile), stat));
+            } else {
+                mEntries.remove(remoteFile);
+            }
+        }
+        return missing;
+    }
+
+    /** Delete a remote file and forget it was pushed. */
+    public synchronized void delete(String remoteFile) throws DeviceNotAvailableException {
+        mEntries.remove(remoteFile);
+        mDevice.deleteFile(remoteFile);
+    }
+
+    /** Delete all the remote files pushed through this cache. */
+    public synchronized void clear() throws DeviceNotAvailableException {
+        for (String remoteFile : new ArrayList<>(mEntries.keySet())) {
+            delete(remoteFile);
+        }
+    }
+
+    /** Forget all the pushes, for example after the remote files were changed by other means. */
+    public synchronized void invalidate() {
+        mEntries.clear();
+    }
+
+    /**
+     * Returns the size and modification time of the remote files that exist, and drops all the
+     * entries if the device rebooted since the last call.
+     */
+    private Map<String, String> stat(Collection<String> remoteFiles, String preamble)
+            throws DeviceNotAvailableException {
+        String cmd =
+                String.format(
+                        "%scat %s; stat -c '%%s%s%%y%s%%n' %s 2>/dev/null; true",
+                        preamble == null ? "" : preamble + " || exit 1; ",
+                        BOOT_ID_PATH,
+                        STAT_SEPARATOR,
+                        STAT_SEPARATOR,
+                        remoteFiles.stream().map(f -> "'" + f + "'").collect(joining(" ")));
+        CommandResult res = CommandUtil.runAndCheck(mDevice, cmd);
+        String[] lines = res.getStdout().split("\n");
+        String bootId = lines[0].trim();
+        if (!bootId.equals(mBootId)) {
+            if (mBootId != null) {
+                CLog.i("device rebooted, forgetting %d pushed files", mEntries.size());
+            }
+            mEntries.clear();
+            mBootId = bootId;
+        }
+        Map<String, String> stats = new HashMap<>();
+        for (int i = 1; i < lines.length; i++) {
+            int nameIndex = lines[i].indexOf(STAT_SEPARATOR, lines[i].indexOf(STAT_SEPARATOR) + 1);
+            if (nameIndex > 0) {
+                stats.put(lines[i].substring(nameIndex + 1), lines[i].substring(0, nameIndex));
+            }
+        }
+        return stats;
+    }
+
+    private static String hash(File file) throws IOException {
+        return com.google.common.io.Files.asByteSource(file).hash(Hashing.sha256()).toString();
+    }
+
+    /** Writes a ustar archive of the files, named by their remote path relative to "/". */
+    private static void writeTar(File archive, List<String> remoteFiles, Map<String, File> files)
+            throws IOException {
+        try (OutputStream out = new BufferedOutputStream(new FileOutputStream(archive))) {
+            for (String remoteFile : remoteFiles) {
+                File localFile = files.get(remoteFile);
+                long size = localFile.length();
+                byte[] header = new byte[512];
+                putTarName(header, remoteFile.replaceFirst("^/+", ""));
+                putTarNumber(header, 100, 8, localFile.canExecute() ? 0755 : 0644);
+                putTarNumber(header, 108, 8, 0);
+                putTarNumber(header, 116, 8, 0);
+                putTarNumber(header, 124, 12, size);
+                putTarNumber(header, 136, 12, localFile.lastModified() / 1000);
+                header[156] = '0';
+                System.arraycopy("ustar\0".getBytes(StandardCharsets.US_ASCII), 0, header, 257, 6);
+                header[263] = '0';
+                header[264] = '0';
+                // the checksum is computed with the checksum field set to spaces
+                for (int i = 148; i < 156; i++) {
+                    header[i] = ' ';
+                }
+                long checksum = 0;
+                for (byte b : header) {
+                    checksum += b & 0xff;
+                }
+                putTarNumber(header, 148, 7, checksum);
+                header[154] = 0;
+                out.write(header);
+                Files.copy(localFile.toPath(), out);
+                out.write(new byte[(int) ((512 - size % 512) % 512)]);
+            }
+            // end of archive
+            out.write(new byte[1024]);
+        }
+    }
+
+    private static void putTarName(byte[] header, String name) throws IOException {
+        byte[] bytes = name.getBytes(StandardCharsets.UTF_8);
+        if (bytes.length <= 100) {
+            System.arraycopy(bytes, 0, header, 0, bytes.length);
+            return;
+        }
+        // split into the 155 bytes prefix and the 100 bytes name fields at a '/'
+        int split = name.lastIndexOf('/', 155);
+        byte[] prefix = name.substring(0, Math.max(split, 0)).getBytes(StandardCharsets.UTF_8);
+        byte[] rest = name.substring(split + 1).getBytes(StandardCharsets.UTF_8);
+        if (split <= 0 || prefix.length > 155 || rest.length > 100) {
+            throw new IOException("path too long to push in an archive: " + name);
+        }
+        System.arraycopy(prefix, 0, header, 345, prefix.length);
+        System.arraycopy(rest, 0, header, 0, rest.length);
+    }
+
+    private static void putTarNumber(byte[] header, int offset, int length, long value) {
+        byte[] digits =
+                String.format("%0" + (length - 1) + "o", value).getBytes(StandardCharsets.US_ASCII);
+        System.arraycopy(digits, 0, header, offset, digits.length);
+    }
+}
@@ -0,0 +1,629 @@
+/*
+ * Copyright (C) 2026 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.android.sts.common.util;
+
+import com.android.server.os.TombstoneProtos.*;
+import com.android.tradefed.log.LogUtil.CLog;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.Reader;
+import java.io.StringReader;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * Single-pass tombstone parser.
+ *
+ * <p>{@link TombstoneParser} splits its input with regular expressions several times and tries
+ * every pattern on every line of each piece. This parser reads a {@link Reader} once, line by line,
+ * and only runs a pattern on a line once a cheap prefix check says that it can match. It keeps just
+ * enough state to build exactly the same {@link Tombstone} as {@link TombstoneParser}, and never
+ * holds more than one tombstone worth of matched lines in memory.
+ */
+public class StreamingTombstoneParser {
+
+    private static final String DEBUG_TAG = "DEBUG   :";
+    private static final String THREAD_SEPARATOR =
+            TombstoneParser.THREAD_SEPARATOR_PATTERN.pattern();
+    private static final String GET_MAIN_THREAD_FAILURE =
+            TombstoneParser.GET_MAIN_THREAD_FAILURE_PATTERN.pattern();
+    private static final String SIGNAL_MISSING = TombstoneParser.SIGNAL_MISSING_PATTERN.pattern();
+    private static final String NO_MEMORY_MAPS = TombstoneParser.NO_MEMORY_MAPS_PATTERN.pattern();
+    private static final String ABORT_PREFIX = "Abort message: '";
+    private static final String CAUSE = "Cause: ";
+    private static final String MEMORY_MAP = "memory map (";
+
+    private StreamingTombstoneParser() {}
+
+    /** Parse a logcat stream and build a list of tombstones, like {@link TombstoneParser}. */
+    public static List<Tombstone> parseLogcat(Reader logcat) throws IOException {
+        List<Tombstone> tombstones = new ArrayList<>();
+        BufferedReader reader = buffered(logcat);
+        TombstoneState tombstone = null;
+        boolean firstLine = false;
+        String line;
+        while ((line = reader.readLine()) != null) {
+            if (line.contains(TombstoneParser.TOMBSTONE_HEADER)) {
+                finishLogcatTombstone(tombstone, tombstones);
+                tombstone = new TombstoneState();
+                firstLine = true;
+            } else if (tombstone == null) {
+                continue;
+            } else if (firstLine) {
+                firstLine = false;
+                if (line.contains("Native Crash TIME: ")
+                        && TombstoneParser.NATIVE_CRASH_TIME_PATTERN.matcher(line).find()) {
+                    CLog.d("ignoring crash time");
+                    tombstone = null;
+                    continue;
+                }
+            }
+            int tag = line.indexOf(DEBUG_TAG);
+            if (tag < 0) {
+                continue;
+            }
+            // logcat removes trailing space after ":" in the case of empty lines
+            int start = tag + DEBUG_TAG.length();
+            if (start < line.length() && line.charAt(start) == ' ') {
+                start++;
+            }
+            tombstone.accept(line.substring(start));
+        }
+        finishLogcatTombstone(tombstone, tombstones);
+        return tombstones;
+    }
+
+    private static void finishLogcatTombstone(TombstoneState tombstone, List<Tombstone> out) {
+        if (tombstone == null) {
+            return;
+        }
+        Tombstone.Builder tombstoneBuilder = Tombstone.newBuilder();
+        if (!tombstone.build(tombstoneBuilder)) {
+            CLog.w("parsing tombstone failed");
+        }
+        out.add(tombstoneBuilder.build());
+    }
+
+    /**
+     * Parse a single tombstone in text format, like {@link TombstoneParser#parseTombstone}.
+     *
+     * @return false if a mandatory section is missing; the builder then holds what was parsed
+     *     before that section.
+     */
+    public static boolean parseTombstone(Reader tombstone, Tombstone.Builder tombstoneBuilder)
+            throws IOException {
+        BufferedReader reader = buffered(tombstone);
+        TombstoneState state = new TombstoneState();
+        String line;
+        while ((line = reader.readLine()) != null) {
+            state.accept(line);
+        }
+        return state.build(tombstoneBuilder);
+    }
+
+    /**
+     * Parse tombstones in text format on up to {@code parallelism} threads.
+     *
+     * @return the tombstones, in the same order as the blobs. Tombstones that could not be fully
+     *     parsed are partially filled, like in {@link TombstoneParser#parseLogcat}.
+     */
+    public static List<Tombstone> parseTombstones(List<String> tombstoneBlobs, int parallelism)
+            throws InterruptedException {
+        List<ReaderSupplier> sources = new ArrayList<>();
+        for (String blob : tombstoneBlobs) {
+            sources.add(() -> new StringReader(blob));
+        }
+        try {
+            return parseAll(sources, parallelism);
+        } catch (IOException e) {
+            // Reading a string doesn't throw.
+            throw new IllegalStateException(e);
+        }
+    }
+
+    /**
+     * Parse tombstone files in text format on up to {@code parallelism} threads.
+     *
+     * @return the tombstones, in the same order as the files.
+     */
+    public static List<Tombstone> parseTombstoneFiles(List<File> tombstoneFiles, int parallelism)
+            throws IOException, InterruptedException {
+        List<ReaderSupplier> sources = new ArrayList<>();
+        for (File file : tombstoneFiles) {
+            sources.add(
+                    () -> new InputStreamReader(new FileInputStream(file), StandardCharsets.UTF_8));
+        }
+        return parseAll(sources, parallelism);
+    }
+
+    private interface ReaderSupplier {
+        Reader open() throws IOException;
+    }
+
+    private static List<Tombstone> parseAll(List<ReaderSupplier> sources, int parallelism)
+            throws IOException, InterruptedException {
+        List<Tombstone> tombstones = new ArrayList<>(sources.size());
+        if (parallelism <= 1 || sources.size() <= 1) {
+            for (ReaderSupplier source : sources) {
+                tombstones.add(parseOne(source));
+            }
+            return tombstones;
+        }
+        ExecutorService executor =
+                Executors.newFixedThreadPool(Math.min(parallelism, sources.size()));
+        try {
+            List<Future<Tombstone>> futures = new ArrayList<>(sources.size());
+            for (ReaderSupplier source : sources) {
+                futures.add(executor.submit(() -> parseOne(source)));
+            }
+            for (Future<Tombstone> future : futures) {
+                try {
+                    tombstones.add(future.get());
+                } catch (ExecutionException e) {
+                    if (e.getCause() instanceof IOException) {
+                        throw (IOException) e.getCause();
+                    }
+                    throw new IllegalStateException(e.getCause());
+                }
+            }
+            return tombstones;
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+
+    private static Tombstone parseOne(ReaderSupplier source) throws IOException {
+        Tombstone.Builder tombstoneBuilder = Tombstone.newBuilder();
+        try (Reader reader = source.open()) {
+            if (!parseTombstone(reader, tombstoneBuilder)) {
+                CLog.w("parsing tombstone failed");
+            }
+        }
+        return tombstoneBuilder.build();
+    }
+
+    private static BufferedReader buffered(Reader reader) {
+        return reader instanceof BufferedReader
+                ? (BufferedReader) reader
+                : new BufferedReader(reader, 64 * 1024);
+    }
+
+    /** Returns the number of leading spaces, as matched by the " *" prefix of the patterns. */
+    private static int indent(String line) {
+        int i = 0;
+        while (i < line.length() && line.charAt(i) == ' ') {
+            i++;
+        }
+        return i;
+    }
+
+    /** Returns a matcher if the entire line matches, null otherwise. */
+    private static Matcher match(Pattern pattern, String line) {
+        Matcher m = pattern.matcher(line);
+        return m.matches() ? m : null;
+    }
+
+    private static Matcher matchFrame(String line, int indent) {
+        return line.startsWith("#", indent) ? match(TombstoneParser.BACKTRACE_PATTERN, line) : null;
+    }
+
+    private static boolean isMemoryMapLine(String line, int indent) {
+        if (line.startsWith("--->", indent)) {
+            indent += 4;
+        }
+        return indent < line.length()
+                && Character.digit(line.charAt(indent), 16) >= 0
+                && TombstoneParser.MEMORY_MAP_LINE_PATTERN.matcher(line).matches();
+    }
+
+    /**
+     * The lines of one tombstone that matter, collected as they stream by. Nothing is written to
+     * the proto until {@link #build} so that the fields are set in the same order, and with the
+     * same early exits, as {@link TombstoneParser}.
+     */
+    private static final class TombstoneState {
+        // Header, matched anywhere before the first thread separator.
+        private Matcher mFingerprint;
+        private Matcher mRevision;
+        private Matcher mAbi;
+        private Matcher mTimestamp;
+        private Matcher mUptime;
+        private boolean mMainThreadMissing;
+
+        // Main thread. The signal is only looked for before the first cause.
+        private boolean mSignalMissing;
+        private Matcher mSignal;
+        // Lines from the first abort message on; the message ends at the last line ending in '.
+        private List<String> mAbortLines;
+        private int mAbortEnd = -1;
+        private final List<CauseState> mCauses = new ArrayList<>();
+        // Memory maps only count after the last cause.
+        private boolean mNoMemoryMaps;
+        private boolean mInMemoryMap;
+        private int mMemoryMappingCount;
+
+        // The main thread first, then one per thread separator.
+        private final List<ThreadState> mThreads = new ArrayList<>();
+
+        TombstoneState() {
+            mThreads.add(new ThreadState());
+        }
+
+        void accept(String line) {
+            int separator = line.indexOf(THREAD_SEPARATOR);
+            while (separator >= 0) {
+                if (separator > 0) {
+                    onLine(line.substring(0, separator));
+                }
+                mThreads.add(new ThreadState());
+                line = line.substring(separator + THREAD_SEPARATOR.length());
+                if (line.isEmpty()) {
+                    return;
+                }
+                separator = line.indexOf(THREAD_SEPARATOR);
+            }
+            onLine(line);
+        }
+
+        private void onLine(String line) {
+            ThreadState thread = mThreads.get(mThreads.size() - 1);
+            int indent = indent(line);
+            if (mThreads.size() == 1) {
+                onMainThreadLine(line, indent, thread);
+            } else {
+                thread.onHeaderLine(line);
+            }
+            thread.onLine(line, indent);
+        }
+
+        private void onMainThreadLine(String line, int indent, ThreadState mainThread) {
+            if (indent == 0) {
+                if (mFingerprint == null && line.startsWith("Build fingerprint: ")) {
+                    mFingerprint = match(TombstoneParser.FINGERPRINT_PATTERN, line);
+                } else if (mRevision == null && line.startsWith("Revision: ")) {
+                    mRevision = match(TombstoneParser.REVISION_PATTERN, line);
+                } else if (mAbi == null && line.startsWith("ABI: ")) {
+                    mAbi = match(TombstoneParser.ABI_PATTERN, line);
+                } else if (mTimestamp == null && line.startsWith("Timestamp: ")) {
+                    mTimestamp = match(TombstoneParser.TIMESTAMP_PATTERN, line);
+                } else if (mUptime == null && line.startsWith("Process uptime: ")) {
+                    mUptime = match(TombstoneParser.UPTIME_PATTERN, line);
+                } else if (line.equals(GET_MAIN_THREAD_FAILURE)) {
+                    mMainThreadMissing = true;
+                }
+            }
+
+            if (mAbortLines != null) {
+                mAbortLines.add(line);
+                if (line.endsWith("'")) {
+                    mAbortEnd = mAbortLines.size() - 1;
+                }
+            } else if (line.startsWith(ABORT_PREFIX)) {
+                String message = line.substring(ABORT_PREFIX.length());
+                mAbortLines = new ArrayList<>();
+                mAbortLines.add(message);
+                if (message.endsWith("'")) {
+                    mAbortEnd = 0;
+                }
+            }
+
+            if (line.contains(CAUSE)) {
+                // Any line containing a cause starts a new cause section, even if it isn't one.
+                mCauses.add(
+                        new CauseState(
+                                line.startsWith(CAUSE)
+                                        ? match(TombstoneParser.CAUSE_PATTERN, line)
+                                        : null));
+                mNoMemoryMaps = false;
+                mInMemoryMap = false;
+                mMemoryMappingCount = 0;
+            } else if (mCauses.isEmpty()) {
+                mainThread.onHeaderLine(line);
+                if (line.startsWith("signal ")) {
+                    if (mSignal == null) {
+                        mSignal = match(TombstoneParser.SIGNAL_PATTERN, line);
+                    }
+                    if (line.equals(SIGNAL_MISSING)) {
+                        mSignalMissing = true;
+                    }
+                }
+            } else {
+                mCauses.get(mCauses.size() - 1).onLine(line, indent);
+            }
+
+            if (line.equals(NO_MEMORY_MAPS)) {
+                mNoMemoryMaps = true;
+            } else if (line.contains(MEMORY_MAP)
+                    && TombstoneParser.MEMORY_MAP_HEADER_PATTERN.matcher(line).find()) {
+                // Every header starts a new memory map, but only a full header line counts.
+                mInMemoryMap = TombstoneParser.MEMORY_MAP_HEADER_PATTERN.matcher(line).matches();
+            }
+            if (mInMemoryMap && isMemoryMapLine(line, indent)) {
+                mMemoryMappingCount++;
+            }
+        }
+
+        boolean build(Tombstone.Builder tombstoneBuilder) {
+            if (mFingerprint == null) {
+                CLog.w("fingerprint failed");
+                return false;
+            }
+            tombstoneBuilder.setBuildFingerprint(mFingerprint.group("fingerprint"));
+            if (mRevision == null) {
+                CLog.w("revision failed");
+                return false;
+            }
+            tombstoneBuilder.setRevision(mRevision.group("revision"));
+            if (mAbi == null) {
+                CLog.w("abi failed");
+                return false;
+            }
+            Architecture arch = TombstoneParser.parseArchitecture(mAbi.group("abi"));
+            if (arch != null) {
+                tombstoneBuilder.setArch(arch);
+            }
+            if (mTimestamp != null) {
+                tombstoneBuilder.setTimestamp(mTimestamp.group("timestamp"));
+            }
+            if (mUptime != null) {
+                tombstoneBuilder.setProcessUptime(Integer.valueOf(mUptime.group("uptime")));
+            }
+            if (mMainThreadMissing) {
+                // tombstoned couldn't get the main thread info, so that's all we get
+                return true;
+            }
+
+            if (!buildMainThread(tombstoneBuilder)) {
+                CLog.w("main thread failed");
+                return false;
+            }
+
+            for (int i = 1; i < mThreads.size(); i++) {
+                ThreadState thread = mThreads.get(i);
+                com.android.server.os.TombstoneProtos.Thread.Builder threadBuilder =
+                        com.android.server.os.TombstoneProtos.Thread.newBuilder();
+                thread.buildHeader(tombstoneBuilder, threadBuilder);
+                if (!thread.mHasRegisters) {
+                    CLog.w("thread failed");
+                    return false;
+                }
+                thread.buildBacktrace(threadBuilder);
+                tombstoneBuilder.putThreads(threadBuilder.getId(), threadBuilder.build());
+            }
+
+            for (Matcher m : mThreads.get(mThreads.size() - 1).mOpenFiles) {
+                tombstoneBuilder.addOpenFds(TombstoneParser.parseOpenFile(m));
+            }
+            return true;
+        }
+
+        private boolean buildMainThread(Tombstone.Builder tombstoneBuilder) {
+            ThreadState mainThread = mThreads.get(0);
+            com.android.server.os.TombstoneProtos.Thread.Builder mainThreadBuilder =
+                    com.android.server.os.TombstoneProtos.Thread.newBuilder();
+            try {
+                mainThread.buildHeader(tombstoneBuilder, mainThreadBuilder);
+                if (mSignal != null) {
+                    tombstoneBuilder.setSignalInfo(TombstoneParser.parseSignal(mSignal));
+                } else if (!mSignalMissing) {
+                    CLog.w("couldn't match signal messages");
+                    return false;
+                }
+                if (mAbortEnd >= 0) {
+                    String message = String.join("\n", mAbortLines.subList(0, mAbortEnd + 1));
+                    tombstoneBuilder.setAbortMessage(message.substring(0, message.length() - 1));
+                }
+                if (!mainThread.mHasRegisters) {
+                    CLog.w("main thread get thread registers failed");
+                    return false;
+                }
+                mainThread.buildBacktrace(mainThreadBuilder);
+                for (CauseState cause : mCauses) {
+                    if (cause.mCause != null) {
+                        tombstoneBuilder.addCauses(cause.build());
+                    }
+                }
+            } finally {
+                tombstoneBuilder.putThreads(mainThreadBuilder.getId(), mainThreadBuilder.build());
+            }
+
+            if (!mNoMemoryMaps) {
+                // TODO: parse, see TombstoneParser
+                MemoryMapping memoryMapping = MemoryMapping.newBuilder().build();
+                for (int i = 0; i < mMemoryMappingCount; i++) {
+                    tombstoneBuilder.addMemoryMappings(memoryMapping);
+                }
+            }
+            return true;
+        }
+    }
+
+    /** The lines of one thread section that matter. */
+    private static final class ThreadState {
+        private Matcher mCmdLine;
+        private Matcher mHeader1;
+        private Matcher mHeader2;
+        private boolean mHasRegisters;
+        private final BacktraceState mBacktrace =
+                new BacktraceState("backtrace:", TombstoneParser.BACKTRACE_HEADER_PATTERN, true);
+        private final List<Matcher> mOpenFiles = new ArrayList<>();
+
+        /** Called for the lines that may hold the thread header. */
+        void onHeaderLine(String line) {
+            if (mCmdLine == null && line.startsWith("Cmdline: ")) {
+                mCmdLine = match(TombstoneParser.CMD_LINE_PATTERN, line);
+            } else if (mHeader1 == null && line.startsWith("pid: ")) {
+                mHeader1 = match(TombstoneParser.THREAD_HEADER_1_PATTERN, line);
+            } else if (mHeader2 == null && line.startsWith("uid: ")) {
+                mHeader2 = match(TombstoneParser.THREAD_HEADER_2_PATTERN, line);
+            }
+        }
+
+        /** Called for every line of the thread section. */
+        void onLine(String line, int indent) {
+            if (indent >= 2) {
+                // TODO: parse registers, see TombstoneParser
+                mHasRegisters = true;
+            }
+            mBacktrace.onLine(line, indent);
+            if (line.startsWith("fd ", indent)) {
+                Matcher m = match(TombstoneParser.OPEN_FILE_ROW_PATTERN, line);
+                if (m != null) {
+                    mOpenFiles.add(m);
+                }
+            }
+        }
+
+        void buildHeader(
+                Tombstone.Builder tombstoneBuilder,
+                com.android.server.os.TombstoneProtos.Thread.Builder threadBuilder) {
+            if (mCmdLine != null) {
+                tombstoneBuilder.addAllCommandLine(Arrays.asList(mCmdLine.group("cmd").split(" ")));
+            }
+            if (mHeader1 != null) {
+                TombstoneParser.parseThreadHeader1(mHeader1, tombstoneBuilder, threadBuilder);
+            }
+            if (mHeader2 != null) {
+                tombstoneBuilder.setUid(Integer.valueOf(mHeader2.group("uid")));
+            }
+        }
+
+        void buildBacktrace(com.android.server.os.TombstoneProtos.Thread.Builder threadBuilder) {
+            for (Matcher m : mBacktrace.mNotes) {
+                threadBuilder.addBacktraceNote(m.group("note"));
+            }
+            threadBuilder.addAllCurrentBacktrace(mBacktrace.buildFrames());
+        }
+    }
+
+    /** The lines of one cause section that matter. */
+    private static final class CauseState {
+        private final Matcher mCause;
+        private final BacktraceState mDeallocation =
+                new BacktraceState(
+                        "deallocated by thread ", TombstoneParser.DEALLOC_PATTERN, false);
+        private final BacktraceState mAllocation =
+                new BacktraceState("allocated by thread ", TombstoneParser.ALLOC_PATTERN, false);
+
+        CauseState(Matcher cause) {
+            mCause = cause;
+        }
+
+        void onLine(String line, int indent) {
+            if (mCause == null) {
+                return;
+            }
+            mDeallocation.onLine(line, indent);
+            mAllocation.onLine(line, indent);
+        }
+
+        Cause build() {
+            Cause.Builder causeBuilder = Cause.newBuilder().setHumanReadable(mCause.group("cause"));
+            if (mDeallocation.isFound() || mAllocation.isFound()) {
+                HeapObject.Builder heapObjectBuilder = HeapObject.newBuilder();
+                if (mDeallocation.isFound()) {
+                    heapObjectBuilder.addAllDeallocationBacktrace(mDeallocation.buildFrames());
+                }
+                if (mAllocation.isFound()) {
+                    heapObjectBuilder.addAllAllocationBacktrace(mAllocation.buildFrames());
+                }
+                causeBuilder.setMemoryError(
+                        MemoryError.newBuilder().setHeap(heapObjectBuilder.build()).build());
+            }
+            return causeBuilder.build();
+        }
+    }
+
+    /**
+     * The first backtrace of a section: a header line, then optionally notes, then frames, each on
+     * consecutive lines.
+     */
+    private static final class BacktraceState {
+        private static final int NOT_FOUND = 0;
+        private static final int NOTES = 1;
+        private static final int FRAMES = 2;
+        private static final int DONE = 3;
+
+        private final String mHeaderPrefix;
+        private final Pattern mHeaderPattern;
+        private final boolean mHasNotes;
+        private final List<Matcher> mNotes = new ArrayList<>();
+        private final List<Matcher> mFrames = new ArrayList<>();
+        private int mState = NOT_FOUND;
+
+        BacktraceState(String headerPrefix, Pattern headerPattern, boolean hasNotes) {
+            mHeaderPrefix = headerPrefix;
+            mHeaderPattern = headerPattern;
+            mHasNotes = hasNotes;
+        }
+
+        void onLine(String line, int indent) {
+            switch (mState) {
+                case NOT_FOUND:
+                    if (line.startsWith(mHeaderPrefix)
+                            && mHeaderPattern.matcher(line).matches()) {
+                        mState = mHasNotes ? NOTES : FRAMES;
+                    }
+                    return;
+                case NOTES:
+                    if (line.startsWith("NOTE: ", indent)) {
+                        Matcher m = match(TombstoneParser.BACKTRACE_NOTE_PATTERN, line);
+                        if (m != null) {
+                            mNotes.add(m);
+                            return;
+                        }
+                    }
+                    mState = FRAMES;
+                    // fall through
+                case FRAMES:
+                    Matcher m = matchFrame(line, indent);
+                    if (m != null) {
+                        mFrames.add(m);
+                    } else {
+                        mState = DONE;
+                    }
+                    return;
+                default:
+                    return;
+            }
+        }
+
+        boolean isFound() {
+            return mState != NOT_FOUND;
+        }
+
+        List<BacktraceFrame> buildFrames() {
+            List<BacktraceFrame> backtraceFrames = new ArrayList<>(mFrames.size());
+            for (Matcher m : mFrames) {
+                backtraceFrames.add(TombstoneParser.parseBacktraceFrame(m));
+            }
+            return backtraceFrames;
+        }
+    }
+}
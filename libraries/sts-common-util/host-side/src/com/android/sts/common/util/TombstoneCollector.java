@@ -0,0 +1,397 @@
+/*
+ * Copyright (C) 2026 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.android.sts.common.util;
+
+import com.android.server.os.TombstoneProtos.*;
+import com.android.sts.common.CommandUtil;
+import com.android.tradefed.device.DeviceNotAvailableException;
+import com.android.tradefed.device.ITestDevice;
+import com.android.tradefed.log.LogUtil.CLog;
+
+import com.google.common.annotations.VisibleForTesting;
+
+import java.io.ByteArrayInputStream;
+import java.io.DataInputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.StringReader;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Base64;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeoutException;
+import java.util.stream.Collectors;
+import java.util.zip.GZIPInputStream;
+
+/**
+ * Collects the tombstones created on a device since a cursor.
+ *
+ * <p>The cursor is the modification time and names of the newest tombstone files, or the time of
+ * the last logcat line if the tombstone directory can't be read. Each {@link #collect} lists only
+ * the tombstones at or after the cursor, fetches the new ones in a single archive and decodes them
+ * concurrently, so that the number of adb round-trips and the transferred bytes don't depend on
+ * how many older tombstones the device holds.
+ */
+public class TombstoneCollector {
+    @VisibleForTesting static final String TOMBSTONES_PATH = "/data/tombstones";
+    @VisibleForTesting static final String FILES_MODE = "files";
+    @VisibleForTesting static final String LOGCAT_MODE = "logcat";
+    private static final String TEMPORARY_PREFIX = ".temporary";
+    private static final long TEMPORARY_WAIT_TIMEOUT_MS = 10_000;
+    private static final long TEMPORARY_POLL_PERIOD_MS = 50;
+    // Enough to find every tombstone written in the newest second.
+    private static final int MARK_LIST_SIZE = 16;
+
+    private final ITestDevice mDevice;
+    private final int mParallelism;
+    private boolean mUseTombstoneFiles;
+
+    // Tombstone file cursor: newest modification time, in seconds, and the names with that time.
+    private long mNewestTime = -1;
+    private Set<String> mNewestNames = new HashSet<>();
+
+    // Logcat cursor: newest line time and the number of DEBUG lines already read at that time.
+    private String mLogcatTime;
+    private int mLogcatTimeLines;
+
+    public TombstoneCollector(ITestDevice device) {
+        this(device, Runtime.getRuntime().availableProcessors());
+    }
+
+    /**
+     * @param device the device to collect tombstones from
+     * @param parallelism the maximum number of tombstones decoded at the same time
+     */
+    public TombstoneCollector(ITestDevice device, int parallelism) {
+        mDevice = device;
+        mParallelism = parallelism;
+    }
+
+    /**
+     * Moves the cursor after the tombstones already on the device, in a single round-trip.
+     * Nothing is deleted or cleared on the device.
+     */
+    public void mark() throws DeviceNotAvailableException {
+        String cmd =
+                String.format(
+                        "if [ -r %1$s ]; then echo %2$s; cd %1$s && stat -c '%%Y %%n' * 2>/dev/null"
+                                + " | sort -rn | head -n %3$d; else echo %4$s; logcat -d -v epoch"
+                                + " -t 1; fi; true",
+                        TOMBSTONES_PATH, FILES_MODE, MARK_LIST_SIZE, LOGCAT_MODE);
+        List<String> lines = lines(CommandUtil.runAndCheck(mDevice, cmd).getStdout());
+        mUseTombstoneFiles = !lines.isEmpty() && lines.get(0).equals(FILES_MODE);
+        mNewestTime = -1;
+        mNewestNames = new HashSet<>();
+        mLogcatTime = null;
+        mLogcatTimeLines = 0;
+        if (mUseTombstoneFiles) {
+            advanceFileCursor(parseListing(lines.subList(1, lines.size())));
+            CLog.d("tombstone cursor at %d %s", mNewestTime, mNewestNames);
+        } else {
+            CLog.d("Using logcat");
+            for (String line : lines.subList(Math.min(1, lines.size()), lines.size())) {
+                String time = logcatTime(line);
+                if (time != null) {
+                    mLogcatTime = time;
+                }
+            }
+            CLog.d("logcat cursor at %s", mLogcatTime);
+        }
+    }
+
+    /**
+     * Returns the tombstones created since the cursor and moves the cursor after them.
+     *
+     * <p>Waits for the tombstones that are still being written, if any.
+     */
+    public List<Tombstone> collect()
+            throws DeviceNotAvailableException, IOException, TimeoutException,
+                    InterruptedException {
+        return decode(fetch(), null);
+    }
+
+    /**
+     * Returns the security crashes among the tombstones created since the cursor, and moves the
+     * cursor after them. The tombstones are decoded and checked against {@code config}
+     * concurrently.
+     */
+    public List<Tombstone> collectSecurityCrashes(TombstoneUtils.Config config)
+            throws DeviceNotAvailableException, IOException, TimeoutException,
+                    InterruptedException {
+        return decode(fetch(), config);
+    }
+
+    /** Returns the raw tombstones since the cursor, keyed by name, in the device order. */
+    private Map<String, byte[]> fetch()
+            throws DeviceNotAvailableException, IOException, TimeoutException,
+                    InterruptedException {
+        if (!mUseTombstoneFiles) {
+            return fetchLogcat();
+        }
+
+        // list the tombstones at or after the cursor, waiting for temporary files to move
+        long endTime = System.currentTimeMillis() + TEMPORARY_WAIT_TIMEOUT_MS;
+        Map<String, Long> listing;
+        while (true) {
+            String cmd =
+                    String.format(
+                            "cd %s && stat -c '%%Y %%n' * %s* 2>/dev/null | while read -r t f; do"
+                                    + " [ \"$t\" -ge %d ] && echo \"$t $f\"; done; true",
+                            TOMBSTONES_PATH, TEMPORARY_PREFIX, Math.max(0, mNewestTime));
+            listing = parseListing(lines(CommandUtil.runAndCheck(mDevice, cmd).getStdout()));
+            if (listing.keySet().stream().noneMatch(name -> name.startsWith(TEMPORARY_PREFIX))) {
+                break;
+            }
+            if (System.currentTimeMillis() > endTime) {
+                throw new TimeoutException();
+            }
+            java.lang.Thread.sleep(TEMPORARY_POLL_PERIOD_MS);
+        }
+
+        List<String> newNames =
+                listing.entrySet().stream()
+                        .filter(
+                                e ->
+                                        e.getValue() > mNewestTime
+                                                || !mNewestNames.contains(e.getKey()))
+                        .map(Map.Entry::getKey)
+                        .collect(Collectors.toList());
+        advanceFileCursor(listing);
+
+        List<String> protoNames =
+                newNames.stream().filter(n -> n.endsWith(".pb")).collect(Collectors.toList());
+        if (!protoNames.isEmpty()) {
+            // if protos exist, we only want to use protos
+            CLog.d("using tombstones that are filtered to protos only");
+            newNames = protoNames;
+        }
+        if (newNames.isEmpty()) {
+            return new LinkedHashMap<>();
+        }
+
+        // fetch all the new tombstones in one archive
+        StringBuilder cmd =
+                new StringBuilder("cd ").append(TOMBSTONES_PATH).append(" && tar -cf -");
+        for (String name : newNames) {
+            cmd.append(" '").append(name).append('\'');
+        }
+        cmd.append(" | gzip -c | base64");
+        byte[] archive =
+                Base64.getMimeDecoder()
+                        .decode(CommandUtil.runAndCheck(mDevice, cmd.toString()).getStdout());
+        Map<String, byte[]> tombstones =
+                readTar(new GZIPInputStream(new ByteArrayInputStream(archive)));
+        CLog.d("got %d tombstone files in %d bytes", tombstones.size(), archive.length);
+        return tombstones;
+    }
+
+    private Map<String, byte[]> fetchLogcat() throws DeviceNotAvailableException {
+        String cmd = "logcat -d -v epoch -s DEBUG";
+        if (mLogcatTime != null) {
+            cmd += " -T " + mLogcatTime;
+        }
+        String logcat = CommandUtil.runAndCheck(mDevice, cmd).getStdout();
+
+        // skip what was read last time and move the cursor
+        StringBuilder newLines = new StringBuilder();
+        int skip = mLogcatTimeLines;
+        for (String line : lines(logcat)) {
+            String time = logcatTime(line);
+            if (time == null) {
+                continue;
+            }
+            if (time.equals(mLogcatTime)) {
+                if (skip > 0) {
+                    skip--;
+                    continue;
+                }
+                mLogcatTimeLines++;
+            } else {
+                mLogcatTime = time;
+                mLogcatTimeLines = 1;
+            }
+            newLines.append(line).append('\n');
+        }
+        Map<String, byte[]> logcats = new LinkedHashMap<>();
+        if (newLines.length() > 0) {
+            logcats.put(LOGCAT_MODE, newLines.toString().getBytes(StandardCharsets.UTF_8));
+        }
+        return logcats;
+    }
+
+    /** Decodes the raw tombstones concurrently, keeping only security crashes if config is set. */
+    private List<Tombstone> decode(Map<String, byte[]> rawTombstones, TombstoneUtils.Config config)
+            throws IOException, InterruptedException {
+        List<Tombstone> tombstones = new ArrayList<>();
+        if (rawTombstones.isEmpty()) {
+            return tombstones;
+        }
+        ExecutorService executor =
+                Executors.newFixedThreadPool(
+                        Math.max(1, Math.min(mParallelism, rawTombstones.size())));
+        try {
+            List<Future<List<Tombstone>>> futures = new ArrayList<>();
+            for (Map.Entry<String, byte[]> entry : rawTombstones.entrySet()) {
+                futures.add(
+                        executor.submit(
+                                () -> {
+                                    List<Tombstone> decoded =
+                                            decode(entry.getKey(), entry.getValue());
+                                    if (config == null) {
+                                        return decoded;
+                                    }
+                                    return TombstoneUtils.getSecurityCrashes(decoded, config);
+                                }));
+            }
+            for (Future<List<Tombstone>> future : futures) {
+                try {
+                    tombstones.addAll(future.get());
+                } catch (ExecutionException e) {
+                    if (e.getCause() instanceof IOException) {
+                        throw (IOException) e.getCause();
+                    }
+                    throw new IllegalStateException(e.getCause());
+                }
+            }
+        } finally {
+            executor.shutdownNow();
+        }
+        CLog.d(
+                "got %d tombstones from %s",
+                tombstones.size(), mUseTombstoneFiles ? "files" : "logcat");
+        return tombstones;
+    }
+
+    private static List<Tombstone> decode(String name, byte[] content) throws IOException {
+        if (name.equals(LOGCAT_MODE)) {
+            return StreamingTombstoneParser.parseLogcat(
+                    new StringReader(new String(content, StandardCharsets.UTF_8)));
+        }
+        if (name.endsWith(".pb")) {
+            CLog.d("reading tombstone file as proto");
+            return List.of(Tombstone.parseFrom(content));
+        }
+        CLog.d("reading tombstone file as text");
+        Tombstone.Builder builder = Tombstone.newBuilder();
+        // silently ignore parse failures
+        StreamingTombstoneParser.parseTombstone(
+                new InputStreamReader(new ByteArrayInputStream(content), StandardCharsets.UTF_8),
+                builder);
+        return List.of(builder.build());
+    }
+
+    private void advanceFileCursor(Map<String, Long> listing) {
+        for (Map.Entry<String, Long> entry : listing.entrySet()) {
+            if (entry.getKey().startsWith(TEMPORARY_PREFIX)) {
+                continue;
+            }
+            long time = entry.getValue();
+            if (time > mNewestTime) {
+                mNewestTime = time;
+                mNewestNames = new HashSet<>();
+            }
+            if (time == mNewestTime) {
+                mNewestNames.add(entry.getKey());
+            }
+        }
+    }
+
+    /** Parses "<mtime> <name>" lines. */
+    private static Map<String, Long> parseListing(List<String> lines) {
+        Map<String, Long> listing = new LinkedHashMap<>();
+        for (String line : lines) {
+            int space = line.indexOf(' ');
+            if (space <= 0) {
+                continue;
+            }
+            try {
+                listing.put(line.substring(space + 1), Long.parseLong(line.substring(0, space)));
+            } catch (NumberFormatException e) {
+                CLog.w("unexpected tombstone listing line: " + line);
+            }
+        }
+        return listing;
+    }
+
+    /** Returns the "seconds.millis" time of a "-v epoch" logcat line, or null. */
+    private static String logcatTime(String line) {
+        String trimmed = line.trim();
+        int space = trimmed.indexOf(' ');
+        if (space <= 0) {
+            return null;
+        }
+        String time = trimmed.substring(0, space);
+        return time.matches("\\d+\\.\\d+") ? time : null;
+    }
+
+    private static List<String> lines(String s) {
+        List<String> lines = new ArrayList<>();
+        for (String line : s.split("\\R")) {
+            if (!line.isEmpty()) {
+                lines.add(line);
+            }
+        }
+        return lines;
+    }
+
+    /** Reads the regular files of a tar archive. */
+    @VisibleForTesting
+    static Map<String, byte[]> readTar(InputStream is) throws IOException {
+        Map<String, byte[]> files = new LinkedHashMap<>();
+        DataInputStream in = new DataInputStream(is);
+        byte[] header = new byte[512];
+        while (true) {
+            try {
+                in.readFully(header);
+            } catch (EOFException e) {
+                break;
+            }
+            if (header[0] == 0) {
+                // end of archive
+                break;
+            }
+            String name = tarString(header, 0, 100);
+            long size = Long.parseLong(tarString(header, 124, 12).trim(), 8);
+            byte type = header[156];
+            byte[] content = new byte[(int) size];
+            in.readFully(content);
+            in.readFully(new byte[(int) ((512 - size % 512) % 512)]);
+            if (type == '0' || type == 0) {
+                files.put(name, content);
+            }
+        }
+        return files;
+    }
+
+    private static String tarString(byte[] header, int offset, int length) {
+        int end = offset;
+        while (end < offset + length && header[end] != 0) {
+            end++;
+        }
+        return new String(header, offset, end - offset, StandardCharsets.UTF_8);
+    }
+}
@@ -27,56 +27,61 @@ import java.util.function.Consumer;
 import java.util.regex.Matcher;
 import java.util.regex.Pattern;
 
-/** Parses tombstones and from a tombstone file or logcat. */
+/**
+ * Parses tombstones and from a tombstone file or logcat.
+ *
+ * <p>See {@link StreamingTombstoneParser} for a single-pass parser that builds the same protos
+ * from a {@link java.io.Reader} without holding the whole input in memory.
+ */
 public class TombstoneParser {
 
-    private static final String TOMBSTONE_HEADER =
+    static final String TOMBSTONE_HEADER =
             "*** *** *** *** *** *** *** *** *** *** *** *** *** *** *** ***";
     private static final Pattern TOMBSTONE_HEADER_PATTERN =
             Pattern.compile(TOMBSTONE_HEADER.replace("*", "\\*"));
-    private static final Pattern NATIVE_CRASH_TIME_PATTERN =
+    static final Pattern NATIVE_CRASH_TIME_PATTERN =
             Pattern.compile("Native Crash TIME: (?<time>\\d+)");
-    private static final Pattern FINGERPRINT_PATTERN =
+    static final Pattern FINGERPRINT_PATTERN =
             Pattern.compile("Build fingerprint: '(?<fingerprint>.*)'");
-    private static final Pattern REVISION_PATTERN =
+    static final Pattern REVISION_PATTERN =
             Pattern.compile("Revision: '(?<revision>.*)'\\s*");
-    private static final Pattern ABI_PATTERN = Pattern.compile("ABI: '(?<abi>.*)'");
-    private static final Pattern TIMESTAMP_PATTERN = Pattern.compile("Timestamp: (?<timestamp>.*)");
-    private static final Pattern UPTIME_PATTERN =
+    static final Pattern ABI_PATTERN = Pattern.compile("ABI: '(?<abi>.*)'");
+    static final Pattern TIMESTAMP_PATTERN = Pattern.compile("Timestamp: (?<timestamp>.*)");
+    static final Pattern UPTIME_PATTERN =
             Pattern.compile("Process uptime: (?<uptime>\\d+)s");
-    private static final Pattern GET_MAIN_THREAD_FAILURE_PATTERN =
+    static final Pattern GET_MAIN_THREAD_FAILURE_PATTERN =
             Pattern.compile("failed to find entry for main thread in tombstone");
-    private static final Pattern THREAD_SEPARATOR_PATTERN =
+    static final Pattern THREAD_SEPARATOR_PATTERN =
             Pattern.compile("--- --- --- --- --- --- --- --- --- --- --- --- --- --- --- ---");
     // "    fd %d: %s (%s)"
-    private static final Pattern OPEN_FILE_ROW_PATTERN =
+    static final Pattern OPEN_FILE_ROW_PATTERN =
             Pattern.compile(
                     " *fd (?<fd>\\d+?): (?<path>.*?) \\((?:(?<unowned>unowned)|(?:owned by"
                             + " (?<owner>\\S+) 0x(?<tag>\\p{XDigit}{1,16})))\\)");
-    private static final Pattern SIGNAL_MISSING_PATTERN =
+    static final Pattern SIGNAL_MISSING_PATTERN =
             Pattern.compile("signal information missing");
     // "signal %d (%s), code %d (%s%s), fault addr %s"
     // "signal 11 (SIGSEGV), code 2 (SEGV_ACCERR), fault addr 0x7e772b8cfbe0"
-    private static final Pattern SIGNAL_PATTERN =
+    static final Pattern SIGNAL_PATTERN =
             Pattern.compile(
                     "signal (?<number>\\d+?) \\((?<name>.+?)\\), code (?<code>(?:-)?\\d+?)"
                             + " \\((?<codename>\\S+?)(?: from pid (?<senderpid>\\d+?), uid"
                             + " (?<senderuid>\\d+?))?\\), fault addr"
                             + " (?:0x)?(?<faultaddress>\\p{XDigit}{1,16}|--------)"
                             + "( (?<register>\\(.+\\)))?");
-    private static final Pattern CAUSE_PATTERN = Pattern.compile("Cause: (?<cause>.*?)");
+    static final Pattern CAUSE_PATTERN = Pattern.compile("Cause: (?<cause>.*?)");
     // Be greedy because some abort messages are multiple lines long
     private static final Pattern ABORT_PATTERN =
             Pattern.compile(
                     "^Abort message: '(?<message>.*)'$", Pattern.MULTILINE | Pattern.DOTALL);
-    private static final Pattern DEALLOC_PATTERN =
+    static final Pattern DEALLOC_PATTERN =
             Pattern.compile("deallocated by thread (?<tid>\\d+):");
-    private static final Pattern ALLOC_PATTERN =
+    static final Pattern ALLOC_PATTERN =
             Pattern.compile("allocated by thread (?<tid>\\d+):");
-    private static final Pattern NO_MEMORY_MAPS_PATTERN = Pattern.compile("No memory maps found");
+    static final Pattern NO_MEMORY_MAPS_PATTERN = Pattern.compile("No memory maps found");
     // "memory map (%d %s):" + ("\n--->Fault address falls at %s before any mapped regions" | "
     // (fault address prefixed with --->)")
-    private static final Pattern MEMORY_MAP_HEADER_PATTERN =
+    static final Pattern MEMORY_MAP_HEADER_PATTERN =
             Pattern.compile(
                     "memory map \\((?<count>\\d+?) entr(?:y|ies)\\):(?: \\(fault address prefixed"
                             + " with --->\\))?");
@@ -87,7 +92,7 @@ public class TombstoneParser {
                         + " between mapped regions");
     // "    " + ("--->")? + "%s-%s" + %s%s%s" + "  %8" PRIx64 "  %8" PRIx64" + ("  %s")? + ("
     // (BuildId: %s)")? + (" (load bias 0x%" PRIx64 ")")?
-    private static final Pattern MEMORY_MAP_LINE_PATTERN =
+    static final Pattern MEMORY_MAP_LINE_PATTERN =
             Pattern.compile(
                     " *(?:--->)?(?<beginaddresshigh>\\p{XDigit}{4,8})'(?<beginaddresslow>\\p{XDigit}{4,8})-(?<endaddresshigh>\\p{XDigit}{4,8})'(?<endaddresslow>\\p{XDigit}{4,8})"
                         + " (?<read>\\S)(?<write>\\S)(?<execute>\\S)  "
@@ -99,12 +104,12 @@ public class TombstoneParser {
                     "--->Fault address falls at"
                         + " (?<faultaddresshigh>\\p{XDigit}{4,8})'(?<faultaddresslow>\\p{XDigit}{4,8})"
                         + " after any mapped regions");
-    private static final Pattern CMD_LINE_PATTERN = Pattern.compile("Cmdline: (?<cmd>.*)");
-    private static final Pattern THREAD_HEADER_1_PATTERN =
+    static final Pattern CMD_LINE_PATTERN = Pattern.compile("Cmdline: (?<cmd>.*)");
+    static final Pattern THREAD_HEADER_1_PATTERN =
             Pattern.compile(
                     "pid: (?<pid>\\d+), tid: (?<tid>\\d+), name: (?<threadname>.+?)  >>>"
                             + " (?<processname>.+?) <<<");
-    private static final Pattern THREAD_HEADER_2_PATTERN = Pattern.compile("uid: (?<uid>\\d+)\\s*");
+    static final Pattern THREAD_HEADER_2_PATTERN = Pattern.compile("uid: (?<uid>\\d+)\\s*");
     private static final Pattern TAGGED_ADDR_CTRL_PATTERN =
             Pattern.compile(
                     "tagged_addr_ctrl: (?<taggedaddrctrl>\\p{XDigit}{16})(?<description>.+)?");
@@ -113,11 +118,11 @@ public class TombstoneParser {
             Pattern.compile(
                     "pac_enabled_keys: (?<pacenabledkeys>\\p{XDigit}{16})(?<description>.+)?");
     private static final Pattern REGISTER_ROW_PATTERN = Pattern.compile("  .*");
-    private static final Pattern BACKTRACE_HEADER_PATTERN = Pattern.compile("backtrace:");
-    private static final Pattern BACKTRACE_NOTE_PATTERN = Pattern.compile(" *NOTE: (?<note>.*)");
+    static final Pattern BACKTRACE_HEADER_PATTERN = Pattern.compile("backtrace:");
+    static final Pattern BACKTRACE_NOTE_PATTERN = Pattern.compile(" *NOTE: (?<note>.*)");
     // "      #05 pc 000000000004faf6  /apex/com.android.runtime/lib64/bionic/libc.so
     // (__libc_init+86) (BuildId: 284d864ffe434d73dc722b84a1d3d9ca)"
-    private static final Pattern BACKTRACE_PATTERN =
+    static final Pattern BACKTRACE_PATTERN =
             Pattern.compile(
                     " *#(?<index>\\d{2}) pc (?<programcounter>\\p{XDigit}{8,16}) "
                         + " (?<filename>.+?)(?:"
@@ -271,30 +276,10 @@ public class TombstoneParser {
                 headerAndMainThreadLines.iterator(),
                 ABI_PATTERN,
                 m -> {
-                    final String abi = m.group("abi");
-                    Architecture arch = null;
-                    switch (abi) {
-                        case "arm":
-                            arch = Architecture.ARM32;
-                            break;
-                        case "arm64":
-                            arch = Architecture.ARM64;
-                            break;
-                        case "riscv64":
-                            arch = Architecture.RISCV64;
-                            break;
-                        case "x86":
-                            arch = Architecture.X86;
-                            break;
-                        case "x86_64":
-                            arch = Architecture.X86_64;
-                            break;
-                        default:
-                            CLog.i("unknown arch");
-                            return;
+                    Architecture arch = parseArchitecture(m.group("abi"));
+                    if (arch != null) {
+                        tombstoneBuilder.setArch(arch);
                     }
-                    CLog.d("set arch to: " + arch);
-                    tombstoneBuilder.setArch(arch);
                 })) {
             CLog.w("abi failed");
             return false;
@@ -356,18 +341,7 @@ public class TombstoneParser {
                 tailLines.iterator(),
                 OPEN_FILE_ROW_PATTERN,
                 m -> {
-                    FD.Builder fdBuilder =
-                            FD.newBuilder()
-                                    .setFd(Integer.valueOf(m.group("fd")))
-                                    .setPath(m.group("path"));
-                    String owner = m.group("owner");
-                    String tag = m.group("tag");
-                    if (owner != null && tag != null) {
-                        fdBuilder.setOwner(owner).setTag(parsePointer(tag));
-                    } else {
-                        fdBuilder.setOwner("unowned");
-                    }
-                    tombstoneBuilder.addOpenFds(fdBuilder.build());
+                    tombstoneBuilder.addOpenFds(parseOpenFile(m));
                 });
 
         if (!parseLogs(tailBlob, tombstoneBuilder)) {
@@ -404,31 +378,7 @@ public class TombstoneParser {
                             headerLines.iterator(),
                             SIGNAL_PATTERN,
                             m -> {
-                                Signal.Builder signalBuilder =
-                                        Signal.newBuilder()
-                                                .setNumber(Integer.valueOf(m.group("number")))
-                                                .setName(m.group("name"))
-                                                .setCode(Integer.valueOf(m.group("code")))
-                                                .setCodeName(m.group("codename"));
-
-                                String faultAddress = m.group("faultaddress");
-                                if (!faultAddress.equals("--------")) {
-                                    signalBuilder
-                                            .setHasFaultAddress(true)
-                                            .setFaultAddress(parsePointer(faultAddress));
-                                } else {
-                                    signalBuilder.setHasFaultAddress(false);
-                                }
-                                String senderUid = m.group("senderuid");
-                                String senderPid = m.group("senderpid");
-                                if (senderUid != null && senderPid != null) {
-                                    signalBuilder
-                                            .setSenderUid(Integer.valueOf(senderUid))
-                                            .setSenderPid(Integer.valueOf(senderPid));
-                                }
-                                // TODO: add fault-adjacent metadata, which we don't get until the
-                                // tag dump :(
-                                tombstoneBuilder.setSignalInfo(signalBuilder.build());
+                                tombstoneBuilder.setSignalInfo(parseSignal(m));
                             });
             if (!matchedSignal) {
                 // must match one or the other
@@ -612,12 +562,7 @@ public class TombstoneParser {
                 lines.iterator(),
                 THREAD_HEADER_1_PATTERN,
                 m -> {
-                    int tid = Integer.valueOf(m.group("tid"));
-                    tombstoneBuilder.setPid(Integer.valueOf(m.group("pid"))).setTid(tid);
-                    if (tombstoneBuilder.getCommandLineList().isEmpty()) {
-                        tombstoneBuilder.addCommandLine(m.group("processname"));
-                    }
-                    threadBuilder.setId(tid).setName(m.group("threadname"));
+                    parseThreadHeader1(m, tombstoneBuilder, threadBuilder);
                 });
         matchLine(
                 lines.iterator(),
@@ -686,27 +631,112 @@ public class TombstoneParser {
                 lines.iterator(),
                 BACKTRACE_PATTERN,
                 m -> {
-                    BacktraceFrame.Builder backtraceFrameBuilder =
-                            BacktraceFrame.newBuilder()
-                                    .setRelPc(parsePointer(m.group("programcounter")))
-                                    .setFileName(m.group("filename"));
-                    String functionName = m.group("functionname");
-                    String functionOffset = m.group("functionoffset");
-                    if (functionName != null && functionOffset != null) {
-                        backtraceFrameBuilder
-                                .setFunctionName(functionName)
-                                .setFunctionOffset(Long.valueOf(functionOffset));
-                    }
-                    String buildId = m.group("buildid");
-                    if (buildId != null) {
-                        backtraceFrameBuilder.setBuildId(buildId);
-                    }
-                    backtraceFrames.add(backtraceFrameBuilder.build());
+                    backtraceFrames.add(parseBacktraceFrame(m));
                 });
 
         return true;
     }
 
+    /** Returns the architecture of an "ABI: '...'" value, or null if unknown. */
+    static Architecture parseArchitecture(String abi) {
+        Architecture arch = null;
+        switch (abi) {
+            case "arm":
+                arch = Architecture.ARM32;
+                break;
+            case "arm64":
+                arch = Architecture.ARM64;
+                break;
+            case "riscv64":
+                arch = Architecture.RISCV64;
+                break;
+            case "x86":
+                arch = Architecture.X86;
+                break;
+            case "x86_64":
+                arch = Architecture.X86_64;
+                break;
+            default:
+                CLog.i("unknown arch");
+                return null;
+        }
+        CLog.d("set arch to: " + arch);
+        return arch;
+    }
+
+    /** Builds the signal info from a match of {@link #SIGNAL_PATTERN}. */
+    static Signal parseSignal(Matcher m) {
+        Signal.Builder signalBuilder =
+                Signal.newBuilder()
+                        .setNumber(Integer.valueOf(m.group("number")))
+                        .setName(m.group("name"))
+                        .setCode(Integer.valueOf(m.group("code")))
+                        .setCodeName(m.group("codename"));
+
+        String faultAddress = m.group("faultaddress");
+        if (!faultAddress.equals("--------")) {
+            signalBuilder.setHasFaultAddress(true).setFaultAddress(parsePointer(faultAddress));
+        } else {
+            signalBuilder.setHasFaultAddress(false);
+        }
+        String senderUid = m.group("senderuid");
+        String senderPid = m.group("senderpid");
+        if (senderUid != null && senderPid != null) {
+            signalBuilder
+                    .setSenderUid(Integer.valueOf(senderUid))
+                    .setSenderPid(Integer.valueOf(senderPid));
+        }
+        // TODO: add fault-adjacent metadata, which we don't get until the tag dump :(
+        return signalBuilder.build();
+    }
+
+    /** Applies a match of {@link #THREAD_HEADER_1_PATTERN} to the tombstone and the thread. */
+    static void parseThreadHeader1(
+            Matcher m,
+            Tombstone.Builder tombstoneBuilder,
+            com.android.server.os.TombstoneProtos.Thread.Builder threadBuilder) {
+        int tid = Integer.valueOf(m.group("tid"));
+        tombstoneBuilder.setPid(Integer.valueOf(m.group("pid"))).setTid(tid);
+        if (tombstoneBuilder.getCommandLineList().isEmpty()) {
+            tombstoneBuilder.addCommandLine(m.group("processname"));
+        }
+        threadBuilder.setId(tid).setName(m.group("threadname"));
+    }
+
+    /** Builds a backtrace frame from a match of {@link #BACKTRACE_PATTERN}. */
+    static BacktraceFrame parseBacktraceFrame(Matcher m) {
+        BacktraceFrame.Builder backtraceFrameBuilder =
+                BacktraceFrame.newBuilder()
+                        .setRelPc(parsePointer(m.group("programcounter")))
+                        .setFileName(m.group("filename"));
+        String functionName = m.group("functionname");
+        String functionOffset = m.group("functionoffset");
+        if (functionName != null && functionOffset != null) {
+            backtraceFrameBuilder
+                    .setFunctionName(functionName)
+                    .setFunctionOffset(Long.valueOf(functionOffset));
+        }
+        String buildId = m.group("buildid");
+        if (buildId != null) {
+            backtraceFrameBuilder.setBuildId(buildId);
+        }
+        return backtraceFrameBuilder.build();
+    }
+
+    /** Builds an open file from a match of {@link #OPEN_FILE_ROW_PATTERN}. */
+    static FD parseOpenFile(Matcher m) {
+        FD.Builder fdBuilder =
+                FD.newBuilder().setFd(Integer.valueOf(m.group("fd"))).setPath(m.group("path"));
+        String owner = m.group("owner");
+        String tag = m.group("tag");
+        if (owner != null && tag != null) {
+            fdBuilder.setOwner(owner).setTag(parsePointer(tag));
+        } else {
+            fdBuilder.setOwner("unowned");
+        }
+        return fdBuilder.build();
+    }
+
     private static boolean parseThreadMemoryDump(
             String blob, com.android.server.os.TombstoneProtos.Thread.Builder threadBuilder) {
 
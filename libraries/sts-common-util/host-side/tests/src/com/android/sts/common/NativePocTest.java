@@ -16,6 +16,8 @@
 
 package com.android.sts.common;
 
+import static com.google.common.truth.Truth.assertThat;
+
 import static org.hamcrest.core.StringContains.containsString;
 import static org.mockito.Mockito.any;
 import static org.mockito.Mockito.anyInt;
@@ -23,7 +25,9 @@ import static org.mockito.Mockito.anyLong;
 import static org.mockito.Mockito.anyString;
 import static org.mockito.Mockito.contains;
 import static org.mockito.Mockito.eq;
+import static org.mockito.Mockito.never;
 import static org.mockito.Mockito.startsWith;
+import static org.mockito.Mockito.times;
 import static org.mockito.Mockito.verify;
 import static org.mockito.Mockito.verifyNoMoreInteractions;
 import static org.mockito.Mockito.when;
@@ -58,7 +62,11 @@ import java.io.File;
 import java.nio.file.Files;
 import java.nio.file.Path;
 import java.nio.file.Paths;
+import java.util.HashMap;
+import java.util.Map;
 import java.util.concurrent.TimeUnit;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
 
 /** Unit tests for {@link NativePoc}. */
 @RunWith(DeviceJUnit4ClassRunner.class)
@@ -248,6 +256,135 @@ public class NativePocTest extends BaseHostJUnit4Test {
         verifyNoMoreInteractions(device);
     }
 
+    @Test
+    public void testCachedPushesSkipRepeatPushes() throws Exception {
+        FakeDeviceFiles files = stubDeviceFiles();
+        Files.write(localPocFile32.toPath(), new byte[10_000]);
+        NativePoc poc =
+                NativePoc.builder()
+                        .pocName(POC_NAME)
+                        .resources(TEST_RESOURCE)
+                        .cachePushes(true)
+                        .build();
+
+        for (int i = 0; i < 10; i++) {
+            poc.run(testCase);
+        }
+
+        // pushed once, in a single archive, and never deleted
+        verify(device, times(1)).pushFile(any(), eq(PushCache.ARCHIVE_PATH));
+        verify(device, never()).deleteFile(anyString());
+        assertThat(files.mPushes).isEqualTo(1);
+        assertThat(files.mPushedBytes).isAtLeast(10_000L);
+        assertThat(files.mPushedBytes).isLessThan(20_000L);
+        verify(device, times(10))
+                .executeShellV2Command(
+                        contains(POC_NAME),
+                        eq(NativePoc.DEFAULT_POC_TIMEOUT_SECONDS),
+                        eq(TimeUnit.SECONDS),
+                        eq(0));
+    }
+
+    @Test
+    public void testCachedPushesAfterRebootOrRemoval() throws Exception {
+        FakeDeviceFiles files = stubDeviceFiles();
+        NativePoc poc = NativePoc.builder().pocName(POC_NAME).cachePushes(true).build();
+
+        poc.run(testCase);
+        poc.run(testCase);
+        assertThat(files.mPushes).isEqualTo(1);
+
+        files.mFiles.remove(REMOTE_POC_FILE);
+        poc.run(testCase);
+        assertThat(files.mPushes).isEqualTo(2);
+
+        files.mBootId = "rebooted";
+        poc.run(testCase);
+        assertThat(files.mPushes).isEqualTo(3);
+
+        // the local file changed
+        Files.write(localPocFile32.toPath(), new byte[] {1});
+        poc.run(testCase);
+        poc.run(testCase);
+        assertThat(files.mPushes).isEqualTo(4);
+    }
+
+    @Test
+    public void testPushAllInOneTransfer() throws Exception {
+        FakeDeviceFiles files = stubDeviceFiles();
+        NativePoc[] pocs = new NativePoc[5];
+        for (int i = 0; i < pocs.length; i++) {
+            new File(testCasesDir.toFile(), POC_NAME + i + "_sts32").createNewFile();
+            pocs[i] =
+                    NativePoc.builder()
+                            .pocName(POC_NAME + i)
+                            .resources(TEST_RESOURCE)
+                            .resourcePushLocation("/data/local/tmp/" + i)
+                            .cachePushes(true)
+                            .build();
+        }
+
+        NativePoc.pushAll(testCase, pocs);
+        assertThat(files.mPushes).isEqualTo(1);
+        for (NativePoc poc : pocs) {
+            poc.run(testCase);
+        }
+        NativePoc.pushAll(testCase, pocs);
+
+        assertThat(files.mPushes).isEqualTo(1);
+        assertThat(files.mFiles).hasSize(10);
+    }
+
+    /** Stubs the commands and pushes of {@link PushCache} with an in-memory set of files. */
+    private FakeDeviceFiles stubDeviceFiles() throws Exception {
+        FakeDeviceFiles files = new FakeDeviceFiles();
+        when(device.executeShellV2Command(anyString(), anyLong(), any(), anyInt()))
+                .thenReturn(SUCCESS_RESULT);
+        when(device.executeShellV2Command(contains("cat " + PushCache.BOOT_ID_PATH)))
+                .thenAnswer(invocation -> files.stat(invocation.getArgument(0)));
+        when(device.pushFile(any(), anyString()))
+                .thenAnswer(
+                        invocation -> {
+                            File localFile = invocation.getArgument(0);
+                            files.mPushes++;
+                            files.mPushedBytes += localFile.length();
+                            files.mFiles.put(invocation.getArgument(1), files.mTime++);
+                            return true;
+                        });
+        return files;
+    }
+
+    private static class FakeDeviceFiles {
+        private static final Pattern QUOTED_PATTERN = Pattern.compile("'(/[^']*)'");
+
+        final Map<String, Long> mFiles = new HashMap<>();
+        String mBootId = "boot";
+        long mTime = 1;
+        int mPushes;
+        long mPushedBytes;
+
+        CommandResult stat(String cmd) {
+            Matcher m = QUOTED_PATTERN.matcher(cmd);
+            if (cmd.startsWith("tar -xf " + PushCache.ARCHIVE_PATH)) {
+                // extract the archive, the stat command lists the files in it
+                mFiles.remove(PushCache.ARCHIVE_PATH);
+                while (m.find()) {
+                    mFiles.put(m.group(1), mTime++);
+                }
+                m.reset();
+            }
+            StringBuilder stdout = new StringBuilder(mBootId).append('\n');
+            while (m.find()) {
+                if (mFiles.containsKey(m.group(1))) {
+                    stdout.append(String.format("0|%d|%s\n", mFiles.get(m.group(1)), m.group(1)));
+                }
+            }
+            CommandResult res = new CommandResult(CommandStatus.SUCCESS);
+            res.setStdout(stdout.toString());
+            return res;
+        }
+    }
+
     private void verifyPocCorrectlyPushed(File poc) throws Exception {
         verify(device).pushFile(poc, REMOTE_POC_FILE);
         verify(device).executeShellV2Command("chmod 777 '/data/local/tmp/" + POC_NAME + "'");
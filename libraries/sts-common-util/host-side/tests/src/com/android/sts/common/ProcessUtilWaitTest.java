@@ -0,0 +1,304 @@
+/*
+ * Copyright (C) 2026 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.android.sts.common;
+
+import static com.google.common.truth.Truth.assertThat;
+
+import static org.junit.Assert.assertThrows;
+import static org.mockito.Mockito.any;
+import static org.mockito.Mockito.anyInt;
+import static org.mockito.Mockito.anyLong;
+import static org.mockito.Mockito.anyString;
+import static org.mockito.Mockito.when;
+
+import com.android.sts.common.ProcessUtil.KillException;
+import com.android.tradefed.device.ITestDevice;
+import com.android.tradefed.testtype.DeviceJUnit4ClassRunner;
+import com.android.tradefed.testtype.junit4.BaseHostJUnit4Test;
+import com.android.tradefed.util.CommandResult;
+import com.android.tradefed.util.CommandStatus;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import org.junit.runner.RunWith;
+import org.mockito.Mock;
+import org.mockito.junit.MockitoJUnit;
+import org.mockito.junit.MockitoRule;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Unit tests for the waits of {@link ProcessUtil}.
+ *
+ * <p>The commands sent to the device run under the host /bin/sh, with {@code kill} and {@code
+ * pgrep} replaced by shell functions that act on a directory of fake processes, so that the
+ * generated shell loops are checked for real.
+ */
+@RunWith(DeviceJUnit4ClassRunner.class)
+public class ProcessUtilWaitTest extends BaseHostJUnit4Test {
+    // Max time between a process change and the end of the wait, well under the timeouts used by
+    // the tests so that a wait ending on its timeout is not mistaken for one ending on the change.
+    private static final long MAX_LATENCY_MS = 1_000;
+    // Max time a wait may last past its timeout, under the one second granularity of date.
+    private static final long MAX_TIMEOUT_OVERSHOOT_MS = 500;
+
+    // Fake pids are above the max pid of Linux, so that the host never has them in /proc.
+    private static final int PID = 5_000_000;
+
+    // Each fake process is a file named after its pid, holding its command line.
+    private static final String STUBS =
+            "kill() { sig=$1; shift; s=0; for p in \"$@\"; do"
+                    + " if [ -f \"$FAKE_PROC/$p.denied\" ]; then"
+                    + " echo \"kill: $p: Operation not permitted\" >&2; s=1;"
+                    + " elif [ ! -f \"$FAKE_PROC/$p\" ]; then"
+                    + " echo \"kill: $p: No such process\" >&2; s=1;"
+                    + " elif [ \"$sig\" != -0 ]; then rm \"$FAKE_PROC/$p\"; fi; done;"
+                    + " return $s; }\n"
+                    + "pgrep() { l=; while :; do case $1 in -f) shift;; -l) l=1; shift;;"
+                    + " *) break;; esac; done; s=1; for f in \"$FAKE_PROC\"/*; do"
+                    + " [ -f \"$f\" ] && [ \"${f%.denied}\" = \"$f\" ] || continue;"
+                    + " c=$(cat \"$f\"); printf '%s\\n' \"$c\" | grep -qE -- \"$1\" || continue;"
+                    + " s=0; if [ -n \"$l\" ]; then echo \"${f##*/} $c\"; else echo \"${f##*/}\";"
+                    + " fi; done; return $s; }\n";
+
+    @Rule public final MockitoRule mMockitoRule = MockitoJUnit.rule();
+    @Rule public final TemporaryFolder mTemporaryFolder = new TemporaryFolder();
+    @Mock private ITestDevice mDevice;
+
+    private final ScheduledExecutorService mScheduler = Executors.newScheduledThreadPool(1);
+    private final AtomicInteger mCommands = new AtomicInteger();
+    private final List<String> mCommandLines = new CopyOnWriteArrayList<>();
+    private File mProcesses;
+    private long mStartMs;
+
+    @Before
+    public void setUp() throws Exception {
+        mProcesses = mTemporaryFolder.newFolder("proc");
+        mStartMs = System.currentTimeMillis();
+        when(mDevice.executeShellV2Command(anyString()))
+                .thenAnswer(invocation -> execute(invocation.getArgument(0), 10_000));
+        when(mDevice.executeShellV2Command(
+                        anyString(), anyLong(), any(TimeUnit.class), anyInt()))
+                .thenAnswer(
+                        invocation ->
+                                execute(
+                                        invocation.getArgument(0),
+                                        invocation
+                                                .<TimeUnit>getArgument(2)
+                                                .toMillis(invocation.getArgument(1))));
+    }
+
+    @After
+    public void tearDown() {
+        mScheduler.shutdownNow();
+    }
+
+    @Test
+    public void testWaitPidExited() throws Exception {
+        addProcess(PID, "poc", /* exitMs */ 300);
+
+        ProcessUtil.waitPidExited(mDevice, PID);
+
+        assertThat(now()).isAtLeast(300L);
+        assertThat(now()).isLessThan(300L + MAX_LATENCY_MS);
+        assertThat(mCommands.get()).isEqualTo(1);
+    }
+
+    @Test
+    public void testWaitPidsExited() throws Exception {
+        addProcess(PID, "poc", 100);
+        addProcess(PID + 1, "poc", 200);
+        addProcess(PID + 2, "poc", 300);
+
+        ProcessUtil.waitPidsExited(mDevice, List.of(PID, PID + 1, PID + 2, PID + 3), 10_000);
+
+        assertThat(now()).isAtLeast(300L);
+        assertThat(now()).isLessThan(300L + MAX_LATENCY_MS);
+        assertThat(mCommands.get()).isEqualTo(1);
+    }
+
+    @Test
+    public void testWaitPidExitedTimeout() throws Exception {
+        addProcess(PID, "poc", Long.MAX_VALUE);
+
+        TimeoutException e =
+                assertThrows(
+                        TimeoutException.class, () -> ProcessUtil.waitPidExited(mDevice, PID, 500));
+        // Timed out by the device-side loop, which lists the processes still running, rather than
+        // by the host.
+        assertThat(e).hasMessageThat().contains(String.valueOf(PID));
+        assertThat(now()).isAtLeast(500L);
+        // The deadline is checked with a sub-second clock.
+        assertThat(now()).isLessThan(500L + MAX_TIMEOUT_OVERSHOOT_MS);
+        assertThat(mCommands.get()).isEqualTo(1);
+    }
+
+    @Test
+    public void testWaitPidExitedNotPermitted() throws Exception {
+        // pid 1 exists in the /proc of any Linux host.
+        Files.createFile(new File(mProcesses, "1.denied").toPath());
+
+        KillException e =
+                assertThrows(KillException.class, () -> ProcessUtil.waitPidExited(mDevice, 1));
+        assertThat(e).hasMessageThat().contains("Operation not permitted");
+    }
+
+    @Test
+    public void testWaitProcessesRunning() throws Exception {
+        addProcess(PID, "mediaserver", 200, Long.MAX_VALUE);
+        addProcess(PID + 1, "cameraserver", 300, Long.MAX_VALUE);
+        addProcess(PID + 2, "cameraserver", 350, Long.MAX_VALUE);
+
+        Map<String, Map<Integer, String>> pids =
+                ProcessUtil.waitProcessesRunning(
+                        mDevice, List.of("^media.*", "cameraserver$"), 10_000);
+
+        assertThat(now()).isAtLeast(300L);
+        assertThat(now()).isLessThan(300L + MAX_LATENCY_MS);
+        assertThat(mCommands.get()).isEqualTo(1);
+        assertThat(pids.get("^media.*")).containsExactly(PID, "mediaserver");
+        assertThat(pids.get("cameraserver$")).containsKey(PID + 1);
+    }
+
+    @Test
+    public void testWaitProcessesRunningQuoting() throws Exception {
+        addProcess(PID, "poc it's", 0, Long.MAX_VALUE);
+        addProcess(PID + 1, "/data/local/tmp/a.b \"x\" $HOME", 0, Long.MAX_VALUE);
+        addProcess(PID + 2, "/data/local/tmp/axb", 0, Long.MAX_VALUE);
+        List<String> regexes = List.of("it's", "a\\.b \"x\" \\$HOME$", "'");
+
+        Map<String, Map<Integer, String>> pids =
+                ProcessUtil.waitProcessesRunning(mDevice, regexes, 10_000);
+
+        assertThat(pids.get("it's")).containsExactly(PID, "poc it's");
+        assertThat(pids.get("a\\.b \"x\" \\$HOME$"))
+                .containsExactly(PID + 1, "/data/local/tmp/a.b \"x\" $HOME");
+        assertThat(pids.get("'")).containsExactly(PID, "poc it's");
+        // The regexes can't match the command line of the wait loop itself.
+        assertThat(mCommandLines.get(0)).doesNotContain("it's");
+        assertThat(mCommandLines.get(0)).doesNotContain("a\\.b");
+    }
+
+    @Test
+    public void testWaitProcessesRunningTimeout() throws Exception {
+        addProcess(PID, "poc", 0, Long.MAX_VALUE);
+
+        TimeoutException e =
+                assertThrows(
+                        TimeoutException.class,
+                        () ->
+                                ProcessUtil.waitProcessesRunning(
+                                        mDevice, List.of("poc", "missing"), 500));
+        // Timed out by the device-side loop, which lists the index of the missing regexes.
+        assertThat(e).hasMessageThat().isEqualTo("processes not running: 1");
+        assertThat(now()).isAtLeast(500L);
+        // The deadline is checked with a sub-second clock.
+        assertThat(now()).isLessThan(500L + MAX_TIMEOUT_OVERSHOOT_MS);
+        assertThat(mCommands.get()).isEqualTo(1);
+    }
+
+    @Test
+    public void testKillAll() throws Exception {
+        for (int pid = PID; pid < PID + 20; pid++) {
+            addProcess(pid, "poc", Long.MAX_VALUE);
+        }
+
+        assertThat(ProcessUtil.killAll(mDevice, "poc", 10_000)).isTrue();
+
+        // pgrep, kill and a single wait, whatever the number of processes
+        assertThat(mCommands.get()).isEqualTo(3);
+        assertThat(mProcesses.list()).isEmpty();
+    }
+
+    private long now() {
+        return System.currentTimeMillis() - mStartMs;
+    }
+
+    private void addProcess(int pid, String commandLine, long exitMs) throws IOException {
+        addProcess(pid, commandLine, 0, exitMs);
+    }
+
+    /** Adds a fake process that runs between the given times, relative to the test start. */
+    private void addProcess(int pid, String commandLine, long startMs, long exitMs)
+            throws IOException {
+        File process = new File(mProcesses, String.valueOf(pid));
+        if (startMs <= 0) {
+            Files.writeString(process.toPath(), commandLine);
+        } else {
+            mScheduler.schedule(
+                    () -> Files.writeString(process.toPath(), commandLine),
+                    startMs,
+                    TimeUnit.MILLISECONDS);
+        }
+        if (exitMs != Long.MAX_VALUE) {
+            mScheduler.schedule(process::delete, exitMs, TimeUnit.MILLISECONDS);
+        }
+    }
+
+    /** Runs a device command under the host shell, against the fake processes. */
+    private CommandResult execute(String command, long timeoutMs) throws Exception {
+        mCommands.incrementAndGet();
+        mCommandLines.add(command);
+        ProcessBuilder builder = new ProcessBuilder("/bin/sh", "-c", STUBS + command);
+        builder.environment().put("FAKE_PROC", mProcesses.getPath());
+        Process process = builder.start();
+        process.getOutputStream().close();
+        CompletableFuture<String> stdout = readAsync(process.getInputStream());
+        CompletableFuture<String> stderr = readAsync(process.getErrorStream());
+        if (!process.waitFor(timeoutMs, TimeUnit.MILLISECONDS)) {
+            process.destroyForcibly();
+            return new CommandResult(CommandStatus.TIMED_OUT);
+        }
+        CommandResult res =
+                new CommandResult(
+                        process.exitValue() == 0 ? CommandStatus.SUCCESS : CommandStatus.FAILED);
+        res.setExitCode(process.exitValue());
+        res.setStdout(stdout.get());
+        res.setStderr(stderr.get());
+        return res;
+    }
+
+    private static CompletableFuture<String> readAsync(InputStream in) {
+        return CompletableFuture.supplyAsync(
+                () -> {
+                    try (InputStream input = in) {
+                        ByteArrayOutputStream out = new ByteArrayOutputStream();
+                        input.transferTo(out);
+                        return out.toString(StandardCharsets.UTF_8);
+                    } catch (IOException e) {
+                        throw new RuntimeException(e);
+                    }
+                });
+    }
+}
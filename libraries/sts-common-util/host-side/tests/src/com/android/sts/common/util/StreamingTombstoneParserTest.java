@@ -0,0 +1,323 @@
+/*
+ * Copyright (C) 2026 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.android.sts.common.util;
+
+import static com.google.common.truth.Truth.assertThat;
+import static com.google.common.truth.Truth.assertWithMessage;
+
+import com.android.server.os.TombstoneProtos.*;
+import com.android.tradefed.log.LogUtil.CLog;
+import com.android.tradefed.testtype.DeviceJUnit4ClassRunner;
+import com.android.tradefed.testtype.junit4.BaseHostJUnit4Test;
+
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+import java.io.File;
+import java.io.InputStream;
+import java.io.StringReader;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+/** Unit tests for {@link StreamingTombstoneParser}. */
+@RunWith(DeviceJUnit4ClassRunner.class)
+public class StreamingTombstoneParserTest extends BaseHostJUnit4Test {
+    private static final String HEADER =
+            "*** *** *** *** *** *** *** *** *** *** *** *** *** *** *** ***";
+    private static final String SEPARATOR =
+            "--- --- --- --- --- --- --- --- --- --- --- --- --- --- --- ---";
+    private static final int CORPUS_SIZE = 300;
+
+    @Test
+    public void testParseLogcatSameAsTombstoneParser() throws Exception {
+        String logcat;
+        try (InputStream is = getClass().getClassLoader().getResourceAsStream("logcat.txt")) {
+            logcat = new String(is.readAllBytes());
+        }
+        assertThat(StreamingTombstoneParser.parseLogcat(new StringReader(logcat)))
+                .isEqualTo(TombstoneParser.parseLogcat(logcat));
+    }
+
+    @Test
+    public void testParseTombstoneSameAsTombstoneParser() throws Exception {
+        for (String blob : generateTombstones(new Random(42), CORPUS_SIZE)) {
+            Tombstone.Builder expected = Tombstone.newBuilder();
+            Tombstone.Builder actual = Tombstone.newBuilder();
+            boolean expectedResult = TombstoneParser.parseTombstone(blob, expected);
+            boolean actualResult =
+                    StreamingTombstoneParser.parseTombstone(new StringReader(blob), actual);
+            assertWithMessage(blob).that(actualResult).isEqualTo(expectedResult);
+            assertWithMessage(blob).that(actual.build()).isEqualTo(expected.build());
+        }
+    }
+
+    @Test
+    public void testParseTombstonesInParallel() throws Exception {
+        List<String> blobs = generateTombstones(new Random(43), CORPUS_SIZE);
+        List<Tombstone> expected = new ArrayList<>();
+        for (String blob : blobs) {
+            Tombstone.Builder tombstoneBuilder = Tombstone.newBuilder();
+            TombstoneParser.parseTombstone(blob, tombstoneBuilder);
+            expected.add(tombstoneBuilder.build());
+        }
+        assertThat(StreamingTombstoneParser.parseTombstones(blobs, 4))
+                .containsExactlyElementsIn(expected)
+                .inOrder();
+
+        List<File> files = new ArrayList<>();
+        try {
+            for (String blob : blobs.subList(0, 20)) {
+                File file = File.createTempFile("tombstone", ".txt");
+                files.add(file);
+                Files.write(file.toPath(), blob.getBytes(StandardCharsets.UTF_8));
+            }
+            assertThat(StreamingTombstoneParser.parseTombstoneFiles(files, 4))
+                    .containsExactlyElementsIn(expected.subList(0, 20))
+                    .inOrder();
+        } finally {
+            for (File file : files) {
+                file.delete();
+            }
+        }
+    }
+
+    /**
+     * Compares both parsers on a synthetic logcat. The timings are only logged since they depend
+     * on the host; the output must be the same.
+     */
+    @Test
+    public void testBenchmarkSyntheticLogcat() throws Exception {
+        Random random = new Random(44);
+        List<String> blobs = generateTombstones(random, CORPUS_SIZE);
+        String logcat = toLogcat(blobs, random);
+
+        List<Tombstone> expected = null;
+        List<Tombstone> actual = null;
+        long bestLegacyNanos = Long.MAX_VALUE;
+        long bestStreamingNanos = Long.MAX_VALUE;
+        for (int i = 0; i < 5; i++) {
+            long start = System.nanoTime();
+            expected = TombstoneParser.parseLogcat(logcat);
+            long middle = System.nanoTime();
+            actual = StreamingTombstoneParser.parseLogcat(new StringReader(logcat));
+            long end = System.nanoTime();
+            bestLegacyNanos = Math.min(bestLegacyNanos, middle - start);
+            bestStreamingNanos = Math.min(bestStreamingNanos, end - middle);
+        }
+        CLog.i(
+                "parsed %d tombstones (%d chars): TombstoneParser %dms, "
+                        + "StreamingTombstoneParser %dms, speedup %.1fx",
+                actual.size(),
+                logcat.length(),
+                bestLegacyNanos / 1_000_000,
+                bestStreamingNanos / 1_000_000,
+                (double) bestLegacyNanos / bestStreamingNanos);
+        assertThat(actual).isNotEmpty();
+        assertThat(actual).containsExactlyElementsIn(expected).inOrder();
+    }
+
+    /**
+     * Generates tombstones that exercise every section the parsers look at, including the ones
+     * that make parsing fail half way.
+     */
+    private static List<String> generateTombstones(Random random, int count) {
+        List<String> blobs = new ArrayList<>();
+        for (int i = 0; i < count; i++) {
+            blobs.add(generateTombstone(random, i));
+        }
+        return blobs;
+    }
+
+    private static String generateTombstone(Random random, int index) {
+        StringBuilder sb = new StringBuilder();
+        int pid = 1000 + index;
+        String process = "/system/bin/synthetic_process_" + (index % 3);
+        int variant = random.nextInt(20);
+
+        sb.append(HEADER).append('\n');
+        sb.append("Build fingerprint: 'google/synthetic/synthetic:16/ZZ1A/")
+                .append(index)
+                .append(":userdebug/dev-keys'\n");
+        sb.append("Revision: '0'\n");
+        if (variant != 0) {
+            String[] abis = {"arm", "arm64", "x86_64", "mips"};
+            sb.append("ABI: '").append(abis[random.nextInt(abis.length)]).append("'\n");
+        }
+        sb.append("Timestamp: 2026-10-19 12:00:0").append(index % 10).append(".0+0000\n");
+        sb.append("Process uptime: ").append(random.nextInt(1000)).append("s\n");
+        if (variant == 1) {
+            sb.append("failed to find entry for main thread in tombstone\n");
+            return sb.toString();
+        }
+        if (random.nextBoolean()) {
+            sb.append("Cmdline: ").append(process).append(" --synthetic ").append(index);
+            sb.append('\n');
+        }
+        sb.append(String.format("pid: %d, tid: %d, name: worker_%d  >>> %s <<<\n",
+                pid, pid + 1, index, process));
+        sb.append("uid: ").append(1000 + random.nextInt(10000)).append('\n');
+        if (variant == 2) {
+            sb.append("signal information missing\n");
+        } else if (variant != 3) {
+            sb.append(String.format("signal 11 (SIGSEGV), code 2 (SEGV_ACCERR), fault addr 0x%x\n",
+                    random.nextInt(1 << 20)));
+        }
+        switch (random.nextInt(4)) {
+            case 1:
+                sb.append("Abort message: 'single line abort'\n");
+                break;
+            case 2:
+                sb.append("Abort message: 'first line\nsecond 'line'\nthird line'\n");
+                break;
+            default:
+                break;
+        }
+        int causes = random.nextInt(3);
+        for (int i = 0; i < causes; i++) {
+            sb.append("Cause: [MTE]: Use After Free, 0 bytes into a 32-byte allocation at 0x")
+                    .append(Integer.toHexString(random.nextInt()))
+                    .append('\n');
+        }
+        if (random.nextInt(5) == 0) {
+            sb.append("Not a Cause: at the start of the line\n");
+        }
+        if (variant != 4) {
+            appendRegisters(sb, random);
+        }
+        sb.append('\n');
+        appendBacktrace(sb, random, random.nextInt(3));
+        if (causes > 0) {
+            if (random.nextBoolean()) {
+                sb.append("\ndeallocated by thread ").append(pid).append(":\n");
+                appendFrames(sb, random, 1 + random.nextInt(5));
+            }
+            if (random.nextBoolean()) {
+                sb.append("\nallocated by thread ").append(pid).append(":\n");
+                appendFrames(sb, random, 1 + random.nextInt(5));
+            }
+        }
+        sb.append("\nmemory near x0 ([anon:scudo:primary]):\n");
+        for (int i = 0; i < 8; i++) {
+            sb.append(String.format("    %016x %016x %016x  ................\n",
+                    0x7000000000L + i * 16, random.nextLong(), random.nextLong()));
+        }
+        sb.append('\n');
+        if (random.nextInt(10) == 0) {
+            sb.append("No memory maps found\n");
+        } else {
+            int maps = 20 + random.nextInt(200);
+            sb.append("memory map (")
+                    .append(maps)
+                    .append(" entries): (fault address prefixed with --->)\n");
+            for (int i = 0; i < maps; i++) {
+                sb.append(String.format(
+                        "    %s%08x'%08x-%08x'%08x r-x  %8x  %8x  /system/lib64/libsynth_%d.so%s\n",
+                        i == maps / 2 ? "--->" : "",
+                        0x7f, i * 0x1000, 0x7f, i * 0x1000 + 0xfff, 0, 0x1000, i,
+                        i % 5 == 0 ? " (BuildId: 1234)" : ""));
+            }
+        }
+        int threads = random.nextInt(4);
+        for (int i = 0; i < threads; i++) {
+            sb.append(SEPARATOR).append('\n');
+            sb.append(String.format("pid: %d, tid: %d, name: thread_%d  >>> %s <<<\n",
+                    pid, pid + 10 + i, i, process));
+            sb.append("uid: 1000\n");
+            if (variant == 5 && i == threads - 1) {
+                // A thread without registers fails the parsing.
+                continue;
+            }
+            appendRegisters(sb, random);
+            sb.append('\n');
+            appendBacktrace(sb, random, 0);
+        }
+        if (random.nextBoolean()) {
+            sb.append("\nopen files:\n");
+            sb.append("    fd 0: /dev/null (unowned)\n");
+            sb.append("    fd 1: socket:[12345] (owned by ").append(process).append(" 0x7b8f2a)\n");
+            sb.append("    fd 2: /data/local/tmp/file (unowned)\n");
+        }
+        sb.append("\n--------- tail end of log main\n");
+        sb.append("10-19 12:00:00.000  1000  1001 I synthetic: hello\n");
+        return sb.toString();
+    }
+
+    private static void appendRegisters(StringBuilder sb, Random random) {
+        for (int i = 0; i < 8; i += 4) {
+            sb.append(String.format("    x%-2d  %016x  x%-2d  %016x  x%-2d  %016x  x%-2d  %016x\n",
+                    i, random.nextLong(), i + 1, random.nextLong(),
+                    i + 2, random.nextLong(), i + 3, random.nextLong()));
+        }
+        sb.append(String.format("    lr  %016x  sp  %016x  pc  %016x  pst %016x\n",
+                random.nextLong(), random.nextLong(), random.nextLong(), 0L));
+    }
+
+    private static void appendBacktrace(StringBuilder sb, Random random, int notes) {
+        sb.append(random.nextInt(10) == 0 ? "backtrace (not a header):\n" : "backtrace:\n");
+        for (int i = 0; i < notes; i++) {
+            sb.append("  NOTE: synthetic note ").append(i).append('\n');
+        }
+        appendFrames(sb, random, 3 + random.nextInt(20));
+    }
+
+    private static void appendFrames(StringBuilder sb, Random random, int count) {
+        for (int i = 0; i < count; i++) {
+            switch (random.nextInt(3)) {
+                case 0:
+                    sb.append(String.format(
+                            "      #%02d pc %016x  /system/lib64/libc.so (abort+%d)"
+                                    + " (BuildId: %08x)\n",
+                            i, random.nextInt(1 << 24), random.nextInt(200), random.nextInt()));
+                    break;
+                case 1:
+                    sb.append(String.format("      #%02d pc %08x  /system/lib/libsynthetic.so\n",
+                            i, random.nextInt(1 << 24)));
+                    break;
+                default:
+                    sb.append(String.format(
+                            "      #%02d pc %016x  /apex/com.android.runtime/bin/linker64"
+                                    + " (__dl__start+%d)\n",
+                            i, random.nextInt(1 << 24), random.nextInt(100)));
+                    break;
+            }
+        }
+    }
+
+    /** Wraps the tombstones in logcat lines, with unrelated lines and crash time notes. */
+    private static String toLogcat(List<String> blobs, Random random) {
+        StringBuilder sb = new StringBuilder();
+        for (int i = 0; i < blobs.size(); i++) {
+            sb.append("10-19 12:00:00.000   123   123 I ActivityManager: unrelated line\n");
+            String prefix =
+                    String.format("10-19 12:00:00.000  %d  %d F DEBUG   : ", 2000 + i, 2000 + i);
+            String[] lines = blobs.get(i).split("\n");
+            for (int l = 0; l < lines.length; l++) {
+                sb.append(prefix).append(lines[l]).append('\n');
+                if (l == 0 && random.nextInt(15) == 0) {
+                    sb.append(prefix).append("Native Crash TIME: 1234\n");
+                }
+                if (random.nextInt(50) == 0) {
+                    sb.append("10-19 12:00:00.000   123   124 W vold    : interleaved line\n");
+                }
+            }
+        }
+        return sb.toString();
+    }
+}
@@ -0,0 +1,267 @@
+/*
+ * Copyright (C) 2026 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.android.sts.common.util;
+
+import static com.google.common.truth.Truth.assertThat;
+
+import static org.mockito.Mockito.anyString;
+import static org.mockito.Mockito.when;
+
+import com.android.server.os.TombstoneProtos.*;
+import com.android.tradefed.device.ITestDevice;
+import com.android.tradefed.testtype.DeviceJUnit4ClassRunner;
+import com.android.tradefed.testtype.junit4.BaseHostJUnit4Test;
+import com.android.tradefed.util.CommandResult;
+import com.android.tradefed.util.CommandStatus;
+
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.mockito.Mock;
+import org.mockito.junit.MockitoJUnit;
+import org.mockito.junit.MockitoRule;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Base64;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+import java.util.zip.GZIPOutputStream;
+
+/** Unit tests for {@link TombstoneCollector}. */
+@RunWith(DeviceJUnit4ClassRunner.class)
+public class TombstoneCollectorTest extends BaseHostJUnit4Test {
+    private static final int RESOURCE_COUNT = 22;
+    private static final long START_TIME = 1_700_000_000L;
+
+    @Rule public final MockitoRule mMockitoRule = MockitoJUnit.rule();
+    @Mock private ITestDevice mDevice;
+
+    private FakeTombstoneDirectory mFake;
+    private List<byte[]> mResources;
+
+    @Before
+    public void setUp() throws Exception {
+        mFake = new FakeTombstoneDirectory();
+        when(mDevice.executeShellV2Command(anyString()))
+                .thenAnswer(invocation -> mFake.execute(invocation.getArgument(0)));
+        mResources = new ArrayList<>();
+        for (int i = 0; i < RESOURCE_COUNT; i++) {
+            String name = String.format("tombstones/tombstone-%03d.pb", i);
+            try (InputStream is = getClass().getClassLoader().getResourceAsStream(name)) {
+                mResources.add(is.readAllBytes());
+            }
+        }
+    }
+
+    @Test
+    public void testCollectOnlyNewTombstones() throws Exception {
+        addTombstones(10, START_TIME);
+        TombstoneCollector collector = new TombstoneCollector(mDevice, 4);
+        collector.mark();
+
+        // a new tombstone in the same second as the newest old one, and one later
+        mFake.mFiles.put("tombstone_98.pb", new FakeFile(START_TIME + 9, mResources.get(0)));
+        mFake.mFiles.put("tombstone_99.pb", new FakeFile(START_TIME + 20, mResources.get(1)));
+
+        assertThat(collector.collect())
+                .containsExactly(
+                        Tombstone.parseFrom(mResources.get(0)),
+                        Tombstone.parseFrom(mResources.get(1)));
+        // the cursor moved after them
+        assertThat(collector.collect()).isEmpty();
+    }
+
+    @Test
+    public void testCollectSecurityCrashes() throws Exception {
+        TombstoneCollector collector = new TombstoneCollector(mDevice, 4);
+        collector.mark();
+        addTombstones(RESOURCE_COUNT, START_TIME);
+
+        TombstoneUtils.Config config = new TombstoneUtils.Config();
+        List<Tombstone> all = new ArrayList<>();
+        for (byte[] resource : mResources) {
+            all.add(Tombstone.parseFrom(resource));
+        }
+        assertThat(collector.collectSecurityCrashes(config))
+                .containsExactlyElementsIn(TombstoneUtils.getSecurityCrashes(all, config));
+    }
+
+    @Test
+    public void testTransferDoesNotGrowWithOldTombstones() throws Exception {
+        long[] small = collectTwoNewTombstones(10);
+        long[] large = collectTwoNewTombstones(1000);
+
+        // same number of round-trips and bytes, whatever the number of old tombstones
+        assertThat(large[0]).isEqualTo(small[0]);
+        assertThat(large[1]).isEqualTo(small[1]);
+    }
+
+    @Test
+    public void testCollectFromLogcat() throws Exception {
+        mFake.mReadable = false;
+        String logcat;
+        try (InputStream is = getClass().getClassLoader().getResourceAsStream("logcat.txt")) {
+            logcat = new String(is.readAllBytes());
+        }
+        mFake.mLogcat.add("1700000000.000  1000  1000 I ActivityManager: before");
+        TombstoneCollector collector = new TombstoneCollector(mDevice, 4);
+        collector.mark();
+
+        List<String> lines = new ArrayList<>();
+        for (String line : logcat.split("\\R")) {
+            if (line.contains(" DEBUG ")) {
+                // logcat.txt uses "threadtime" format, re-stamp it in "epoch" format
+                lines.add("1700000001.000" + line.substring(line.indexOf(' ', 19)));
+            }
+        }
+        mFake.mLogcat.addAll(lines);
+
+        assertThat(collector.collect()).isEqualTo(TombstoneParser.parseLogcat(logcat));
+        assertThat(collector.collect()).isEmpty();
+    }
+
+    /** Returns the round-trips and bytes read to collect 2 tombstones among {@code old} others. */
+    private long[] collectTwoNewTombstones(int old) throws Exception {
+        mFake = new FakeTombstoneDirectory();
+        addTombstones(old, START_TIME);
+        TombstoneCollector collector = new TombstoneCollector(mDevice, 4);
+        collector.mark();
+        mFake.mFiles.put("tombstone_new_0.pb", new FakeFile(START_TIME + old, mResources.get(0)));
+        mFake.mFiles.put("tombstone_new_1.pb", new FakeFile(START_TIME + old, mResources.get(1)));
+        mFake.mCalls = 0;
+        mFake.mBytes = 0;
+
+        assertThat(collector.collect()).hasSize(2);
+        return new long[] {mFake.mCalls, mFake.mBytes};
+    }
+
+    private void addTombstones(int count, long time) {
+        for (int i = 0; i < count; i++) {
+            mFake.mFiles.put(
+                    String.format("tombstone_%05d.pb", i),
+                    new FakeFile(time + i, mResources.get(i % RESOURCE_COUNT)));
+        }
+    }
+
+    private static class FakeFile {
+        final long mTime;
+        final byte[] mContent;
+
+        FakeFile(long time, byte[] content) {
+            mTime = time;
+            mContent = content;
+        }
+    }
+
+    /** Answers the commands of {@link TombstoneCollector} from memory, counting the transfers. */
+    private static class FakeTombstoneDirectory {
+        private static final Pattern SINCE_PATTERN = Pattern.compile("-ge (\\d+)");
+        private static final Pattern NAME_PATTERN = Pattern.compile("'([^' ]+)'");
+        private static final Pattern LOGCAT_TIME_PATTERN = Pattern.compile("-T (\\S+)");
+
+        final Map<String, FakeFile> mFiles = new TreeMap<>();
+        final List<String> mLogcat = new ArrayList<>();
+        boolean mReadable = true;
+        long mCalls;
+        long mBytes;
+
+        CommandResult execute(String cmd) throws IOException {
+            StringBuilder stdout = new StringBuilder();
+            if (cmd.startsWith("if [ -r ")) {
+                if (mReadable) {
+                    stdout.append(TombstoneCollector.FILES_MODE).append('\n');
+                    mFiles.entrySet().stream()
+                            .sorted(
+                                    Comparator.comparing(
+                                            (Map.Entry<String, FakeFile> e) -> -e.getValue().mTime))
+                            .limit(16)
+                            .forEach(e -> appendListing(stdout, e.getKey(), e.getValue()));
+                } else {
+                    stdout.append(TombstoneCollector.LOGCAT_MODE).append('\n');
+                    if (!mLogcat.isEmpty()) {
+                        stdout.append(mLogcat.get(mLogcat.size() - 1)).append('\n');
+                    }
+                }
+            } else if (cmd.contains(" tar -cf -")) {
+                stdout.append(archive(cmd));
+            } else if (cmd.contains(" stat -c ")) {
+                Matcher m = SINCE_PATTERN.matcher(cmd);
+                m.find();
+                long since = Long.parseLong(m.group(1));
+                mFiles.forEach(
+                        (name, file) -> {
+                            if (file.mTime >= since) {
+                                appendListing(stdout, name, file);
+                            }
+                        });
+            } else if (cmd.startsWith("logcat -d -v epoch -s DEBUG")) {
+                Matcher m = LOGCAT_TIME_PATTERN.matcher(cmd);
+                double since = m.find() ? Double.parseDouble(m.group(1)) : 0;
+                for (String line : mLogcat) {
+                    if (line.contains(" DEBUG ")
+                            && Double.parseDouble(line.substring(0, line.indexOf(' '))) >= since) {
+                        stdout.append(line).append('\n');
+                    }
+                }
+            } else {
+                throw new IllegalArgumentException("unexpected command: " + cmd);
+            }
+            mCalls++;
+            mBytes += stdout.length();
+            CommandResult result = new CommandResult(CommandStatus.SUCCESS);
+            result.setStdout(stdout.toString());
+            return result;
+        }
+
+        private static void appendListing(StringBuilder sb, String name, FakeFile file) {
+            sb.append(file.mTime).append(' ').append(name).append('\n');
+        }
+
+        /** Returns the base64 of the gzipped tar of the files quoted in the command. */
+        private String archive(String cmd) throws IOException {
+            ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+            try (GZIPOutputStream os = new GZIPOutputStream(bytes)) {
+                Matcher m = NAME_PATTERN.matcher(cmd);
+                while (m.find()) {
+                    FakeFile file = mFiles.get(m.group(1));
+                    byte[] header = new byte[512];
+                    byte[] name = m.group(1).getBytes(StandardCharsets.UTF_8);
+                    System.arraycopy(name, 0, header, 0, name.length);
+                    byte[] size =
+                            String.format("%011o", file.mContent.length)
+                                    .getBytes(StandardCharsets.UTF_8);
+                    System.arraycopy(size, 0, header, 124, size.length);
+                    header[156] = '0';
+                    os.write(header);
+                    os.write(file.mContent);
+                    os.write(new byte[(512 - file.mContent.length % 512) % 512]);
+                }
+                os.write(new byte[1024]);
+            }
+            return Base64.getMimeEncoder().encodeToString(bytes.toByteArray()) + "\n";
+        }
+    }
+}